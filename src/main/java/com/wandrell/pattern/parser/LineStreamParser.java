@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.parser;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * {@link StreamParser} splitting the contents of a {@code Reader} into
+ * lines.
+ * <p>
+ * The reader is consumed through a buffer, and each line is sent as soon as
+ * it is read, so memory use doesn't depend on the size of the input. This
+ * makes it a good first step when parsing big text files, mapping each line
+ * afterwards to a record.
+ * <p>
+ * Lines are sent without their terminators. The reader is not closed, as it
+ * belongs to the caller.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class LineStreamParser implements StreamParser<Reader, String> {
+
+    /**
+     * Default constructor.
+     */
+    public LineStreamParser() {
+        super();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws UncheckedIOException
+     *             if the reader fails
+     */
+    @Override
+    public final void parse(final Reader input,
+            final Consumer<? super String> consumer) {
+        final BufferedReader reader;
+        String line;
+
+        checkNotNull(input, "Received a null pointer as input");
+        checkNotNull(consumer, "Received a null pointer as consumer");
+
+        if (input instanceof BufferedReader) {
+            reader = (BufferedReader) input;
+        } else {
+            reader = new BufferedReader(input);
+        }
+
+        try {
+            line = reader.readLine();
+            while (line != null) {
+                consumer.accept(line);
+                line = reader.readLine();
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -48,7 +48,11 @@ package com.wandrell.pattern.parser;
  * first is given to the second, which then creates the final one.
  * <p>
  * This way the parsers become easier to maintain, and if possible also
- * reusable.
+ * reusable. Parsers can be chained with {@link ParserPipeline}.
+ * <p>
+ * The whole output is returned at once, so it has to fit in memory. For big
+ * inputs made of many records the {@link StreamParser} should be used
+ * instead, which sends each record as soon as it is parsed.
  * 
  * @author Bernardo Martínez Garrido
  * @param <I>
@@ -0,0 +1,598 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.parser;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * {@link StreamParser} chaining several parsers into stages.
+ * <p>
+ * The pipeline starts with a stream parser, or a common {@link Parser}, which
+ * reads the input. Then each record it sends goes through the stages added
+ * with {@link #then(String, Parser) then}, each of them a {@code Parser}
+ * transforming a record into the one the next stage receives. The records
+ * returned by the last stage are sent to the consumer.
+ * <p>
+ * By default the stages are fused. Each record is passed directly from one
+ * stage to the next one, on the same thread, so no intermediate collection
+ * is ever created, and each record can be discarded as soon as the last
+ * stage is done with it.
+ * <p>
+ * Stages added with {@link #thenAsync(String, Parser, Executor, int)
+ * thenAsync} instead run on their own thread, taken from an executor. They
+ * receive their records through a bounded queue, which blocks the previous
+ * stages when it is full, so these stages overlap with the rest of the
+ * pipeline while memory use is still limited. The executor should have a
+ * free thread for each of these stages whenever the pipeline runs, or the
+ * pipeline will deadlock.
+ * <p>
+ * The time spent by each stage is recorded, and can be checked through
+ * {@link #getStatistics() getStatistics}.
+ * <p>
+ * Pipelines are immutable. Adding a stage returns a new pipeline, with its
+ * own statistics. A pipeline can parse several inputs at the same time.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <I>
+ *            the input type to be parsed
+ * @param <O>
+ *            the type of the records returned by the last stage
+ */
+public final class ParserPipeline<I, O> implements StreamParser<I, O> {
+
+    /**
+     * Stage which runs on the same thread as the previous one.
+     */
+    private static final class FusedSink implements Sink {
+
+        /**
+         * The next stage.
+         */
+        private final Sink              downstream;
+
+        /**
+         * Parser for this stage.
+         */
+        private final Parser<Object, ?> parser;
+
+        /**
+         * Statistics for the stage.
+         */
+        private final StageStatistics   statistics;
+
+        /**
+         * Constructs a {@code FusedSink} for the specified stage.
+         * 
+         * @param stage
+         *            the stage to run
+         * @param stats
+         *            statistics for the stage
+         * @param next
+         *            the next stage
+         */
+        public FusedSink(final Stage stage, final StageStatistics stats,
+                final Sink next) {
+            super();
+
+            parser = stage.parser;
+            statistics = stats;
+            downstream = next;
+        }
+
+        @Override
+        public final void accept(final Object record) {
+            downstream.accept(apply(parser, statistics, record));
+        }
+
+        @Override
+        public final void finish() {
+            downstream.finish();
+        }
+
+    }
+
+    /**
+     * Stage which runs on its own thread, receiving records through a bounded
+     * queue.
+     */
+    private static final class QueuedSink implements Sink {
+
+        /**
+         * Marker sent after the last record.
+         */
+        private static final Object           END = new Object();
+
+        /**
+         * The next stage.
+         */
+        private final Sink                    downstream;
+
+        /**
+         * First error found by the stage.
+         */
+        private volatile RuntimeException     failure;
+
+        /**
+         * Parser for this stage.
+         */
+        private final Parser<Object, ?>       parser;
+
+        /**
+         * Records waiting to be parsed.
+         */
+        private final BlockingQueue<Object>   queue;
+
+        /**
+         * Statistics for the stage.
+         */
+        private final StageStatistics         statistics;
+
+        /**
+         * Task parsing the records.
+         */
+        private final CompletableFuture<Void> worker;
+
+        /**
+         * Constructs a {@code QueuedSink} for the specified stage, starting
+         * its worker.
+         * 
+         * @param stage
+         *            the stage to run
+         * @param stats
+         *            statistics for the stage
+         * @param next
+         *            the next stage
+         */
+        public QueuedSink(final Stage stage, final StageStatistics stats,
+                final Sink next) {
+            super();
+
+            parser = stage.parser;
+            statistics = stats;
+            downstream = next;
+            queue = new ArrayBlockingQueue<Object>(stage.capacity);
+            worker = CompletableFuture.runAsync(this::drain, stage.executor);
+        }
+
+        @Override
+        public final void accept(final Object record) {
+            checkFailure();
+
+            Uninterruptibles.putUninterruptibly(queue, record);
+        }
+
+        @Override
+        public final void finish() {
+            Uninterruptibles.putUninterruptibly(queue, END);
+            worker.join();
+
+            checkFailure();
+        }
+
+        /**
+         * Throws the error found by the stage, if any.
+         */
+        private final void checkFailure() {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Parses the queued records until the end marker is received.
+         * <p>
+         * After an error the remaining records are discarded, so the
+         * previous stages are never blocked. The next stages are always
+         * finished, even after an error, so their workers end too.
+         */
+        private final void drain() {
+            Object record;
+
+            try {
+                record = Uninterruptibles.takeUninterruptibly(queue);
+                while (record != END) {
+                    if (failure == null) {
+                        try {
+                            downstream
+                                    .accept(apply(parser, statistics, record));
+                        } catch (final RuntimeException e) {
+                            failure = e;
+                        }
+                    }
+                    record = Uninterruptibles.takeUninterruptibly(queue);
+                }
+            } finally {
+                try {
+                    downstream.finish();
+                } catch (final RuntimeException e) {
+                    // Only the first error is kept
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Consumer for the records sent to a stage.
+     */
+    private interface Sink extends Consumer<Object> {
+
+        /**
+         * Signals that no more records will be sent, waiting until the stage
+         * and those after it are done.
+         */
+        public void finish();
+
+    }
+
+    /**
+     * Stage of the pipeline.
+     */
+    private static final class Stage {
+
+        /**
+         * Capacity of the stage's queue, or zero if it is fused.
+         */
+        private final int               capacity;
+
+        /**
+         * Executor running the stage, or {@code null} if it is fused.
+         */
+        private final Executor          executor;
+
+        /**
+         * Name of the stage.
+         */
+        private final String            name;
+
+        /**
+         * Parser for the stage.
+         */
+        private final Parser<Object, ?> parser;
+
+        /**
+         * Constructs a {@code Stage} with the specified data.
+         * 
+         * @param stageName
+         *            name of the stage
+         * @param stageParser
+         *            parser for the stage
+         * @param stageExecutor
+         *            executor running the stage, or {@code null}
+         * @param queueCapacity
+         *            capacity of the stage's queue, or zero
+         */
+        public Stage(final String stageName,
+                final Parser<Object, ?> stageParser,
+                final Executor stageExecutor, final int queueCapacity) {
+            super();
+
+            name = stageName;
+            parser = stageParser;
+            executor = stageExecutor;
+            capacity = queueCapacity;
+        }
+
+    }
+
+    /**
+     * Composes two parsers, so the output of the first is parsed by the
+     * second.
+     * 
+     * @param first
+     *            the first parser
+     * @param second
+     *            the parser receiving the output of the first
+     * @param <A>
+     *            the input type of the first parser
+     * @param <B>
+     *            the output type of the first parser
+     * @param <C>
+     *            the output type of the second parser
+     * @return a parser applying both parsers
+     */
+    public static <A, B, C> Parser<A, C> compose(
+            final Parser<A, ? extends B> first,
+            final Parser<? super B, ? extends C> second) {
+        checkNotNull(first, "Received a null pointer as first parser");
+        checkNotNull(second, "Received a null pointer as second parser");
+
+        return (input) -> second.parse(first.parse(input));
+    }
+
+    /**
+     * Creates a pipeline reading its input with a stream parser.
+     * 
+     * @param source
+     *            the parser reading the input
+     * @param <I>
+     *            the input type to be parsed
+     * @param <O>
+     *            the type of the records parsed from the input
+     * @return a pipeline with no stages
+     */
+    public static <I, O> ParserPipeline<I, O> from(
+            final StreamParser<I, ? extends O> source) {
+        checkNotNull(source, "Received a null pointer as source");
+
+        return new ParserPipeline<I, O>(source,
+                Collections.<Stage> emptyList());
+    }
+
+    /**
+     * Creates a pipeline reading its input with a parser.
+     * <p>
+     * The pipeline will have a single record for each input.
+     * 
+     * @param source
+     *            the parser reading the input
+     * @param <I>
+     *            the input type to be parsed
+     * @param <O>
+     *            the type of the record parsed from the input
+     * @return a pipeline with no stages
+     */
+    public static <I, O> ParserPipeline<I, O> of(
+            final Parser<I, ? extends O> source) {
+        checkNotNull(source, "Received a null pointer as source");
+
+        return new ParserPipeline<I, O>(
+                (input, consumer) -> consumer.accept(source.parse(input)),
+                Collections.<Stage> emptyList());
+    }
+
+    /**
+     * Applies a stage's parser to a record, recording the time spent.
+     * 
+     * @param parser
+     *            the stage's parser
+     * @param statistics
+     *            statistics for the stage
+     * @param record
+     *            the record to parse
+     * @return the parsed record
+     */
+    private static final Object apply(final Parser<Object, ?> parser,
+            final StageStatistics statistics, final Object record) {
+        final long start;
+        final Object result;
+
+        start = System.nanoTime();
+        result = parser.parse(record);
+        statistics.record(System.nanoTime() - start);
+
+        return result;
+    }
+
+    /**
+     * Parser reading the input.
+     */
+    private final StreamParser<I, ?>    source;
+
+    /**
+     * The stages, in order.
+     */
+    private final List<Stage>           stages;
+
+    /**
+     * Statistics for each stage.
+     */
+    private final List<StageStatistics> statistics;
+
+    /**
+     * Constructs a {@code ParserPipeline} with the specified source and
+     * stages.
+     * 
+     * @param reader
+     *            parser reading the input
+     * @param steps
+     *            the stages, in order
+     */
+    private ParserPipeline(final StreamParser<I, ?> reader,
+            final List<Stage> steps) {
+        super();
+
+        final ImmutableList.Builder<StageStatistics> stats;
+
+        source = reader;
+        stages = ImmutableList.copyOf(steps);
+
+        stats = ImmutableList.builder();
+        for (final Stage stage : stages) {
+            stats.add(new StageStatistics(stage.name));
+        }
+        statistics = stats.build();
+    }
+
+    /**
+     * Returns the statistics for each stage, in the same order as the
+     * stages.
+     * 
+     * @return the statistics for each stage
+     */
+    public final List<StageStatistics> getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public final void parse(final I input, final Consumer<? super O> consumer) {
+        final Sink head;
+
+        checkNotNull(consumer, "Received a null pointer as consumer");
+
+        head = link(consumer);
+        try {
+            source.parse(input, head);
+        } catch (final RuntimeException e) {
+            // The queued stages are still stopped before leaving
+            try {
+                head.finish();
+            } catch (final RuntimeException suppressed) {
+                // A failed stage throws the same error again
+                if (suppressed != e) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        head.finish();
+    }
+
+    /**
+     * Returns a pipeline with a fused stage added after the current ones.
+     * 
+     * @param name
+     *            name of the stage
+     * @param parser
+     *            parser for each record
+     * @param <R>
+     *            the type of the records returned by the parser
+     * @return a pipeline with the new stage
+     */
+    public final <R> ParserPipeline<I, R> then(final String name,
+            final Parser<? super O, ? extends R> parser) {
+        return add(name, parser, null, 0);
+    }
+
+    /**
+     * Returns a pipeline with a stage running on its own thread added after
+     * the current ones.
+     * <p>
+     * Each parse keeps a thread of the executor busy for this stage until the
+     * input is finished. If the asynchronous stages share an executor, it
+     * should be able to run all of them at once, for every input parsed at
+     * the same time. Otherwise a stage may never start, and the stages before
+     * it will block forever once its queue is full, so bounded executors,
+     * such as fixed thread pools, should have at least that many threads.
+     * 
+     * @param name
+     *            name of the stage
+     * @param parser
+     *            parser for each record
+     * @param executor
+     *            executor running the stage
+     * @param capacity
+     *            maximum number of records waiting for the stage
+     * @param <R>
+     *            the type of the records returned by the parser
+     * @return a pipeline with the new stage
+     */
+    public final <R> ParserPipeline<I, R> thenAsync(final String name,
+            final Parser<? super O, ? extends R> parser,
+            final Executor executor, final int capacity) {
+        checkNotNull(executor, "Received a null pointer as executor");
+        checkArgument(capacity > 0, "The capacity should be positive");
+
+        return add(name, parser, executor, capacity);
+    }
+
+    /**
+     * Returns a pipeline with a stage added after the current ones.
+     * 
+     * @param name
+     *            name of the stage
+     * @param parser
+     *            parser for each record
+     * @param executor
+     *            executor running the stage, or {@code null}
+     * @param capacity
+     *            capacity of the stage's queue, or zero
+     * @param <R>
+     *            the type of the records returned by the parser
+     * @return a pipeline with the new stage
+     */
+    @SuppressWarnings("unchecked")
+    private final <R> ParserPipeline<I, R> add(final String name,
+            final Parser<? super O, ? extends R> parser,
+            final Executor executor, final int capacity) {
+        final List<Stage> steps;
+
+        checkNotNull(name, "Received a null pointer as name");
+        checkNotNull(parser, "Received a null pointer as parser");
+
+        steps = new ArrayList<Stage>(stages);
+        steps.add(new Stage(name, (Parser<Object, ?>) parser, executor,
+                capacity));
+
+        return new ParserPipeline<I, R>(source, steps);
+    }
+
+    /**
+     * Links the stages, from the last to the first.
+     * <p>
+     * Queued stages start their workers here.
+     * 
+     * @param consumer
+     *            consumer receiving the records of the last stage
+     * @return the sink for the first stage
+     */
+    @SuppressWarnings("unchecked")
+    private final Sink link(final Consumer<? super O> consumer) {
+        Sink sink;
+        Stage stage;
+        StageStatistics stats;
+
+        sink = new Sink() {
+
+            @Override
+            public final void accept(final Object record) {
+                consumer.accept((O) record);
+            }
+
+            @Override
+            public final void finish() {}
+
+        };
+
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            stage = stages.get(i);
+            stats = statistics.get(i);
+            if (stage.executor == null) {
+                sink = new FusedSink(stage, stats, sink);
+            } else {
+                sink = new QueuedSink(stage, stats, sink);
+            }
+        }
+
+        return sink;
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.parser;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Statistics for a stage of a {@link ParserPipeline}.
+ * <p>
+ * These count the records parsed by the stage, and the time spent parsing
+ * them. This time only includes the stage's own parser, not the stages
+ * after it, so the slowest stage of a pipeline can be found by comparing
+ * them.
+ * <p>
+ * The statistics are updated while the pipeline runs, and can be read from
+ * any thread.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class StageStatistics {
+
+    /**
+     * Name of the stage.
+     */
+    private final String    name;
+
+    /**
+     * Number of records parsed.
+     */
+    private final LongAdder records;
+
+    /**
+     * Nanoseconds spent parsing.
+     */
+    private final LongAdder time;
+
+    /**
+     * Constructs a {@code StageStatistics} for the specified stage.
+     * 
+     * @param stage
+     *            name of the stage
+     */
+    StageStatistics(final String stage) {
+        super();
+
+        name = stage;
+        records = new LongAdder();
+        time = new LongAdder();
+    }
+
+    /**
+     * Returns the mean time spent parsing each record.
+     * 
+     * @param unit
+     *            unit for the time
+     * @return the mean time for each record, or zero if none was parsed
+     */
+    public final double getMeanTime(final TimeUnit unit) {
+        final long count;
+        final double mean;
+
+        count = getRecords();
+        if (count == 0) {
+            mean = 0;
+        } else {
+            mean = (double) getTime(TimeUnit.NANOSECONDS) / count
+                    / unit.toNanos(1);
+        }
+
+        return mean;
+    }
+
+    /**
+     * Returns the name of the stage.
+     * 
+     * @return the name of the stage
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of records parsed.
+     * 
+     * @return the number of records parsed
+     */
+    public final long getRecords() {
+        return records.sum();
+    }
+
+    /**
+     * Returns the total time spent parsing.
+     * 
+     * @param unit
+     *            unit for the time
+     * @return the time spent parsing
+     */
+    public final long getTime(final TimeUnit unit) {
+        return unit.convert(time.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("name", name)
+                .add("records", getRecords())
+                .add("time", getTime(TimeUnit.MILLISECONDS) + "ms").toString();
+    }
+
+    /**
+     * Records a parsed record.
+     * 
+     * @param nanos
+     *            nanoseconds spent parsing it
+     */
+    final void record(final long nanos) {
+        records.increment();
+        time.add(nanos);
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.parser;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Interface for parsers which emit their output incrementally.
+ * <p>
+ * Unlike the {@link Parser}, which returns all its output at once, this
+ * parser sends each record to a {@code Consumer} as soon as it has been
+ * parsed. So, if the input is also read incrementally, for example from a
+ * {@code Reader}, only the record being parsed has to be kept in memory, no
+ * matter how big the input is.
+ * <p>
+ * The same advice about chaining small parsers applies here. Each record can
+ * be further parsed with a common {@code Parser} through
+ * {@link #map(Parser) map}.
+ * <p>
+ * Common parsers can be adapted to this interface with
+ * {@link #of(Parser) of}, and the other way around with
+ * {@link #toParser() toParser}. Though both adapters keep the whole output in
+ * memory, and so they are only meant to ease migrating between both
+ * interfaces.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <I>
+ *            the input type to be parsed
+ * @param <O>
+ *            the type of the records parsed from the input
+ */
+public interface StreamParser<I, O> {
+
+    /**
+     * Adapts a {@code Parser} returning a collection of records.
+     * <p>
+     * The input is parsed completely, and then each record sent to the
+     * consumer.
+     * 
+     * @param parser
+     *            the parser to adapt
+     * @param <I>
+     *            the input type to be parsed
+     * @param <O>
+     *            the type of the records parsed from the input
+     * @return a stream parser sending each record returned by the parser
+     */
+    public static <I, O> StreamParser<I, O> of(
+            final Parser<I, ? extends Iterable<? extends O>> parser) {
+        checkNotNull(parser, "Received a null pointer as parser");
+
+        return (input, consumer) -> {
+            for (final O record : parser.parse(input)) {
+                consumer.accept(record);
+            }
+        };
+    }
+
+    /**
+     * Returns a parser which applies a {@code Parser} to each record of this
+     * one.
+     * 
+     * @param parser
+     *            the parser to apply to each record
+     * @param <R>
+     *            the type of the records returned by the parser
+     * @return a stream parser sending the parsed records
+     */
+    public default <R> StreamParser<I, R> map(
+            final Parser<? super O, ? extends R> parser) {
+        checkNotNull(parser, "Received a null pointer as parser");
+
+        return (input, consumer) -> parse(input,
+                (record) -> consumer.accept(parser.parse(record)));
+    }
+
+    /**
+     * Parses the input, sending each record to the consumer as soon as it is
+     * parsed.
+     * <p>
+     * During the parsing process it is possible to find errors which stop the
+     * parsing process completely. In those case an {@code Exception} is
+     * thrown, after the records found before the error have been sent.
+     * 
+     * @param input
+     *            object to parse
+     * @param consumer
+     *            consumer receiving each parsed record
+     */
+    public void parse(final I input, final Consumer<? super O> consumer);
+
+    /**
+     * Adapts this parser to the {@code Parser} interface.
+     * <p>
+     * The returned parser collects all the records into a list.
+     * 
+     * @return a parser returning all the records in a list
+     */
+    public default Parser<I, List<O>> toParser() {
+        return (input) -> {
+            final List<O> records;
+
+            records = new ArrayList<O>();
+            parse(input, records::add);
+
+            return records;
+        };
+    }
+
+}
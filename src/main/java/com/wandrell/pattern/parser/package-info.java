@@ -32,5 +32,23 @@
  * The interface {@link com.wandrell.pattern.parser.Parser Parser} represents
  * this pattern with a single method, which receives an input type and returns
  * an output type.
+ * <p>
+ * For big inputs there is the
+ * {@link com.wandrell.pattern.parser.StreamParser StreamParser}, which
+ * instead of returning its output sends each parsed record to a
+ * {@code Consumer}, keeping in memory only the record being parsed. Both
+ * interfaces can be adapted to each other.
+ * <h2>Implementations</h2>
+ * <p>
+ * The {@link com.wandrell.pattern.parser.LineStreamParser LineStreamParser}
+ * splits the contents of a {@code Reader} into lines, which can then be
+ * mapped into records.
+ * <p>
+ * Parsers are chained with the
+ * {@link com.wandrell.pattern.parser.ParserPipeline ParserPipeline}, which
+ * passes each record through a series of stages, either on the same thread,
+ * without intermediate collections, or on threads of their own, connected by
+ * bounded queues. The time spent on each stage is kept on its
+ * {@link com.wandrell.pattern.parser.StageStatistics StageStatistics}.
  */
 package com.wandrell.pattern.parser;
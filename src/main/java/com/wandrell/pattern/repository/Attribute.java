@@ -0,0 +1,97 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.function.Function;
+
+/**
+ * Named value read from the entities, which {@link Filter filters} compare
+ * against and {@link IndexedRepository indexed repositories} may index.
+ * <p>
+ * Attributes are compared by identity, so the same instance should be used
+ * when creating an index and the filters which should use it.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities
+ * @param <A>
+ *            the type of the attribute's values
+ */
+public final class Attribute<V, A> {
+
+    /**
+     * Function reading the value from an entity.
+     */
+    private final Function<? super V, ? extends A> getter;
+
+    /**
+     * Name of the attribute.
+     */
+    private final String                           name;
+
+    /**
+     * Constructs an {@code Attribute} with the specified name and getter.
+     * 
+     * @param attributeName
+     *            name of the attribute
+     * @param function
+     *            function reading the value from an entity
+     */
+    public Attribute(final String attributeName,
+            final Function<? super V, ? extends A> function) {
+        super();
+
+        name = checkNotNull(attributeName, "Received a null pointer as name");
+        getter = checkNotNull(function, "Received a null pointer as getter");
+    }
+
+    /**
+     * Returns the name of the attribute.
+     * 
+     * @return the name of the attribute
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Reads the attribute's value from an entity.
+     * 
+     * @param entity
+     *            the entity to read
+     * @return the attribute's value for the entity
+     */
+    public final A getValue(final V entity) {
+        return getter.apply(entity);
+    }
+
+    @Override
+    public final String toString() {
+        return name;
+    }
+
+}
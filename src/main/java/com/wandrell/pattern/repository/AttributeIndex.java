@@ -0,0 +1,94 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.Collection;
+
+/**
+ * Index over an {@link Attribute}, used by {@link IndexedRepository} to
+ * answer filters without scanning all the entities.
+ * <p>
+ * Indexes only support some kinds of filters on their attribute. For them
+ * they can estimate the number of entities to be returned, which the
+ * repository uses to choose the best plan for a query.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the indexed entities
+ */
+interface AttributeIndex<V> {
+
+    /**
+     * Adds an entity to the index.
+     * 
+     * @param entity
+     *            the entity to add
+     */
+    public void add(final V entity);
+
+    /**
+     * Returns the number of entities the filter would return.
+     * 
+     * @param filter
+     *            a filter supported by the index
+     * @return the number of entities validating the filter
+     */
+    public long estimate(final Filter<V> filter);
+
+    /**
+     * Returns the indexed attribute.
+     * 
+     * @return the indexed attribute
+     */
+    public Attribute<V, ?> getAttribute();
+
+    /**
+     * Returns the entities validating the filter.
+     * 
+     * @param filter
+     *            a filter supported by the index
+     * @return the entities validating the filter
+     */
+    public Collection<V> lookup(final Filter<V> filter);
+
+    /**
+     * Removes an entity from the index.
+     * 
+     * @param entity
+     *            the entity to remove
+     */
+    public void remove(final V entity);
+
+    /**
+     * Indicates if the index can answer the filter.
+     * 
+     * @param filter
+     *            the filter to check
+     * @return {@code true} if the index supports the filter, {@code false}
+     *         otherwise
+     */
+    public boolean supports(final Filter<V> filter);
+
+}
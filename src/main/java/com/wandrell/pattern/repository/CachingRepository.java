@@ -0,0 +1,726 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+
+/**
+ * Caching decorator for
+ * {@link com.wandrell.pattern.repository.FilteredRepository
+ * FilteredRepository}.
+ * <p>
+ * The collections returned by the wrapped repository are stored on a Guava
+ * <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/cache/LoadingCache.html">
+ * LoadingCache</a>, using the filters as keys. Any query for a filter which is
+ * not yet on the cache will be read through the wrapped repository, and its
+ * result stored for the next time. So the filters should implement both
+ * {@code equals} and {@code hashCode}.
+ * <p>
+ * Eviction is configured through the cache builder, or the cache
+ * specification, received on construction. These allow, among other options,
+ * setting a maximum size, expiration times or recording statistics, which can
+ * later be acquired through {@link #getStatistics() getStatistics}.
+ * <p>
+ * Writes can be sent to the wrapped repository as soon as they are received,
+ * or buffered and sent in batches through the bulk operations. In this second
+ * case the buffer is flushed when it reaches the batch size, before any query
+ * and when calling {@link #flush() flush}. So that buffered writes don't wait
+ * indefinitely when no query comes, the flush can also be scheduled
+ * periodically through
+ * {@link #scheduleFlush(ScheduledExecutorService, long, TimeUnit)
+ * scheduleFlush}. Either way, the cache is cleared each time the wrapped
+ * repository is modified.
+ * <p>
+ * All the operations are synchronized on this repository, so scheduled
+ * flushes never run at the same time as other operations.
+ * <p>
+ * Instead of clearing the cache, it can be revalidated. Then, after each
+ * modification, the cached results are marked as stale. A stale result keeps
+ * being returned the next time it is queried, while it is reloaded in the
+ * background, on the executor received on construction. So only the results
+ * which are queried again are reloaded. This also applies to the refreshes
+ * configured through the cache builder.
+ * <p>
+ * The wrapped repository is only accessed while holding a separate lock,
+ * which is never held while waiting on the cache. So reloads never wait for
+ * the operations, and the wrapped repository, which is never accessed by two
+ * threads at the same time, does not need to be thread safe. Each result
+ * keeps the number of writes sent before reading it, which is how stale
+ * results are found. A reload stored after a newer write is reloaded again
+ * the next time it is queried.
+ * <p>
+ * Mutable filters, such as {@link QueryData}, should not be used as keys
+ * directly, as they may be changed after being cached. For these a key
+ * function can be received on construction, which copies the filter before
+ * it is stored on the cache. The filter is only copied when its result is not
+ * cached yet, so the copies should be equal to the filters they come from.
+ * <p>
+ * The collections returned by this repository are copies of the cached ones,
+ * and so they can be modified freely.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type being used to filter the entities
+ */
+public final class CachingRepository<V, F> implements FilteredRepository<V, F> {
+
+    /**
+     * The logger used for logging exceptions thrown by the scheduled flushes.
+     */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(CachingRepository.class);
+
+    /**
+     * Write operations which can be buffered.
+     */
+    private enum Operation {
+        /**
+         * Adding entities.
+         */
+        ADD,
+
+        /**
+         * Removing entities.
+         */
+        REMOVE,
+
+        /**
+         * Updating entities.
+         */
+        UPDATE
+    }
+
+    /**
+     * Result read from the wrapped repository.
+     * <p>
+     * It keeps the number of writes sent to the wrapped repository when it
+     * was read.
+     * 
+     * @param <V>
+     *            the type of the entities
+     */
+    private static final class Result<V> extends AbstractCollection<V> {
+
+        /**
+         * The entities read.
+         */
+        private final Collection<V> entities;
+
+        /**
+         * Number of writes sent before reading the entities.
+         */
+        private final long          version;
+
+        /**
+         * Constructs a result with the specified entities.
+         * 
+         * @param read
+         *            the entities read
+         * @param writes
+         *            number of writes sent before reading them
+         */
+        public Result(final Collection<V> read, final long writes) {
+            super();
+
+            entities = Collections.unmodifiableCollection(read);
+            version = writes;
+        }
+
+        /**
+         * Returns the number of writes sent before reading the entities.
+         * 
+         * @return the number of writes sent before reading the entities
+         */
+        public final long getVersion() {
+            return version;
+        }
+
+        @Override
+        public final Iterator<V> iterator() {
+            return entities.iterator();
+        }
+
+        @Override
+        public final int size() {
+            return entities.size();
+        }
+
+    }
+
+    /**
+     * Returns the logger being used to log exceptions thrown by the scheduled
+     * flushes.
+     * 
+     * @return the logger being used
+     */
+    private static final Logger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * Weigher giving each cached result a weight based on its size.
+     * <p>
+     * Empty results still have a weight of one.
+     * 
+     * @return a weigher for the cached results
+     */
+    public static final Weigher<Object, Collection<?>> resultSizeWeigher() {
+        return (filter, result) -> result.size() + 1;
+    }
+
+    /**
+     * Number of writes buffered before sending them to the wrapped repository.
+     */
+    private final int                              batchSize;
+
+    /**
+     * Cache for the filtered collections.
+     */
+    private final LoadingCache<F, Result<V>>       cache;
+
+    /**
+     * Cached copy of all the entities.
+     * <p>
+     * This is {@code null} when it has not been loaded.
+     */
+    private Collection<V>                          cachedAll;
+
+    /**
+     * Function creating the cache keys from the filters.
+     */
+    private final Function<? super F, ? extends F> keys;
+
+    /**
+     * Lock for accessing the wrapped repository.
+     */
+    private final Object                           lock;
+
+    /**
+     * Number of writes sent to the wrapped repository.
+     */
+    private volatile long                          modifications;
+
+    /**
+     * Writes waiting to be sent to the wrapped repository.
+     */
+    private final List<Entry<Operation, V>>        pending;
+
+    /**
+     * The wrapped repository.
+     */
+    private final FilteredRepository<V, F>         repository;
+
+    /**
+     * Flag indicating if the cache is revalidated instead of cleared.
+     */
+    private final boolean                          revalidated;
+
+    /**
+     * Constructs a {@code CachingRepository} wrapping the specified repository,
+     * and with a cache built from the specified builder.
+     * <p>
+     * Writes will be sent to the wrapped repository as soon as they are
+     * received.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param builder
+     *            builder for the cache
+     */
+    public CachingRepository(final FilteredRepository<V, F> wrapped,
+            final CacheBuilder<? super F, ? super Collection<V>> builder) {
+        this(wrapped, builder, 1);
+    }
+
+    /**
+     * Constructs a {@code CachingRepository} wrapping the specified repository,
+     * and with a cache built from the specified builder.
+     * <p>
+     * Writes will be buffered until reaching the batch size, and then sent
+     * together to the wrapped repository.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param builder
+     *            builder for the cache
+     * @param writeBatchSize
+     *            number of writes buffered before sending them
+     */
+    public CachingRepository(final FilteredRepository<V, F> wrapped,
+            final CacheBuilder<? super F, ? super Collection<V>> builder,
+            final int writeBatchSize) {
+        this(wrapped, builder, writeBatchSize, Function.identity());
+    }
+
+    /**
+     * Constructs a {@code CachingRepository} wrapping the specified repository,
+     * and with a cache built from the specified builder, which will store the
+     * filters through the specified key function.
+     * <p>
+     * Writes will be buffered until reaching the batch size, and then sent
+     * together to the wrapped repository.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param builder
+     *            builder for the cache
+     * @param writeBatchSize
+     *            number of writes buffered before sending them
+     * @param keyFunction
+     *            function creating the cache keys from the filters
+     */
+    public CachingRepository(final FilteredRepository<V, F> wrapped,
+            final CacheBuilder<? super F, ? super Collection<V>> builder,
+            final int writeBatchSize,
+            final Function<? super F, ? extends F> keyFunction) {
+        this(wrapped, builder, writeBatchSize, keyFunction, null);
+    }
+
+    /**
+     * Constructs a {@code CachingRepository} wrapping the specified repository,
+     * and with a cache built from the specified builder, which will store the
+     * filters through the specified key function, and revalidate the results
+     * on the specified executor.
+     * <p>
+     * Writes will be buffered until reaching the batch size, and then sent
+     * together to the wrapped repository. After they are sent, the cached
+     * results will be returned while they are reloaded.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param builder
+     *            builder for the cache
+     * @param writeBatchSize
+     *            number of writes buffered before sending them
+     * @param keyFunction
+     *            function creating the cache keys from the filters
+     * @param executor
+     *            executor where the results are reloaded, or {@code null}
+     *            to clear them instead
+     */
+    public CachingRepository(final FilteredRepository<V, F> wrapped,
+            final CacheBuilder<? super F, ? super Collection<V>> builder,
+            final int writeBatchSize,
+            final Function<? super F, ? extends F> keyFunction,
+            final Executor executor) {
+        super();
+
+        final CacheLoader<F, Result<V>> loader;
+
+        checkNotNull(wrapped, "Received a null pointer as repository");
+        checkNotNull(builder, "Received a null pointer as cache builder");
+        checkNotNull(keyFunction, "Received a null pointer as key function");
+        checkArgument(writeBatchSize > 0,
+                "The write batch size should be positive");
+
+        repository = wrapped;
+        batchSize = writeBatchSize;
+        keys = keyFunction;
+        revalidated = executor != null;
+        pending = new ArrayList<Entry<Operation, V>>();
+        lock = new Object();
+        loader = new CacheLoader<F, Result<V>>() {
+
+            @Override
+            public final Result<V> load(final F filter) {
+                return read(filter);
+            }
+
+        };
+
+        if (revalidated) {
+            cache = builder.build(CacheLoader.asyncReloading(loader, executor));
+        } else {
+            cache = builder.build(loader);
+        }
+    }
+
+    /**
+     * Constructs a {@code CachingRepository} wrapping the specified repository,
+     * and with a cache built from the specified specification.
+     * <p>
+     * The specification follows the format of Guava's
+     * {@code CacheBuilderSpec}, for example
+     * {@code "maximumSize=1000,expireAfterWrite=10m,recordStats"}.
+     * <p>
+     * Writes will be sent to the wrapped repository as soon as they are
+     * received.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param spec
+     *            specification for the cache
+     */
+    public CachingRepository(final FilteredRepository<V, F> wrapped,
+            final String spec) {
+        this(wrapped, CacheBuilder.from(CacheBuilderSpec.parse(spec)));
+    }
+
+    @Override
+    public final synchronized void add(final V entity) {
+        write(Operation.ADD, entity);
+    }
+
+    @Override
+    public final synchronized void addAll(
+            final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        for (final V entity : entities) {
+            write(Operation.ADD, entity);
+        }
+    }
+
+    /**
+     * Sends all the buffered writes to the wrapped repository.
+     * <p>
+     * Consecutive writes of the same type are sent together through the bulk
+     * operations. Each batch is discarded from the buffer as soon as it is
+     * sent, so if one of them fails the batches before it won't be sent again
+     * on the next flush.
+     */
+    public final synchronized void flush() {
+        final List<V> batch;
+        Operation operation;
+        int sent;
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        batch = new ArrayList<V>();
+        sent = 0;
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                operation = pending.get(i).getKey();
+                batch.add(pending.get(i).getValue());
+
+                if (((i + 1) == pending.size())
+                        || (pending.get(i + 1).getKey() != operation)) {
+                    send(operation, batch);
+                    batch.clear();
+                    sent = i + 1;
+                }
+            }
+        } finally {
+            pending.subList(0, sent).clear();
+            if (sent > 0) {
+                invalidate();
+            }
+        }
+    }
+
+    @Override
+    public final synchronized Collection<V> getAll() {
+        flush();
+
+        if (cachedAll == null) {
+            synchronized (getLock()) {
+                cachedAll = new ArrayList<V>(getRepository().getAll());
+            }
+        }
+
+        return new LinkedList<V>(cachedAll);
+    }
+
+    @Override
+    public final synchronized Collection<V> getCollection(final F filter) {
+        Result<V> cached;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        flush();
+
+        // The key is only copied when it is going to be stored
+        // Checking the map first keeps misses from being counted twice
+        if (getCache().asMap().containsKey(filter)) {
+            cached = getCache().getIfPresent(filter);
+        } else {
+            cached = null;
+        }
+        if (cached == null) {
+            cached = getCache().getUnchecked(getKeys().apply(filter));
+        } else if (cached.getVersion() != modifications) {
+            // Stale results are reloaded while they are returned
+            getCache().refresh(getKeys().apply(filter));
+        }
+
+        return new LinkedList<V>(cached);
+    }
+
+    @Override
+    public final synchronized V getEntity(final F filter) {
+        final Result<V> cached;
+        final V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        flush();
+
+        cached = getCache().getIfPresent(filter);
+        if ((cached != null) && (cached.getVersion() != modifications)) {
+            getCache().refresh(getKeys().apply(filter));
+        }
+        if (cached == null) {
+            // Single entities are not cached
+            synchronized (getLock()) {
+                entity = getRepository().getEntity(filter);
+            }
+        } else if (cached.isEmpty()) {
+            entity = null;
+        } else {
+            entity = cached.iterator().next();
+        }
+
+        return entity;
+    }
+
+    /**
+     * Returns the statistics for the cache.
+     * <p>
+     * These are only recorded if the cache was configured to do so.
+     * 
+     * @return the cache statistics
+     */
+    public final CacheStats getStatistics() {
+        return getCache().stats();
+    }
+
+    @Override
+    public final synchronized void remove(final V entity) {
+        write(Operation.REMOVE, entity);
+    }
+
+    @Override
+    public final synchronized void removeAll(
+            final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        for (final V entity : entities) {
+            write(Operation.REMOVE, entity);
+        }
+    }
+
+    @Override
+    public final synchronized void removeIf(final F filter) {
+        flush();
+
+        synchronized (getLock()) {
+            modifications++;
+            getRepository().removeIf(filter);
+        }
+        invalidate();
+    }
+
+    /**
+     * Schedules flushing the buffered writes periodically.
+     * <p>
+     * This bounds the time a write stays buffered. The flush is run on the
+     * received executor, until the returned future is cancelled.
+     * <p>
+     * An exception thrown by a scheduled flush is logged, and does not cancel
+     * the following ones. The writes which could not be sent are kept, and so
+     * they will be sent again on the next flush.
+     * 
+     * @param executor
+     *            executor running the flush
+     * @param period
+     *            time between each flush
+     * @param unit
+     *            unit for the period
+     * @return the future for the scheduled flush, which may be used to
+     *         cancel it
+     */
+    public final ScheduledFuture<?> scheduleFlush(
+            final ScheduledExecutorService executor, final long period,
+            final TimeUnit unit) {
+        checkNotNull(executor, "Received a null pointer as executor");
+        checkNotNull(unit, "Received a null pointer as unit");
+        checkArgument(period > 0, "The period should be positive");
+
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (final RuntimeException e) {
+                getLogger().error(e.getMessage(), e);
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public final synchronized void update(final V entity) {
+        write(Operation.UPDATE, entity);
+    }
+
+    @Override
+    public final synchronized void updateAll(
+            final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        for (final V entity : entities) {
+            write(Operation.UPDATE, entity);
+        }
+    }
+
+    /**
+     * Returns the cache for the filtered collections.
+     * 
+     * @return the cache for the filtered collections
+     */
+    private final LoadingCache<F, Result<V>> getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the function creating the cache keys from the filters.
+     * 
+     * @return the function creating the cache keys
+     */
+    private final Function<? super F, ? extends F> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Returns the lock for accessing the wrapped repository.
+     * 
+     * @return the lock for accessing the wrapped repository
+     */
+    private final Object getLock() {
+        return lock;
+    }
+
+    /**
+     * Returns the wrapped repository.
+     * 
+     * @return the wrapped repository
+     */
+    private final FilteredRepository<V, F> getRepository() {
+        return repository;
+    }
+
+    /**
+     * Discards or marks as stale all the cached data.
+     * <p>
+     * When revalidating, the cached results are kept, and as they are older
+     * than the last write, each of them is reloaded the next time it is
+     * queried. So writes never reload results which are not queried again.
+     */
+    private final void invalidate() {
+        if (!revalidated) {
+            getCache().invalidateAll();
+        }
+        cachedAll = null;
+    }
+
+    /**
+     * Reads the entities for a filter from the wrapped repository.
+     * 
+     * @param filter
+     *            the filter to apply
+     * @return the entities for the filter
+     */
+    private final Result<V> read(final F filter) {
+        Collection<V> entities;
+        long version;
+
+        synchronized (getLock()) {
+            version = modifications;
+            entities = new ArrayList<V>(getRepository().getCollection(filter));
+        }
+
+        return new Result<V>(entities, version);
+    }
+
+    /**
+     * Sends a batch of writes to the wrapped repository.
+     * 
+     * @param operation
+     *            the operation to apply
+     * @param entities
+     *            the entities to write
+     */
+    private final void send(final Operation operation,
+            final Collection<V> entities) {
+        synchronized (getLock()) {
+            modifications++;
+            switch (operation) {
+                case ADD:
+                    getRepository().addAll(entities);
+                    break;
+                case REMOVE:
+                    getRepository().removeAll(entities);
+                    break;
+                default:
+                    getRepository().updateAll(entities);
+            }
+        }
+    }
+
+    /**
+     * Buffers a write, flushing the buffer if it is full.
+     * 
+     * @param operation
+     *            the operation to apply
+     * @param entity
+     *            the entity to write
+     */
+    private final void write(final Operation operation, final V entity) {
+        pending.add(Maps.immutableEntry(operation, entity));
+
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+}
@@ -24,10 +24,24 @@
 
 package com.wandrell.pattern.repository;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.google.common.base.Predicate;
 
@@ -44,6 +58,30 @@ import com.google.common.base.Predicate;
  * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html">
  * Predicate</a> class. All the entities validating the predicate being used as
  * filter will be returned.
+ * <p>
+ * The streams and iterators returned by this repository are lazy, and work
+ * directly over the stored data. So the repository should not be modified
+ * while they are being consumed.
+ * <p>
+ * Large collections may be filtered in parallel. If the repository is given a
+ * {@code ForkJoinPool}, then any collection reaching the parallel threshold
+ * will be split into chunks, which will be filtered concurrently on that
+ * pool. Below the threshold the entities are always filtered sequentially, as
+ * for small collections the parallel tasks cost more than they save.
+ * <p>
+ * The same applies to aggregations. Counting, collecting and reducing go
+ * through the data in a single pass, without building intermediate
+ * collections, and once the threshold is reached they run as a parallel
+ * stream on the pool.
+ * <p>
+ * The bulk operations go through the stored data only once, looking up the
+ * received entities in a hash set. So the entities should have a
+ * {@code hashCode} method consistent with their {@code equals} method.
+ * <p>
+ * {@link MaterializedView Materialized views} can be registered along a
+ * filter. These are told about each change affecting the entities validating
+ * that filter, so their results are always up to date and never need to be
+ * computed again by querying the whole collection.
  * 
  * @author Bernardo Martínez Garrido
  * @param <V>
@@ -55,7 +93,22 @@ public final class CollectionRepository<V>
     /**
      * The entities stored in the repository.
      */
-    private final Collection<V> data;
+    private final Collection<V>                             data;
+
+    /**
+     * Minimum number of entities needed to filter them in parallel.
+     */
+    private final int                                       parallelThreshold;
+
+    /**
+     * Pool used for parallel filtering.
+     */
+    private final ForkJoinPool                              pool;
+
+    /**
+     * Registered views, with the filter for each of them.
+     */
+    private final Map<MaterializedView<V, ?>, Predicate<V>> views;
 
     /**
      * Constructs a {@code CollectionRepository} using a {@code LinkedList} as
@@ -73,16 +126,92 @@ public final class CollectionRepository<V>
      *            the data to store
      */
     public CollectionRepository(final Collection<V> collection) {
+        this(collection, ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a {@code CollectionRepository} with the specified
+     * {@code Collection}, which will be filtered in parallel when it reaches
+     * the specified size.
+     * 
+     * @param collection
+     *            the data to store
+     * @param forkJoinPool
+     *            pool used for parallel filtering
+     * @param threshold
+     *            minimum number of entities needed to filter them in parallel
+     */
+    public CollectionRepository(final Collection<V> collection,
+            final ForkJoinPool forkJoinPool, final int threshold) {
         super();
 
         checkNotNull(collection, "Received a null pointer as collection");
+        checkNotNull(forkJoinPool, "Received a null pointer as pool");
+        checkArgument(threshold > 0, "The threshold should be positive");
 
         this.data = collection;
+        this.pool = forkJoinPool;
+        this.parallelThreshold = threshold;
+
+        views = new LinkedHashMap<MaterializedView<V, ?>, Predicate<V>>();
     }
 
     @Override
     public final void add(final V entity) {
-        getData().add(entity);
+        if (getData().add(entity)) {
+            notifyAdded(entity);
+        }
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        if (getViews().isEmpty()) {
+            getData().addAll(entities);
+        } else {
+            for (final V entity : entities) {
+                add(entity);
+            }
+        }
+    }
+
+    @Override
+    public final <A, R> R collect(final Predicate<V> filter,
+            final Collector<? super V, A, R> collector) {
+        final R result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+        checkNotNull(collector, "Received a null pointer as collector");
+
+        if (isParallel()) {
+            result = getPool().submit(
+                    () -> parallelStream(filter).collect(collector)).join();
+        } else {
+            result = stream(filter).collect(collector);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final long count(final Predicate<V> filter) {
+        long count;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        if (isParallel()) {
+            count = collect(filter, Collectors.counting());
+        } else {
+            count = 0;
+            for (final V entity : getData()) {
+                if (filter.apply(entity)) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
     }
 
     @Override
@@ -92,12 +221,38 @@ public final class CollectionRepository<V>
 
     @Override
     public final Collection<V> getCollection(final Predicate<V> filter) {
+        return getCollection(filter, true);
+    }
+
+    /**
+     * Queries the entities in the repository and returns a subset of them.
+     * <p>
+     * If the repository is big enough the entities will be filtered in
+     * parallel. When this happens the original order of the entities may be
+     * kept or not, as indicated. Ignoring the order lets each chunk deliver
+     * its entities as soon as it is finished.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @param ordered
+     *            flag indicating if the original order should be kept
+     * @return the filtered subset of entities
+     */
+    public final Collection<V> getCollection(final Predicate<V> filter,
+            final boolean ordered) {
         final Collection<V> result;
 
-        result = new LinkedList<V>();
-        for (final V entity : getData()) {
-            if (filter.apply(entity)) {
-                result.add(entity);
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        if (isParallel()) {
+            result = ParallelFilterTask.filter(getPool(),
+                    getData().toArray(), filter, ordered);
+        } else {
+            result = new LinkedList<V>();
+            for (final V entity : getData()) {
+                if (filter.apply(entity)) {
+                    result.add(entity);
+                }
             }
         }
 
@@ -106,30 +261,198 @@ public final class CollectionRepository<V>
 
     @Override
     public final V getEntity(final Predicate<V> filter) {
-        final Collection<V> entities;
+        final Iterator<V> entities;
         final V entity;
 
-        entities = getCollection(filter);
+        entities = iterator(filter);
 
-        if (entities.isEmpty()) {
-            entity = null;
+        if (entities.hasNext()) {
+            entity = entities.next();
         } else {
-            entity = entities.iterator().next();
+            entity = null;
         }
 
         return entity;
     }
 
+    @Override
+    public final <R> R reduce(final Predicate<V> filter, final R identity,
+            final BiFunction<R, ? super V, R> accumulator,
+            final BinaryOperator<R> combiner) {
+        final R result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+        checkNotNull(accumulator, "Received a null pointer as accumulator");
+        checkNotNull(combiner, "Received a null pointer as combiner");
+
+        if (isParallel()) {
+            result = getPool().submit(() -> parallelStream(filter)
+                    .reduce(identity, accumulator, combiner)).join();
+        } else {
+            result = stream(filter).reduce(identity, accumulator, combiner);
+        }
+
+        return result;
+    }
+
+    /**
+     * Registers a view, which will be kept up to date with the entities
+     * validating the specified filter.
+     * <p>
+     * The view first receives all the stored entities validating the filter.
+     * Afterwards it will be told about each of those entities added or
+     * removed.
+     * 
+     * @param filter
+     *            filter for the entities in the view
+     * @param view
+     *            the view to register
+     * @param <R>
+     *            the type of the view's result
+     * @return the registered view
+     */
+    public final <R> MaterializedView<V, R> registerView(
+            final Predicate<V> filter, final MaterializedView<V, R> view) {
+        checkNotNull(filter, "Received a null pointer as filter");
+        checkNotNull(view, "Received a null pointer as view");
+        checkArgument(!getViews().containsKey(view),
+                "The view is already registered");
+
+        for (final V entity : getData()) {
+            if (filter.apply(entity)) {
+                view.added(entity);
+            }
+        }
+
+        getViews().put(view, filter);
+
+        return view;
+    }
+
     @Override
     public final void remove(final V entity) {
-        getData().remove(entity);
+        final V removed;
+
+        if (getViews().isEmpty()) {
+            getData().remove(entity);
+        } else {
+            removed = removeStored(entity);
+            if (removed != null) {
+                notifyRemoved(removed);
+            }
+        }
+    }
+
+    /**
+     * Removes all the received entities from the repository.
+     * <p>
+     * Same as when removing them one by one, a single stored entity is
+     * removed for each one received. But all of them are removed in a single
+     * pass over the stored entities.
+     * 
+     * @param entities
+     *            the entities to remove
+     */
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        final Map<V, Integer> remaining;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        remaining = new HashMap<V, Integer>();
+        for (final V entity : entities) {
+            remaining.merge(entity, 1, Integer::sum);
+        }
+
+        removeStoredIf((entity) -> {
+            final Integer count;
+
+            count = remaining.get(entity);
+            if (count == null) {
+                return false;
+            } else if (count == 1) {
+                remaining.remove(entity);
+            } else {
+                remaining.put(entity, count - 1);
+            }
+
+            return true;
+        });
+    }
+
+    @Override
+    public final void removeIf(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        removeStoredIf(filter::apply);
+    }
+
+    @Override
+    public final Stream<V> stream(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return getData().stream().filter(filter::apply);
+    }
+
+    /**
+     * Unregisters a view, which will no longer be kept up to date.
+     * 
+     * @param view
+     *            the view to unregister
+     */
+    public final void unregisterView(final MaterializedView<V, ?> view) {
+        getViews().remove(view);
     }
 
     @Override
     public final void update(final V entity) {
-        if (getData().contains(entity)) {
-            remove(entity);
-            add(entity);
+        final V previous;
+
+        if (getViews().isEmpty()) {
+            if (getData().contains(entity)) {
+                getData().remove(entity);
+                getData().add(entity);
+            }
+        } else {
+            // The stored instance is needed to update the views
+            previous = removeStored(entity);
+            if (previous != null) {
+                notifyRemoved(previous);
+                add(entity);
+            }
+        }
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        final Map<V, V> pending;
+        final Collection<V> updated;
+        final Iterator<V> stored;
+        V previous;
+        V entity;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        pending = new LinkedHashMap<V, V>();
+        for (final V update : entities) {
+            pending.put(update, update);
+        }
+
+        // Stored entities are swapped for the updated ones
+        updated = new LinkedList<V>();
+        stored = getData().iterator();
+        while (stored.hasNext() && !pending.isEmpty()) {
+            previous = stored.next();
+            entity = pending.remove(previous);
+            if (entity != null) {
+                stored.remove();
+                notifyRemoved(previous);
+                updated.add(entity);
+            }
+        }
+
+        for (final V update : updated) {
+            add(update);
         }
     }
 
@@ -142,4 +465,138 @@ public final class CollectionRepository<V>
         return data;
     }
 
+    /**
+     * Returns the minimum number of entities needed to filter them in
+     * parallel.
+     * 
+     * @return the minimum number of entities for parallel filtering
+     */
+    private final int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Returns the pool used for parallel filtering.
+     * 
+     * @return the pool used for parallel filtering
+     */
+    private final ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the registered views, with the filter for each of them.
+     * 
+     * @return the registered views
+     */
+    private final Map<MaterializedView<V, ?>, Predicate<V>> getViews() {
+        return views;
+    }
+
+    /**
+     * Indicates if the repository is big enough to be processed in parallel.
+     * 
+     * @return {@code true} if the data reaches the parallel threshold,
+     *         {@code false} otherwise
+     */
+    private final boolean isParallel() {
+        return getData().size() >= getParallelThreshold();
+    }
+
+    /**
+     * Tells the views about an added entity.
+     * 
+     * @param entity
+     *            the added entity
+     */
+    private final void notifyAdded(final V entity) {
+        for (final Entry<MaterializedView<V, ?>, Predicate<V>> view : getViews()
+                .entrySet()) {
+            if (view.getValue().apply(entity)) {
+                view.getKey().added(entity);
+            }
+        }
+    }
+
+    /**
+     * Tells the views about a removed entity.
+     * 
+     * @param entity
+     *            the removed entity
+     */
+    private final void notifyRemoved(final V entity) {
+        for (final Entry<MaterializedView<V, ?>, Predicate<V>> view : getViews()
+                .entrySet()) {
+            if (view.getValue().apply(entity)) {
+                view.getKey().removed(entity);
+            }
+        }
+    }
+
+    /**
+     * Returns a parallel stream of the entities validating the filter.
+     * <p>
+     * The entities are copied into an array-backed list first, as it is
+     * split far better than most collections. The stream will run on the
+     * pool where its terminal operation is called.
+     * 
+     * @param filter
+     *            the filter to apply
+     * @return a parallel stream of the filtered entities
+     */
+    private final Stream<V> parallelStream(final Predicate<V> filter) {
+        return new ArrayList<V>(getData()).parallelStream()
+                .filter(filter::apply);
+    }
+
+    /**
+     * Removes the first stored entity equal to the received one, and returns
+     * it.
+     * <p>
+     * The stored instance is returned, as it may hold a different state from
+     * the received one.
+     * 
+     * @param entity
+     *            the entity to remove
+     * @return the removed entity, or {@code null} if none was found
+     */
+    private final V removeStored(final V entity) {
+        final Iterator<V> stored;
+        V removed;
+        V next;
+
+        stored = getData().iterator();
+        removed = null;
+        while ((removed == null) && stored.hasNext()) {
+            next = stored.next();
+            if (Objects.equals(next, entity)) {
+                stored.remove();
+                removed = next;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes all the stored entities validating the filter, telling the
+     * views about each of them.
+     * 
+     * @param filter
+     *            the filter for the entities to remove
+     */
+    private final void removeStoredIf(
+            final java.util.function.Predicate<? super V> filter) {
+        getData().removeIf((entity) -> {
+            final boolean found;
+
+            found = filter.test(entity);
+            if (found) {
+                notifyRemoved(entity);
+            }
+
+            return found;
+        });
+    }
+
 }
@@ -0,0 +1,525 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Column of a {@link ColumnarRepository}, storing a single field of all the
+ * entities.
+ * <p>
+ * Each implementation keeps the values on a primitive array, with the value
+ * for each row at that row's index. Rows are added at the end, and removing
+ * a row moves the last one into its place, same as with the rest of the
+ * columns.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities
+ */
+abstract class Column<V> {
+
+    /**
+     * Column of {@code double} values.
+     * 
+     * @param <V>
+     *            the type of the entities
+     */
+    static final class DoubleColumn<V> extends Column<V> {
+
+        /**
+         * Function reading the value from an entity.
+         */
+        private final ToDoubleFunction<? super V> getter;
+
+        /**
+         * Value for each row.
+         */
+        private double[]                          values;
+
+        /**
+         * Constructs a {@code DoubleColumn} with the specified name and
+         * getter.
+         * 
+         * @param name
+         *            name of the column
+         * @param function
+         *            function reading the value from an entity
+         */
+        public DoubleColumn(final String name,
+                final ToDoubleFunction<? super V> function) {
+            super(name);
+
+            getter = function;
+            values = new double[INITIAL_CAPACITY];
+        }
+
+        @Override
+        public final int find(final V entity, final int size) {
+            final long value;
+            int row;
+
+            value = Double.doubleToLongBits(getter.applyAsDouble(entity));
+            row = -1;
+            for (int i = 0; i < size; i++) {
+                if (Double.doubleToLongBits(values[i]) == value) {
+                    row = i;
+                    break;
+                }
+            }
+
+            return row;
+        }
+
+        @Override
+        public final Object getValue(final int row) {
+            return values[row];
+        }
+
+        @Override
+        public final void move(final int from, final int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        public final void set(final int row, final V entity) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+
+            values[row] = getter.applyAsDouble(entity);
+        }
+
+        /**
+         * Returns the value for each row.
+         * 
+         * @return the column's values
+         */
+        final double[] getValues() {
+            return values;
+        }
+
+    }
+
+    /**
+     * Column of {@code int} values.
+     * 
+     * @param <V>
+     *            the type of the entities
+     */
+    static final class IntColumn<V> extends Column<V> {
+
+        /**
+         * Function reading the value from an entity.
+         */
+        private final ToIntFunction<? super V> getter;
+
+        /**
+         * Value for each row.
+         */
+        private int[]                          values;
+
+        /**
+         * Constructs an {@code IntColumn} with the specified name and getter.
+         * 
+         * @param name
+         *            name of the column
+         * @param function
+         *            function reading the value from an entity
+         */
+        public IntColumn(final String name,
+                final ToIntFunction<? super V> function) {
+            super(name);
+
+            getter = function;
+            values = new int[INITIAL_CAPACITY];
+        }
+
+        @Override
+        public final int find(final V entity, final int size) {
+            return indexOf(values, getter.applyAsInt(entity), size);
+        }
+
+        @Override
+        public final Object getValue(final int row) {
+            return values[row];
+        }
+
+        @Override
+        public final void move(final int from, final int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        public final void set(final int row, final V entity) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+
+            values[row] = getter.applyAsInt(entity);
+        }
+
+        /**
+         * Returns the value for each row.
+         * 
+         * @return the column's values
+         */
+        final int[] getValues() {
+            return values;
+        }
+
+    }
+
+    /**
+     * Column of {@code long} values.
+     * 
+     * @param <V>
+     *            the type of the entities
+     */
+    static final class LongColumn<V> extends Column<V> {
+
+        /**
+         * Function reading the value from an entity.
+         */
+        private final ToLongFunction<? super V> getter;
+
+        /**
+         * Value for each row.
+         */
+        private long[]                          values;
+
+        /**
+         * Constructs a {@code LongColumn} with the specified name and getter.
+         * 
+         * @param name
+         *            name of the column
+         * @param function
+         *            function reading the value from an entity
+         */
+        public LongColumn(final String name,
+                final ToLongFunction<? super V> function) {
+            super(name);
+
+            getter = function;
+            values = new long[INITIAL_CAPACITY];
+        }
+
+        @Override
+        public final int find(final V entity, final int size) {
+            final long value;
+            int row;
+
+            value = getter.applyAsLong(entity);
+            row = -1;
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    row = i;
+                    break;
+                }
+            }
+
+            return row;
+        }
+
+        @Override
+        public final Object getValue(final int row) {
+            return values[row];
+        }
+
+        @Override
+        public final void move(final int from, final int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        public final void set(final int row, final V entity) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+
+            values[row] = getter.applyAsLong(entity);
+        }
+
+        /**
+         * Returns the value for each row.
+         * 
+         * @return the column's values
+         */
+        final long[] getValues() {
+            return values;
+        }
+
+    }
+
+    /**
+     * Column of strings, stored with dictionary encoding.
+     * <p>
+     * Each distinct string receives a code, and the rows store only the
+     * codes. So filters compare integers instead of strings, and repeated
+     * strings are stored once. The code {@code 0} is reserved for
+     * {@code null}.
+     * <p>
+     * The dictionary only grows, codes are not released when their strings
+     * are no longer used.
+     * 
+     * @param <V>
+     *            the type of the entities
+     */
+    static final class StringColumn<V> extends Column<V> {
+
+        /**
+         * Code for each string.
+         */
+        private final Map<String, Integer>        codes;
+
+        /**
+         * String for each code.
+         */
+        private final List<String>                dictionary;
+
+        /**
+         * Function reading the value from an entity.
+         */
+        private final Function<? super V, String> getter;
+
+        /**
+         * Code for each row.
+         */
+        private int[]                             values;
+
+        /**
+         * Constructs a {@code StringColumn} with the specified name and
+         * getter.
+         * 
+         * @param name
+         *            name of the column
+         * @param function
+         *            function reading the value from an entity
+         */
+        public StringColumn(final String name,
+                final Function<? super V, String> function) {
+            super(name);
+
+            getter = function;
+            values = new int[INITIAL_CAPACITY];
+            codes = new HashMap<String, Integer>();
+            dictionary = new ArrayList<String>();
+
+            dictionary.add(null);
+        }
+
+        @Override
+        public final int find(final V entity, final int size) {
+            final int code;
+            final int row;
+
+            code = getCode(getter.apply(entity));
+            if (code < 0) {
+                row = -1;
+            } else {
+                row = indexOf(values, code, size);
+            }
+
+            return row;
+        }
+
+        @Override
+        public final Object getValue(final int row) {
+            return dictionary.get(values[row]);
+        }
+
+        @Override
+        public final void move(final int from, final int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        public final void set(final int row, final V entity) {
+            final String value;
+
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+
+            value = getter.apply(entity);
+            if (value == null) {
+                values[row] = 0;
+            } else {
+                values[row] = codes.computeIfAbsent(value, (key) -> {
+                    dictionary.add(key);
+                    return dictionary.size() - 1;
+                });
+            }
+        }
+
+        /**
+         * Returns the code for a string.
+         * 
+         * @param value
+         *            the string to encode
+         * @return the string's code, or {@code -1} if the string was never
+         *         stored
+         */
+        final int getCode(final String value) {
+            final int code;
+
+            if (value == null) {
+                code = 0;
+            } else {
+                code = codes.getOrDefault(value, -1);
+            }
+
+            return code;
+        }
+
+        /**
+         * Returns the number of codes in the dictionary.
+         * 
+         * @return the size of the dictionary
+         */
+        final int getDictionarySize() {
+            return dictionary.size();
+        }
+
+        /**
+         * Returns the code for each row.
+         * 
+         * @return the column's codes
+         */
+        final int[] getValues() {
+            return values;
+        }
+
+    }
+
+    /**
+     * Initial capacity of the columns.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Returns the index of the first position holding the value.
+     * 
+     * @param values
+     *            the values to search
+     * @param value
+     *            the value to find
+     * @param size
+     *            number of positions in use
+     * @return the index of the value, or {@code -1} if it is missing
+     */
+    private static final int indexOf(final int[] values, final int value,
+            final int size) {
+        int index;
+
+        index = -1;
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                index = i;
+                break;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Name of the column.
+     */
+    private final String name;
+
+    /**
+     * Constructs a {@code Column} with the specified name.
+     * 
+     * @param columnName
+     *            name of the column
+     */
+    public Column(final String columnName) {
+        super();
+
+        name = columnName;
+    }
+
+    /**
+     * Returns the first row holding the same value as the entity.
+     * 
+     * @param entity
+     *            the entity to look for
+     * @param size
+     *            number of rows
+     * @return the row with the entity's value, or {@code -1} if there is
+     *         none
+     */
+    public abstract int find(final V entity, final int size);
+
+    /**
+     * Returns the name of the column.
+     * 
+     * @return the name of the column
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the value at a row, boxed.
+     * 
+     * @param row
+     *            the row to read
+     * @return the value at the row
+     */
+    public abstract Object getValue(final int row);
+
+    /**
+     * Copies the value from a row into another.
+     * 
+     * @param from
+     *            the row to copy
+     * @param to
+     *            the row to overwrite
+     */
+    public abstract void move(final int from, final int to);
+
+    /**
+     * Stores the entity's value at a row, growing the column if the row is
+     * just past its end.
+     * 
+     * @param row
+     *            the row to write
+     * @param entity
+     *            the entity to read
+     */
+    public abstract void set(final int row, final V entity);
+
+}
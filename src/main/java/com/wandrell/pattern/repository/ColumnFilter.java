@@ -0,0 +1,812 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.wandrell.pattern.repository.Column.DoubleColumn;
+import com.wandrell.pattern.repository.Column.IntColumn;
+import com.wandrell.pattern.repository.Column.LongColumn;
+import com.wandrell.pattern.repository.Column.StringColumn;
+
+/**
+ * Filter for a {@link ColumnarRepository}, evaluated column by column.
+ * <p>
+ * Filters work over selection vectors, which are arrays with the indexes of
+ * the rows still accepted. The first filter goes through a whole column,
+ * and each following one only through the rows selected by the previous
+ * ones, shrinking the selection in place. Each of these passes is a tight
+ * loop over a primitive array, with no branches depending on the data, which
+ * the JIT compiler can optimize well.
+ * <p>
+ * String columns are compared through their dictionary codes, so the strings
+ * are looked up once for each query, and never for each row.
+ * <p>
+ * Ranges include both of their bounds.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public abstract class ColumnFilter {
+
+    /**
+     * Filter accepting the rows accepted by all the received filters.
+     */
+    private static final class AndFilter extends ColumnFilter {
+
+        /**
+         * The filters to apply.
+         */
+        private final List<ColumnFilter> filters;
+
+        /**
+         * Constructs an {@code AndFilter} with the specified filters.
+         * 
+         * @param conjuncts
+         *            the filters to apply
+         */
+        public AndFilter(final List<ColumnFilter> conjuncts) {
+            super();
+
+            filters = conjuncts;
+        }
+
+        @Override
+        public final String toString() {
+            return "(" + Joiner.on(" AND ").join(filters) + ")";
+        }
+
+        @Override
+        final int scan(final ColumnarRepository<?> table,
+                final int[] selection) {
+            int count;
+
+            // Only the first filter reads the whole column
+            count = filters.get(0).scan(table, selection);
+            for (int i = 1; (i < filters.size()) && (count > 0); i++) {
+                count = filters.get(i).select(table, selection, count);
+            }
+
+            return count;
+        }
+
+        @Override
+        final int select(final ColumnarRepository<?> table,
+                final int[] selection, final int count) {
+            int selected;
+
+            selected = count;
+            for (final ColumnFilter filter : filters) {
+                selected = filter.select(table, selection, selected);
+            }
+
+            return selected;
+        }
+
+    }
+
+    /**
+     * Filter accepting the rows whose {@code double} value is inside a range.
+     */
+    private static final class DoubleRangeFilter extends ColumnFilter {
+
+        /**
+         * Name of the column.
+         */
+        private final String column;
+
+        /**
+         * Upper bound.
+         */
+        private final double max;
+
+        /**
+         * Lower bound.
+         */
+        private final double min;
+
+        /**
+         * Constructs a {@code DoubleRangeFilter} with the specified column
+         * and bounds.
+         * 
+         * @param name
+         *            name of the column
+         * @param lower
+         *            lower bound
+         * @param upper
+         *            upper bound
+         */
+        public DoubleRangeFilter(final String name, final double lower,
+                final double upper) {
+            super();
+
+            column = name;
+            min = lower;
+            max = upper;
+        }
+
+        @Override
+        public final String toString() {
+            return column + " IN [" + min + ", " + max + "]";
+        }
+
+        @Override
+        final int scan(final ColumnarRepository<?> table,
+                final int[] selection) {
+            final double[] values;
+            final int size;
+            int count;
+
+            values = table.getColumn(column, DoubleColumn.class).getValues();
+            size = table.size();
+            count = 0;
+            for (int i = 0; i < size; i++) {
+                selection[count] = i;
+                count += ((values[i] >= min) & (values[i] <= max)) ? 1 : 0;
+            }
+
+            return count;
+        }
+
+        @Override
+        final int select(final ColumnarRepository<?> table,
+                final int[] selection, final int count) {
+            final double[] values;
+            int selected;
+            int row;
+
+            values = table.getColumn(column, DoubleColumn.class).getValues();
+            selected = 0;
+            for (int i = 0; i < count; i++) {
+                row = selection[i];
+                selection[selected] = row;
+                selected += ((values[row] >= min) & (values[row] <= max)) ? 1
+                        : 0;
+            }
+
+            return selected;
+        }
+
+    }
+
+    /**
+     * Filter accepting the rows whose {@code int} value is inside a range.
+     */
+    private static final class IntRangeFilter extends ColumnFilter {
+
+        /**
+         * Name of the column.
+         */
+        private final String column;
+
+        /**
+         * Upper bound.
+         */
+        private final int    max;
+
+        /**
+         * Lower bound.
+         */
+        private final int    min;
+
+        /**
+         * Constructs an {@code IntRangeFilter} with the specified column and
+         * bounds.
+         * 
+         * @param name
+         *            name of the column
+         * @param lower
+         *            lower bound
+         * @param upper
+         *            upper bound
+         */
+        public IntRangeFilter(final String name, final int lower,
+                final int upper) {
+            super();
+
+            column = name;
+            min = lower;
+            max = upper;
+        }
+
+        @Override
+        public final String toString() {
+            return column + " IN [" + min + ", " + max + "]";
+        }
+
+        @Override
+        final int scan(final ColumnarRepository<?> table,
+                final int[] selection) {
+            final int[] values;
+            final int size;
+            int count;
+
+            values = table.getColumn(column, IntColumn.class).getValues();
+            size = table.size();
+            count = 0;
+            for (int i = 0; i < size; i++) {
+                selection[count] = i;
+                count += ((values[i] >= min) & (values[i] <= max)) ? 1 : 0;
+            }
+
+            return count;
+        }
+
+        @Override
+        final int select(final ColumnarRepository<?> table,
+                final int[] selection, final int count) {
+            final int[] values;
+            int selected;
+            int row;
+
+            values = table.getColumn(column, IntColumn.class).getValues();
+            selected = 0;
+            for (int i = 0; i < count; i++) {
+                row = selection[i];
+                selection[selected] = row;
+                selected += ((values[row] >= min) & (values[row] <= max)) ? 1
+                        : 0;
+            }
+
+            return selected;
+        }
+
+    }
+
+    /**
+     * Filter accepting the rows whose {@code long} value is inside a range.
+     */
+    private static final class LongRangeFilter extends ColumnFilter {
+
+        /**
+         * Name of the column.
+         */
+        private final String column;
+
+        /**
+         * Upper bound.
+         */
+        private final long   max;
+
+        /**
+         * Lower bound.
+         */
+        private final long   min;
+
+        /**
+         * Constructs a {@code LongRangeFilter} with the specified column and
+         * bounds.
+         * 
+         * @param name
+         *            name of the column
+         * @param lower
+         *            lower bound
+         * @param upper
+         *            upper bound
+         */
+        public LongRangeFilter(final String name, final long lower,
+                final long upper) {
+            super();
+
+            column = name;
+            min = lower;
+            max = upper;
+        }
+
+        @Override
+        public final String toString() {
+            return column + " IN [" + min + ", " + max + "]";
+        }
+
+        @Override
+        final int scan(final ColumnarRepository<?> table,
+                final int[] selection) {
+            final long[] values;
+            final int size;
+            int count;
+
+            values = table.getColumn(column, LongColumn.class).getValues();
+            size = table.size();
+            count = 0;
+            for (int i = 0; i < size; i++) {
+                selection[count] = i;
+                count += ((values[i] >= min) & (values[i] <= max)) ? 1 : 0;
+            }
+
+            return count;
+        }
+
+        @Override
+        final int select(final ColumnarRepository<?> table,
+                final int[] selection, final int count) {
+            final long[] values;
+            int selected;
+            int row;
+
+            values = table.getColumn(column, LongColumn.class).getValues();
+            selected = 0;
+            for (int i = 0; i < count; i++) {
+                row = selection[i];
+                selection[selected] = row;
+                selected += ((values[row] >= min) & (values[row] <= max)) ? 1
+                        : 0;
+            }
+
+            return selected;
+        }
+
+    }
+
+    /**
+     * Filter accepting the rows rejected by another filter.
+     */
+    private static final class NotFilter extends ColumnFilter {
+
+        /**
+         * The negated filter.
+         */
+        private final ColumnFilter filter;
+
+        /**
+         * Constructs a {@code NotFilter} negating the specified filter.
+         * 
+         * @param negated
+         *            the negated filter
+         */
+        public NotFilter(final ColumnFilter negated) {
+            super();
+
+            filter = negated;
+        }
+
+        @Override
+        public final String toString() {
+            return "NOT " + filter;
+        }
+
+        @Override
+        final int select(final ColumnarRepository<?> table,
+                final int[] selection, final int count) {
+            final boolean[] accepted;
+            final int[] negated;
+            final int found;
+            int selected;
+            int row;
+
+            negated = Arrays.copyOf(selection, count);
+            found = filter.select(table, negated, count);
+
+            accepted = new boolean[table.size()];
+            for (int i = 0; i < found; i++) {
+                accepted[negated[i]] = true;
+            }
+
+            selected = 0;
+            for (int i = 0; i < count; i++) {
+                row = selection[i];
+                selection[selected] = row;
+                selected += accepted[row] ? 0 : 1;
+            }
+
+            return selected;
+        }
+
+    }
+
+    /**
+     * Filter accepting the rows accepted by any of the received filters.
+     */
+    private static final class OrFilter extends ColumnFilter {
+
+        /**
+         * The filters to apply.
+         */
+        private final List<ColumnFilter> filters;
+
+        /**
+         * Constructs an {@code OrFilter} with the specified filters.
+         * 
+         * @param disjuncts
+         *            the filters to apply
+         */
+        public OrFilter(final List<ColumnFilter> disjuncts) {
+            super();
+
+            filters = disjuncts;
+        }
+
+        @Override
+        public final String toString() {
+            return "(" + Joiner.on(" OR ").join(filters) + ")";
+        }
+
+        @Override
+        final int select(final ColumnarRepository<?> table,
+                final int[] selection, final int count) {
+            final boolean[] accepted;
+            int[] candidates;
+            int found;
+            int selected;
+            int row;
+
+            accepted = new boolean[table.size()];
+            for (final ColumnFilter filter : filters) {
+                candidates = Arrays.copyOf(selection, count);
+                found = filter.select(table, candidates, count);
+                for (int i = 0; i < found; i++) {
+                    accepted[candidates[i]] = true;
+                }
+            }
+
+            selected = 0;
+            for (int i = 0; i < count; i++) {
+                row = selection[i];
+                selection[selected] = row;
+                selected += accepted[row] ? 1 : 0;
+            }
+
+            return selected;
+        }
+
+    }
+
+    /**
+     * Filter accepting the rows whose string is one of several values.
+     */
+    private static final class StringInFilter extends ColumnFilter {
+
+        /**
+         * Name of the column.
+         */
+        private final String             column;
+
+        /**
+         * The accepted strings.
+         */
+        private final Collection<String> values;
+
+        /**
+         * Constructs a {@code StringInFilter} with the specified column and
+         * values.
+         * 
+         * @param name
+         *            name of the column
+         * @param accepted
+         *            the accepted strings
+         */
+        public StringInFilter(final String name,
+                final Collection<String> accepted) {
+            super();
+
+            column = name;
+            values = accepted;
+        }
+
+        @Override
+        public final String toString() {
+            return column + " IN " + values;
+        }
+
+        @Override
+        final int scan(final ColumnarRepository<?> table,
+                final int[] selection) {
+            final StringColumn<?> strings;
+            final boolean[] accepted;
+            final int[] codes;
+            final int size;
+            int count;
+
+            strings = table.getColumn(column, StringColumn.class);
+            accepted = getAccepted(strings);
+            codes = strings.getValues();
+            size = table.size();
+            count = 0;
+            for (int i = 0; i < size; i++) {
+                selection[count] = i;
+                count += accepted[codes[i]] ? 1 : 0;
+            }
+
+            return count;
+        }
+
+        @Override
+        final int select(final ColumnarRepository<?> table,
+                final int[] selection, final int count) {
+            final StringColumn<?> strings;
+            final boolean[] accepted;
+            final int[] codes;
+            int selected;
+            int row;
+
+            strings = table.getColumn(column, StringColumn.class);
+            accepted = getAccepted(strings);
+            codes = strings.getValues();
+            selected = 0;
+            for (int i = 0; i < count; i++) {
+                row = selection[i];
+                selection[selected] = row;
+                selected += accepted[codes[row]] ? 1 : 0;
+            }
+
+            return selected;
+        }
+
+        /**
+         * Returns a mask with the dictionary codes of the accepted strings.
+         * 
+         * @param strings
+         *            the column being filtered
+         * @return a flag for each dictionary code, telling if it is accepted
+         */
+        private final boolean[] getAccepted(final StringColumn<?> strings) {
+            final boolean[] accepted;
+            int code;
+
+            accepted = new boolean[strings.getDictionarySize()];
+            for (final String value : values) {
+                code = strings.getCode(value);
+                if (code >= 0) {
+                    accepted[code] = true;
+                }
+            }
+
+            return accepted;
+        }
+
+    }
+
+    /**
+     * Creates a filter accepting the rows accepted by all the received
+     * filters.
+     * 
+     * @param filters
+     *            the filters to apply
+     * @return a filter joining the received ones
+     */
+    public static final ColumnFilter and(final ColumnFilter... filters) {
+        return new AndFilter(checkFilters(filters));
+    }
+
+    /**
+     * Creates a filter accepting the rows whose {@code double} value is
+     * inside the range.
+     * 
+     * @param column
+     *            name of the column
+     * @param min
+     *            lower bound
+     * @param max
+     *            upper bound
+     * @return a filter checking the column is in the range
+     */
+    public static final ColumnFilter doubleRange(final String column,
+            final double min, final double max) {
+        checkNotNull(column, "Received a null pointer as column");
+        checkArgument(min <= max, "The lower bound is above the upper one");
+
+        return new DoubleRangeFilter(column, min, max);
+    }
+
+    /**
+     * Creates a filter accepting the rows whose {@code int} value is equal to
+     * the received one.
+     * 
+     * @param column
+     *            name of the column
+     * @param value
+     *            the accepted value
+     * @return a filter comparing the column to the value
+     */
+    public static final ColumnFilter intEq(final String column,
+            final int value) {
+        return intRange(column, value, value);
+    }
+
+    /**
+     * Creates a filter accepting the rows whose {@code int} value is inside
+     * the range.
+     * 
+     * @param column
+     *            name of the column
+     * @param min
+     *            lower bound
+     * @param max
+     *            upper bound
+     * @return a filter checking the column is in the range
+     */
+    public static final ColumnFilter intRange(final String column,
+            final int min, final int max) {
+        checkNotNull(column, "Received a null pointer as column");
+        checkArgument(min <= max, "The lower bound is above the upper one");
+
+        return new IntRangeFilter(column, min, max);
+    }
+
+    /**
+     * Creates a filter accepting the rows whose {@code long} value is equal
+     * to the received one.
+     * 
+     * @param column
+     *            name of the column
+     * @param value
+     *            the accepted value
+     * @return a filter comparing the column to the value
+     */
+    public static final ColumnFilter longEq(final String column,
+            final long value) {
+        return longRange(column, value, value);
+    }
+
+    /**
+     * Creates a filter accepting the rows whose {@code long} value is inside
+     * the range.
+     * 
+     * @param column
+     *            name of the column
+     * @param min
+     *            lower bound
+     * @param max
+     *            upper bound
+     * @return a filter checking the column is in the range
+     */
+    public static final ColumnFilter longRange(final String column,
+            final long min, final long max) {
+        checkNotNull(column, "Received a null pointer as column");
+        checkArgument(min <= max, "The lower bound is above the upper one");
+
+        return new LongRangeFilter(column, min, max);
+    }
+
+    /**
+     * Creates a filter accepting the rows rejected by the received filter.
+     * 
+     * @param filter
+     *            the filter to negate
+     * @return a filter negating the received one
+     */
+    public static final ColumnFilter not(final ColumnFilter filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return new NotFilter(filter);
+    }
+
+    /**
+     * Creates a filter accepting the rows accepted by any of the received
+     * filters.
+     * 
+     * @param filters
+     *            the filters to apply
+     * @return a filter joining the received ones
+     */
+    public static final ColumnFilter or(final ColumnFilter... filters) {
+        return new OrFilter(checkFilters(filters));
+    }
+
+    /**
+     * Creates a filter accepting the rows whose string is equal to the
+     * received one.
+     * 
+     * @param column
+     *            name of the column
+     * @param value
+     *            the accepted string
+     * @return a filter comparing the column to the string
+     */
+    public static final ColumnFilter stringEq(final String column,
+            final String value) {
+        return stringIn(column, Arrays.asList(value));
+    }
+
+    /**
+     * Creates a filter accepting the rows whose string is any of the
+     * received ones.
+     * 
+     * @param column
+     *            name of the column
+     * @param values
+     *            the accepted strings
+     * @return a filter checking the column is among the strings
+     */
+    public static final ColumnFilter stringIn(final String column,
+            final Collection<String> values) {
+        checkNotNull(column, "Received a null pointer as column");
+        checkNotNull(values, "Received a null pointer as values");
+
+        return new StringInFilter(column, new ArrayList<String>(values));
+    }
+
+    /**
+     * Checks the filters for a boolean operation, and returns them as a
+     * list.
+     * 
+     * @param filters
+     *            the filters to check
+     * @return the filters in a list
+     */
+    private static final List<ColumnFilter> checkFilters(
+            final ColumnFilter[] filters) {
+        checkNotNull(filters, "Received a null pointer as filters");
+        checkArgument(filters.length > 0, "At least one filter is required");
+        for (final ColumnFilter filter : filters) {
+            checkNotNull(filter, "Received a null pointer as filter");
+        }
+
+        return Arrays.asList(filters.clone());
+    }
+
+    /**
+     * Constructs a {@code ColumnFilter}.
+     * <p>
+     * Filters can only be created through the factory methods.
+     */
+    ColumnFilter() {
+        super();
+    }
+
+    /**
+     * Selects the rows of the whole table accepted by the filter.
+     * <p>
+     * By default all the rows are selected, and then filtered with
+     * {@link #select(ColumnarRepository, int[], int) select}.
+     * 
+     * @param table
+     *            the table to filter
+     * @param selection
+     *            array where the accepted rows are stored, as long as the
+     *            table
+     * @return the number of accepted rows
+     */
+    int scan(final ColumnarRepository<?> table, final int[] selection) {
+        for (int i = 0; i < table.size(); i++) {
+            selection[i] = i;
+        }
+
+        return select(table, selection, table.size());
+    }
+
+    /**
+     * Shrinks the selection to the rows accepted by the filter.
+     * <p>
+     * The accepted rows are moved to the start of the selection, keeping
+     * their order.
+     * 
+     * @param table
+     *            the table to filter
+     * @param selection
+     *            the selected rows
+     * @param count
+     *            number of selected rows
+     * @return the number of rows still selected
+     */
+    abstract int select(final ColumnarRepository<?> table,
+            final int[] selection, final int count);
+
+}
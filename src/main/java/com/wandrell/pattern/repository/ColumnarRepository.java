@@ -0,0 +1,453 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import com.wandrell.pattern.repository.Column.DoubleColumn;
+import com.wandrell.pattern.repository.Column.IntColumn;
+import com.wandrell.pattern.repository.Column.LongColumn;
+import com.wandrell.pattern.repository.Column.StringColumn;
+
+/**
+ * {@link FilteredRepository} storing its entities by columns, meant for
+ * analytical scans.
+ * <p>
+ * Entities are decomposed into columns, each of them a primitive array with a
+ * single field of all the entities. Strings are stored with dictionary
+ * encoding, as integer codes. The columns are defined before adding any
+ * entity, along the functions reading their values.
+ * <p>
+ * Queries use {@link ColumnFilter} instances, which go through the columns
+ * they need, one after the other, instead of going through the entities.
+ * Only the entities accepted are then rebuilt, through a factory receiving a
+ * {@link ColumnarRow}. Counting the accepted entities rebuilds none of them.
+ * <p>
+ * The first column is used as the key of the entities. Removing or updating
+ * an entity affects the first row with the same value on that column.
+ * <p>
+ * Entities are not kept in any order. Removing an entity moves the last one
+ * into its place.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class ColumnarRepository<V>
+        implements FilteredRepository<V, ColumnFilter> {
+
+    /**
+     * Row being read, which is moved through the rows to rebuild.
+     */
+    private final class Cursor implements ColumnarRow {
+
+        /**
+         * Index of the row being read.
+         */
+        private int row;
+
+        /**
+         * Constructs a {@code Cursor}.
+         */
+        public Cursor() {
+            super();
+        }
+
+        @Override
+        public final double getDouble(final String column) {
+            return getColumn(column, DoubleColumn.class).getValues()[row];
+        }
+
+        @Override
+        public final int getInt(final String column) {
+            return getColumn(column, IntColumn.class).getValues()[row];
+        }
+
+        @Override
+        public final long getLong(final String column) {
+            return getColumn(column, LongColumn.class).getValues()[row];
+        }
+
+        @Override
+        public final String getString(final String column) {
+            return (String) getColumn(column, StringColumn.class)
+                    .getValue(row);
+        }
+
+    }
+
+    /**
+     * The columns, mapped to their names.
+     */
+    private final Map<String, Column<V>>                     columns;
+
+    /**
+     * Factory rebuilding the entities from their rows.
+     */
+    private final Function<? super ColumnarRow, ? extends V> factory;
+
+    /**
+     * Number of rows.
+     */
+    private int                                              size;
+
+    /**
+     * Constructs a {@code ColumnarRepository} rebuilding its entities with
+     * the specified factory.
+     * 
+     * @param builder
+     *            factory rebuilding the entities from their rows
+     */
+    public ColumnarRepository(
+            final Function<? super ColumnarRow, ? extends V> builder) {
+        super();
+
+        factory = checkNotNull(builder, "Received a null pointer as factory");
+
+        columns = new LinkedHashMap<String, Column<V>>();
+        size = 0;
+    }
+
+    @Override
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+        checkState(!getColumns().isEmpty(), "No column has been defined");
+
+        for (final Column<V> column : getColumns().values()) {
+            column.set(size, entity);
+        }
+        size++;
+    }
+
+    /**
+     * Defines a {@code double} column.
+     * 
+     * @param name
+     *            name of the column
+     * @param getter
+     *            function reading the value from an entity
+     */
+    public final void addDoubleColumn(final String name,
+            final ToDoubleFunction<? super V> getter) {
+        checkNotNull(getter, "Received a null pointer as getter");
+
+        addColumn(new DoubleColumn<V>(name, getter));
+    }
+
+    /**
+     * Defines an {@code int} column.
+     * 
+     * @param name
+     *            name of the column
+     * @param getter
+     *            function reading the value from an entity
+     */
+    public final void addIntColumn(final String name,
+            final ToIntFunction<? super V> getter) {
+        checkNotNull(getter, "Received a null pointer as getter");
+
+        addColumn(new IntColumn<V>(name, getter));
+    }
+
+    /**
+     * Defines a {@code long} column.
+     * 
+     * @param name
+     *            name of the column
+     * @param getter
+     *            function reading the value from an entity
+     */
+    public final void addLongColumn(final String name,
+            final ToLongFunction<? super V> getter) {
+        checkNotNull(getter, "Received a null pointer as getter");
+
+        addColumn(new LongColumn<V>(name, getter));
+    }
+
+    /**
+     * Defines a string column, which will be stored with dictionary
+     * encoding.
+     * 
+     * @param name
+     *            name of the column
+     * @param getter
+     *            function reading the value from an entity
+     */
+    public final void addStringColumn(final String name,
+            final Function<? super V, String> getter) {
+        checkNotNull(getter, "Received a null pointer as getter");
+
+        addColumn(new StringColumn<V>(name, getter));
+    }
+
+    /**
+     * Returns the number of rows accepted by the filter.
+     * <p>
+     * No entity is rebuilt for this.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to count
+     * @return the number of entities accepted by the filter
+     */
+    @Override
+    public final long count(final ColumnFilter filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return filter.scan(this, new int[size]);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final int[] rows;
+
+        rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+
+        return rebuild(rows, size);
+    }
+
+    @Override
+    public final Collection<V> getCollection(final ColumnFilter filter) {
+        final int[] rows;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        rows = new int[size];
+
+        return rebuild(rows, filter.scan(this, rows));
+    }
+
+    @Override
+    public final V getEntity(final ColumnFilter filter) {
+        final int[] rows;
+        final V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        rows = new int[size];
+        if (filter.scan(this, rows) > 0) {
+            entity = rebuild(rows[0]);
+        } else {
+            entity = null;
+        }
+
+        return entity;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final int row;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        row = find(entity);
+        if (row >= 0) {
+            removeRow(row);
+        }
+    }
+
+    @Override
+    public final void removeIf(final ColumnFilter filter) {
+        final int[] rows;
+        final int count;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        rows = new int[size];
+        count = filter.scan(this, rows);
+
+        // Going backwards, the last row is never one still to be removed
+        for (int i = count - 1; i >= 0; i--) {
+            removeRow(rows[i]);
+        }
+    }
+
+    /**
+     * Returns the number of entities in the repository.
+     * 
+     * @return the number of entities
+     */
+    public final int size() {
+        return size;
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final int row;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        row = find(entity);
+        if (row >= 0) {
+            for (final Column<V> column : getColumns().values()) {
+                column.set(row, entity);
+            }
+        }
+    }
+
+    /**
+     * Returns the column with the specified name and type.
+     * 
+     * @param name
+     *            name of the column
+     * @param type
+     *            class of the column
+     * @param <C>
+     *            the type of the column
+     * @return the column with that name
+     * @throws IllegalArgumentException
+     *             if there is no such column, or it has another type
+     */
+    final <C> C getColumn(final String name, final Class<C> type) {
+        final Column<V> column;
+
+        column = getColumns().get(name);
+        checkArgument(column != null, "There is no column %s", name);
+        checkArgument(type.isInstance(column), "The column %s is not a %s",
+                name, type.getSimpleName());
+
+        return type.cast(column);
+    }
+
+    /**
+     * Adds a column.
+     * 
+     * @param column
+     *            the column to add
+     */
+    private final void addColumn(final Column<V> column) {
+        checkNotNull(column.getName(), "Received a null pointer as name");
+        checkState(size == 0,
+                "Columns should be defined before adding entities");
+        checkArgument(!getColumns().containsKey(column.getName()),
+                "There is already a column %s", column.getName());
+
+        getColumns().put(column.getName(), column);
+    }
+
+    /**
+     * Returns the columns, mapped to their names.
+     * 
+     * @return the columns
+     */
+    private final Map<String, Column<V>> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the factory rebuilding the entities from their rows.
+     * 
+     * @return the factory for the entities
+     */
+    private final Function<? super ColumnarRow, ? extends V> getFactory() {
+        return factory;
+    }
+
+    /**
+     * Returns the row with the same key as the entity.
+     * 
+     * @param entity
+     *            the entity to find
+     * @return the entity's row, or {@code -1} if there is none
+     */
+    private final int find(final V entity) {
+        final int row;
+
+        if (getColumns().isEmpty()) {
+            row = -1;
+        } else {
+            row = getColumns().values().iterator().next().find(entity, size);
+        }
+
+        return row;
+    }
+
+    /**
+     * Rebuilds the entity at a row.
+     * 
+     * @param row
+     *            the row to rebuild
+     * @return the entity at the row
+     */
+    private final V rebuild(final int row) {
+        final Cursor cursor;
+
+        cursor = new Cursor();
+        cursor.row = row;
+
+        return getFactory().apply(cursor);
+    }
+
+    /**
+     * Rebuilds the entities at the selected rows.
+     * 
+     * @param rows
+     *            the selected rows
+     * @param count
+     *            number of selected rows
+     * @return the entities at the rows
+     */
+    private final List<V> rebuild(final int[] rows, final int count) {
+        final List<V> entities;
+        final Cursor cursor;
+
+        entities = new ArrayList<V>(count);
+        cursor = new Cursor();
+        for (int i = 0; i < count; i++) {
+            cursor.row = rows[i];
+            entities.add(getFactory().apply(cursor));
+        }
+
+        return entities;
+    }
+
+    /**
+     * Removes a row, moving the last one into its place.
+     * 
+     * @param row
+     *            the row to remove
+     */
+    private final void removeRow(final int row) {
+        size--;
+        for (final Column<V> column : getColumns().values()) {
+            column.move(size, row);
+        }
+    }
+
+}
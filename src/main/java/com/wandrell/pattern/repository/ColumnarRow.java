@@ -0,0 +1,74 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+/**
+ * Row of a {@link ColumnarRepository}, from which an entity is rebuilt.
+ * <p>
+ * Each value is read by the name of its column, with the getter for that
+ * column's type. Rows are only valid while rebuilding the entity, as the
+ * repository may reuse the same instance for the next row.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public interface ColumnarRow {
+
+    /**
+     * Returns the value of a {@code double} column.
+     * 
+     * @param column
+     *            name of the column
+     * @return the column's value for the row
+     */
+    public double getDouble(final String column);
+
+    /**
+     * Returns the value of an {@code int} column.
+     * 
+     * @param column
+     *            name of the column
+     * @return the column's value for the row
+     */
+    public int getInt(final String column);
+
+    /**
+     * Returns the value of a {@code long} column.
+     * 
+     * @param column
+     *            name of the column
+     * @return the column's value for the row
+     */
+    public long getLong(final String column);
+
+    /**
+     * Returns the value of a string column.
+     * 
+     * @param column
+     *            name of the column
+     * @return the column's value for the row
+     */
+    public String getString(final String column);
+
+}
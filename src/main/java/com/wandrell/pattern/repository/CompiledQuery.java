@@ -0,0 +1,308 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Query compiled by the {@link QueryCompiler}.
+ * <p>
+ * It keeps the condition, ordering and limit of the query, ready to be
+ * applied to the entities with a set of bound parameters. These are
+ * received as an array, with each parameter on the slot assigned by the
+ * query's {@link PreparedQuery}.
+ * <p>
+ * Instances are immutable, so they can be shared between threads.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+final class CompiledQuery<V> {
+
+    /**
+     * Results of the query, gathered one entity at a time.
+     * <p>
+     * When the results are sorted and limited only the first ones are kept.
+     * These are stored on a buffer with space for twice the limit, which is
+     * sorted and cut down to the limit each time it fills up. After that,
+     * entities which would be sorted after the last one kept are discarded
+     * right away. So memory is bounded by the limit, and not by the number
+     * of matches.
+     * <p>
+     * Sorting is stable, so entities which compare as equal are returned in
+     * the order they were received.
+     */
+    final class Selection {
+
+        /**
+         * The entities kept so far.
+         */
+        private final List<V>  kept;
+
+        /**
+         * The bound parameters.
+         */
+        private final Object[] parameters;
+
+        /**
+         * Maximum number of results, or {@code -1} if there is no limit.
+         */
+        private final int      size;
+
+        /**
+         * Last entity kept the last time the entities were cut down to the
+         * limit.
+         * <p>
+         * New entities should be sorted before it to be kept.
+         */
+        private V              threshold;
+
+        /**
+         * Flag indicating if the entities kept were already cut down to the
+         * limit.
+         */
+        private boolean        trimmed;
+
+        /**
+         * Constructs a {@code Selection} for the specified parameters and
+         * number of results.
+         * 
+         * @param bound
+         *            the bound parameters
+         * @param maximum
+         *            maximum number of results, or {@code -1} if there is no
+         *            limit
+         */
+        private Selection(final Object[] bound, final int maximum) {
+            super();
+
+            parameters = bound;
+            size = maximum;
+            kept = new ArrayList<V>();
+            trimmed = false;
+        }
+
+        /**
+         * Gathers an entity, if it validates the query's condition and can
+         * still be among the results.
+         * 
+         * @param entity
+         *            the entity to gather
+         */
+        public final void add(final V entity) {
+            if (!isComplete() && condition.test(entity, parameters)
+                    && (!trimmed
+                            || (comparator.compare(entity, threshold) < 0))) {
+                kept.add(entity);
+                if ((comparator != null) && (size >= 0)
+                        && (kept.size() >= size * 2L)) {
+                    trim();
+                }
+            }
+        }
+
+        /**
+         * Returns the results.
+         * <p>
+         * This should be called once all the entities were gathered.
+         * 
+         * @return the entities returned by the query
+         */
+        public final List<V> getResult() {
+            if (comparator != null) {
+                trim();
+            }
+
+            return kept;
+        }
+
+        /**
+         * Checks if the entities gathered so far already complete the
+         * results.
+         * <p>
+         * This only happens for limited queries which are not sorted, or
+         * which return no entities.
+         * 
+         * @return {@code true} if no more entities are needed, {@code false}
+         *         otherwise
+         */
+        public final boolean isComplete() {
+            return (size == 0) || ((comparator == null) && (size > 0)
+                    && (kept.size() >= size));
+        }
+
+        /**
+         * Sorts the entities kept, and cuts them down to the limit.
+         */
+        private final void trim() {
+            kept.sort(comparator);
+            if ((size >= 0) && (kept.size() > size)) {
+                kept.subList(size, kept.size()).clear();
+                threshold = kept.get(size - 1);
+                trimmed = true;
+            }
+        }
+
+    }
+
+    /**
+     * Comparator sorting the results, or {@code null} if they are not
+     * sorted.
+     */
+    private final Comparator<V>            comparator;
+
+    /**
+     * Condition the entities should validate.
+     */
+    private final BiPredicate<V, Object[]> condition;
+
+    /**
+     * Maximum number of results, or {@code -1} if there is no limit.
+     */
+    private final int                      limit;
+
+    /**
+     * The query, with its parameters assigned to slots.
+     */
+    private final PreparedQuery            prepared;
+
+    /**
+     * Constructs a {@code CompiledQuery} with the specified parts.
+     * 
+     * @param query
+     *            the query, with its parameters assigned to slots
+     * @param predicate
+     *            condition the entities should validate
+     * @param order
+     *            comparator sorting the results, or {@code null}
+     * @param maximum
+     *            maximum number of results, or {@code -1}
+     */
+    public CompiledQuery(final PreparedQuery query,
+            final BiPredicate<V, Object[]> predicate,
+            final Comparator<V> order, final int maximum) {
+        super();
+
+        prepared = query;
+        condition = predicate;
+        comparator = order;
+        limit = maximum;
+    }
+
+    /**
+     * Binds the parameters of a {@code QueryData} to the query's slots.
+     * 
+     * @param data
+     *            the data with the parameters
+     * @return an array with the value of each parameter on its slot
+     */
+    public final Object[] bind(final QueryData data) {
+        return prepared.bind(data);
+    }
+
+    /**
+     * Applies the query to the entities.
+     * <p>
+     * When the results are sorted and limited only the first ones are kept
+     * while reading the entities, instead of sorting all of them, as done by
+     * {@link Selection}.
+     * 
+     * @param entities
+     *            the entities to query
+     * @param parameters
+     *            the bound parameters
+     * @param maximum
+     *            maximum number of results wanted, or {@code -1} to use the
+     *            query's limit
+     * @return the entities returned by the query
+     */
+    public final List<V> execute(final Iterable<V> entities,
+            final Object[] parameters, final int maximum) {
+        final Selection selection;
+
+        selection = select(parameters, maximum);
+        for (final V entity : entities) {
+            if (selection.isComplete()) {
+                break;
+            }
+            selection.add(entity);
+        }
+
+        return selection.getResult();
+    }
+
+    /**
+     * Returns the maximum number of results.
+     * 
+     * @return the maximum number of results, or {@code -1} if there is no
+     *         limit
+     */
+    public final int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Checks if an entity validates the query's condition.
+     * 
+     * @param entity
+     *            the entity to check
+     * @param parameters
+     *            the bound parameters
+     * @return {@code true} if the entity validates the condition,
+     *         {@code false} otherwise
+     */
+    public final boolean matches(final V entity, final Object[] parameters) {
+        return condition.test(entity, parameters);
+    }
+
+    /**
+     * Creates a selection, to gather the results of the query one entity at
+     * a time.
+     * 
+     * @param parameters
+     *            the bound parameters
+     * @param maximum
+     *            maximum number of results wanted, or {@code -1} to use the
+     *            query's limit
+     * @return a selection for the query's results
+     */
+    public final Selection select(final Object[] parameters,
+            final int maximum) {
+        final int size;
+
+        if ((maximum >= 0) && ((limit < 0) || (maximum < limit))) {
+            size = maximum;
+        } else {
+            size = limit;
+        }
+
+        return new Selection(parameters, size);
+    }
+
+}
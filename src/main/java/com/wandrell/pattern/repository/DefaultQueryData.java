@@ -29,6 +29,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Default implementation of {@link QueryData}.
@@ -53,6 +54,11 @@ public final class DefaultQueryData implements QueryData {
      */
     private final String              queryStr;
 
+    /**
+     * Read-only view of the parameters.
+     */
+    private final Map<String, Object> view;
+
     /**
      * Constructs a {@code DefaultQuery} with no parameters.
      * 
@@ -63,6 +69,21 @@ public final class DefaultQueryData implements QueryData {
         this(query, new LinkedHashMap<String, Object>());
     }
 
+    /**
+     * Constructs a {@code DefaultQuery} copying the query and parameters of
+     * the received one.
+     * <p>
+     * Later changes on either of them won't affect the other.
+     * 
+     * @param data
+     *            the query data to copy
+     */
+    public DefaultQueryData(final QueryData data) {
+        this(checkNotNull(data, "Received a null pointer as query data")
+                .getQuery(),
+                new LinkedHashMap<String, Object>(data.getParameters()));
+    }
+
     /**
      * Constructs a {@code DefaultQuery} with the specified query's data.
      * <p>
@@ -83,6 +104,7 @@ public final class DefaultQueryData implements QueryData {
 
         queryStr = query;
         params = parameters;
+        view = Collections.unmodifiableMap(params);
     }
 
     @Override
@@ -100,9 +122,27 @@ public final class DefaultQueryData implements QueryData {
         params.putAll(parameters);
     }
 
+    @Override
+    public final boolean equals(final Object obj) {
+        final QueryData other;
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof QueryData)) {
+            return false;
+        }
+
+        other = (QueryData) obj;
+
+        return Objects.equals(getQuery(), other.getQuery())
+                && Objects.equals(getParameters(), other.getParameters());
+    }
+
     @Override
     public final Map<String, Object> getParameters() {
-        return Collections.unmodifiableMap(params);
+        return view;
     }
 
     @Override
@@ -110,6 +150,11 @@ public final class DefaultQueryData implements QueryData {
         return queryStr;
     }
 
+    @Override
+    public final int hashCode() {
+        return Objects.hash(getQuery(), getParameters());
+    }
+
     @Override
     public final void removeParameter(final String key) {
         params.remove(key);
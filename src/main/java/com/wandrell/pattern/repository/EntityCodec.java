@@ -0,0 +1,68 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for transforming entities to and from binary data.
+ * <p>
+ * This is used by the repositories which store the entities outside of the
+ * Java heap, such as
+ * {@link com.wandrell.pattern.repository.OffHeapRepository
+ * OffHeapRepository}. These keep only the encoded entities, which are decoded
+ * again when they are needed.
+ * <p>
+ * Decoding an encoded entity should return an entity equal to the original
+ * one.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type being encoded
+ */
+public interface EntityCodec<V> {
+
+    /**
+     * Decodes an entity from the received buffer.
+     * <p>
+     * The buffer will contain only the encoded entity, from its position to
+     * its limit.
+     * 
+     * @param buffer
+     *            the buffer containing the encoded entity
+     * @return the decoded entity
+     */
+    public V decode(final ByteBuffer buffer);
+
+    /**
+     * Encodes the received entity.
+     * 
+     * @param entity
+     *            the entity to encode
+     * @return the encoded entity
+     */
+    public byte[] encode(final V entity);
+
+}
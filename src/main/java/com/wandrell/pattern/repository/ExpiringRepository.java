@@ -0,0 +1,432 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Decorator for
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * which removes each entity once its time to live has passed.
+ * <p>
+ * Each entity receives a deadline when it is added, either from the default
+ * time to live or from the one given for it. Deadlines are kept on a min-heap,
+ * so finding the expired entities only looks at those which actually expired,
+ * instead of going through the whole repository.
+ * <p>
+ * Expiration is lazy. Before any read or change the expired entities are
+ * removed from the wrapped repository, so queries never return them. If the
+ * repository may go unused for long, {@link #cleanUp() cleanUp} can be called
+ * periodically to free them.
+ * <p>
+ * Replaced deadlines, such as those of removed entities or entities added
+ * again, are left on the heap and skipped when they are reached. So that they
+ * don't pile up, the heap is rebuilt from the current deadlines once it holds
+ * more than twice as many deadlines as entities.
+ * <p>
+ * Each expired entity is sent to the registered {@link ExpirationListener
+ * listeners}. An exception thrown by a listener is logged, and does not keep
+ * the other listeners from being notified, nor the other entities from
+ * expiring. Entities removed through the repository lose their deadline,
+ * while updated ones keep it.
+ * <p>
+ * Time is read from a Guava {@code Ticker}, which by default is the system
+ * one.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type being used to filter the entities
+ */
+public final class ExpiringRepository<V, F>
+        implements FilteredRepository<V, F> {
+
+    /**
+     * Minimum number of deadlines on the heap before it is compacted.
+     */
+    private static final int    COMPACTION_THRESHOLD = 16;
+
+    /**
+     * The logger used for logging exceptions thrown by the listeners.
+     */
+    private static final Logger LOGGER               = LoggerFactory
+            .getLogger(ExpiringRepository.class);
+
+    /**
+     * Returns the logger being used to log exceptions thrown by listeners.
+     * 
+     * @return the logger being used
+     */
+    private static final Logger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * Deadline for an entity, as stored on the heap.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     */
+    private static final class Expiration<V> {
+
+        /**
+         * Time, in nanoseconds, when the entity expires.
+         */
+        private final long deadline;
+
+        /**
+         * The expiring entity.
+         */
+        private final V    entity;
+
+        /**
+         * Constructs an {@code Expiration} with the specified data.
+         * 
+         * @param time
+         *            time, in nanoseconds, when the entity expires
+         * @param expiring
+         *            the expiring entity
+         */
+        public Expiration(final long time, final V expiring) {
+            super();
+
+            deadline = time;
+            entity = expiring;
+        }
+
+    }
+
+    /**
+     * Deadline for each entity.
+     * <p>
+     * The heap may hold older deadlines for the same entity, which are
+     * ignored if they don't match the one stored here.
+     */
+    private final Map<V, Long>                deadlines;
+
+    /**
+     * Deadlines, with the closest one on top.
+     */
+    private final Queue<Expiration<V>>        heap;
+
+    /**
+     * Listeners to notify.
+     */
+    private final List<ExpirationListener<V>> listeners;
+
+    /**
+     * Lock for the changes.
+     */
+    private final Object                      lock;
+
+    /**
+     * The wrapped repository.
+     */
+    private final FilteredRepository<V, F>    repository;
+
+    /**
+     * Source of time.
+     */
+    private final Ticker                      ticker;
+
+    /**
+     * Default time to live, in nanoseconds.
+     */
+    private final long                        timeToLive;
+
+    /**
+     * Constructs an {@code ExpiringRepository} wrapping the specified
+     * repository, with the specified default time to live.
+     * 
+     * @param wrapped
+     *            the repository to wrap
+     * @param duration
+     *            default time to live
+     * @param unit
+     *            unit for the time to live
+     */
+    public ExpiringRepository(final FilteredRepository<V, F> wrapped,
+            final long duration, final TimeUnit unit) {
+        this(wrapped, duration, unit, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructs an {@code ExpiringRepository} wrapping the specified
+     * repository, with the specified default time to live and source of
+     * time.
+     * 
+     * @param wrapped
+     *            the repository to wrap
+     * @param duration
+     *            default time to live
+     * @param unit
+     *            unit for the time to live
+     * @param source
+     *            source of time
+     */
+    public ExpiringRepository(final FilteredRepository<V, F> wrapped,
+            final long duration, final TimeUnit unit, final Ticker source) {
+        super();
+
+        checkNotNull(wrapped, "Received a null pointer as repository");
+        checkNotNull(unit, "Received a null pointer as unit");
+        checkNotNull(source, "Received a null pointer as ticker");
+        checkArgument(duration > 0, "The time to live should be positive");
+
+        repository = wrapped;
+        timeToLive = unit.toNanos(duration);
+        ticker = source;
+
+        deadlines = new HashMap<V, Long>();
+        heap = new PriorityQueue<Expiration<V>>(
+                Comparator.comparingLong((expiration) -> expiration.deadline));
+        listeners = new CopyOnWriteArrayList<ExpirationListener<V>>();
+        lock = new Object();
+    }
+
+    /**
+     * Adds an entity, which will expire after the default time to live.
+     * 
+     * @param entity
+     *            the entity to add
+     */
+    @Override
+    public final void add(final V entity) {
+        add(entity, timeToLive, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adds an entity, which will expire after the specified time to live.
+     * <p>
+     * If the entity was already stored only its deadline is replaced, and it
+     * is not sent again to the wrapped repository.
+     * 
+     * @param entity
+     *            the entity to add
+     * @param duration
+     *            time to live for the entity
+     * @param unit
+     *            unit for the time to live
+     */
+    public final void add(final V entity, final long duration,
+            final TimeUnit unit) {
+        final long now;
+        long deadline;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+        checkNotNull(unit, "Received a null pointer as unit");
+        checkArgument(duration > 0, "The time to live should be positive");
+
+        synchronized (lock) {
+            expire();
+
+            now = ticker.read();
+            deadline = now + unit.toNanos(duration);
+            if (deadline < now) {
+                // Overflowed deadlines would break the order of the heap
+                deadline = Long.MAX_VALUE;
+            }
+
+            if (deadlines.put(entity, deadline) == null) {
+                getRepository().add(entity);
+            }
+            heap.add(new Expiration<V>(deadline, entity));
+            compact();
+        }
+    }
+
+    /**
+     * Registers a listener, which will be notified of all the following
+     * expirations.
+     * 
+     * @param listener
+     *            the listener to register
+     */
+    public final void addListener(final ExpirationListener<V> listener) {
+        checkNotNull(listener, "Received a null pointer as listener");
+
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes all the expired entities.
+     */
+    public final void cleanUp() {
+        synchronized (lock) {
+            expire();
+        }
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        synchronized (lock) {
+            expire();
+
+            return getRepository().getAll();
+        }
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter) {
+        synchronized (lock) {
+            expire();
+
+            return getRepository().getCollection(filter);
+        }
+    }
+
+    @Override
+    public final V getEntity(final F filter) {
+        synchronized (lock) {
+            expire();
+
+            return getRepository().getEntity(filter);
+        }
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        synchronized (lock) {
+            expire();
+
+            getRepository().remove(entity);
+            deadlines.remove(entity);
+            compact();
+        }
+    }
+
+    @Override
+    public final void removeIf(final F filter) {
+        synchronized (lock) {
+            expire();
+
+            for (final V entity : getRepository().getCollection(filter)) {
+                deadlines.remove(entity);
+            }
+            getRepository().removeIf(filter);
+            compact();
+        }
+    }
+
+    /**
+     * Unregisters a listener.
+     * 
+     * @param listener
+     *            the listener to unregister
+     */
+    public final void removeListener(final ExpirationListener<V> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Updates an entity, keeping its deadline.
+     * 
+     * @param entity
+     *            the entity to update
+     */
+    @Override
+    public final void update(final V entity) {
+        synchronized (lock) {
+            expire();
+
+            getRepository().update(entity);
+        }
+    }
+
+    /**
+     * Rebuilds the heap from the current deadlines if it holds too many
+     * replaced ones.
+     * <p>
+     * This should be called while holding the lock.
+     */
+    private final void compact() {
+        if ((heap.size() > COMPACTION_THRESHOLD)
+                && (heap.size() > 2 * deadlines.size())) {
+            heap.clear();
+            for (final Entry<V, Long> entry : deadlines.entrySet()) {
+                heap.add(new Expiration<V>(entry.getValue(), entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Removes the entities whose deadline has passed, notifying the
+     * listeners.
+     * <p>
+     * This should be called while holding the lock.
+     */
+    private final void expire() {
+        final long now;
+        Expiration<V> next;
+
+        now = ticker.read();
+        next = heap.peek();
+        while ((next != null) && (next.deadline - now <= 0)) {
+            heap.poll();
+
+            // Outdated deadlines are skipped
+            if (deadlines.remove(next.entity, next.deadline)) {
+                getRepository().remove(next.entity);
+                for (final ExpirationListener<V> listener : listeners) {
+                    try {
+                        listener.onExpiration(next.entity);
+                    } catch (final RuntimeException e) {
+                        getLogger().error(e.getMessage(), e);
+                    }
+                }
+            }
+
+            next = heap.peek();
+        }
+    }
+
+    /**
+     * Returns the wrapped repository.
+     * 
+     * @return the wrapped repository
+     */
+    private final FilteredRepository<V, F> getRepository() {
+        return repository;
+    }
+
+}
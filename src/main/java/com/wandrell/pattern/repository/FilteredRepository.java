@@ -24,7 +24,24 @@
 
 package com.wandrell.pattern.repository;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Extension of {@link com.wandrell.pattern.repository.Repository Repository}
@@ -48,6 +65,49 @@ import java.util.Collection;
  */
 public interface FilteredRepository<V, F> extends Repository<V> {
 
+    /**
+     * Aggregates the entities chosen by the filter with the specified
+     * {@code Collector}.
+     * <p>
+     * This allows computing any aggregate, such as sums, averages or
+     * statistics, in a single pass over the filtered entities, without
+     * building a collection with them.
+     * <p>
+     * By default the entities are collected from the {@code Stream} returned
+     * by {@link #stream(Object) stream}. Implementations may instead collect
+     * them in parallel.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to aggregate
+     * @param collector
+     *            the collector aggregating the entities
+     * @param <A>
+     *            the intermediate type used by the collector
+     * @param <R>
+     *            the type of the result
+     * @return the aggregated result
+     */
+    public default <A, R> R collect(final F filter,
+            final Collector<? super V, A, R> collector) {
+        checkNotNull(collector, "Received a null pointer as collector");
+
+        return stream(filter).collect(collector);
+    }
+
+    /**
+     * Returns the number of entities chosen by the filter.
+     * <p>
+     * By default the entities are counted from the {@code Stream} returned by
+     * {@link #stream(Object) stream}.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to count
+     * @return the number of entities chosen by the filter
+     */
+    public default long count(final F filter) {
+        return stream(filter).count();
+    }
+
     /**
      * Queries the entities in the repository and returns a subset of them.
      * <p>
@@ -64,6 +124,129 @@ public interface FilteredRepository<V, F> extends Repository<V> {
      */
     public Collection<V> getCollection(final F filter);
 
+    /**
+     * Queries the entities in the repository and returns a page from the
+     * subset chosen by the filter.
+     * <p>
+     * The entities are returned in the same order they are found, skipping
+     * the first ones as indicated by the offset.
+     * <p>
+     * By default this is taken from the {@code Stream} returned by
+     * {@link #stream(Object) stream}, and so it will stop filtering as soon as
+     * the page is complete.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @param offset
+     *            number of filtered entities to skip
+     * @param limit
+     *            maximum number of entities to return
+     * @return a page of the filtered subset of entities
+     */
+    public default List<V> getCollection(final F filter, final int offset,
+            final int limit) {
+        checkArgument(offset >= 0, "The offset should not be negative");
+        checkArgument(limit >= 0, "The limit should not be negative");
+
+        return stream(filter).skip(offset).limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Queries the entities in the repository and returns a page from the
+     * subset chosen by the filter, sorted with the specified comparator.
+     * <p>
+     * This is the same as sorting the filtered subset and then taking the
+     * requested page from it. But by default the page is built with a bounded
+     * heap, and so only {@code offset + limit} entities are kept and sorted,
+     * making it cheap to acquire the top entities of a big subset.
+     * <p>
+     * For paging deep into the subset it is better to use
+     * {@link #getCollectionAfter(Object, Object, int, Comparator)
+     * getCollectionAfter}, as the cost of this method grows with the offset.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @param offset
+     *            number of sorted entities to skip
+     * @param limit
+     *            maximum number of entities to return
+     * @param comparator
+     *            comparator defining the order of the entities
+     * @return a sorted page of the filtered subset of entities
+     */
+    public default List<V> getCollection(final F filter, final int offset,
+            final int limit, final Comparator<? super V> comparator) {
+        return Paging.getPage(iterator(filter), offset, limit, comparator);
+    }
+
+    /**
+     * Queries the entities in the repository and returns the page which
+     * follows the specified entity, with the subset chosen by the filter
+     * sorted by the specified comparator.
+     * <p>
+     * This allows keyset pagination. Instead of skipping a number of entities,
+     * the page starts right after the last entity of the previous page, so
+     * each page costs the same no matter how deep it is. Also, the pages are
+     * kept stable when entities are added or removed before them.
+     * <p>
+     * For this to work the comparator should define a total order, for
+     * example by comparing some unique identifier after the rest of the
+     * fields.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @param last
+     *            last entity of the previous page
+     * @param limit
+     *            maximum number of entities to return
+     * @param comparator
+     *            comparator defining the order of the entities
+     * @return the sorted page of the filtered subset following the entity
+     */
+    public default List<V> getCollectionAfter(final F filter, final V last,
+            final int limit, final Comparator<? super V> comparator) {
+        checkNotNull(comparator, "Received a null pointer as comparator");
+
+        return Paging.getPage(
+                stream(filter)
+                        .filter(entity -> comparator.compare(entity, last) > 0)
+                        .iterator(),
+                0, limit, comparator);
+    }
+
+    /**
+     * Queries the entities in the repository with several filters at once.
+     * <p>
+     * The returned list has a collection for each filter, on the same
+     * position, with the entities chosen by it, the same as if calling
+     * {@link #getCollection(Object) getCollection} for each of them.
+     * <p>
+     * By default equal filters are queried only once, and their results
+     * copied for each of them. Implementations may instead answer all the
+     * filters with a single pass over the entities.
+     * 
+     * @param filters
+     *            the filters which discriminate the entities to be returned
+     * @return the filtered subset of entities for each filter
+     */
+    public default List<Collection<V>> getCollections(
+            final List<? extends F> filters) {
+        final Map<F, Collection<V>> distinct;
+        final List<Collection<V>> result;
+
+        checkNotNull(filters, "Received a null pointer as filters");
+
+        distinct = new HashMap<F, Collection<V>>();
+        result = new ArrayList<Collection<V>>(filters.size());
+        for (final F filter : filters) {
+            result.add(new LinkedList<V>(
+                    distinct.computeIfAbsent(filter, this::getCollection)));
+        }
+
+        return result;
+    }
+
     /**
      * Queries the entities in the repository and returns only one.
      * <p>
@@ -87,4 +270,137 @@ public interface FilteredRepository<V, F> extends Repository<V> {
      */
     public V getEntity(final F filter);
 
+    /**
+     * Groups the entities chosen by the filter, and aggregates each group
+     * with the specified {@code Collector}.
+     * <p>
+     * By default this is the same as calling
+     * {@link #collect(Object, Collector) collect} with a grouping collector,
+     * so it will run in parallel if the implementation collects in parallel.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to group
+     * @param classifier
+     *            function returning the group of an entity
+     * @param downstream
+     *            the collector aggregating each group
+     * @param <K>
+     *            the type of the group keys
+     * @param <R>
+     *            the type of the result for each group
+     * @return the aggregated result of each group
+     */
+    public default <K, R> Map<K, R> groupBy(final F filter,
+            final Function<? super V, ? extends K> classifier,
+            final Collector<? super V, ?, R> downstream) {
+        checkNotNull(classifier, "Received a null pointer as classifier");
+        checkNotNull(downstream, "Received a null pointer as collector");
+
+        return collect(filter, Collectors.groupingBy(classifier, downstream));
+    }
+
+    /**
+     * Queries the entities in the repository and returns an iterator over the
+     * ones chosen by the filter.
+     * <p>
+     * This works as a cursor over the filtered entities, allowing to process
+     * them one by one and to stop at any moment. Implementations able to do
+     * so will filter the entities only as the iterator advances.
+     * <p>
+     * By default this just iterates over the {@code Stream} returned by
+     * {@link #stream(Object) stream}.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @return an iterator over the filtered subset of entities
+     */
+    public default Iterator<V> iterator(final F filter) {
+        return stream(filter).iterator();
+    }
+
+    /**
+     * Reduces the entities chosen by the filter with the specified operation.
+     * <p>
+     * By default this is built over {@link #collect(Object, Collector)
+     * collect}, so it will run in parallel if the implementation collects in
+     * parallel. Then the operation should be associative.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to reduce
+     * @param operation
+     *            associative operation combining two entities
+     * @return the reduced entity, or an empty {@code Optional} if no entity
+     *         is chosen by the filter
+     */
+    public default Optional<V> reduce(final F filter,
+            final BinaryOperator<V> operation) {
+        checkNotNull(operation, "Received a null pointer as operation");
+
+        return collect(filter, Collectors.reducing(operation));
+    }
+
+    /**
+     * Reduces the entities chosen by the filter into a value of another type.
+     * <p>
+     * By default the entities are reduced from the {@code Stream} returned by
+     * {@link #stream(Object) stream}. Implementations may instead reduce them
+     * in parallel, so the identity should be an identity for the combiner,
+     * and the combiner should be compatible with the accumulator.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to reduce
+     * @param identity
+     *            the initial value of the reduction
+     * @param accumulator
+     *            function adding an entity to a partial result
+     * @param combiner
+     *            function combining two partial results
+     * @param <R>
+     *            the type of the result
+     * @return the reduced value
+     */
+    public default <R> R reduce(final F filter, final R identity,
+            final BiFunction<R, ? super V, R> accumulator,
+            final BinaryOperator<R> combiner) {
+        checkNotNull(accumulator, "Received a null pointer as accumulator");
+        checkNotNull(combiner, "Received a null pointer as combiner");
+
+        return stream(filter).reduce(identity, accumulator, combiner);
+    }
+
+    /**
+     * Removes all the entities chosen by the filter.
+     * <p>
+     * By default the entities are acquired with
+     * {@link #getCollection(Object) getCollection}, and then removed with
+     * {@link #removeAll(Collection) removeAll}.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be removed
+     */
+    public default void removeIf(final F filter) {
+        removeAll(getCollection(filter));
+    }
+
+    /**
+     * Queries the entities in the repository and returns a {@code Stream} of
+     * the ones chosen by the filter.
+     * <p>
+     * Unlike {@link #getCollection(Object) getCollection}, implementations are
+     * expected to return a lazy stream, which filters the entities only as
+     * they are consumed. The stream may be turned into a parallel one if the
+     * implementation supports it.
+     * <p>
+     * By default this just streams the collection returned by
+     * {@code getCollection}, so it won't be lazy unless the implementation
+     * overrides it.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @return a stream of the filtered subset of entities
+     */
+    public default Stream<V> stream(final F filter) {
+        return getCollection(filter).stream();
+    }
+
 }
@@ -0,0 +1,564 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Range;
+
+/**
+ * Factory for {@link Filter} instances.
+ * <p>
+ * The filters created here are the only ones an {@link IndexedRepository}
+ * knows how to plan. They compare an {@link Attribute} against a value, a
+ * set of values or a range, and can be combined with the usual boolean
+ * operations.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class Filters {
+
+    /**
+     * Filter accepting the entities validating all the received filters.
+     * 
+     * @param <V>
+     *            the type of the entities being filtered
+     */
+    static final class AndFilter<V> implements Filter<V> {
+
+        /**
+         * The filters to validate.
+         */
+        private final List<Filter<V>> filters;
+
+        /**
+         * Constructs an {@code AndFilter} with the specified filters.
+         * 
+         * @param conjuncts
+         *            the filters to validate
+         */
+        public AndFilter(final List<Filter<V>> conjuncts) {
+            super();
+
+            filters = conjuncts;
+        }
+
+        @Override
+        public final boolean apply(final V input) {
+            boolean valid;
+
+            valid = true;
+            for (final Filter<V> filter : filters) {
+                if (!filter.apply(input)) {
+                    valid = false;
+                    break;
+                }
+            }
+
+            return valid;
+        }
+
+        @Override
+        public final String toString() {
+            return "(" + Joiner.on(" AND ").join(filters) + ")";
+        }
+
+        /**
+         * Returns the filters to validate.
+         * 
+         * @return the filters to validate
+         */
+        final List<Filter<V>> getFilters() {
+            return filters;
+        }
+
+    }
+
+    /**
+     * Filter accepting the entities whose attribute is equal to a value.
+     * 
+     * @param <V>
+     *            the type of the entities being filtered
+     * @param <A>
+     *            the type of the attribute's values
+     */
+    static final class EqualFilter<V, A> implements Filter<V> {
+
+        /**
+         * The attribute to compare.
+         */
+        private final Attribute<V, A> attribute;
+
+        /**
+         * The value to compare against.
+         */
+        private final A               value;
+
+        /**
+         * Constructs an {@code EqualFilter} with the specified attribute and
+         * value.
+         * 
+         * @param attr
+         *            the attribute to compare
+         * @param expected
+         *            the value to compare against
+         */
+        public EqualFilter(final Attribute<V, A> attr, final A expected) {
+            super();
+
+            attribute = attr;
+            value = expected;
+        }
+
+        @Override
+        public final boolean apply(final V input) {
+            return Objects.equals(attribute.getValue(input), value);
+        }
+
+        @Override
+        public final String toString() {
+            return attribute + " = " + value;
+        }
+
+        /**
+         * Returns the attribute to compare.
+         * 
+         * @return the attribute to compare
+         */
+        final Attribute<V, A> getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Returns the value to compare against.
+         * 
+         * @return the value to compare against
+         */
+        final A getValue() {
+            return value;
+        }
+
+    }
+
+    /**
+     * Filter accepting the entities whose attribute is one of several
+     * values.
+     * 
+     * @param <V>
+     *            the type of the entities being filtered
+     * @param <A>
+     *            the type of the attribute's values
+     */
+    static final class InFilter<V, A> implements Filter<V> {
+
+        /**
+         * The attribute to compare.
+         */
+        private final Attribute<V, A> attribute;
+
+        /**
+         * The accepted values.
+         */
+        private final Set<A>          values;
+
+        /**
+         * Constructs an {@code InFilter} with the specified attribute and
+         * values.
+         * 
+         * @param attr
+         *            the attribute to compare
+         * @param accepted
+         *            the accepted values
+         */
+        public InFilter(final Attribute<V, A> attr, final Set<A> accepted) {
+            super();
+
+            attribute = attr;
+            values = accepted;
+        }
+
+        @Override
+        public final boolean apply(final V input) {
+            return values.contains(attribute.getValue(input));
+        }
+
+        @Override
+        public final String toString() {
+            return attribute + " IN " + values;
+        }
+
+        /**
+         * Returns the attribute to compare.
+         * 
+         * @return the attribute to compare
+         */
+        final Attribute<V, A> getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Returns the accepted values.
+         * 
+         * @return the accepted values
+         */
+        final Set<A> getValues() {
+            return values;
+        }
+
+    }
+
+    /**
+     * Filter accepting the entities not validating another filter.
+     * 
+     * @param <V>
+     *            the type of the entities being filtered
+     */
+    static final class NotFilter<V> implements Filter<V> {
+
+        /**
+         * The negated filter.
+         */
+        private final Filter<V> filter;
+
+        /**
+         * Constructs a {@code NotFilter} negating the specified filter.
+         * 
+         * @param negated
+         *            the negated filter
+         */
+        public NotFilter(final Filter<V> negated) {
+            super();
+
+            filter = negated;
+        }
+
+        @Override
+        public final boolean apply(final V input) {
+            return !filter.apply(input);
+        }
+
+        @Override
+        public final String toString() {
+            return "NOT " + filter;
+        }
+
+        /**
+         * Returns the negated filter.
+         * 
+         * @return the negated filter
+         */
+        final Filter<V> getFilter() {
+            return filter;
+        }
+
+    }
+
+    /**
+     * Filter accepting the entities validating any of the received filters.
+     * 
+     * @param <V>
+     *            the type of the entities being filtered
+     */
+    static final class OrFilter<V> implements Filter<V> {
+
+        /**
+         * The filters to validate.
+         */
+        private final List<Filter<V>> filters;
+
+        /**
+         * Constructs an {@code OrFilter} with the specified filters.
+         * 
+         * @param disjuncts
+         *            the filters to validate
+         */
+        public OrFilter(final List<Filter<V>> disjuncts) {
+            super();
+
+            filters = disjuncts;
+        }
+
+        @Override
+        public final boolean apply(final V input) {
+            boolean valid;
+
+            valid = false;
+            for (final Filter<V> filter : filters) {
+                if (filter.apply(input)) {
+                    valid = true;
+                    break;
+                }
+            }
+
+            return valid;
+        }
+
+        @Override
+        public final String toString() {
+            return "(" + Joiner.on(" OR ").join(filters) + ")";
+        }
+
+        /**
+         * Returns the filters to validate.
+         * 
+         * @return the filters to validate
+         */
+        final List<Filter<V>> getFilters() {
+            return filters;
+        }
+
+    }
+
+    /**
+     * Filter accepting the entities whose attribute is inside a range.
+     * 
+     * @param <V>
+     *            the type of the entities being filtered
+     * @param <A>
+     *            the type of the attribute's values
+     */
+    static final class RangeFilter<V, A extends Comparable<? super A>>
+            implements Filter<V> {
+
+        /**
+         * The attribute to compare.
+         */
+        private final Attribute<V, A> attribute;
+
+        /**
+         * The accepted range.
+         */
+        private final Range<A>        range;
+
+        /**
+         * Constructs a {@code RangeFilter} with the specified attribute and
+         * range.
+         * 
+         * @param attr
+         *            the attribute to compare
+         * @param accepted
+         *            the accepted range
+         */
+        public RangeFilter(final Attribute<V, A> attr,
+                final Range<A> accepted) {
+            super();
+
+            attribute = attr;
+            range = accepted;
+        }
+
+        @Override
+        public final boolean apply(final V input) {
+            final A value;
+
+            value = attribute.getValue(input);
+
+            return (value != null) && range.contains(value);
+        }
+
+        @Override
+        public final String toString() {
+            return attribute + " IN " + range;
+        }
+
+        /**
+         * Returns the attribute to compare.
+         * 
+         * @return the attribute to compare
+         */
+        final Attribute<V, A> getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Returns the accepted range.
+         * 
+         * @return the accepted range
+         */
+        final Range<A> getRange() {
+            return range;
+        }
+
+    }
+
+    /**
+     * Creates a filter accepting the entities validating all the received
+     * filters.
+     * 
+     * @param filters
+     *            the filters to validate
+     * @param <V>
+     *            the type of the entities being filtered
+     * @return a filter joining the received ones
+     */
+    @SafeVarargs
+    public static final <V> Filter<V> and(final Filter<V>... filters) {
+        return new AndFilter<V>(copyFilters(filters));
+    }
+
+    /**
+     * Creates a filter accepting the entities whose attribute is equal to
+     * the received value.
+     * 
+     * @param attribute
+     *            the attribute to compare
+     * @param value
+     *            the value to compare against
+     * @param <V>
+     *            the type of the entities being filtered
+     * @param <A>
+     *            the type of the attribute's values
+     * @return a filter comparing the attribute to the value
+     */
+    public static final <V, A> Filter<V> eq(final Attribute<V, A> attribute,
+            final A value) {
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        return new EqualFilter<V, A>(attribute, value);
+    }
+
+    /**
+     * Creates a filter accepting the entities whose attribute is any of the
+     * received values.
+     * 
+     * @param attribute
+     *            the attribute to compare
+     * @param values
+     *            the accepted values
+     * @param <V>
+     *            the type of the entities being filtered
+     * @param <A>
+     *            the type of the attribute's values
+     * @return a filter checking the attribute is among the values
+     */
+    public static final <V, A> Filter<V> in(final Attribute<V, A> attribute,
+            final Collection<? extends A> values) {
+        checkNotNull(attribute, "Received a null pointer as attribute");
+        checkNotNull(values, "Received a null pointer as values");
+
+        return new InFilter<V, A>(attribute,
+                Collections.unmodifiableSet(new HashSet<A>(values)));
+    }
+
+    /**
+     * Creates a filter accepting the entities not validating the received
+     * filter.
+     * 
+     * @param filter
+     *            the filter to negate
+     * @param <V>
+     *            the type of the entities being filtered
+     * @return a filter negating the received one
+     */
+    public static final <V> Filter<V> not(final Filter<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return new NotFilter<V>(filter);
+    }
+
+    /**
+     * Creates a filter accepting the entities validating any of the received
+     * filters.
+     * 
+     * @param filters
+     *            the filters to validate
+     * @param <V>
+     *            the type of the entities being filtered
+     * @return a filter joining the received ones
+     */
+    @SafeVarargs
+    public static final <V> Filter<V> or(final Filter<V>... filters) {
+        return new OrFilter<V>(copyFilters(filters));
+    }
+
+    /**
+     * Creates a filter accepting the entities whose attribute is inside the
+     * received range.
+     * <p>
+     * Entities with no value for the attribute are never accepted.
+     * 
+     * @param attribute
+     *            the attribute to compare
+     * @param range
+     *            the accepted range
+     * @param <V>
+     *            the type of the entities being filtered
+     * @param <A>
+     *            the type of the attribute's values
+     * @return a filter checking the attribute is in the range
+     */
+    public static final <V, A extends Comparable<? super A>> Filter<V> range(
+            final Attribute<V, A> attribute, final Range<A> range) {
+        checkNotNull(attribute, "Received a null pointer as attribute");
+        checkNotNull(range, "Received a null pointer as range");
+
+        return new RangeFilter<V, A>(attribute, range);
+    }
+
+    /**
+     * Checks the filters for a boolean operation, and returns a copy of them
+     * as an unmodifiable list.
+     * 
+     * @param filters
+     *            the filters to copy
+     * @param <V>
+     *            the type of the entities being filtered
+     * @return the filters in an unmodifiable list
+     */
+    private static final <V> List<Filter<V>> copyFilters(
+            final Filter<V>[] filters) {
+        final List<Filter<V>> copy;
+
+        checkNotNull(filters, "Received a null pointer as filters");
+        checkArgument(filters.length > 0, "At least one filter is required");
+
+        // Copied by hand, as passing the array on could cause heap pollution
+        copy = new ArrayList<Filter<V>>(filters.length);
+        for (final Filter<V> filter : filters) {
+            checkNotNull(filter, "Received a null pointer as filter");
+            copy.add(filter);
+        }
+
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Private constructor to avoid initialization.
+     */
+    private Filters() {
+        super();
+    }
+
+}
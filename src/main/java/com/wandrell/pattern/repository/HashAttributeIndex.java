@@ -0,0 +1,187 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.wandrell.pattern.repository.Filters.EqualFilter;
+import com.wandrell.pattern.repository.Filters.InFilter;
+
+/**
+ * {@link AttributeIndex} grouping the entities by the hash of their
+ * attribute's value.
+ * <p>
+ * It supports equality and membership filters. Entities are kept on identity
+ * sets, so their {@code equals} method is never called.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the indexed entities
+ */
+final class HashAttributeIndex<V> implements AttributeIndex<V> {
+
+    /**
+     * The indexed attribute.
+     */
+    private final Attribute<V, ?>     attribute;
+
+    /**
+     * The entities, grouped by their attribute's value.
+     */
+    private final Map<Object, Set<V>> buckets;
+
+    /**
+     * Constructs a {@code HashAttributeIndex} for the specified attribute.
+     * 
+     * @param attr
+     *            the indexed attribute
+     */
+    public HashAttributeIndex(final Attribute<V, ?> attr) {
+        super();
+
+        attribute = attr;
+        buckets = new HashMap<Object, Set<V>>();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        getBuckets().computeIfAbsent(getAttribute().getValue(entity),
+                (value) -> Collections
+                        .newSetFromMap(new IdentityHashMap<V, Boolean>()))
+                .add(entity);
+    }
+
+    @Override
+    public final long estimate(final Filter<V> filter) {
+        long count;
+
+        count = 0;
+        for (final Object value : getValues(filter)) {
+            count += getBucket(value).size();
+        }
+
+        return count;
+    }
+
+    @Override
+    public final Attribute<V, ?> getAttribute() {
+        return attribute;
+    }
+
+    @Override
+    public final Collection<V> lookup(final Filter<V> filter) {
+        final Collection<V> result;
+
+        result = Collections.newSetFromMap(new IdentityHashMap<V, Boolean>());
+        for (final Object value : getValues(filter)) {
+            result.addAll(getBucket(value));
+        }
+
+        return result;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final Object value;
+        final Set<V> bucket;
+
+        value = getAttribute().getValue(entity);
+        bucket = getBuckets().get(value);
+        if (bucket != null) {
+            bucket.remove(entity);
+            if (bucket.isEmpty()) {
+                getBuckets().remove(value);
+            }
+        }
+    }
+
+    @Override
+    public final boolean supports(final Filter<V> filter) {
+        final boolean supported;
+
+        if (filter instanceof EqualFilter) {
+            supported = ((EqualFilter<V, ?>) filter)
+                    .getAttribute() == getAttribute();
+        } else if (filter instanceof InFilter) {
+            supported = ((InFilter<V, ?>) filter)
+                    .getAttribute() == getAttribute();
+        } else {
+            supported = false;
+        }
+
+        return supported;
+    }
+
+    @Override
+    public final String toString() {
+        return "hash(" + getAttribute() + ")";
+    }
+
+    /**
+     * Returns the entities with the specified value.
+     * 
+     * @param value
+     *            the value to look for
+     * @return the entities with that value
+     */
+    private final Set<V> getBucket(final Object value) {
+        return getBuckets().getOrDefault(value, Collections.<V> emptySet());
+    }
+
+    /**
+     * Returns the entities, grouped by their attribute's value.
+     * 
+     * @return the entities grouped by value
+     */
+    private final Map<Object, Set<V>> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Returns the values accepted by a supported filter.
+     * 
+     * @param filter
+     *            the filter
+     * @return the values accepted by the filter
+     */
+    private final Collection<?> getValues(final Filter<V> filter) {
+        final Collection<?> values;
+
+        if (filter instanceof EqualFilter) {
+            values = Collections
+                    .singleton(((EqualFilter<V, ?>) filter).getValue());
+        } else {
+            values = ((InFilter<V, ?>) filter).getValues();
+        }
+
+        return values;
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * {@link ShardingStrategy} spreading the entities through the hash of their
+ * keys.
+ * <p>
+ * Shards are assigned with consistent hashing. So when a shard is added only
+ * the entities which should move into it change their shard, and rebalancing
+ * the repository moves as few entities as possible.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class HashShardingStrategy<V> implements ShardingStrategy<V> {
+
+    /**
+     * Function returning the key of an entity.
+     */
+    private final Function<? super V, ?> key;
+
+    /**
+     * Constructs a {@code HashShardingStrategy} with the specified key
+     * extractor.
+     * 
+     * @param extractor
+     *            function returning the key of an entity
+     */
+    public HashShardingStrategy(final Function<? super V, ?> extractor) {
+        super();
+
+        key = checkNotNull(extractor, "Received a null pointer as extractor");
+    }
+
+    @Override
+    public final int getShard(final V entity, final int shards) {
+        return Hashing.consistentHash(
+                Objects.hashCode(getKey().apply(entity)), shards);
+    }
+
+    /**
+     * Returns the function returning the key of an entity.
+     * 
+     * @return the key extractor
+     */
+    private final Function<? super V, ?> getKey() {
+        return key;
+    }
+
+}
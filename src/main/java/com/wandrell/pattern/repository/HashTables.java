@@ -0,0 +1,400 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.stream.IntStream;
+
+/**
+ * Base for the primitive repositories, which keep their values on an
+ * open-addressing hash table.
+ * <p>
+ * The table is made of an array of values, kept by the implementations, and
+ * an array with the number of times the value on each slot is stored. A
+ * value is stored on the first slot, starting from the one given by its
+ * hash, which is not in use, and repeated values only increase its count, so
+ * the repositories keep duplicates same as a collection would. Collisions are
+ * resolved by linear probing, so the hash should spread similar values over
+ * the whole table. This is done with the finalizer of the MurmurHash3
+ * function, which mixes all the bits of the value.
+ * <p>
+ * The values are found by their bits, which the implementations take from the
+ * values, and so two values are equal if their bits are the same.
+ * <p>
+ * The length of the tables is always a power of two, and it is kept below a
+ * load factor of 75%, up to the maximum length allowed. Once the slots in use,
+ * including those whose value was removed, reach it, the table is rebuilt.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+abstract class HashTables {
+
+    /**
+     * Default number of values a table has space for.
+     */
+    static final int         DEFAULT_CAPACITY = 16;
+
+    /**
+     * Count for slots which never contained a value.
+     */
+    private static final int FREE             = 0;
+
+    /**
+     * Maximum ratio of used slots, as a percentage.
+     */
+    private static final int LOAD_FACTOR      = 75;
+
+    /**
+     * Maximum length for a table.
+     */
+    private static final int MAXIMUM_LENGTH   = 1 << 30;
+
+    /**
+     * Minimum length for a table.
+     */
+    private static final int MINIMUM_LENGTH   = 16;
+
+    /**
+     * Count for slots whose value was removed.
+     */
+    private static final int REMOVED          = -1;
+
+    /**
+     * Indicates if a table has too many used slots.
+     * 
+     * @param used
+     *            number of slots either full or removed
+     * @param length
+     *            length of the table
+     * @return {@code true} if the table should be rebuilt, {@code false}
+     *         otherwise
+     */
+    private static final boolean isFull(final long used, final int length) {
+        return used * 100 >= (long) length * LOAD_FACTOR;
+    }
+
+    /**
+     * Returns the length of a table with space for the specified number of
+     * values.
+     * <p>
+     * The length is capped at the maximum length allowed, so the table may
+     * have less space than requested.
+     * 
+     * @param capacity
+     *            expected number of values
+     * @return the length for the table
+     */
+    private static final int length(final long capacity) {
+        int length;
+
+        length = MINIMUM_LENGTH;
+        while ((length < MAXIMUM_LENGTH) && isFull(capacity, length)) {
+            length *= 2;
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns the slot following the specified one.
+     * 
+     * @param slot
+     *            the current slot
+     * @param length
+     *            length of the table
+     * @return the next slot to probe
+     */
+    private static final int next(final int slot, final int length) {
+        return (slot + 1) & (length - 1);
+    }
+
+    /**
+     * Returns the first slot to probe for a value.
+     * 
+     * @param bits
+     *            the bits of the value
+     * @param length
+     *            length of the table
+     * @return the first slot for the value
+     */
+    private static final int slot(final long bits, final int length) {
+        long hash;
+
+        hash = bits;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+
+        return (int) hash & (length - 1);
+    }
+
+    /**
+     * Number of times the value on each slot is stored.
+     */
+    private int[] counts;
+
+    /**
+     * Number of slots containing a value.
+     */
+    private int   full;
+
+    /**
+     * Number of slots whose value was removed.
+     */
+    private int   removed;
+
+    /**
+     * Number of values stored, counting duplicates.
+     */
+    private int   size;
+
+    /**
+     * Constructs an empty table with space for the specified number of
+     * values.
+     * 
+     * @param capacity
+     *            expected number of values
+     */
+    public HashTables(final int capacity) {
+        super();
+
+        checkArgument(capacity >= 0, "The capacity should not be negative");
+
+        counts = new int[length(capacity)];
+    }
+
+    /**
+     * Returns the number of values in the repository.
+     * 
+     * @return the number of values in the repository
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Returns the bits of the value on a slot.
+     * 
+     * @param slot
+     *            the slot to read
+     * @return the bits of the slot's value
+     */
+    protected abstract long bits(final int slot);
+
+    /**
+     * Moves the values into a new array with the specified length.
+     * <p>
+     * The value on each slot should be moved to the slot received for it on
+     * the targets array, unless it is negative, which means the slot is not in
+     * use.
+     * 
+     * @param targets
+     *            the new slot for each current one
+     * @param length
+     *            length of the new array
+     */
+    protected abstract void move(final int[] targets, final int length);
+
+    /**
+     * Removes all the copies of the value on a slot.
+     * 
+     * @param slot
+     *            the slot to clear
+     */
+    final void clear(final int slot) {
+        size -= counts[slot];
+        counts[slot] = REMOVED;
+        full--;
+        removed++;
+    }
+
+    /**
+     * Returns the number of times the value on a slot is stored.
+     * 
+     * @param slot
+     *            the slot to check
+     * @return the times the slot's value is stored, or a value lower than one
+     *         if the slot is not in use
+     */
+    final int copies(final int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * Returns the slot containing the value with the specified bits.
+     * 
+     * @param bits
+     *            the bits of the value to find
+     * @return the slot containing the value, or {@code -1} if there is none
+     */
+    final int find(final long bits) {
+        int slot;
+
+        slot = slot(bits, counts.length);
+        while (counts[slot] != FREE) {
+            if ((counts[slot] > 0) && (bits(slot) == bits)) {
+                return slot;
+            }
+            slot = next(slot, counts.length);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Stores a copy of the value with the specified bits, and returns its
+     * slot.
+     * <p>
+     * The implementation should then set the value on that slot, as it may
+     * not contain it yet.
+     * 
+     * @param bits
+     *            the bits of the value to store
+     * @return the slot for the value
+     */
+    final int insert(final long bits) {
+        int slot;
+        int target;
+
+        if (isFull(full + removed + 1L, counts.length)) {
+            rehash();
+        }
+
+        target = -1;
+        slot = slot(bits, counts.length);
+        while (counts[slot] != FREE) {
+            if (counts[slot] > 0) {
+                if (bits(slot) == bits) {
+                    counts[slot]++;
+                    size++;
+                    return slot;
+                }
+            } else if (target < 0) {
+                // The first removed slot is reused
+                target = slot;
+            }
+            slot = next(slot, counts.length);
+        }
+
+        if (target < 0) {
+            target = slot;
+        } else {
+            removed--;
+        }
+
+        counts[target] = 1;
+        full++;
+        size++;
+
+        return target;
+    }
+
+    /**
+     * Returns the length of the table.
+     * 
+     * @return the length of the table
+     */
+    final int length() {
+        return counts.length;
+    }
+
+    /**
+     * Removes a single copy of the value with the specified bits.
+     * 
+     * @param bits
+     *            the bits of the value to remove
+     */
+    final void delete(final long bits) {
+        final int slot;
+
+        slot = find(bits);
+        if (slot >= 0) {
+            if (counts[slot] == 1) {
+                clear(slot);
+            } else {
+                counts[slot]--;
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Returns a stream with the slots in use, each one repeated as many times
+     * as its value is stored.
+     * <p>
+     * This is lazy, and works directly over the table, so the repository
+     * should not be modified while it is being consumed.
+     * 
+     * @return a stream of the slots in use
+     */
+    final IntStream slots() {
+        final int[] stored;
+
+        stored = counts;
+
+        return IntStream.range(0, stored.length)
+                .filter(i -> stored[i] > 0)
+                .flatMap(i -> IntStream.range(0, stored[i]).map(copy -> i));
+    }
+
+    /**
+     * Rebuilds the table, discarding the removed slots and making space for
+     * more values.
+     */
+    private final void rehash() {
+        final int[] targets;
+        final int[] rebuilt;
+        final int length;
+        int slot;
+
+        length = length(full * 2L);
+        checkState(!isFull(full + 1L, length),
+                "The repository can't hold more values");
+
+        targets = new int[counts.length];
+        rebuilt = new int[length];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                slot = slot(bits(i), length);
+                while (rebuilt[slot] != FREE) {
+                    slot = next(slot, length);
+                }
+                rebuilt[slot] = counts[i];
+                targets[i] = slot;
+            } else {
+                targets[i] = -1;
+            }
+        }
+
+        move(targets, length);
+        counts = rebuilt;
+        removed = 0;
+    }
+
+}
@@ -0,0 +1,446 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.collect.Maps;
+import com.wandrell.pattern.repository.Filters.AndFilter;
+import com.wandrell.pattern.repository.Filters.NotFilter;
+import com.wandrell.pattern.repository.Filters.OrFilter;
+import com.wandrell.pattern.repository.QueryPlan.FilterPlan;
+import com.wandrell.pattern.repository.QueryPlan.LookupPlan;
+import com.wandrell.pattern.repository.QueryPlan.ScanPlan;
+import com.wandrell.pattern.repository.QueryPlan.UnionPlan;
+
+/**
+ * {@link FilteredRepository} answering {@link Filter filters} with indexes.
+ * <p>
+ * Indexes can be created over any {@link Attribute}. Hash indexes answer
+ * equality and membership filters, while sorted indexes also answer range
+ * filters.
+ * <p>
+ * Before running a query the repository plans it. The filter is split into
+ * its conjuncts, and the one which the indexes expect to return the fewest
+ * entities is used to read them. Disjunctions are answered by joining the
+ * plans for each of their filters. The remaining conjuncts are then applied
+ * to the entities read, in order of selectivity, so those rejecting more
+ * entities go first. If no index would help then all the entities are
+ * scanned.
+ * <p>
+ * The plan chosen for a filter can be checked with
+ * {@link #explain(Filter) explain}.
+ * <p>
+ * Entities are stored as a set, so adding an entity equal to a stored one
+ * does nothing. Queries answered by indexes don't keep the order in which
+ * the entities were added.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class IndexedRepository<V>
+        implements FilteredRepository<V, Filter<V>> {
+
+    /**
+     * The entities stored in the repository, mapped to themselves.
+     * <p>
+     * This allows finding the stored instance, which is the one on the
+     * indexes.
+     */
+    private final Map<V, V>               data;
+
+    /**
+     * The indexes.
+     */
+    private final List<AttributeIndex<V>> indexes;
+
+    /**
+     * Constructs an empty {@code IndexedRepository}.
+     */
+    public IndexedRepository() {
+        super();
+
+        data = new LinkedHashMap<V, V>();
+        indexes = new ArrayList<AttributeIndex<V>>();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        if (getData().putIfAbsent(entity, entity) == null) {
+            for (final AttributeIndex<V> index : getIndexes()) {
+                index.add(entity);
+            }
+        }
+    }
+
+    /**
+     * Creates a hash index over the attribute.
+     * <p>
+     * It will answer equality and membership filters on that attribute.
+     * 
+     * @param attribute
+     *            the attribute to index
+     */
+    public final void addHashIndex(final Attribute<V, ?> attribute) {
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        addIndex(new HashAttributeIndex<V>(attribute));
+    }
+
+    /**
+     * Creates a sorted index over the attribute.
+     * <p>
+     * It will answer equality, membership and range filters on that
+     * attribute.
+     * 
+     * @param attribute
+     *            the attribute to index
+     * @param <A>
+     *            the type of the attribute's values
+     */
+    public final <A extends Comparable<? super A>> void addSortedIndex(
+            final Attribute<V, A> attribute) {
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        addIndex(new SortedAttributeIndex<V, A>(attribute));
+    }
+
+    /**
+     * Returns a description of the plan which would be used for the filter.
+     * <p>
+     * Each step of the plan is described on its own line, indented below the
+     * step using its results, along its estimated cost.
+     * 
+     * @param filter
+     *            the filter to plan
+     * @return a description of the filter's plan
+     */
+    public final String explain(final Filter<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return plan(filter).explain();
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return new LinkedList<V>(getData().values());
+    }
+
+    @Override
+    public final Collection<V> getCollection(final Filter<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return new LinkedList<V>(plan(filter).execute());
+    }
+
+    @Override
+    public final V getEntity(final Filter<V> filter) {
+        final Iterator<V> entities;
+        final V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        entities = plan(filter).execute().iterator();
+        if (entities.hasNext()) {
+            entity = entities.next();
+        } else {
+            entity = null;
+        }
+
+        return entity;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final V stored;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        stored = getData().remove(entity);
+        if (stored != null) {
+            for (final AttributeIndex<V> index : getIndexes()) {
+                index.remove(stored);
+            }
+        }
+    }
+
+    @Override
+    public final void removeIf(final Filter<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        for (final V entity : plan(filter).execute()) {
+            remove(entity);
+        }
+    }
+
+    /**
+     * Returns the number of entities in the repository.
+     * 
+     * @return the number of entities
+     */
+    public final int size() {
+        return getData().size();
+    }
+
+    @Override
+    public final void update(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        if (getData().containsKey(entity)) {
+            remove(entity);
+            add(entity);
+        }
+    }
+
+    /**
+     * Adds an index, filling it with the stored entities.
+     * 
+     * @param index
+     *            the index to add
+     */
+    private final void addIndex(final AttributeIndex<V> index) {
+        for (final AttributeIndex<V> existing : getIndexes()) {
+            checkArgument(
+                    (existing.getAttribute() != index.getAttribute())
+                            || (existing.getClass() != index.getClass()),
+                    "The attribute %s already has this kind of index",
+                    index.getAttribute());
+        }
+
+        for (final V entity : getData().values()) {
+            index.add(entity);
+        }
+
+        getIndexes().add(index);
+    }
+
+    /**
+     * Splits a filter into the filters joined by it, if it is a conjunction.
+     * 
+     * @param filter
+     *            the filter to split
+     * @return the filters which should all be validated
+     */
+    private final List<Filter<V>> conjuncts(final Filter<V> filter) {
+        final List<Filter<V>> result;
+
+        result = new ArrayList<Filter<V>>();
+        if (filter instanceof AndFilter) {
+            for (final Filter<V> conjunct : ((AndFilter<V>) filter)
+                    .getFilters()) {
+                result.addAll(conjuncts(conjunct));
+            }
+        } else {
+            result.add(filter);
+        }
+
+        return result;
+    }
+
+    /**
+     * Estimates the number of entities which validate the filter.
+     * <p>
+     * Filters which can't be answered by the indexes are expected to accept
+     * all the entities.
+     * 
+     * @param filter
+     *            the filter to estimate
+     * @return the estimated number of entities validating the filter
+     */
+    private final long estimate(final Filter<V> filter) {
+        final QueryPlan<V> plan;
+        final long child;
+        long estimate;
+
+        if (filter instanceof AndFilter) {
+            estimate = size();
+            for (final Filter<V> conjunct : ((AndFilter<V>) filter)
+                    .getFilters()) {
+                estimate = Math.min(estimate, estimate(conjunct));
+            }
+        } else if (filter instanceof OrFilter) {
+            estimate = 0;
+            for (final Filter<V> disjunct : ((OrFilter<V>) filter)
+                    .getFilters()) {
+                estimate += estimate(disjunct);
+            }
+            estimate = Math.min(estimate, size());
+        } else if (filter instanceof NotFilter) {
+            child = estimate(((NotFilter<V>) filter).getFilter());
+            if (child < size()) {
+                estimate = size() - child;
+            } else {
+                estimate = size();
+            }
+        } else {
+            plan = lookup(filter);
+            if (plan == null) {
+                estimate = size();
+            } else {
+                estimate = plan.getCost();
+            }
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Returns the entities stored, mapped to themselves.
+     * 
+     * @return the entities stored
+     */
+    private final Map<V, V> getData() {
+        return data;
+    }
+
+    /**
+     * Returns the indexes.
+     * 
+     * @return the indexes
+     */
+    private final List<AttributeIndex<V>> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Returns the cheapest plan reading from the indexes the entities
+     * validating the filter.
+     * <p>
+     * Disjunctions are read by joining the plans for each of their filters,
+     * as long as all of them can be answered without a scan.
+     * 
+     * @param filter
+     *            the filter to answer
+     * @return a plan reading the filter from the indexes, or {@code null} if
+     *         the indexes can't answer it
+     */
+    private final QueryPlan<V> lookup(final Filter<V> filter) {
+        final List<QueryPlan<V>> plans;
+        QueryPlan<V> plan;
+        QueryPlan<V> disjunct;
+        long cost;
+
+        plan = null;
+        if (filter instanceof OrFilter) {
+            plans = new ArrayList<QueryPlan<V>>();
+            for (final Filter<V> child : ((OrFilter<V>) filter)
+                    .getFilters()) {
+                disjunct = plan(child);
+                if (disjunct instanceof ScanPlan) {
+                    plans.clear();
+                    break;
+                }
+                plans.add(disjunct);
+            }
+
+            if (!plans.isEmpty()) {
+                plan = new UnionPlan<V>(plans);
+            }
+        } else {
+            for (final AttributeIndex<V> index : getIndexes()) {
+                if (index.supports(filter)) {
+                    cost = index.estimate(filter);
+                    if ((plan == null) || (cost < plan.getCost())) {
+                        plan = new LookupPlan<V>(index, filter, cost);
+                    }
+                }
+            }
+        }
+
+        return plan;
+    }
+
+    /**
+     * Chooses the plan for a filter.
+     * 
+     * @param filter
+     *            the filter to plan
+     * @return the plan for the filter
+     */
+    private final QueryPlan<V> plan(final Filter<V> filter) {
+        final List<Filter<V>> conjuncts;
+        final List<Entry<Long, Filter<V>>> estimated;
+        final QueryPlan<V> plan;
+        QueryPlan<V> driver;
+        QueryPlan<V> candidate;
+        int driving;
+
+        conjuncts = conjuncts(filter);
+
+        // The cheapest index lookup drives the query
+        driver = null;
+        driving = -1;
+        for (int i = 0; i < conjuncts.size(); i++) {
+            candidate = lookup(conjuncts.get(i));
+            if ((candidate != null) && ((driver == null)
+                    || (candidate.getCost() < driver.getCost()))) {
+                driver = candidate;
+                driving = i;
+            }
+        }
+
+        if ((driver != null) && (driver.getCost() < size())) {
+            conjuncts.remove(driving);
+        } else {
+            driver = null;
+        }
+
+        // The most selective filters are applied first
+        // Each filter is estimated once, as this may walk the indexes
+        estimated = new ArrayList<Entry<Long, Filter<V>>>(conjuncts.size());
+        for (final Filter<V> conjunct : conjuncts) {
+            estimated.add(Maps.immutableEntry(estimate(conjunct), conjunct));
+        }
+        estimated.sort(Entry.comparingByKey());
+        conjuncts.clear();
+        for (final Entry<Long, Filter<V>> entry : estimated) {
+            conjuncts.add(entry.getValue());
+        }
+
+        if (driver == null) {
+            plan = new ScanPlan<V>(getData().values(), conjuncts);
+        } else if (conjuncts.isEmpty()) {
+            plan = driver;
+        } else {
+            plan = new FilterPlan<V>(driver, conjuncts);
+        }
+
+        return plan;
+    }
+
+}
@@ -0,0 +1,263 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * specialized for {@code int} values.
+ * <p>
+ * The values are stored on an open-addressing hash table, which keeps them on
+ * primitive arrays. This takes far less memory than a collection of boxed
+ * values, and the filters, which are instances of {@code IntPredicate}, are
+ * applied without boxing them.
+ * <p>
+ * The primitive methods, such as {@link #add(int) add},
+ * {@link #contains(int) contains} or {@link #getValues(IntPredicate)
+ * getValues}, should be preferred to those of the {@code Repository}
+ * interface, which work with boxed values.
+ * <p>
+ * Same as a collection, this repository keeps duplicated values, and removing
+ * a value only removes one of its copies. Each value is stored once, along
+ * the number of its copies. The values are not kept in any order.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class IntRepository extends HashTables
+        implements FilteredRepository<Integer, IntPredicate> {
+
+    /**
+     * Values on each slot.
+     */
+    private int[]  values;
+
+    /**
+     * Constructs an empty {@code IntRepository}.
+     */
+    public IntRepository() {
+        this(HashTables.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty {@code IntRepository} with space for the specified
+     * number of values.
+     * 
+     * @param capacity
+     *            expected number of values
+     */
+    public IntRepository(final int capacity) {
+        super(capacity);
+
+        values = new int[length()];
+    }
+
+    @Override
+    public final void add(final Integer entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        add(entity.intValue());
+    }
+
+    /**
+     * Adds a value to the repository.
+     * <p>
+     * If the value is already stored, another copy of it is added.
+     * 
+     * @param value
+     *            the value to add
+     */
+    public final void add(final int value) {
+        final int slot;
+
+        // The table may be rebuilt while inserting
+        slot = insert(value);
+        values[slot] = value;
+    }
+
+    /**
+     * Indicates if the specified value is stored.
+     * 
+     * @param value
+     *            the value to check
+     * @return {@code true} if the value is stored, {@code false} otherwise
+     */
+    public final boolean contains(final int value) {
+        return find(value) >= 0;
+    }
+
+    @Override
+    public final Collection<Integer> getAll() {
+        return getCollection(value -> true);
+    }
+
+    @Override
+    public final Collection<Integer> getCollection(final IntPredicate filter) {
+        final Collection<Integer> result;
+
+        result = new LinkedList<Integer>();
+        for (final int value : getValues(filter)) {
+            result.add(value);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Integer getEntity(final IntPredicate filter) {
+        Integer entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        entity = null;
+        for (int i = 0; (i < values.length) && (entity == null); i++) {
+            if ((copies(i) > 0) && filter.test(values[i])) {
+                entity = values[i];
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     * Returns all the values validating the filter.
+     * <p>
+     * Each value appears as many times as it is stored.
+     * 
+     * @param filter
+     *            the filter which discriminates the values to be returned
+     * @return the filtered values
+     */
+    public final int[] getValues(final IntPredicate filter) {
+        final int[] result;
+        int size;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        result = new int[size()];
+        size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if ((copies(i) > 0) && filter.test(values[i])) {
+                Arrays.fill(result, size, size + copies(i), values[i]);
+                size += copies(i);
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    @Override
+    public final void remove(final Integer entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        remove(entity.intValue());
+    }
+
+    /**
+     * Removes a single copy of a value from the repository.
+     * 
+     * @param value
+     *            the value to remove
+     */
+    public final void remove(final int value) {
+        delete(value);
+    }
+
+    @Override
+    public final void removeIf(final IntPredicate filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        for (int i = 0; i < values.length; i++) {
+            if ((copies(i) > 0) && filter.test(values[i])) {
+                clear(i);
+            }
+        }
+    }
+
+    @Override
+    public final Stream<Integer> stream(final IntPredicate filter) {
+        return streamInts(filter).boxed();
+    }
+
+    /**
+     * Returns a primitive stream of the values validating the filter.
+     * <p>
+     * This is lazy, and works directly over the stored values, so the
+     * repository should not be modified while it is being consumed.
+     * 
+     * @param filter
+     *            the filter which discriminates the values to be returned
+     * @return a stream of the filtered values
+     */
+    public final IntStream streamInts(final IntPredicate filter) {
+        final int[] stored;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        stored = values;
+
+        return slots().map(i -> stored[i]).filter(filter);
+    }
+
+    /**
+     * Does nothing, as a value is its own identity.
+     * <p>
+     * Same as with a collection, the stored copies are equal to the received
+     * value, and so replacing them would change nothing.
+     * 
+     * @param entity
+     *            the entity to update
+     */
+    @Override
+    public final void update(final Integer entity) {}
+
+    @Override
+    protected final long bits(final int slot) {
+        return values[slot];
+    }
+
+    @Override
+    protected final void move(final int[] targets, final int length) {
+        final int[] moved;
+
+        moved = new int[length];
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] >= 0) {
+                moved[targets[i]] = values[i];
+            }
+        }
+
+        values = moved;
+    }
+
+}
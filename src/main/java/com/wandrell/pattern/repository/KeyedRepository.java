@@ -0,0 +1,263 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import com.google.common.base.Predicate;
+
+/**
+ * {@link FilteredRepository} identifying its entities through a key.
+ * <p>
+ * The key of each entity is taken with a key extractor, and entities are
+ * stored on a map with these keys. This way finding, updating and removing an
+ * entity takes constant time, and the entity's {@code equals} method is never
+ * called, which is useful when it is expensive. Only the key's {@code equals}
+ * and {@code hashCode} are used.
+ * <p>
+ * As the keys identify the entities, there can't be two entities with the
+ * same key. Adding an entity with an existing key replaces the stored one.
+ * <p>
+ * Updating an entity replaces the stored one with the same key, which keeps
+ * its position. If there is none, the entity is ignored, unless the
+ * repository is in upsert mode, in which case the entity is added.
+ * <p>
+ * Filters work the same as for {@link CollectionRepository}, and the entities
+ * are kept in the order they were added.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class KeyedRepository<K, V>
+        implements FilteredRepository<V, Predicate<V>> {
+
+    /**
+     * The entities stored in the repository, mapped to their keys.
+     */
+    private final Map<K, V>                        data;
+
+    /**
+     * Function returning the key of an entity.
+     */
+    private final Function<? super V, ? extends K> key;
+
+    /**
+     * Flag indicating if updating a missing entity adds it.
+     */
+    private final boolean                          upsert;
+
+    /**
+     * Constructs a {@code KeyedRepository} with the specified key extractor,
+     * which ignores updates for missing entities.
+     * 
+     * @param extractor
+     *            function returning the key of an entity
+     */
+    public KeyedRepository(final Function<? super V, ? extends K> extractor) {
+        this(extractor, false);
+    }
+
+    /**
+     * Constructs a {@code KeyedRepository} with the specified key extractor
+     * and update mode.
+     * 
+     * @param extractor
+     *            function returning the key of an entity
+     * @param upsertMode
+     *            flag indicating if updating a missing entity adds it
+     */
+    public KeyedRepository(final Function<? super V, ? extends K> extractor,
+            final boolean upsertMode) {
+        super();
+
+        key = checkNotNull(extractor, "Received a null pointer as extractor");
+        upsert = upsertMode;
+
+        data = new LinkedHashMap<K, V>();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().put(getKey(entity), entity);
+    }
+
+    /**
+     * Indicates if there is an entity with the specified key.
+     * 
+     * @param id
+     *            the key to check
+     * @return {@code true} if an entity has that key, {@code false} otherwise
+     */
+    public final boolean containsKey(final K id) {
+        return getData().containsKey(id);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return new LinkedList<V>(getData().values());
+    }
+
+    /**
+     * Returns the entity with the specified key.
+     * 
+     * @param id
+     *            the key of the entity
+     * @return the entity with that key, or {@code null} if there is none
+     */
+    public final V getByKey(final K id) {
+        return getData().get(id);
+    }
+
+    @Override
+    public final Collection<V> getCollection(final Predicate<V> filter) {
+        final Collection<V> result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        result = new LinkedList<V>();
+        for (final V entity : getData().values()) {
+            if (filter.apply(entity)) {
+                result.add(entity);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public final V getEntity(final Predicate<V> filter) {
+        V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        entity = null;
+        for (final V stored : getData().values()) {
+            if (filter.apply(stored)) {
+                entity = stored;
+                break;
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     * Indicates if updating a missing entity adds it.
+     * 
+     * @return {@code true} if the repository is in upsert mode, {@code false}
+     *         otherwise
+     */
+    public final boolean isUpsert() {
+        return upsert;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().remove(getKey(entity));
+    }
+
+    /**
+     * Removes the entity with the specified key.
+     * 
+     * @param id
+     *            the key of the entity to remove
+     * @return the removed entity, or {@code null} if there was none
+     */
+    public final V removeByKey(final K id) {
+        return getData().remove(id);
+    }
+
+    @Override
+    public final void removeIf(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        getData().values().removeIf(filter::apply);
+    }
+
+    /**
+     * Returns the number of entities in the repository.
+     * 
+     * @return the number of entities
+     */
+    public final int size() {
+        return getData().size();
+    }
+
+    @Override
+    public final Stream<V> stream(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return getData().values().stream().filter(filter::apply);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final K id;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        id = getKey(entity);
+        if (isUpsert()) {
+            getData().put(id, entity);
+        } else {
+            getData().replace(id, entity);
+        }
+    }
+
+    /**
+     * Returns the entities stored, mapped to their keys.
+     * 
+     * @return the entities stored
+     */
+    private final Map<K, V> getData() {
+        return data;
+    }
+
+    /**
+     * Returns the key of an entity.
+     * 
+     * @param entity
+     *            the entity whose key is returned
+     * @return the entity's key
+     */
+    private final K getKey(final V entity) {
+        return key.apply(entity);
+    }
+
+}
@@ -0,0 +1,684 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * which persists the entities on memory-mapped files.
+ * <p>
+ * The entities are encoded with an {@link EntityCodec}, and stored on an
+ * append-only log, divided into segment files of the same size. Each change is
+ * written as a new record at the end of the log: adding an entity writes a
+ * record with the encoded entity, and removing it writes a record pointing to
+ * the removed one. Updates are a removal followed by an addition. All the
+ * records are checksummed.
+ * <p>
+ * When the repository is opened it scans the log to rebuild the table of live
+ * records. Any record which is incomplete or fails its checksum, as may
+ * happen after a crash, ends the scan of its segment, and the following
+ * records will be written over it.
+ * <p>
+ * Removed entities still take space on the log. When this garbage reaches the
+ * configured ratio of the log, the live records are copied into new
+ * segments, and the old ones are deleted. This compaction may also be started
+ * by calling {@link #compact() compact}. A compaction interrupted by a crash is
+ * either finished or discarded the next time the repository is opened.
+ * <p>
+ * The records are written to the mapped files, and it is left to the system to
+ * write them to the disk. Calling {@link #flush() flush}, or closing the
+ * repository, forces this.
+ * <p>
+ * Removing and updating entities is done through their {@code equals} method,
+ * but only those entities with the same hash code are decoded for this, so the
+ * entities should have a {@code hashCode} consistent with {@code equals}.
+ * Hash codes are written on the log, and reused when it is opened again, so
+ * they should also be the same across runs. Entities whose hash codes come
+ * from enums or object identities, which change between runs, can't be
+ * removed or updated after reopening the repository.
+ * <p>
+ * The filters are instances of the Guava <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html">
+ * Predicate</a> class, same as with
+ * {@link com.wandrell.pattern.repository.CollectionRepository
+ * CollectionRepository}.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class MappedFileRepository<V> extends RecordRepository<V>
+        implements Closeable {
+
+    /**
+     * Default ratio of garbage on the log which starts a compaction.
+     */
+    private static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+    /**
+     * Default size for the segments, in bytes.
+     */
+    private static final int    DEFAULT_SEGMENT_SIZE     = 64 * 1024 * 1024;
+
+    /**
+     * Size of the record headers.
+     * <p>
+     * These contain the length of the record's data, the checksum, the type of
+     * record and the hash code of the entity.
+     */
+    private static final int    HEADER                   = 13;
+
+    /**
+     * Name of the file marking a finished compaction.
+     * <p>
+     * It contains the first segment created by the compaction.
+     */
+    private static final String MARKER                   = "compaction";
+
+    /**
+     * Record type for added entities.
+     */
+    private static final byte   RECORD_ADD               = 1;
+
+    /**
+     * Record type for removed entities.
+     */
+    private static final byte   RECORD_REMOVE            = 2;
+
+    /**
+     * Extension for the segments created by a compaction which is not
+     * finished.
+     */
+    private static final String SUFFIX_COMPACT           = ".compact";
+
+    /**
+     * Extension for the segments.
+     */
+    private static final String SUFFIX_LOG               = ".log";
+
+    /**
+     * Returns the offset on the segment for an address.
+     * 
+     * @param address
+     *            the address
+     * @return the offset for the address
+     */
+    private static final int getOffset(final long address) {
+        return (int) address;
+    }
+
+    /**
+     * Returns the segment id for an address.
+     * 
+     * @param address
+     *            the address
+     * @return the segment for the address
+     */
+    private static final int getSegment(final long address) {
+        return (int) (address >>> 32);
+    }
+
+    /**
+     * Creates an address from its segment and offset.
+     * 
+     * @param segment
+     *            id of the segment
+     * @param offset
+     *            offset in the segment
+     * @return an address pointing to the offset in the segment
+     */
+    private static final long toAddress(final int segment, final int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    /**
+     * Ratio of garbage on the log which starts a compaction.
+     */
+    private final double                               compactionRatio;
+
+    /**
+     * Directory containing the segments.
+     */
+    private final Path                                 directory;
+
+    /**
+     * Bytes taken by removed entities and removal records.
+     */
+    private long                                       garbageBytes;
+
+    /**
+     * Bytes taken by the log.
+     */
+    private long                                       logBytes;
+
+    /**
+     * Position for the next record on the last segment.
+     */
+    private int                                        position;
+
+    /**
+     * The mapped segments, sorted by id.
+     */
+    private final SortedMap<Integer, MappedByteBuffer> segments;
+
+    /**
+     * Size of each segment.
+     */
+    private final int                                  segmentSize;
+
+    /**
+     * Opens a {@code MappedFileRepository} on the specified directory, with
+     * the default segment size and compaction ratio.
+     * 
+     * @param dir
+     *            directory for the segments
+     * @param entityCodec
+     *            codec for the entities
+     */
+    public MappedFileRepository(final Path dir,
+            final EntityCodec<V> entityCodec) {
+        this(dir, entityCodec, DEFAULT_SEGMENT_SIZE,
+                DEFAULT_COMPACTION_RATIO);
+    }
+
+    /**
+     * Opens a {@code MappedFileRepository} on the specified directory.
+     * <p>
+     * If the directory already contains segments, the entities stored on them
+     * are recovered. These segments should have been created with the same
+     * segment size.
+     * <p>
+     * The segment size limits the size of the encoded entities, as each of
+     * them should fit in a single segment.
+     * 
+     * @param dir
+     *            directory for the segments
+     * @param entityCodec
+     *            codec for the entities
+     * @param size
+     *            size of each segment, in bytes
+     * @param ratio
+     *            ratio of garbage on the log which starts a compaction
+     */
+    public MappedFileRepository(final Path dir,
+            final EntityCodec<V> entityCodec, final int size,
+            final double ratio) {
+        super(entityCodec);
+
+        checkNotNull(dir, "Received a null pointer as directory");
+        checkArgument(size > HEADER + 8, "The segment size is too small");
+        checkArgument((ratio > 0) && (ratio <= 1),
+                "The compaction ratio should be in (0, 1]");
+
+        directory = dir;
+        segmentSize = size;
+        compactionRatio = ratio;
+        segments = new TreeMap<Integer, MappedByteBuffer>();
+
+        try {
+            Files.createDirectories(directory);
+            finishCompaction();
+            recover();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces the log to the disk and releases the segments.
+     * <p>
+     * The repository should not be used after this.
+     */
+    @Override
+    public final void close() {
+        flush();
+        segments.clear();
+        getRecords().clear();
+    }
+
+    /**
+     * Copies the live records into new segments, and deletes the old ones.
+     * <p>
+     * After this the log contains no garbage.
+     */
+    public final void compact() {
+        final Map<Integer, MappedByteBuffer> old;
+        final List<Path> compacted;
+        final int first;
+        MappedByteBuffer segment;
+        int offset;
+        long address;
+        int length;
+        ByteBuffer data;
+
+        old = new TreeMap<Integer, MappedByteBuffer>(segments);
+        compacted = new ArrayList<Path>();
+        first = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+
+        try {
+            // Live records are copied to new segments
+            segment = null;
+            offset = segmentSize;
+            for (int i = 0; i < getRecords().size(); i++) {
+                length = getRecords().getLength(i);
+                if (offset + HEADER + length > segmentSize) {
+                    if (segment != null) {
+                        segment.force();
+                    }
+                    compacted.add(getPath(first + compacted.size(),
+                            SUFFIX_COMPACT));
+                    segment = map(compacted.get(compacted.size() - 1));
+                    segments.put(first + compacted.size() - 1, segment);
+                    offset = 0;
+                }
+
+                address = getRecords().getAddress(i);
+                data = read(old, address, length);
+                writeRecord(segment, offset, RECORD_ADD,
+                        getRecords().getHash(i), data);
+                getRecords().setAddress(i,
+                        toAddress(first + compacted.size() - 1, offset));
+                offset += HEADER + length;
+            }
+            if (segment != null) {
+                segment.force();
+            }
+
+            // The old segments are replaced
+            Files.write(directory.resolve(MARKER),
+                    String.valueOf(first).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.SYNC);
+            for (final Integer id : old.keySet()) {
+                segments.remove(id);
+            }
+            finishCompaction();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (compacted.isEmpty()) {
+            position = 0;
+            logBytes = 0;
+        } else {
+            position = offset;
+            logBytes = (long) (compacted.size() - 1) * segmentSize + offset;
+        }
+        garbageBytes = 0;
+    }
+
+    /**
+     * Forces the records written on the segments to the disk.
+     */
+    public final void flush() {
+        for (final MappedByteBuffer segment : segments.values()) {
+            segment.force();
+        }
+    }
+
+    @Override
+    protected final void free(final long address, final int length) {
+        final ByteBuffer data;
+
+        data = ByteBuffer.allocate(8);
+        data.putLong(address);
+        data.flip();
+        append(RECORD_REMOVE, 0, data);
+
+        garbageBytes += 2 * HEADER + length + 8;
+
+        if ((logBytes > segmentSize)
+                && (garbageBytes >= logBytes * compactionRatio)) {
+            compact();
+        }
+    }
+
+    @Override
+    protected final ByteBuffer read(final long address, final int length) {
+        return read(segments, address, length);
+    }
+
+    @Override
+    protected final long store(final byte[] encoded, final int hash) {
+        checkArgument(encoded.length + HEADER <= segmentSize,
+                "The encoded entity is bigger than the segment size");
+
+        return append(RECORD_ADD, hash, ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Writes a record at the end of the log.
+     * 
+     * @param type
+     *            type of record
+     * @param hash
+     *            hash code of the entity
+     * @param data
+     *            data for the record
+     * @return the address of the record
+     */
+    private final long append(final byte type, final int hash,
+            final ByteBuffer data) {
+        final int length;
+        final int id;
+        final int next;
+
+        length = data.remaining();
+
+        try {
+            if (segments.isEmpty()
+                    || (position + HEADER + length > segmentSize)) {
+                if (segments.isEmpty()) {
+                    next = 0;
+                } else {
+                    next = segments.lastKey() + 1;
+                    // The end of the last segment is left unused
+                    logBytes += segmentSize - position;
+                }
+                segments.put(next, map(getPath(next, SUFFIX_LOG)));
+                position = 0;
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        id = segments.lastKey();
+        writeRecord(segments.get(id), position, type, hash, data);
+
+        position += HEADER + length;
+        logBytes += HEADER + length;
+
+        return toAddress(id, position - HEADER - length);
+    }
+
+    /**
+     * Finishes any compaction interrupted after creating its segments, or
+     * discards it if it was interrupted before.
+     * 
+     * @throws IOException
+     *             if the segments can't be handled
+     */
+    private final void finishCompaction() throws IOException {
+        final Path marker;
+        final int first;
+        String name;
+
+        marker = directory.resolve(MARKER);
+        if (Files.exists(marker)) {
+            first = Integer.parseInt(new String(Files.readAllBytes(marker),
+                    StandardCharsets.UTF_8).trim());
+        } else {
+            first = -1;
+        }
+
+        try (final DirectoryStream<Path> files = Files
+                .newDirectoryStream(directory)) {
+            for (final Path file : files) {
+                name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX_COMPACT)) {
+                    if (first < 0) {
+                        Files.delete(file);
+                    } else {
+                        Files.move(file, getPath(getId(file), SUFFIX_LOG));
+                    }
+                } else if (name.endsWith(SUFFIX_LOG) && (getId(file) < first)) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        Files.deleteIfExists(marker);
+    }
+
+    /**
+     * Returns the segment id from its file.
+     * 
+     * @param file
+     *            the segment file
+     * @return the segment id
+     */
+    private final int getId(final Path file) {
+        final String name;
+
+        name = file.getFileName().toString();
+
+        return Integer.parseInt(name.substring(0, name.indexOf('.')));
+    }
+
+    /**
+     * Returns the file for a segment.
+     * 
+     * @param id
+     *            id of the segment
+     * @param suffix
+     *            extension for the file
+     * @return the file for the segment
+     */
+    private final Path getPath(final int id, final String suffix) {
+        return directory.resolve(String.format("%010d%s", id, suffix));
+    }
+
+    /**
+     * Maps a segment file into memory, creating it if needed.
+     * 
+     * @param file
+     *            the segment file
+     * @return the mapped segment
+     * @throws IOException
+     *             if the file can't be mapped
+     */
+    private final MappedByteBuffer map(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * Returns a buffer containing the data of a record.
+     * 
+     * @param source
+     *            segments containing the record
+     * @param address
+     *            address of the record
+     * @param length
+     *            length of the record's data
+     * @return a buffer with the record's data
+     */
+    private final ByteBuffer read(final Map<Integer, MappedByteBuffer> source,
+            final long address, final int length) {
+        final ByteBuffer buffer;
+        final int start;
+
+        start = getOffset(address) + HEADER;
+
+        buffer = source.get(getSegment(address)).duplicate();
+        buffer.limit(start + length);
+        buffer.position(start);
+
+        return buffer.slice();
+    }
+
+    /**
+     * Scans the segments, rebuilding the table of live records.
+     * 
+     * @throws IOException
+     *             if the segments can't be read
+     */
+    private final void recover() throws IOException {
+        final RecordTable added;
+        final Set<Long> removed;
+        final List<Integer> ids;
+        MappedByteBuffer segment;
+        int id;
+        int offset;
+        int length;
+        byte type;
+        boolean valid;
+
+        ids = new ArrayList<Integer>();
+        try (final DirectoryStream<Path> files = Files
+                .newDirectoryStream(directory, "*" + SUFFIX_LOG)) {
+            for (final Path file : files) {
+                ids.add(getId(file));
+            }
+        }
+        ids.sort(null);
+
+        added = new RecordTable();
+        removed = new HashSet<Long>();
+        offset = 0;
+        for (int index = 0; index < ids.size(); index++) {
+            id = ids.get(index);
+            segment = map(getPath(id, SUFFIX_LOG));
+            segments.put(id, segment);
+
+            offset = 0;
+            valid = true;
+            while (valid && (offset + HEADER <= segmentSize)) {
+                length = segment.getInt(offset);
+                type = segment.get(offset + 8);
+                valid = ((type == RECORD_ADD) || (type == RECORD_REMOVE))
+                        && (length >= 0)
+                        && (offset + HEADER + length <= segmentSize)
+                        && (segment.getInt(offset + 4) == checksum(segment,
+                                offset, length));
+
+                if (valid) {
+                    if (type == RECORD_ADD) {
+                        added.add(toAddress(id, offset), length,
+                                segment.getInt(offset + 9));
+                    } else {
+                        removed.add(segment.getLong(offset + HEADER));
+                        garbageBytes += HEADER + length;
+                    }
+                    logBytes += HEADER + length;
+                    offset += HEADER + length;
+                }
+            }
+
+            if (index < ids.size() - 1) {
+                logBytes += segmentSize - offset;
+            }
+        }
+        position = offset;
+
+        // Only the entities which were not removed are kept
+        for (int i = 0; i < added.size(); i++) {
+            if (removed.contains(added.getAddress(i))) {
+                garbageBytes += HEADER + added.getLength(i);
+            } else {
+                getRecords().add(added.getAddress(i), added.getLength(i),
+                        added.getHash(i));
+            }
+        }
+    }
+
+    /**
+     * Calculates the checksum for a record.
+     * <p>
+     * This covers the record type, the hash code and the data.
+     * 
+     * @param segment
+     *            segment containing the record
+     * @param offset
+     *            offset of the record
+     * @param length
+     *            length of the record's data
+     * @return the checksum for the record
+     */
+    private final int checksum(final ByteBuffer segment, final int offset,
+            final int length) {
+        final CRC32 crc;
+        final ByteBuffer covered;
+
+        covered = segment.duplicate();
+        covered.limit(offset + HEADER + length);
+        covered.position(offset + 8);
+
+        crc = new CRC32();
+        crc.update(covered);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes a record on a segment.
+     * 
+     * @param segment
+     *            segment where the record is written
+     * @param offset
+     *            offset of the record
+     * @param type
+     *            type of record
+     * @param hash
+     *            hash code of the entity
+     * @param data
+     *            data for the record
+     */
+    private final void writeRecord(final ByteBuffer segment, final int offset,
+            final byte type, final int hash, final ByteBuffer data) {
+        final ByteBuffer buffer;
+        final int length;
+
+        length = data.remaining();
+
+        buffer = segment.duplicate();
+        buffer.position(offset + 8);
+        buffer.put(type);
+        buffer.putInt(hash);
+        buffer.put(data.duplicate());
+
+        buffer.putInt(offset + 4, checksum(segment, offset, length));
+        buffer.putInt(offset, length);
+    }
+
+}
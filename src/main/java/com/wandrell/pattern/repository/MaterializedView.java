@@ -0,0 +1,73 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+/**
+ * Result of a query kept up to date as the repository changes.
+ * <p>
+ * A view is registered on a repository along a filter. From then on the
+ * repository tells the view about each entity validating that filter which is
+ * added or removed, and the view updates its result accordingly. This way the
+ * result is always ready, instead of being computed on each query.
+ * <p>
+ * Updates are received as the removal of the old entity followed by the
+ * addition of the new one.
+ * <p>
+ * Several common views can be created through {@link MaterializedViews}.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <R>
+ *            the type of the view's result
+ * @see CollectionRepository#registerView(com.google.common.base.Predicate,
+ *      MaterializedView)
+ */
+public interface MaterializedView<V, R> {
+
+    /**
+     * Receives an entity added to the view.
+     * 
+     * @param entity
+     *            the added entity
+     */
+    public void added(final V entity);
+
+    /**
+     * Returns the current result of the view.
+     * 
+     * @return the view's result
+     */
+    public R getResult();
+
+    /**
+     * Receives an entity removed from the view.
+     * 
+     * @param entity
+     *            the removed entity
+     */
+    public void removed(final V entity);
+
+}
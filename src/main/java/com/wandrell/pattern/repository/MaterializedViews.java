@@ -0,0 +1,339 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+/**
+ * Factory for the most common {@link MaterializedView} implementations.
+ * <p>
+ * The results of these views are read-only, and kept up to date as the views
+ * change. So reading them takes constant time.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class MaterializedViews {
+
+    /**
+     * View counting the entities.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     */
+    private static final class CountView<V>
+            implements MaterializedView<V, Long> {
+
+        /**
+         * Number of entities.
+         */
+        private long count;
+
+        /**
+         * Constructs a {@code CountView}.
+         */
+        public CountView() {
+            super();
+        }
+
+        @Override
+        public final void added(final V entity) {
+            count++;
+        }
+
+        @Override
+        public final Long getResult() {
+            return count;
+        }
+
+        @Override
+        public final void removed(final V entity) {
+            count--;
+        }
+
+    }
+
+    /**
+     * View counting the entities in each group.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     * @param <K>
+     *            the type of the group keys
+     */
+    private static final class GroupingCountView<V, K>
+            implements MaterializedView<V, Map<K, Long>> {
+
+        /**
+         * Function returning the group of an entity.
+         */
+        private final Function<? super V, ? extends K> classifier;
+
+        /**
+         * Number of entities in each group.
+         */
+        private final Map<K, Long>                     counts;
+
+        /**
+         * Read-only view of the counts.
+         */
+        private final Map<K, Long>                     result;
+
+        /**
+         * Constructs a {@code GroupingCountView} with the specified
+         * classifier.
+         * 
+         * @param function
+         *            function returning the group of an entity
+         */
+        public GroupingCountView(
+                final Function<? super V, ? extends K> function) {
+            super();
+
+            classifier = function;
+            counts = new HashMap<K, Long>();
+            result = Collections.unmodifiableMap(counts);
+        }
+
+        @Override
+        public final void added(final V entity) {
+            counts.merge(classifier.apply(entity), 1L, Long::sum);
+        }
+
+        @Override
+        public final Map<K, Long> getResult() {
+            return result;
+        }
+
+        @Override
+        public final void removed(final V entity) {
+            // Empty groups are removed
+            counts.computeIfPresent(classifier.apply(entity),
+                    (key, count) -> (count > 1) ? count - 1 : null);
+        }
+
+    }
+
+    /**
+     * View keeping a projection of each entity.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     * @param <P>
+     *            the type of the projections
+     */
+    private static final class ProjectionView<V, P>
+            implements MaterializedView<V, Collection<P>> {
+
+        /**
+         * Function returning the projection of an entity.
+         */
+        private final Function<? super V, ? extends P> projection;
+
+        /**
+         * The projections.
+         */
+        private final Multiset<P>                      projections;
+
+        /**
+         * Read-only view of the projections.
+         */
+        private final Collection<P>                    result;
+
+        /**
+         * Constructs a {@code ProjectionView} with the specified projection.
+         * 
+         * @param function
+         *            function returning the projection of an entity
+         */
+        public ProjectionView(final Function<? super V, ? extends P> function) {
+            super();
+
+            projection = function;
+            projections = HashMultiset.create();
+            result = Collections.unmodifiableCollection(projections);
+        }
+
+        @Override
+        public final void added(final V entity) {
+            projections.add(projection.apply(entity));
+        }
+
+        @Override
+        public final Collection<P> getResult() {
+            return result;
+        }
+
+        @Override
+        public final void removed(final V entity) {
+            projections.remove(projection.apply(entity));
+        }
+
+    }
+
+    /**
+     * View adding a value taken from each entity.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     */
+    private static final class SumView<V>
+            implements MaterializedView<V, Double> {
+
+        /**
+         * Function returning the value of an entity.
+         */
+        private final ToDoubleFunction<? super V> mapper;
+
+        /**
+         * Sum of the values.
+         */
+        private double                            sum;
+
+        /**
+         * Constructs a {@code SumView} with the specified mapper.
+         * 
+         * @param function
+         *            function returning the value of an entity
+         */
+        public SumView(final ToDoubleFunction<? super V> function) {
+            super();
+
+            mapper = function;
+        }
+
+        @Override
+        public final void added(final V entity) {
+            sum += mapper.applyAsDouble(entity);
+        }
+
+        @Override
+        public final Double getResult() {
+            return sum;
+        }
+
+        @Override
+        public final void removed(final V entity) {
+            sum -= mapper.applyAsDouble(entity);
+        }
+
+    }
+
+    /**
+     * Creates a view counting the entities.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     * @return a view counting the entities
+     */
+    public static final <V> MaterializedView<V, Long> count() {
+        return new CountView<V>();
+    }
+
+    /**
+     * Creates a view containing the entities.
+     * <p>
+     * The entities are kept on a multiset, so the view takes no order into
+     * account.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     * @return a view containing the entities
+     */
+    public static final <V> MaterializedView<V, Collection<V>> entities() {
+        return new ProjectionView<V, V>(Function.identity());
+    }
+
+    /**
+     * Creates a view counting the entities in each group.
+     * <p>
+     * Groups with no entities are removed from the result.
+     * 
+     * @param classifier
+     *            function returning the group of an entity
+     * @param <V>
+     *            the type stored on the repository
+     * @param <K>
+     *            the type of the group keys
+     * @return a view counting the entities in each group
+     */
+    public static final <V, K> MaterializedView<V, Map<K, Long>> groupingCount(
+            final Function<? super V, ? extends K> classifier) {
+        checkNotNull(classifier, "Received a null pointer as classifier");
+
+        return new GroupingCountView<V, K>(classifier);
+    }
+
+    /**
+     * Creates a view keeping a projection of each entity.
+     * 
+     * @param projection
+     *            function returning the projection of an entity
+     * @param <V>
+     *            the type stored on the repository
+     * @param <P>
+     *            the type of the projections
+     * @return a view with the projections of the entities
+     */
+    public static final <V, P> MaterializedView<V, Collection<P>> projection(
+            final Function<? super V, ? extends P> projection) {
+        checkNotNull(projection, "Received a null pointer as projection");
+
+        return new ProjectionView<V, P>(projection);
+    }
+
+    /**
+     * Creates a view adding a value taken from each entity.
+     * 
+     * @param mapper
+     *            function returning the value of an entity
+     * @param <V>
+     *            the type stored on the repository
+     * @return a view with the sum of the values
+     */
+    public static final <V> MaterializedView<V, Double> sum(
+            final ToDoubleFunction<? super V> mapper) {
+        checkNotNull(mapper, "Received a null pointer as mapper");
+
+        return new SumView<V>(mapper);
+    }
+
+    /**
+     * Private constructor to avoid initialization.
+     */
+    private MaterializedViews() {
+        super();
+    }
+
+}
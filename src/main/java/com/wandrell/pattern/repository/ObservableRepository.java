@@ -0,0 +1,581 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorator for
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * which publishes the changes made on it.
+ * <p>
+ * Each add, update or removal made through this repository creates a
+ * {@link RepositoryEvent}, with a sequence number one higher than the previous
+ * one. These events can be consumed in two ways.
+ * <p>
+ * The first is registering a {@link RepositoryListener}, which will be
+ * notified of each change after it is made. Listeners are notified of the
+ * events in the order of their sequence numbers, one event at a time, and
+ * without holding the lock used for the changes and reads. So a slow listener
+ * does not block the readers, and it may read or change the repository, even
+ * from another thread. The listeners are notified by the thread which made
+ * the change, unless another one is already notifying them, in which case
+ * that thread will also notify this change. An exception thrown by a
+ * listener is logged, and does not keep the other listeners from being
+ * notified.
+ * <p>
+ * The second is reading them with {@link #getEvents(long, int) getEvents}.
+ * The latest events are kept in a bounded buffer, and consumers read them at
+ * their own pace, starting after the last sequence number they handled. So a
+ * slow consumer never makes the repository keep more events than the buffer
+ * allows, and a consumer which stops can resume later. Only if it falls
+ * behind by more than the buffer size it will have to read the whole
+ * repository again, which is done with {@link #getSnapshot() getSnapshot}.
+ * <p>
+ * Updates are published for every entity received, as the wrapped repository
+ * can't tell if the entity was actually stored. Removals are only published
+ * for the entities which were stored. To find them the repository receives a
+ * function which builds a filter matching only the entities equal to any of
+ * those received, and the entities chosen by it are queried before removing
+ * them. This takes a single query for each removal, even for bulk ones, and
+ * never requires copying all the stored entities. Removals by filter are
+ * published for the entities found by that filter just before removing them.
+ * <p>
+ * All the changes and reads are made while holding a lock, so the events are
+ * created in the same order as the changes are made, and reads never see a
+ * change whose event was not added to the buffer yet.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type being used to filter the entities
+ */
+public final class ObservableRepository<V, F>
+        implements FilteredRepository<V, F> {
+
+    /**
+     * The logger used for logging exceptions thrown by the listeners.
+     */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ObservableRepository.class);
+
+    /**
+     * Returns the logger being used to log exceptions thrown by listeners.
+     * 
+     * @return the logger being used
+     */
+    private static final Logger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * The latest events, indexed by their sequence number.
+     */
+    private final Object[]                    buffer;
+
+    /**
+     * Flag indicating if a thread is notifying the listeners.
+     */
+    private boolean                           dispatching;
+
+    /**
+     * Listeners to notify.
+     */
+    private final List<RepositoryListener<V>> listeners;
+
+    /**
+     * Lock for the changes.
+     */
+    private final Object                      lock;
+
+    /**
+     * Builds the filters matching the entities equal to any of those
+     * received.
+     */
+    private final Function<? super Collection<? extends V>, ? extends F> matcher;
+
+    /**
+     * The wrapped repository.
+     */
+    private final FilteredRepository<V, F>    repository;
+
+    /**
+     * Sequence number of the last event.
+     */
+    private long                              sequence;
+
+    /**
+     * Events waiting to be sent to the listeners.
+     */
+    private final Queue<RepositoryEvent<V>>   undelivered;
+
+    /**
+     * Constructs an {@code ObservableRepository} wrapping the specified
+     * repository, and keeping the specified number of events.
+     * 
+     * @param wrapped
+     *            the repository to observe
+     * @param retained
+     *            number of events kept for consumers
+     * @param equalTo
+     *            builds a filter matching only the entities equal to any of
+     *            those received
+     */
+    public ObservableRepository(final FilteredRepository<V, F> wrapped,
+            final int retained,
+            final Function<? super Collection<? extends V>, ? extends F> equalTo) {
+        super();
+
+        checkNotNull(wrapped, "Received a null pointer as repository");
+        checkArgument(retained > 0,
+                "The number of retained events should be positive");
+        checkNotNull(equalTo, "Received a null pointer as matcher");
+
+        repository = wrapped;
+        matcher = equalTo;
+        buffer = new Object[retained];
+        listeners = new CopyOnWriteArrayList<RepositoryListener<V>>();
+        undelivered = new ArrayDeque<RepositoryEvent<V>>();
+        lock = new Object();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        synchronized (lock) {
+            getRepository().add(entity);
+            publish(RepositoryEvent.Type.ADD, entity);
+        }
+        dispatch();
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        synchronized (lock) {
+            getRepository().addAll(entities);
+            publishAll(RepositoryEvent.Type.ADD, entities);
+        }
+        dispatch();
+    }
+
+    /**
+     * Registers a listener, which will be notified of all the following
+     * changes.
+     * 
+     * @param listener
+     *            the listener to register
+     */
+    public final void addListener(final RepositoryListener<V> listener) {
+        checkNotNull(listener, "Received a null pointer as listener");
+
+        listeners.add(listener);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        synchronized (lock) {
+            return getRepository().getAll();
+        }
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter) {
+        synchronized (lock) {
+            return getRepository().getCollection(filter);
+        }
+    }
+
+    @Override
+    public final V getEntity(final F filter) {
+        synchronized (lock) {
+            return getRepository().getEntity(filter);
+        }
+    }
+
+    /**
+     * Returns the events following the specified sequence number.
+     * <p>
+     * To read all the retained events use the sequence number before
+     * {@link #getFirstSequence() getFirstSequence}. If the next event was
+     * already discarded from the buffer an exception is thrown, as the
+     * consumer can't know what changed.
+     * 
+     * @param after
+     *            sequence number of the last event handled
+     * @param max
+     *            maximum number of events to return
+     * @return the events following the sequence number
+     * @throws IllegalStateException
+     *             if the next event is no longer retained
+     */
+    public final List<RepositoryEvent<V>> getEvents(final long after,
+            final int max) {
+        final List<RepositoryEvent<V>> events;
+
+        checkArgument(max >= 0, "The maximum should not be negative");
+
+        synchronized (lock) {
+            if (after + 1 < getFirstSequence()) {
+                throw new IllegalStateException(String.format(
+                        "The event %d is no longer retained", after + 1));
+            }
+
+            events = new ArrayList<RepositoryEvent<V>>();
+            for (long i = after + 1; (i <= sequence)
+                    && (events.size() < max); i++) {
+                events.add(getEvent(i));
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Returns the events following the specified sequence number, waiting
+     * for them if there are none yet.
+     * <p>
+     * If no event happens before the timeout an empty list is returned.
+     * 
+     * @param after
+     *            sequence number of the last event handled
+     * @param max
+     *            maximum number of events to return
+     * @param timeout
+     *            maximum time to wait
+     * @param unit
+     *            unit for the timeout
+     * @return the events following the sequence number
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     * @throws IllegalStateException
+     *             if the next event is no longer retained
+     */
+    public final List<RepositoryEvent<V>> getEvents(final long after,
+            final int max, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final long deadline;
+        long remaining;
+
+        deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (lock) {
+            remaining = unit.toNanos(timeout);
+            while ((sequence <= after) && (remaining > 0)) {
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+
+            return getEvents(after, max);
+        }
+    }
+
+    /**
+     * Returns the sequence number of the oldest event retained.
+     * <p>
+     * If there are no events yet this is the sequence number the first event
+     * will have.
+     * 
+     * @return the sequence number of the oldest event retained
+     */
+    public final long getFirstSequence() {
+        synchronized (lock) {
+            return Math.max(1, sequence - buffer.length + 1);
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last event.
+     * <p>
+     * A consumer which reads the whole repository should start reading the
+     * events after the sequence number taken with that read, which is what
+     * {@link #getSnapshot() getSnapshot} returns.
+     * 
+     * @return the sequence number of the last event, or {@code 0} if there
+     *         are none
+     */
+    public final long getLastSequence() {
+        synchronized (lock) {
+            return sequence;
+        }
+    }
+
+    /**
+     * Returns all the entities, along the sequence number of the last change
+     * made before reading them.
+     * <p>
+     * Both are taken while holding the lock, so no change can happen between
+     * them.
+     * 
+     * @return all the entities and the sequence number of the last change
+     */
+    public final RepositorySnapshot<V> getSnapshot() {
+        synchronized (lock) {
+            return new RepositorySnapshot<V>(getRepository().getAll(),
+                    sequence);
+        }
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        synchronized (lock) {
+            if (!findStored(Collections.singletonList(entity)).isEmpty()) {
+                getRepository().remove(entity);
+                publish(RepositoryEvent.Type.REMOVE, entity);
+            }
+        }
+        dispatch();
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        final Collection<V> removed;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        synchronized (lock) {
+            removed = findStored(entities);
+            getRepository().removeAll(removed);
+            publishAll(RepositoryEvent.Type.REMOVE, removed);
+        }
+        dispatch();
+    }
+
+    @Override
+    public final void removeIf(final F filter) {
+        final Collection<V> removed;
+
+        synchronized (lock) {
+            removed = getRepository().getCollection(filter);
+            getRepository().removeIf(filter);
+            publishAll(RepositoryEvent.Type.REMOVE, removed);
+        }
+        dispatch();
+    }
+
+    /**
+     * Unregisters a listener.
+     * 
+     * @param listener
+     *            the listener to unregister
+     */
+    public final void removeListener(final RepositoryListener<V> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        synchronized (lock) {
+            getRepository().update(entity);
+            publish(RepositoryEvent.Type.UPDATE, entity);
+        }
+        dispatch();
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        synchronized (lock) {
+            getRepository().updateAll(entities);
+            publishAll(RepositoryEvent.Type.UPDATE, entities);
+        }
+        dispatch();
+    }
+
+    /**
+     * Sends the queued events to the listeners.
+     * <p>
+     * This should be called after releasing the lock. If another thread is
+     * already sending the events this returns at once, as that thread will
+     * also send the new ones. Otherwise the events are sent, in order, until
+     * none is left.
+     */
+    private final void dispatch() {
+        RepositoryEvent<V> event;
+
+        synchronized (lock) {
+            if (dispatching || undelivered.isEmpty()) {
+                return;
+            }
+            dispatching = true;
+        }
+
+        event = null;
+        try {
+            do {
+                synchronized (lock) {
+                    event = undelivered.poll();
+                    if (event == null) {
+                        dispatching = false;
+                    }
+                }
+
+                if (event != null) {
+                    for (final RepositoryListener<V> listener : listeners) {
+                        try {
+                            listener.onEvent(event);
+                        } catch (final RuntimeException e) {
+                            getLogger().error(e.getMessage(), e);
+                        }
+                    }
+                }
+            } while (event != null);
+        } finally {
+            if (event != null) {
+                // An error stopped the loop
+                synchronized (lock) {
+                    dispatching = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the retained event with the specified sequence number.
+     * 
+     * @param number
+     *            sequence number of the event
+     * @return the event with the sequence number
+     */
+    @SuppressWarnings("unchecked")
+    private final RepositoryEvent<V> getEvent(final long number) {
+        return (RepositoryEvent<V>) buffer[(int) (number % buffer.length)];
+    }
+
+    /**
+     * Returns the wrapped repository.
+     * 
+     * @return the wrapped repository
+     */
+    private final FilteredRepository<V, F> getRepository() {
+        return repository;
+    }
+
+    /**
+     * Finds which of the received entities are stored.
+     * <p>
+     * Each received entity is matched with a single stored one, so an entity
+     * received twice is only returned if it is stored twice.
+     * <p>
+     * This should be called while holding the lock.
+     * 
+     * @param entities
+     *            the entities to look for
+     * @return the received entities which are stored
+     */
+    private final Collection<V> findStored(
+            final Collection<? extends V> entities) {
+        final Map<V, Integer> stored;
+        final Collection<V> found;
+        Integer count;
+
+        stored = new HashMap<V, Integer>();
+        if (!entities.isEmpty()) {
+            for (final V entity : getRepository()
+                    .getCollection(matcher.apply(entities))) {
+                stored.merge(entity, 1, Integer::sum);
+            }
+        }
+
+        found = new ArrayList<V>();
+        for (final V entity : entities) {
+            count = stored.get(entity);
+            if (count != null) {
+                if (count == 1) {
+                    stored.remove(entity);
+                } else {
+                    stored.put(entity, count - 1);
+                }
+                found.add(entity);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Publishes a change.
+     * <p>
+     * The event is stored on the buffer, and queued for the listeners, which
+     * are notified later by {@link #dispatch() dispatch}.
+     * <p>
+     * This should be called while holding the lock.
+     * 
+     * @param type
+     *            type of change
+     * @param entity
+     *            the changed entity
+     */
+    private final void publish(final RepositoryEvent.Type type,
+            final V entity) {
+        final RepositoryEvent<V> event;
+
+        sequence++;
+        event = new RepositoryEvent<V>(sequence, type, entity);
+        buffer[(int) (sequence % buffer.length)] = event;
+
+        if (!listeners.isEmpty()) {
+            undelivered.add(event);
+        }
+
+        lock.notifyAll();
+    }
+
+    /**
+     * Publishes a change for each of the received entities.
+     * <p>
+     * This should be called while holding the lock.
+     * 
+     * @param type
+     *            type of change
+     * @param entities
+     *            the changed entities
+     */
+    private final void publishAll(final RepositoryEvent.Type type,
+            final Collection<? extends V> entities) {
+        for (final V entity : entities) {
+            publish(type, entity);
+        }
+    }
+
+}
@@ -0,0 +1,330 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * which stores the entities outside of the Java heap.
+ * <p>
+ * The entities are encoded with an {@link EntityCodec}, and the resulting
+ * bytes are stored on direct {@code ByteBuffer} segments. On the heap there is
+ * only a table with the address, length and hash code of each record, kept on
+ * primitive arrays. This way the garbage collector does not need to handle
+ * the stored entities, which makes this repository useful for keeping big
+ * amounts of them.
+ * <p>
+ * The space freed when removing an entity is reused by later entities. New
+ * records take the smallest free block where they fit, and any space left
+ * from that block stays free. Freed blocks are merged with the free blocks
+ * next to them, and those at the end of the last segment are returned to
+ * it, so removing entities does not leave the space split into pieces too
+ * small for new records.
+ * <p>
+ * Entities are decoded each time they are needed, so each query returns new
+ * instances. Removing and updating entities is done through their
+ * {@code equals} method, but only those entities with the same hash code are
+ * decoded for this, so the entities should have a {@code hashCode} consistent
+ * with {@code equals}.
+ * <p>
+ * As the records are not kept in any order, neither are the entities
+ * returned by the repository.
+ * <p>
+ * The filters are instances of the Guava <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html">
+ * Predicate</a> class, same as with
+ * {@link com.wandrell.pattern.repository.CollectionRepository
+ * CollectionRepository}.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class OffHeapRepository<V> extends RecordRepository<V> {
+
+    /**
+     * Default size for the segments, in bytes.
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Returns the offset on the segment for an address.
+     * 
+     * @param address
+     *            the address
+     * @return the offset for the address
+     */
+    private static final int getOffset(final long address) {
+        return (int) address;
+    }
+
+    /**
+     * Returns the segment index for an address.
+     * 
+     * @param address
+     *            the address
+     * @return the segment for the address
+     */
+    private static final int getSegment(final long address) {
+        return (int) (address >>> 32);
+    }
+
+    /**
+     * Creates an address from its segment and offset.
+     * 
+     * @param segment
+     *            index of the segment
+     * @param offset
+     *            offset in the segment
+     * @return an address pointing to the offset in the segment
+     */
+    private static final long toAddress(final int segment, final int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    /**
+     * Addresses of the free blocks, grouped by length.
+     */
+    private final TreeMap<Integer, NavigableSet<Long>> free;
+
+    /**
+     * Lengths of the free blocks, mapped to their addresses.
+     */
+    private final TreeMap<Long, Integer>               freeAddresses;
+
+    /**
+     * Memory segments.
+     */
+    private final List<ByteBuffer>                     segments;
+
+    /**
+     * Size of each segment.
+     */
+    private final int                                  segmentSize;
+
+    /**
+     * Constructs an {@code OffHeapRepository} with the specified codec and the
+     * default segment size.
+     * 
+     * @param entityCodec
+     *            codec for the entities
+     */
+    public OffHeapRepository(final EntityCodec<V> entityCodec) {
+        this(entityCodec, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs an {@code OffHeapRepository} with the specified codec and
+     * segment size.
+     * <p>
+     * The segment size limits the size of the encoded entities, as each of
+     * them should fit in a single segment.
+     * 
+     * @param entityCodec
+     *            codec for the entities
+     * @param size
+     *            size of each segment, in bytes
+     */
+    public OffHeapRepository(final EntityCodec<V> entityCodec,
+            final int size) {
+        super(entityCodec);
+
+        checkArgument(size > 0, "The segment size should be positive");
+
+        segmentSize = size;
+        segments = new ArrayList<ByteBuffer>();
+        free = new TreeMap<Integer, NavigableSet<Long>>();
+        freeAddresses = new TreeMap<Long, Integer>();
+    }
+
+    /**
+     * Returns the number of memory segments allocated.
+     * 
+     * @return the number of segments
+     */
+    public final int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    protected final void free(final long address, final int length) {
+        final Entry<Long, Integer> previous;
+        final Integer next;
+        final ByteBuffer last;
+        long start;
+        int merged;
+
+        if (length > 0) {
+            start = address;
+            merged = length;
+
+            // Blocks on different segments are never contiguous
+            previous = freeAddresses.lowerEntry(address);
+            if ((previous != null)
+                    && ((previous.getKey() + previous.getValue()) == address)) {
+                unlink(previous.getKey(), previous.getValue());
+                start = previous.getKey();
+                merged += previous.getValue();
+            }
+
+            next = freeAddresses.get(address + length);
+            if (next != null) {
+                unlink(address + length, next);
+                merged += next;
+            }
+
+            last = segments.get(segments.size() - 1);
+            if ((getSegment(start) == (segments.size() - 1))
+                    && ((getOffset(start) + merged) == last.position())) {
+                last.position(getOffset(start));
+            } else {
+                link(start, merged);
+            }
+        }
+    }
+
+    @Override
+    protected final ByteBuffer read(final long address, final int length) {
+        final ByteBuffer buffer;
+
+        buffer = segments.get(getSegment(address)).duplicate();
+        buffer.limit(getOffset(address) + length);
+        buffer.position(getOffset(address));
+
+        return buffer.slice();
+    }
+
+    @Override
+    protected final long store(final byte[] encoded, final int hash) {
+        final long address;
+        final ByteBuffer buffer;
+
+        checkArgument(encoded.length <= segmentSize,
+                "The encoded entity is bigger than the segment size");
+
+        address = allocate(encoded.length);
+
+        buffer = segments.get(getSegment(address)).duplicate();
+        buffer.position(getOffset(address));
+        buffer.put(encoded);
+
+        return address;
+    }
+
+    /**
+     * Reserves space for a record.
+     * <p>
+     * This will take the smallest free block which can contain the record, or
+     * a new block at the end of the last segment if there is none.
+     * 
+     * @param length
+     *            length of the record
+     * @return the address for the record
+     */
+    private final long allocate(final int length) {
+        final Entry<Integer, NavigableSet<Long>> block;
+        final long address;
+        ByteBuffer segment;
+
+        block = free.ceilingEntry(length);
+        if (block == null) {
+            if (segments.isEmpty()) {
+                segment = null;
+            } else {
+                segment = segments.get(segments.size() - 1);
+            }
+
+            if ((segment == null) || (segment.remaining() < length)) {
+                segments.add(ByteBuffer.allocateDirect(segmentSize));
+                if (segment != null) {
+                    // The end of the previous segment is kept as free space
+                    free(toAddress(segments.size() - 2, segment.position()),
+                            segment.remaining());
+                }
+                segment = segments.get(segments.size() - 1);
+            }
+
+            address = toAddress(segments.size() - 1, segment.position());
+            segment.position(segment.position() + length);
+        } else {
+            address = block.getValue().first();
+            unlink(address, block.getKey());
+
+            free(address + length, block.getKey() - length);
+        }
+
+        return address;
+    }
+
+    /**
+     * Registers a free block.
+     * 
+     * @param address
+     *            address of the block
+     * @param length
+     *            length of the block
+     */
+    private final void link(final long address, final int length) {
+        NavigableSet<Long> blocks;
+
+        blocks = free.get(length);
+        if (blocks == null) {
+            blocks = new TreeSet<Long>();
+            free.put(length, blocks);
+        }
+        blocks.add(address);
+        freeAddresses.put(address, length);
+    }
+
+    /**
+     * Unregisters a free block.
+     * 
+     * @param address
+     *            address of the block
+     * @param length
+     *            length of the block
+     */
+    private final void unlink(final long address, final int length) {
+        final NavigableSet<Long> blocks;
+
+        blocks = free.get(length);
+        blocks.remove(address);
+        if (blocks.isEmpty()) {
+            free.remove(length);
+        }
+        freeAddresses.remove(address);
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Utilities for acquiring pages of sorted entities.
+ * <p>
+ * Pages are built with a bounded heap, which keeps only the entities which
+ * may end inside the page. So getting the first entries of a big subset
+ * requires neither storing nor sorting the whole subset.
+ *
+ * @author Bernardo Martínez Garrido
+ */
+final class Paging {
+
+    /**
+     * Returns a page from the received entities, in the order defined by the
+     * comparator.
+     * <p>
+     * The entities are read only once, and at most {@code offset + limit} of
+     * them are kept at the same time.
+     *
+     * @param entities
+     *            the entities to page
+     * @param offset
+     *            number of entities to skip
+     * @param limit
+     *            maximum number of entities to return
+     * @param comparator
+     *            comparator defining the order of the entities
+     * @param <V>
+     *            the type of the entities
+     * @return the entities in the page, sorted
+     */
+    public static final <V> List<V> getPage(final Iterator<V> entities,
+            final int offset, final int limit,
+            final Comparator<? super V> comparator) {
+        final PriorityQueue<V> heap;
+        final List<V> sorted;
+        final int bound;
+        V entity;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+        checkNotNull(comparator, "Received a null pointer as comparator");
+        checkArgument(offset >= 0, "The offset should not be negative");
+        checkArgument(limit >= 0, "The limit should not be negative");
+
+        bound = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+
+        if (limit == 0) {
+            return new ArrayList<V>();
+        }
+
+        // The heap head is the greatest entity kept
+        heap = new PriorityQueue<V>(Math.min(bound, 16),
+                Collections.reverseOrder(comparator));
+        while (entities.hasNext()) {
+            entity = entities.next();
+            if (heap.size() < bound) {
+                heap.add(entity);
+            } else if (comparator.compare(entity, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entity);
+            }
+        }
+
+        sorted = new ArrayList<V>(heap);
+        Collections.sort(sorted, comparator);
+
+        if (offset >= sorted.size()) {
+            sorted.clear();
+        } else if (offset > 0) {
+            sorted.subList(0, offset).clear();
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Private constructor to avoid initialization.
+     */
+    private Paging() {
+        super();
+    }
+
+}
@@ -0,0 +1,254 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Fork/join task filtering an array of entities in parallel.
+ * <p>
+ * The array is divided into chunks of the same size, and each of them is
+ * filtered on its own. The entities found on each chunk are stored in a slot
+ * reserved for that chunk, so in the end they can be joined keeping the
+ * original order, without merging intermediate collections.
+ * <p>
+ * If the order is not required, each chunk will instead add its entities to
+ * the shared result as soon as it is finished.
+ *
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being filtered
+ */
+final class ParallelFilterTask<V> extends RecursiveAction {
+
+    /**
+     * Minimum number of entities on each chunk.
+     */
+    private static final int  MIN_CHUNK        = 1024;
+
+    /**
+     * Number of chunks created for each thread on the pool.
+     * <p>
+     * Having more chunks than threads allows balancing the work when some
+     * chunks take longer than others.
+     */
+    private static final int  CHUNKS_BY_THREAD = 4;
+
+    /**
+     * Serialization ID.
+     */
+    private static final long serialVersionUID = 2683546154447245232L;
+
+    /**
+     * Filters the received entities in parallel, using the specified pool.
+     *
+     * @param pool
+     *            the pool where the filtering tasks will be run
+     * @param entities
+     *            the entities to filter
+     * @param filter
+     *            the filter to apply
+     * @param ordered
+     *            flag indicating if the original order should be kept
+     * @param <V>
+     *            the type of the entities being filtered
+     * @return the entities which validate the filter
+     */
+    public static final <V> Collection<V> filter(final ForkJoinPool pool,
+            final Object[] entities, final Predicate<V> filter,
+            final boolean ordered) {
+        final int chunkSize;
+        final Object[] chunks;
+        final Collection<V> result;
+        final ParallelFilterTask<V> task;
+
+        chunkSize = Math.max(MIN_CHUNK, entities.length
+                / (pool.getParallelism() * CHUNKS_BY_THREAD) + 1);
+        result = new ArrayList<V>();
+
+        if (ordered) {
+            chunks = new Object[(entities.length / chunkSize) + 1];
+        } else {
+            chunks = null;
+        }
+
+        task = new ParallelFilterTask<V>(entities, 0, entities.length,
+                chunkSize, filter, chunks, result);
+        pool.invoke(task);
+
+        if (ordered) {
+            for (final Object chunk : chunks) {
+                if (chunk != null) {
+                    result.addAll(castChunk(chunk));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Casts a chunk's result back to its actual type.
+     *
+     * @param chunk
+     *            the chunk to cast
+     * @param <V>
+     *            the type of the entities being filtered
+     * @return the chunk's entities
+     */
+    @SuppressWarnings("unchecked")
+    private static final <V> Collection<V> castChunk(final Object chunk) {
+        return (Collection<V>) chunk;
+    }
+
+    /**
+     * Size of each chunk.
+     */
+    private final int           chunkSize;
+
+    /**
+     * Slots for the result of each chunk.
+     * <p>
+     * If it is {@code null} then the order is not kept.
+     */
+    private final Object[]      chunks;
+
+    /**
+     * The entities being filtered.
+     */
+    private final Object[]      entities;
+
+    /**
+     * The filter to apply.
+     */
+    private final Predicate<V>  filter;
+
+    /**
+     * Index of the first entity to filter.
+     */
+    private final int           from;
+
+    /**
+     * Collection where unordered results are stored.
+     */
+    private final Collection<V> result;
+
+    /**
+     * Index after the last entity to filter.
+     */
+    private final int           to;
+
+    /**
+     * Constructs a task for filtering the specified range of entities.
+     *
+     * @param data
+     *            the entities being filtered
+     * @param start
+     *            index of the first entity to filter
+     * @param end
+     *            index after the last entity to filter
+     * @param size
+     *            size of each chunk
+     * @param predicate
+     *            the filter to apply
+     * @param slots
+     *            slots for the result of each chunk
+     * @param unordered
+     *            collection where unordered results are stored
+     */
+    private ParallelFilterTask(final Object[] data, final int start,
+            final int end, final int size, final Predicate<V> predicate,
+            final Object[] slots, final Collection<V> unordered) {
+        super();
+
+        entities = data;
+        from = start;
+        to = end;
+        chunkSize = size;
+        filter = predicate;
+        chunks = slots;
+        result = unordered;
+    }
+
+    @Override
+    protected final void compute() {
+        final int middle;
+
+        if ((to - from) <= chunkSize) {
+            filterChunk();
+        } else {
+            // The split point is kept aligned with the chunks
+            middle = from
+                    + Math.max(1, ((to - from) / chunkSize) / 2) * chunkSize;
+            invokeAll(split(from, middle), split(middle, to));
+        }
+    }
+
+    /**
+     * Filters the range of entities assigned to this task.
+     */
+    @SuppressWarnings("unchecked")
+    private final void filterChunk() {
+        final List<V> found;
+        V entity;
+
+        found = new ArrayList<V>();
+        for (int i = from; i < to; i++) {
+            entity = (V) entities[i];
+            if (filter.apply(entity)) {
+                found.add(entity);
+            }
+        }
+
+        if (chunks == null) {
+            synchronized (result) {
+                result.addAll(found);
+            }
+        } else {
+            chunks[from / chunkSize] = found;
+        }
+    }
+
+    /**
+     * Creates a task for a section of the range assigned to this one.
+     *
+     * @param start
+     *            index of the first entity to filter
+     * @param end
+     *            index after the last entity to filter
+     * @return a task for the specified range
+     */
+    private final ParallelFilterTask<V> split(final int start, final int end) {
+        return new ParallelFilterTask<V>(entities, start, end, chunkSize,
+                filter, chunks, result);
+    }
+
+}
@@ -0,0 +1,272 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+
+/**
+ * Query string parsed once, so it can be executed many times with different
+ * parameters.
+ * <p>
+ * Parameters are marked on the query with a colon followed by their name,
+ * such as {@code :name}. When parsing the query each distinct name is given a
+ * slot, and from then on the parameters are kept on an array indexed by
+ * those slots, instead of a map, through the {@code bind} methods.
+ * <p>
+ * Colons inside quoted literals, and double colons, are not taken as
+ * parameters.
+ * <p>
+ * The query is also turned into a positional statement, where each
+ * parameter is replaced by a question mark, as expected by APIs such as JDBC.
+ * The arguments for it, which may repeat parameters, are created from the
+ * bound ones with {@link #getArguments(Object[]) getArguments}.
+ * <p>
+ * Instances are immutable, so they can be shared, for example through a
+ * {@link PreparedQueryCache}.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class PreparedQuery {
+
+    /**
+     * Parses a query string.
+     * 
+     * @param query
+     *            the query to parse
+     * @return the parsed query
+     */
+    public static final PreparedQuery prepare(final String query) {
+        checkNotNull(query, "Received a null pointer as query");
+
+        return new PreparedQuery(query);
+    }
+
+    /**
+     * Slot of each parameter, mapped to the parameter's name.
+     */
+    private final Map<String, Integer> indexes;
+
+    /**
+     * Slot for each parameter occurrence on the query, in order.
+     */
+    private final int[]                occurrences;
+
+    /**
+     * Names of the parameters, in the order of their slots.
+     */
+    private final List<String>         parameters;
+
+    /**
+     * The original query string.
+     */
+    private final String               queryStr;
+
+    /**
+     * The query with the parameters replaced by question marks.
+     */
+    private final String               statement;
+
+    /**
+     * Constructs a {@code PreparedQuery} by parsing the specified query.
+     * 
+     * @param query
+     *            the query to parse
+     */
+    private PreparedQuery(final String query) {
+        super();
+
+        final Map<String, Integer> slots;
+        final List<Integer> found;
+        final StringBuilder parsed;
+        boolean quoted;
+        char current;
+        int end;
+        int i;
+        String name;
+
+        slots = new LinkedHashMap<String, Integer>();
+        found = new ArrayList<Integer>();
+        parsed = new StringBuilder(query.length());
+        quoted = false;
+        i = 0;
+        while (i < query.length()) {
+            current = query.charAt(i);
+            if (current == '\'') {
+                quoted = !quoted;
+            }
+
+            if (!quoted && (current == ':') && (i + 1 < query.length())
+                    && Character
+                            .isJavaIdentifierStart(query.charAt(i + 1))
+                    && ((i == 0) || (query.charAt(i - 1) != ':'))) {
+                end = i + 2;
+                while ((end < query.length())
+                        && Character.isJavaIdentifierPart(query.charAt(end))) {
+                    end++;
+                }
+
+                name = query.substring(i + 1, end);
+                if (!slots.containsKey(name)) {
+                    slots.put(name, slots.size());
+                }
+                found.add(slots.get(name));
+                parsed.append('?');
+                i = end;
+            } else {
+                parsed.append(current);
+                i++;
+            }
+        }
+
+        queryStr = query;
+        statement = parsed.toString();
+        indexes = ImmutableMap.copyOf(slots);
+        parameters = ImmutableList.copyOf(slots.keySet());
+        occurrences = Ints.toArray(found);
+    }
+
+    /**
+     * Binds the parameters of a {@code QueryData} to the slots of this query.
+     * 
+     * @param data
+     *            the data with the parameters
+     * @return an array with the value of each parameter on its slot
+     * @throws IllegalArgumentException
+     *             if any of the query's parameters is missing
+     */
+    public final Object[] bind(final QueryData data) {
+        checkNotNull(data, "Received a null pointer as query data");
+
+        return bind(data.getParameters());
+    }
+
+    /**
+     * Binds parameters to the slots of this query.
+     * <p>
+     * Parameters not used by the query are ignored.
+     * 
+     * @param values
+     *            the parameters' values, mapped to their names
+     * @return an array with the value of each parameter on its slot
+     * @throws IllegalArgumentException
+     *             if any of the query's parameters is missing
+     */
+    public final Object[] bind(final Map<String, Object> values) {
+        final Object[] bound;
+        Object value;
+
+        checkNotNull(values, "Received a null pointer as parameters");
+
+        bound = new Object[getParameters().size()];
+        for (int i = 0; i < bound.length; i++) {
+            value = values.get(getParameters().get(i));
+            checkArgument(value != null, "Missing value for parameter %s",
+                    getParameters().get(i));
+            bound[i] = value;
+        }
+
+        return bound;
+    }
+
+    /**
+     * Returns the arguments for the positional statement, from the bound
+     * parameters.
+     * <p>
+     * There is an argument for each parameter occurrence, so parameters used
+     * several times on the query are repeated.
+     * 
+     * @param bound
+     *            the parameters bound to their slots
+     * @return the arguments for the statement
+     */
+    public final Object[] getArguments(final Object[] bound) {
+        final Object[] arguments;
+
+        checkNotNull(bound, "Received a null pointer as bound parameters");
+        checkArgument(bound.length == getParameters().size(),
+                "Expected %s parameters but received %s",
+                getParameters().size(), bound.length);
+
+        arguments = new Object[occurrences.length];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = bound[occurrences[i]];
+        }
+
+        return arguments;
+    }
+
+    /**
+     * Returns the slot of a parameter.
+     * 
+     * @param name
+     *            the name of the parameter
+     * @return the parameter's slot, or {@code -1} if it is not on the query
+     */
+    public final int getIndex(final String name) {
+        final Integer index;
+
+        index = indexes.get(name);
+
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * Returns the names of the parameters, in the order of their slots.
+     * 
+     * @return the names of the parameters
+     */
+    public final List<String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns the original query string.
+     * 
+     * @return the original query
+     */
+    public final String getQuery() {
+        return queryStr;
+    }
+
+    /**
+     * Returns the query with the parameters replaced by question marks.
+     * 
+     * @return the positional statement
+     */
+    public final String getStatement() {
+        return statement;
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Cache of {@link PreparedQuery} instances, keyed by their query strings.
+ * <p>
+ * This way each distinct query is parsed only once, no matter how many times
+ * it is executed. The cache is bounded, discarding the least used queries
+ * when it grows over its maximum size, and safe for use by several threads.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class PreparedQueryCache {
+
+    /**
+     * Default maximum number of prepared queries.
+     */
+    private static final int                          DEFAULT_SIZE = 256;
+
+    /**
+     * Prepared queries, mapped to their query strings.
+     */
+    private final LoadingCache<String, PreparedQuery> cache;
+
+    /**
+     * Constructs a {@code PreparedQueryCache} with the default maximum size.
+     */
+    public PreparedQueryCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a {@code PreparedQueryCache} with the specified maximum size.
+     * 
+     * @param size
+     *            maximum number of prepared queries kept
+     */
+    public PreparedQueryCache(final int size) {
+        super();
+
+        checkArgument(size > 0, "The size should be positive");
+
+        cache = CacheBuilder.newBuilder().maximumSize(size).recordStats()
+                .build(new CacheLoader<String, PreparedQuery>() {
+
+                    @Override
+                    public final PreparedQuery load(final String query) {
+                        return PreparedQuery.prepare(query);
+                    }
+
+                });
+    }
+
+    /**
+     * Returns the prepared query for the query of a {@code QueryData}.
+     * 
+     * @param data
+     *            the data with the query
+     * @return the prepared query
+     */
+    public final PreparedQuery get(final QueryData data) {
+        checkNotNull(data, "Received a null pointer as query data");
+
+        return get(data.getQuery());
+    }
+
+    /**
+     * Returns the prepared query for a query string.
+     * <p>
+     * It will be parsed only if it is not on the cache.
+     * 
+     * @param query
+     *            the query string
+     * @return the prepared query
+     */
+    public final PreparedQuery get(final String query) {
+        checkNotNull(query, "Received a null pointer as query");
+
+        return getCache().getUnchecked(query);
+    }
+
+    /**
+     * Returns the statistics of the cache.
+     * 
+     * @return the cache statistics
+     */
+    public final CacheStats getStatistics() {
+        return getCache().stats();
+    }
+
+    /**
+     * Removes all the prepared queries.
+     */
+    public final void invalidateAll() {
+        getCache().invalidateAll();
+    }
+
+    /**
+     * Returns the prepared queries cache.
+     * 
+     * @return the prepared queries cache
+     */
+    private final LoadingCache<String, PreparedQuery> getCache() {
+        return cache;
+    }
+
+}
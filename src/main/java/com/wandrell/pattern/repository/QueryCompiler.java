@@ -0,0 +1,727 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Compiler turning query strings into {@link CompiledQuery} instances.
+ * <p>
+ * The queries follow a small SQL-like language:
+ * 
+ * <pre>
+ * [WHERE] condition [ORDER BY attribute [ASC|DESC], ...] [LIMIT number]
+ * </pre>
+ * 
+ * Where the condition is made of comparisons between an attribute and a
+ * value, using {@code =}, {@code !=}, {@code <>}, {@code <}, {@code <=},
+ * {@code >} or {@code >=}, joined with {@code AND}, {@code OR} and
+ * {@code NOT}, and grouped with parenthesis. Values may be numbers, quoted
+ * strings, {@code TRUE}, {@code FALSE}, {@code NULL} or parameters, written
+ * as {@code :name}. Keywords are case insensitive. The condition is optional,
+ * in which case all the entities are accepted.
+ * <p>
+ * The query is parsed once, and each part of it turned into a lambda, which
+ * already knows the attribute to read, the operator to apply and where to
+ * find the value. Executing it just calls these lambdas, without looking
+ * again at the query.
+ * <p>
+ * A compiler instance parses a single query.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+final class QueryCompiler<V> {
+
+    /**
+     * Token of a query string.
+     */
+    private static final class Token {
+
+        /**
+         * Position of the token on the query.
+         */
+        private final int       position;
+
+        /**
+         * Text of the token.
+         * <p>
+         * For strings and parameters this is their content, without quotes
+         * nor colon.
+         */
+        private final String    text;
+
+        /**
+         * Type of the token.
+         */
+        private final TokenType type;
+
+        /**
+         * Constructs a {@code Token} with the specified data.
+         * 
+         * @param tokenType
+         *            type of the token
+         * @param value
+         *            text of the token
+         * @param start
+         *            position of the token on the query
+         */
+        public Token(final TokenType tokenType, final String value,
+                final int start) {
+            super();
+
+            type = tokenType;
+            text = value;
+            position = start;
+        }
+
+    }
+
+    /**
+     * Types of token.
+     */
+    private enum TokenType {
+        END, IDENTIFIER, NUMBER, OPERATOR, PARAMETER, STRING, SYMBOL
+    }
+
+    /**
+     * The comparison operators.
+     */
+    private static final Set<String> OPERATORS = ImmutableSet.of("=", "!=",
+            "<>", "<", "<=", ">", ">=");
+
+    /**
+     * Compiles a query string.
+     * 
+     * @param query
+     *            the query to compile
+     * @param attributes
+     *            the attributes which can be queried, mapped to their names
+     * @param <V>
+     *            the type of the entities being queried
+     * @return the compiled query
+     * @throws IllegalArgumentException
+     *             if the query is not valid
+     */
+    public static final <V> CompiledQuery<V> compile(final String query,
+            final Map<String, Attribute<V, ?>> attributes) {
+        return new QueryCompiler<V>(query, attributes).compile();
+    }
+
+    /**
+     * Compares two values.
+     * <p>
+     * Numbers are compared by their value, no matter their class.
+     * 
+     * @param value
+     *            the first value
+     * @param other
+     *            the second value
+     * @return a negative number, zero or a positive number if the first value
+     *         is lower, equal or greater than the second
+     * @throws IllegalArgumentException
+     *             if the values can't be compared
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static final int compare(final Object value, final Object other) {
+        final int result;
+
+        if ((value instanceof Number) && (other instanceof Number)) {
+            if (isIntegral(value) && isIntegral(other)) {
+                result = Long.compare(((Number) value).longValue(),
+                        ((Number) other).longValue());
+            } else {
+                result = Double.compare(((Number) value).doubleValue(),
+                        ((Number) other).doubleValue());
+            }
+        } else {
+            try {
+                result = ((Comparable) value).compareTo(other);
+            } catch (final ClassCastException e) {
+                throw new IllegalArgumentException(String.format(
+                        "Can't compare %s with %s", value, other), e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks if two values are equal.
+     * <p>
+     * Numbers are compared by their value, no matter their class.
+     * 
+     * @param value
+     *            the first value
+     * @param other
+     *            the second value
+     * @return {@code true} if the values are equal, {@code false} otherwise
+     */
+    private static final boolean equal(final Object value,
+            final Object other) {
+        final boolean result;
+
+        if ((value instanceof Number) && (other instanceof Number)) {
+            result = compare(value, other) == 0;
+        } else {
+            result = value.equals(other);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks if a number is an integral one.
+     * 
+     * @param number
+     *            the number to check
+     * @return {@code true} if it is an integral number, {@code false}
+     *         otherwise
+     */
+    private static final boolean isIntegral(final Object number) {
+        return (number instanceof Long) || (number instanceof Integer)
+                || (number instanceof Short) || (number instanceof Byte);
+    }
+
+    /**
+     * The attributes which can be queried, mapped to their names.
+     */
+    private final Map<String, Attribute<V, ?>> attributes;
+
+    /**
+     * Index of the next token to read.
+     */
+    private int                                next;
+
+    /**
+     * The query, with its parameters assigned to slots.
+     */
+    private final PreparedQuery                prepared;
+
+    /**
+     * The query's tokens.
+     */
+    private final List<Token>                  tokens;
+
+    /**
+     * Constructs a {@code QueryCompiler} for the specified query.
+     * 
+     * @param query
+     *            the query to compile
+     * @param queryable
+     *            the attributes which can be queried, mapped to their names
+     */
+    private QueryCompiler(final String query,
+            final Map<String, Attribute<V, ?>> queryable) {
+        super();
+
+        attributes = queryable;
+        prepared = PreparedQuery.prepare(query);
+        tokens = tokenize(query);
+        next = 0;
+    }
+
+    /**
+     * Compiles the query.
+     * 
+     * @return the compiled query
+     */
+    private final CompiledQuery<V> compile() {
+        final BiPredicate<V, Object[]> condition;
+        Comparator<V> comparator;
+        final int limit;
+        final Token limitToken;
+
+        acceptKeyword("WHERE");
+        if ((peek().type == TokenType.END) || isKeyword(peek(), "ORDER")
+                || isKeyword(peek(), "LIMIT")) {
+            condition = (entity, parameters) -> true;
+        } else {
+            condition = parseOr();
+        }
+
+        comparator = null;
+        if (acceptKeyword("ORDER")) {
+            expectKeyword("BY");
+            do {
+                if (comparator == null) {
+                    comparator = parseOrder();
+                } else {
+                    comparator = comparator.thenComparing(parseOrder());
+                }
+            } while (accept(TokenType.SYMBOL, ","));
+        }
+
+        if (acceptKeyword("LIMIT")) {
+            limitToken = expect(TokenType.NUMBER, "a limit");
+            if (!CharMatcher.DIGIT.matchesAllOf(limitToken.text)) {
+                throw error(limitToken, "a positive integer limit");
+            }
+            limit = Integer.parseInt(limitToken.text);
+        } else {
+            limit = -1;
+        }
+
+        expect(TokenType.END, "the end of the query");
+
+        return new CompiledQuery<V>(prepared, condition, comparator, limit);
+    }
+
+    /**
+     * Consumes the next token if it has the specified type and text.
+     * 
+     * @param type
+     *            the expected type
+     * @param text
+     *            the expected text
+     * @return {@code true} if the token was consumed, {@code false} otherwise
+     */
+    private final boolean accept(final TokenType type, final String text) {
+        final boolean accepted;
+
+        accepted = (peek().type == type) && peek().text.equals(text);
+        if (accepted) {
+            next++;
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Consumes the next token if it is the specified keyword.
+     * 
+     * @param keyword
+     *            the expected keyword
+     * @return {@code true} if the token was consumed, {@code false} otherwise
+     */
+    private final boolean acceptKeyword(final String keyword) {
+        final boolean accepted;
+
+        accepted = isKeyword(peek(), keyword);
+        if (accepted) {
+            next++;
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Builds the comparison between an attribute and a value.
+     * <p>
+     * The operator is resolved here, so the lambda returned only has to
+     * apply it.
+     * 
+     * @param attribute
+     *            the attribute to compare
+     * @param operator
+     *            the comparison operator
+     * @param operand
+     *            function returning the value from the parameters
+     * @param isNull
+     *            flag indicating if the value is the {@code NULL} keyword
+     * @return the comparison
+     */
+    private final BiPredicate<V, Object[]> comparison(
+            final Attribute<V, ?> attribute, final Token operator,
+            final Function<Object[], Object> operand, final boolean isNull) {
+        final BiPredicate<V, Object[]> comparison;
+        final IntPredicate test;
+
+        if (isNull) {
+            if ("=".equals(operator.text)) {
+                comparison = (entity,
+                        parameters) -> attribute.getValue(entity) == null;
+            } else if ("!=".equals(operator.text)
+                    || "<>".equals(operator.text)) {
+                comparison = (entity,
+                        parameters) -> attribute.getValue(entity) != null;
+            } else {
+                throw error(operator, "= or != before NULL");
+            }
+        } else if ("=".equals(operator.text)) {
+            comparison = (entity, parameters) -> {
+                final Object value = attribute.getValue(entity);
+                return (value != null)
+                        && equal(value, operand.apply(parameters));
+            };
+        } else if ("!=".equals(operator.text) || "<>".equals(operator.text)) {
+            comparison = (entity, parameters) -> {
+                final Object value = attribute.getValue(entity);
+                return (value != null)
+                        && !equal(value, operand.apply(parameters));
+            };
+        } else {
+            switch (operator.text) {
+                case "<":
+                    test = (result) -> result < 0;
+                    break;
+                case "<=":
+                    test = (result) -> result <= 0;
+                    break;
+                case ">":
+                    test = (result) -> result > 0;
+                    break;
+                default:
+                    test = (result) -> result >= 0;
+            }
+            comparison = (entity, parameters) -> {
+                final Object value = attribute.getValue(entity);
+                return (value != null)
+                        && test.test(compare(value, operand.apply(parameters)));
+            };
+        }
+
+        return comparison;
+    }
+
+    /**
+     * Creates the exception for an unexpected token.
+     * 
+     * @param token
+     *            the unexpected token
+     * @param expected
+     *            description of what was expected
+     * @return the exception for the token
+     */
+    private final IllegalArgumentException error(final Token token,
+            final String expected) {
+        return new IllegalArgumentException(String.format(
+                "Expected %s at position %d of query: %s", expected,
+                token.position, prepared.getQuery()));
+    }
+
+    /**
+     * Consumes the next token, which should have the specified type.
+     * 
+     * @param type
+     *            the expected type
+     * @param expected
+     *            description of what was expected
+     * @return the consumed token
+     */
+    private final Token expect(final TokenType type, final String expected) {
+        if (peek().type != type) {
+            throw error(peek(), expected);
+        }
+
+        return tokens.get(next++);
+    }
+
+    /**
+     * Consumes the next token, which should be the specified keyword.
+     * 
+     * @param keyword
+     *            the expected keyword
+     */
+    private final void expectKeyword(final String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error(peek(), keyword);
+        }
+    }
+
+    /**
+     * Checks if a token is the specified keyword.
+     * 
+     * @param token
+     *            the token to check
+     * @param keyword
+     *            the keyword, in upper case
+     * @return {@code true} if the token is the keyword, {@code false}
+     *         otherwise
+     */
+    private final boolean isKeyword(final Token token, final String keyword) {
+        return (token.type == TokenType.IDENTIFIER)
+                && keyword.equals(token.text.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Parses a conjunction.
+     * 
+     * @return the parsed condition
+     */
+    private final BiPredicate<V, Object[]> parseAnd() {
+        BiPredicate<V, Object[]> condition;
+
+        condition = parseUnary();
+        while (acceptKeyword("AND")) {
+            condition = condition.and(parseUnary());
+        }
+
+        return condition;
+    }
+
+    /**
+     * Parses a comparison.
+     * 
+     * @return the parsed condition
+     */
+    private final BiPredicate<V, Object[]> parseComparison() {
+        final Attribute<V, ?> attribute;
+        final Token operator;
+        final Token value;
+        final Function<Object[], Object> operand;
+        final Object constant;
+        final int slot;
+
+        attribute = parseAttribute();
+        operator = expect(TokenType.OPERATOR, "a comparison operator");
+        value = peek();
+        next++;
+
+        if (isKeyword(value, "NULL")) {
+            operand = null;
+        } else if (value.type == TokenType.PARAMETER) {
+            slot = prepared.getIndex(value.text);
+            if (slot < 0) {
+                throw error(value, "a parameter of the prepared query");
+            }
+            operand = (parameters) -> parameters[slot];
+        } else {
+            if (value.type == TokenType.STRING) {
+                constant = value.text;
+            } else if (value.type == TokenType.NUMBER) {
+                if (value.text.contains(".")) {
+                    constant = Double.valueOf(value.text);
+                } else {
+                    constant = Long.valueOf(value.text);
+                }
+            } else if (isKeyword(value, "TRUE")) {
+                constant = Boolean.TRUE;
+            } else if (isKeyword(value, "FALSE")) {
+                constant = Boolean.FALSE;
+            } else {
+                throw error(value, "a value");
+            }
+            operand = (parameters) -> constant;
+        }
+
+        return comparison(attribute, operator, operand, operand == null);
+    }
+
+    /**
+     * Parses an attribute name.
+     * 
+     * @return the attribute with that name
+     */
+    private final Attribute<V, ?> parseAttribute() {
+        final Token name;
+        final Attribute<V, ?> attribute;
+
+        name = expect(TokenType.IDENTIFIER, "an attribute");
+        attribute = attributes.get(name.text);
+        if (attribute == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Unknown attribute %s at position %d of query: %s",
+                    name.text, name.position, prepared.getQuery()));
+        }
+
+        return attribute;
+    }
+
+    /**
+     * Parses a disjunction.
+     * 
+     * @return the parsed condition
+     */
+    private final BiPredicate<V, Object[]> parseOr() {
+        BiPredicate<V, Object[]> condition;
+
+        condition = parseAnd();
+        while (acceptKeyword("OR")) {
+            condition = condition.or(parseAnd());
+        }
+
+        return condition;
+    }
+
+    /**
+     * Parses an ordering attribute.
+     * <p>
+     * Entities with no value for the attribute are sorted last.
+     * 
+     * @return the comparator for the attribute
+     */
+    private final Comparator<V> parseOrder() {
+        final Attribute<V, ?> attribute;
+        final Comparator<Object> values;
+        final Comparator<V> comparator;
+
+        attribute = parseAttribute();
+        if (acceptKeyword("DESC")) {
+            values = Comparator.nullsLast(
+                    ((Comparator<Object>) QueryCompiler::compare).reversed());
+        } else {
+            acceptKeyword("ASC");
+            values = Comparator.nullsLast(QueryCompiler::compare);
+        }
+        comparator = (first, second) -> values.compare(
+                attribute.getValue(first), attribute.getValue(second));
+
+        return comparator;
+    }
+
+    /**
+     * Parses a negation, a group or a comparison.
+     * 
+     * @return the parsed condition
+     */
+    private final BiPredicate<V, Object[]> parseUnary() {
+        final BiPredicate<V, Object[]> condition;
+
+        if (acceptKeyword("NOT")) {
+            condition = parseUnary().negate();
+        } else if (accept(TokenType.SYMBOL, "(")) {
+            condition = parseOr();
+            if (!accept(TokenType.SYMBOL, ")")) {
+                throw error(peek(), ")");
+            }
+        } else {
+            condition = parseComparison();
+        }
+
+        return condition;
+    }
+
+    /**
+     * Returns the next token, without consuming it.
+     * 
+     * @return the next token
+     */
+    private final Token peek() {
+        return tokens.get(next);
+    }
+
+    /**
+     * Splits a query into tokens.
+     * 
+     * @param query
+     *            the query to split
+     * @return the query's tokens, ending with an end token
+     */
+    private final List<Token> tokenize(final String query) {
+        final List<Token> result;
+        StringBuilder literal;
+        int position;
+        int end;
+        char current;
+
+        result = new ArrayList<Token>();
+        position = 0;
+        while (position < query.length()) {
+            current = query.charAt(position);
+            end = position + 1;
+            if (Character.isWhitespace(current)) {
+                // Whitespace only separates tokens
+            } else if (Character.isJavaIdentifierStart(current)) {
+                while ((end < query.length()) && Character
+                        .isJavaIdentifierPart(query.charAt(end))) {
+                    end++;
+                }
+                result.add(new Token(TokenType.IDENTIFIER,
+                        query.substring(position, end), position));
+            } else if (Character.isDigit(current) || ((current == '-')
+                    && (end < query.length())
+                    && Character.isDigit(query.charAt(end)))) {
+                while ((end < query.length())
+                        && (Character.isDigit(query.charAt(end))
+                                || (query.charAt(end) == '.'))) {
+                    end++;
+                }
+                result.add(new Token(TokenType.NUMBER,
+                        query.substring(position, end), position));
+            } else if (current == ':') {
+                // Same rule as the one used by the prepared query
+                if ((end == query.length()) || !Character
+                        .isJavaIdentifierStart(query.charAt(end))) {
+                    throw new IllegalArgumentException(String.format(
+                            "Expected a parameter name at position %d of "
+                                    + "query: %s",
+                            end, query));
+                }
+                while ((end < query.length()) && Character
+                        .isJavaIdentifierPart(query.charAt(end))) {
+                    end++;
+                }
+                result.add(new Token(TokenType.PARAMETER,
+                        query.substring(position + 1, end), position));
+            } else if (current == '\'') {
+                // Two quotes inside a string stand for a single one
+                literal = new StringBuilder();
+                while ((end < query.length()) && ((query.charAt(end) != '\'')
+                        || ((end + 1 < query.length())
+                                && (query.charAt(end + 1) == '\'')))) {
+                    if (query.charAt(end) == '\'') {
+                        end++;
+                    }
+                    literal.append(query.charAt(end));
+                    end++;
+                }
+                if (end == query.length()) {
+                    throw new IllegalArgumentException(String.format(
+                            "Unclosed string at position %d of query: %s",
+                            position, query));
+                }
+                end++;
+                result.add(new Token(TokenType.STRING, literal.toString(),
+                        position));
+            } else if ("<>!=".indexOf(current) >= 0) {
+                if ((end < query.length()) && OPERATORS
+                        .contains(query.substring(position, end + 1))) {
+                    end++;
+                } else if (!OPERATORS.contains(String.valueOf(current))) {
+                    throw new IllegalArgumentException(String.format(
+                            "Unknown operator at position %d of query: %s",
+                            position, query));
+                }
+                result.add(new Token(TokenType.OPERATOR,
+                        query.substring(position, end), position));
+            } else if ("(),".indexOf(current) >= 0) {
+                result.add(new Token(TokenType.SYMBOL, String.valueOf(current),
+                        position));
+            } else {
+                throw new IllegalArgumentException(String.format(
+                        "Unexpected character %s at position %d of query: %s",
+                        current, position, query));
+            }
+            position = end;
+        }
+        result.add(new Token(TokenType.END, "", query.length()));
+
+        return result;
+    }
+
+}
@@ -41,6 +41,11 @@ import java.util.Map;
  * Parameters will be used to substitute codes on the query string. Each key
  * should match a code on the string, and the value for that key will be used to
  * create the string which will take the code's place.
+ * <p>
+ * Implementations should be equal to any other {@code QueryData} with the same
+ * query and parameters, and their hash code should be the one returned by
+ * {@code Objects.hash(getQuery(), getParameters())}. This way they can be used
+ * as keys, for example to cache the results of the queries.
  * 
  * @author Bernardo Martínez Garrido
  * @see com.wandrell.pattern.repository.Repository Repository
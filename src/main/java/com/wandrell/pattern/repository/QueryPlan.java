@@ -0,0 +1,369 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+
+/**
+ * Plan chosen by an {@link IndexedRepository} for answering a filter.
+ * <p>
+ * Plans are trees of steps, each of them with an estimated cost, which is the
+ * number of entities it is expected to go through. The steps are a full scan
+ * of the entities, a lookup on an index, the union of several plans, and the
+ * filtering of another plan's results.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+abstract class QueryPlan<V> {
+
+    /**
+     * Step filtering the results of another plan.
+     * 
+     * @param <V>
+     *            the type of the entities being queried
+     */
+    static final class FilterPlan<V> extends QueryPlan<V> {
+
+        /**
+         * Filters to apply, in order.
+         */
+        private final List<Filter<V>> filters;
+
+        /**
+         * Plan for the entities to filter.
+         */
+        private final QueryPlan<V>    source;
+
+        /**
+         * Constructs a {@code FilterPlan} with the specified source and
+         * filters.
+         * 
+         * @param plan
+         *            plan for the entities to filter
+         * @param residual
+         *            filters to apply, in order
+         */
+        public FilterPlan(final QueryPlan<V> plan,
+                final List<Filter<V>> residual) {
+            super(plan.getCost());
+
+            source = plan;
+            filters = residual;
+        }
+
+        @Override
+        public final Collection<V> execute() {
+            final Collection<V> result;
+
+            result = new LinkedList<V>();
+            for (final V entity : source.execute()) {
+                if (validates(entity, filters)) {
+                    result.add(entity);
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        protected final void explain(final StringBuilder builder,
+                final int depth) {
+            line(builder, depth,
+                    "Filter [" + Joiner.on(", ").join(filters) + "]");
+            source.explain(builder, depth + 1);
+        }
+
+    }
+
+    /**
+     * Step reading entities from an index.
+     * 
+     * @param <V>
+     *            the type of the entities being queried
+     */
+    static final class LookupPlan<V> extends QueryPlan<V> {
+
+        /**
+         * Filter answered by the index.
+         */
+        private final Filter<V>         filter;
+
+        /**
+         * The index to read.
+         */
+        private final AttributeIndex<V> index;
+
+        /**
+         * Constructs a {@code LookupPlan} with the specified index and
+         * filter.
+         * 
+         * @param attributeIndex
+         *            the index to read
+         * @param indexed
+         *            filter answered by the index
+         * @param estimate
+         *            number of entities the index will return
+         */
+        public LookupPlan(final AttributeIndex<V> attributeIndex,
+                final Filter<V> indexed, final long estimate) {
+            super(estimate);
+
+            index = attributeIndex;
+            filter = indexed;
+        }
+
+        @Override
+        public final Collection<V> execute() {
+            return index.lookup(filter);
+        }
+
+        @Override
+        protected final void explain(final StringBuilder builder,
+                final int depth) {
+            line(builder, depth, "Lookup " + index + " [" + filter + "]");
+        }
+
+    }
+
+    /**
+     * Step going through all the entities.
+     * 
+     * @param <V>
+     *            the type of the entities being queried
+     */
+    static final class ScanPlan<V> extends QueryPlan<V> {
+
+        /**
+         * The entities to scan.
+         */
+        private final Collection<V>   entities;
+
+        /**
+         * Filters to apply, in order.
+         */
+        private final List<Filter<V>> filters;
+
+        /**
+         * Constructs a {@code ScanPlan} with the specified entities and
+         * filters.
+         * 
+         * @param data
+         *            the entities to scan
+         * @param conjuncts
+         *            filters to apply, in order
+         */
+        public ScanPlan(final Collection<V> data,
+                final List<Filter<V>> conjuncts) {
+            super(data.size());
+
+            entities = data;
+            filters = conjuncts;
+        }
+
+        @Override
+        public final Collection<V> execute() {
+            final Collection<V> result;
+
+            result = new LinkedList<V>();
+            for (final V entity : entities) {
+                if (validates(entity, filters)) {
+                    result.add(entity);
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        protected final void explain(final StringBuilder builder,
+                final int depth) {
+            line(builder, depth,
+                    "Scan [" + Joiner.on(", ").join(filters) + "]");
+        }
+
+    }
+
+    /**
+     * Step joining the results of several plans.
+     * 
+     * @param <V>
+     *            the type of the entities being queried
+     */
+    static final class UnionPlan<V> extends QueryPlan<V> {
+
+        /**
+         * The plans to join.
+         */
+        private final List<QueryPlan<V>> plans;
+
+        /**
+         * Constructs a {@code UnionPlan} joining the specified plans.
+         * 
+         * @param joined
+         *            the plans to join
+         */
+        public UnionPlan(final List<QueryPlan<V>> joined) {
+            super(joined.stream().mapToLong(QueryPlan::getCost).sum());
+
+            plans = joined;
+        }
+
+        @Override
+        public final Collection<V> execute() {
+            final Collection<V> result;
+
+            // Entities are compared by identity, as on the indexes
+            result = Collections
+                    .newSetFromMap(new IdentityHashMap<V, Boolean>());
+            for (final QueryPlan<V> plan : plans) {
+                result.addAll(plan.execute());
+            }
+
+            return result;
+        }
+
+        @Override
+        protected final void explain(final StringBuilder builder,
+                final int depth) {
+            line(builder, depth, "Union");
+            for (final QueryPlan<V> plan : plans) {
+                plan.explain(builder, depth + 1);
+            }
+        }
+
+    }
+
+    /**
+     * Indicates if the entity validates all the filters.
+     * 
+     * @param entity
+     *            the entity to check
+     * @param filters
+     *            the filters to apply, in order
+     * @param <V>
+     *            the type of the entities being queried
+     * @return {@code true} if the entity validates all the filters,
+     *         {@code false} otherwise
+     */
+    private static final <V> boolean validates(final V entity,
+            final List<Filter<V>> filters) {
+        boolean valid;
+
+        valid = true;
+        for (final Filter<V> filter : filters) {
+            if (!filter.apply(entity)) {
+                valid = false;
+                break;
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * Estimated number of entities the plan goes through.
+     */
+    private final long cost;
+
+    /**
+     * Constructs a {@code QueryPlan} with the specified cost.
+     * 
+     * @param estimate
+     *            estimated number of entities the plan goes through
+     */
+    public QueryPlan(final long estimate) {
+        super();
+
+        cost = estimate;
+    }
+
+    /**
+     * Runs the plan, returning the entities found.
+     * 
+     * @return the entities found
+     */
+    public abstract Collection<V> execute();
+
+    /**
+     * Returns a description of the plan, with a line for each step.
+     * 
+     * @return a description of the plan
+     */
+    public final String explain() {
+        final StringBuilder builder;
+
+        builder = new StringBuilder();
+        explain(builder, 0);
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the estimated number of entities the plan goes through.
+     * 
+     * @return the estimated cost of the plan
+     */
+    public final long getCost() {
+        return cost;
+    }
+
+    /**
+     * Adds the description of this step, and the ones below it, to the
+     * builder.
+     * 
+     * @param builder
+     *            builder for the description
+     * @param depth
+     *            depth of the step on the plan
+     */
+    protected abstract void explain(final StringBuilder builder,
+            final int depth);
+
+    /**
+     * Adds a line describing a step to the builder.
+     * 
+     * @param builder
+     *            builder for the description
+     * @param depth
+     *            depth of the step on the plan
+     * @param description
+     *            description of the step
+     */
+    protected final void line(final StringBuilder builder, final int depth,
+            final String description) {
+        builder.append(Strings.repeat("  ", depth)).append(description)
+                .append(" (cost ").append(getCost()).append(")\n");
+    }
+
+}
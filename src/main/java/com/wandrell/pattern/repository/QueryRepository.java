@@ -0,0 +1,350 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * {@link FilteredRepository} answering {@link QueryData} queries over
+ * entities stored in memory.
+ * <p>
+ * The queries are written on a small SQL-like language, working over the
+ * {@link Attribute attributes} registered on the repository:
+ * 
+ * <pre>
+ * [WHERE] condition [ORDER BY attribute [ASC|DESC], ...] [LIMIT number]
+ * </pre>
+ * 
+ * For example {@code "age >= :min AND NOT (name = 'root') ORDER BY age DESC
+ * LIMIT 10"}. Conditions compare attributes with numbers, quoted strings,
+ * {@code TRUE}, {@code FALSE}, {@code NULL} or parameters, and join these
+ * comparisons with {@code AND}, {@code OR} and {@code NOT}. The parameters,
+ * written as {@code :name}, are taken from the {@code QueryData}.
+ * <p>
+ * Each query string is compiled the first time it is received into a chain
+ * of lambdas, which already know which attribute to read and which
+ * operator to apply, and then kept on a cache. Running the query again,
+ * even with different parameters, only binds these and calls the lambdas.
+ * <p>
+ * Invalid queries, or missing parameters, cause an
+ * {@code IllegalArgumentException}.
+ * <p>
+ * Entities are stored in a list, keeping the order in which they were added.
+ * Updates replace the stored entity equal to the received one.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class QueryRepository<V>
+        implements FilteredRepository<V, QueryData> {
+
+    /**
+     * Default maximum number of compiled queries.
+     */
+    private static final int                             DEFAULT_SIZE = 256;
+
+    /**
+     * The attributes which can be queried, mapped to their names.
+     */
+    private final Map<String, Attribute<V, ?>>           attributes;
+
+    /**
+     * Compiled queries, mapped to their query strings.
+     */
+    private final LoadingCache<String, CompiledQuery<V>> compiled;
+
+    /**
+     * The entities stored in the repository.
+     */
+    private final List<V>                                data;
+
+    /**
+     * Constructs an empty {@code QueryRepository} with the default cache
+     * size.
+     */
+    public QueryRepository() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs an empty {@code QueryRepository} which will keep up to the
+     * specified number of compiled queries.
+     * 
+     * @param cacheSize
+     *            maximum number of compiled queries
+     */
+    public QueryRepository(final int cacheSize) {
+        super();
+
+        checkArgument(cacheSize > 0, "The cache size should be positive");
+
+        attributes = new LinkedHashMap<String, Attribute<V, ?>>();
+        data = new ArrayList<V>();
+        compiled = CacheBuilder.newBuilder().maximumSize(cacheSize)
+                .recordStats()
+                .build(new CacheLoader<String, CompiledQuery<V>>() {
+
+                    @Override
+                    public final CompiledQuery<V> load(final String query) {
+                        return QueryCompiler.compile(query, getAttributes());
+                    }
+
+                });
+    }
+
+    @Override
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().add(entity);
+    }
+
+    /**
+     * Registers an attribute, so it can be used on queries.
+     * <p>
+     * Attributes should be registered before running the queries using
+     * them.
+     * 
+     * @param attribute
+     *            the attribute to register
+     */
+    public final void addAttribute(final Attribute<V, ?> attribute) {
+        checkNotNull(attribute, "Received a null pointer as attribute");
+        checkArgument(!getAttributes().containsKey(attribute.getName()),
+                "The attribute %s is already registered",
+                attribute.getName());
+
+        getAttributes().put(attribute.getName(), attribute);
+    }
+
+    @Override
+    public final long count(final QueryData filter) {
+        final CompiledQuery<V> query;
+        final Object[] parameters;
+        long count;
+
+        query = compile(filter);
+        parameters = query.bind(filter);
+
+        count = 0;
+        for (final V entity : getData()) {
+            if (query.matches(entity, parameters)) {
+                count++;
+            }
+        }
+
+        if ((query.getLimit() >= 0) && (count > query.getLimit())) {
+            count = query.getLimit();
+        }
+
+        return count;
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return new LinkedList<V>(getData());
+    }
+
+    @Override
+    public final Collection<V> getCollection(final QueryData filter) {
+        final CompiledQuery<V> query;
+
+        query = compile(filter);
+
+        return query.execute(getData(), query.bind(filter), -1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All the queries are answered with a single pass over the entities.
+     * Equal queries are run only once, and the parameters of queries sharing
+     * the same query string are bound to the same compiled query, which is
+     * then tested with each set of parameters. Sorted and limited queries
+     * only keep their first results during the pass, so they take memory
+     * bounded by their limit, not by the number of entities they match.
+     */
+    @Override
+    public final List<Collection<V>> getCollections(
+            final List<? extends QueryData> filters) {
+        final Map<QueryData, Integer> slots;
+        final List<CompiledQuery<V>.Selection> selections;
+        final List<Collection<V>> result;
+        CompiledQuery<V> query;
+
+        checkNotNull(filters, "Received a null pointer as filters");
+
+        // Equal queries share a slot
+        slots = new HashMap<QueryData, Integer>();
+        selections = new ArrayList<CompiledQuery<V>.Selection>();
+        for (final QueryData filter : filters) {
+            if (!slots.containsKey(filter)) {
+                query = compile(filter);
+                slots.put(new DefaultQueryData(filter), selections.size());
+                selections.add(query.select(query.bind(filter), -1));
+            }
+        }
+
+        // Sorted and limited queries only keep their first results
+        for (final V entity : getData()) {
+            for (final CompiledQuery<V>.Selection selection : selections) {
+                selection.add(entity);
+            }
+        }
+
+        result = new ArrayList<Collection<V>>(filters.size());
+        for (final QueryData filter : filters) {
+            result.add(new LinkedList<V>(
+                    selections.get(slots.get(filter)).getResult()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the statistics of the compiled queries cache.
+     * 
+     * @return the statistics of the cache
+     */
+    public final CacheStats getStatistics() {
+        return getCompiled().stats();
+    }
+
+    @Override
+    public final V getEntity(final QueryData filter) {
+        final CompiledQuery<V> query;
+        final List<V> entities;
+
+        query = compile(filter);
+        entities = query.execute(getData(), query.bind(filter), 1);
+
+        return entities.isEmpty() ? null : entities.get(0);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getData().remove(entity);
+    }
+
+    @Override
+    public final void removeIf(final QueryData filter) {
+        final CompiledQuery<V> query;
+        final Object[] parameters;
+
+        query = compile(filter);
+        parameters = query.bind(filter);
+
+        if (query.getLimit() < 0) {
+            getData().removeIf((entity) -> query.matches(entity, parameters));
+        } else {
+            for (final V entity : query.execute(getData(), parameters, -1)) {
+                remove(entity);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entities in the repository.
+     * 
+     * @return the number of entities
+     */
+    public final int size() {
+        return getData().size();
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final int index;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        index = getData().indexOf(entity);
+        if (index >= 0) {
+            getData().set(index, entity);
+        }
+    }
+
+    /**
+     * Returns the compiled query for a {@code QueryData}.
+     * 
+     * @param filter
+     *            the query to compile
+     * @return the compiled query
+     */
+    private final CompiledQuery<V> compile(final QueryData filter) {
+        checkNotNull(filter, "Received a null pointer as query");
+
+        try {
+            return getCompiled().getUnchecked(filter.getQuery());
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the attributes which can be queried.
+     * 
+     * @return the attributes which can be queried, mapped to their names
+     */
+    private final Map<String, Attribute<V, ?>> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Returns the compiled queries cache.
+     * 
+     * @return the compiled queries cache
+     */
+    private final LoadingCache<String, CompiledQuery<V>> getCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Returns the entities stored in the repository.
+     * 
+     * @return the entities stored
+     */
+    private final List<V> getData() {
+        return data;
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import com.google.common.collect.Ordering;
+
+/**
+ * {@link ShardingStrategy} assigning each shard a range of keys.
+ * <p>
+ * The ranges are defined by a sorted list of bounds. The first shard receives
+ * the keys lower than the first bound, the second one those between the first
+ * and second bounds, and so on, each bound belonging to the range after it.
+ * So there should be one more shard than bounds. Any key past the last shard
+ * is stored on that one.
+ * <p>
+ * Entities with close keys are kept together on the same shard. Still, the
+ * {@link ShardedRepository} sends each query to all of its shards, as it
+ * can't know which keys a filter will accept.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <K>
+ *            the type of the keys
+ */
+public final class RangeShardingStrategy<V, K extends Comparable<? super K>>
+        implements ShardingStrategy<V> {
+
+    /**
+     * Bounds for the ranges, in ascending order.
+     */
+    private final List<K>                          bounds;
+
+    /**
+     * Function returning the key of an entity.
+     */
+    private final Function<? super V, ? extends K> key;
+
+    /**
+     * Constructs a {@code RangeShardingStrategy} with the specified key
+     * extractor and range bounds.
+     * 
+     * @param extractor
+     *            function returning the key of an entity
+     * @param limits
+     *            bounds for the ranges, in ascending order
+     */
+    public RangeShardingStrategy(
+            final Function<? super V, ? extends K> extractor,
+            final List<? extends K> limits) {
+        super();
+
+        checkNotNull(extractor, "Received a null pointer as extractor");
+        checkNotNull(limits, "Received a null pointer as bounds");
+        checkArgument(Ordering.natural().isStrictlyOrdered(limits),
+                "The bounds should be sorted in ascending order");
+
+        key = extractor;
+        bounds = new ArrayList<K>(limits);
+    }
+
+    @Override
+    public final int getShard(final V entity, final int shards) {
+        final int position;
+        final int shard;
+
+        position = Collections.binarySearch(getBounds(),
+                getKey().apply(entity));
+
+        if (position >= 0) {
+            // The bound belongs to the next range
+            shard = position + 1;
+        } else {
+            shard = -(position + 1);
+        }
+
+        return Math.min(shard, shards - 1);
+    }
+
+    /**
+     * Returns the bounds for the ranges.
+     * 
+     * @return the bounds for the ranges
+     */
+    private final List<K> getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns the function returning the key of an entity.
+     * 
+     * @return the key extractor
+     */
+    private final Function<? super V, ? extends K> getKey() {
+        return key;
+    }
+
+}
@@ -0,0 +1,319 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Base for the repositories which store the entities encoded as records,
+ * outside of the Java heap.
+ * <p>
+ * This takes care of encoding and decoding the entities, keeping the
+ * {@link RecordTable} and querying the records. Implementations only have to
+ * store, read and free the records.
+ * <p>
+ * Removing and updating entities is done through their {@code equals} method,
+ * but only those entities with the same hash code are decoded for this.
+ *
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+abstract class RecordRepository<V>
+        implements FilteredRepository<V, Predicate<V>> {
+
+    /**
+     * Codec for the entities.
+     */
+    private final EntityCodec<V> codec;
+
+    /**
+     * Table with the stored records.
+     */
+    private final RecordTable    records;
+
+    /**
+     * Constructs a {@code RecordRepository} with the specified codec.
+     * 
+     * @param entityCodec
+     *            codec for the entities
+     */
+    public RecordRepository(final EntityCodec<V> entityCodec) {
+        super();
+
+        checkNotNull(entityCodec, "Received a null pointer as codec");
+
+        codec = entityCodec;
+        records = new RecordTable();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final byte[] encoded;
+        final int hash;
+
+        encoded = getCodec().encode(entity);
+        hash = Objects.hashCode(entity);
+
+        getRecords().add(store(encoded, hash), encoded.length, hash);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final Collection<V> result;
+
+        result = new LinkedList<V>();
+        for (int i = 0; i < getRecords().size(); i++) {
+            result.add(decode(i));
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Collection<V> getCollection(final Predicate<V> filter) {
+        final Collection<V> result;
+        V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        result = new LinkedList<V>();
+        for (int i = 0; i < getRecords().size(); i++) {
+            entity = decode(i);
+            if (filter.apply(entity)) {
+                result.add(entity);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public final V getEntity(final Predicate<V> filter) {
+        final Iterator<V> entities;
+        final V entity;
+
+        entities = iterator(filter);
+
+        if (entities.hasNext()) {
+            entity = entities.next();
+        } else {
+            entity = null;
+        }
+
+        return entity;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final int index;
+
+        index = find(entity);
+        if (index >= 0) {
+            release(index);
+        }
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        final Set<V> removed;
+        final Set<Integer> hashes;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        removed = new HashSet<V>(entities);
+        hashes = new HashSet<Integer>();
+        for (final V entity : removed) {
+            hashes.add(Objects.hashCode(entity));
+        }
+
+        // Going backwards, the records moved by removals were already checked
+        for (int i = getRecords().size() - 1; i >= 0; i--) {
+            if (hashes.contains(getRecords().getHash(i))
+                    && removed.contains(decode(i))) {
+                release(i);
+            }
+        }
+    }
+
+    @Override
+    public final void removeIf(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        for (int i = getRecords().size() - 1; i >= 0; i--) {
+            if (filter.apply(decode(i))) {
+                release(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entities in the repository.
+     * 
+     * @return the number of entities in the repository
+     */
+    public final int size() {
+        return getRecords().size();
+    }
+
+    @Override
+    public final Stream<V> stream(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return IntStream.range(0, getRecords().size()).mapToObj(this::decode)
+                .filter(filter::apply);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final int index;
+
+        index = find(entity);
+        if (index >= 0) {
+            release(index);
+            add(entity);
+        }
+    }
+
+    /**
+     * Frees the space taken by a record, which has already been removed from
+     * the table.
+     * 
+     * @param address
+     *            address of the record
+     * @param length
+     *            length of the encoded entity
+     */
+    protected abstract void free(final long address, final int length);
+
+    /**
+     * Returns the table with the stored records.
+     * 
+     * @return the table with the stored records
+     */
+    protected final RecordTable getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns a buffer containing the encoded entity of a record.
+     * <p>
+     * The buffer should contain only the encoded entity, from its position to
+     * its limit.
+     * 
+     * @param address
+     *            address of the record
+     * @param length
+     *            length of the encoded entity
+     * @return a buffer with the encoded entity
+     */
+    protected abstract ByteBuffer read(final long address, final int length);
+
+    /**
+     * Stores a record for an encoded entity.
+     * 
+     * @param encoded
+     *            the encoded entity
+     * @param hash
+     *            hash code of the entity
+     * @return the address of the record
+     */
+    protected abstract long store(final byte[] encoded, final int hash);
+
+    /**
+     * Decodes the entity in the record at the specified index.
+     * 
+     * @param index
+     *            index of the record
+     * @return the entity in the record
+     */
+    private final V decode(final int index) {
+        return getCodec().decode(read(getRecords().getAddress(index),
+                getRecords().getLength(index)));
+    }
+
+    /**
+     * Finds the record containing an entity equal to the received one.
+     * 
+     * @param entity
+     *            the entity to find
+     * @return the index of the record, or {@code -1} if there is none
+     */
+    private final int find(final V entity) {
+        final int hash;
+        int index;
+
+        hash = Objects.hashCode(entity);
+
+        index = -1;
+        for (int i = 0; (i < getRecords().size()) && (index < 0); i++) {
+            if ((getRecords().getHash(i) == hash)
+                    && Objects.equals(entity, decode(i))) {
+                index = i;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the codec for the entities.
+     * 
+     * @return the codec for the entities
+     */
+    private final EntityCodec<V> getCodec() {
+        return codec;
+    }
+
+    /**
+     * Removes the record at the specified index, freeing its space.
+     * 
+     * @param index
+     *            index of the record
+     */
+    private final void release(final int index) {
+        final long address;
+        final int length;
+
+        address = getRecords().getAddress(index);
+        length = getRecords().getLength(index);
+
+        getRecords().remove(index);
+        free(address, length);
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.Arrays;
+
+/**
+ * Table of the records stored outside of the Java heap.
+ * <p>
+ * For each record this keeps its address, its length and the hash code of the
+ * entity it contains. All these are stored on primitive arrays, so the table
+ * takes only a few bytes for each record, and creates no objects for them.
+ * <p>
+ * The records are not kept in any order. Removing a record moves the last one
+ * into its place.
+ *
+ * @author Bernardo Martínez Garrido
+ */
+final class RecordTable {
+
+    /**
+     * Initial capacity of the table.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Addresses of the records.
+     */
+    private long[]           addresses        = new long[INITIAL_CAPACITY];
+
+    /**
+     * Hash codes of the entities in the records.
+     */
+    private int[]            hashes           = new int[INITIAL_CAPACITY];
+
+    /**
+     * Lengths of the records.
+     */
+    private int[]            lengths          = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of records in the table.
+     */
+    private int              size             = 0;
+
+    /**
+     * Constructs an empty {@code RecordTable}.
+     */
+    public RecordTable() {
+        super();
+    }
+
+    /**
+     * Adds a record to the table.
+     *
+     * @param address
+     *            address of the record
+     * @param length
+     *            length of the record
+     * @param hash
+     *            hash code of the entity in the record
+     * @return the index of the record
+     */
+    public final int add(final long address, final int length,
+            final int hash) {
+        if (size == addresses.length) {
+            addresses = Arrays.copyOf(addresses, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        addresses[size] = address;
+        lengths[size] = length;
+        hashes[size] = hash;
+
+        return size++;
+    }
+
+    /**
+     * Removes all the records.
+     */
+    public final void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the address of the record at the specified index.
+     *
+     * @param index
+     *            index of the record
+     * @return the address of the record
+     */
+    public final long getAddress(final int index) {
+        return addresses[index];
+    }
+
+    /**
+     * Returns the hash code of the entity in the record at the specified
+     * index.
+     *
+     * @param index
+     *            index of the record
+     * @return the hash code of the record's entity
+     */
+    public final int getHash(final int index) {
+        return hashes[index];
+    }
+
+    /**
+     * Returns the length of the record at the specified index.
+     *
+     * @param index
+     *            index of the record
+     * @return the length of the record
+     */
+    public final int getLength(final int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Removes the record at the specified index.
+     * <p>
+     * The last record is moved into its place.
+     *
+     * @param index
+     *            index of the record to remove
+     */
+    public final void remove(final int index) {
+        size--;
+
+        addresses[index] = addresses[size];
+        lengths[index] = lengths[size];
+        hashes[index] = hashes[size];
+    }
+
+    /**
+     * Changes the address of the record at the specified index.
+     * <p>
+     * This is used when records are moved, for example to compact the space
+     * they take.
+     *
+     * @param index
+     *            index of the record
+     * @param address
+     *            new address of the record
+     */
+    public final void setAddress(final int index, final long address) {
+        addresses[index] = address;
+    }
+
+    /**
+     * Returns the number of records in the table.
+     *
+     * @return the number of records
+     */
+    public final int size() {
+        return size;
+    }
+
+}
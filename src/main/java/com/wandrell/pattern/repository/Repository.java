@@ -47,6 +47,21 @@ public interface Repository<V> {
      */
     public void add(final V entity);
 
+    /**
+     * Adds all the received entities to the repository.
+     * <p>
+     * By default each entity is added on its own, but implementations are
+     * expected to add all of them in a single operation when possible.
+     * 
+     * @param entities
+     *            the entities to add
+     */
+    public default void addAll(final Collection<? extends V> entities) {
+        for (final V entity : entities) {
+            add(entity);
+        }
+    }
+
     /**
      * Returns all the entities contained in the repository.
      * 
@@ -62,6 +77,21 @@ public interface Repository<V> {
      */
     public void remove(final V entity);
 
+    /**
+     * Removes all the received entities from the repository.
+     * <p>
+     * By default each entity is removed on its own, but implementations are
+     * expected to remove all of them in a single operation when possible.
+     * 
+     * @param entities
+     *            the entities to remove
+     */
+    public default void removeAll(final Collection<? extends V> entities) {
+        for (final V entity : entities) {
+            remove(entity);
+        }
+    }
+
     /**
      * Updates an entity on the repository.
      * 
@@ -70,4 +100,19 @@ public interface Repository<V> {
      */
     public void update(final V entity);
 
+    /**
+     * Updates all the received entities on the repository.
+     * <p>
+     * By default each entity is updated on its own, but implementations are
+     * expected to update all of them in a single operation when possible.
+     * 
+     * @param entities
+     *            the entities to update
+     */
+    public default void updateAll(final Collection<? extends V> entities) {
+        for (final V entity : entities) {
+            update(entity);
+        }
+    }
+
 }
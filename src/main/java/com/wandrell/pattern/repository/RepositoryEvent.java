@@ -0,0 +1,133 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Change made on a repository.
+ * <p>
+ * Each event has a sequence number, which grows by one with each change. This
+ * allows consumers to know the last change they handled, and resume from it.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @see ObservableRepository
+ */
+public final class RepositoryEvent<V> {
+
+    /**
+     * Types of changes.
+     */
+    public enum Type {
+        /**
+         * An entity was added.
+         */
+        ADD,
+
+        /**
+         * An entity was removed.
+         */
+        REMOVE,
+
+        /**
+         * An entity was updated.
+         */
+        UPDATE
+    }
+
+    /**
+     * The changed entity.
+     */
+    private final V    entity;
+
+    /**
+     * Sequence number of the change.
+     */
+    private final long sequence;
+
+    /**
+     * Type of change.
+     */
+    private final Type type;
+
+    /**
+     * Constructs a {@code RepositoryEvent} with the specified data.
+     * 
+     * @param number
+     *            sequence number of the change
+     * @param change
+     *            type of change
+     * @param changed
+     *            the changed entity
+     */
+    public RepositoryEvent(final long number, final Type change,
+            final V changed) {
+        super();
+
+        checkNotNull(change, "Received a null pointer as type");
+
+        sequence = number;
+        type = change;
+        entity = changed;
+    }
+
+    /**
+     * Returns the changed entity.
+     * 
+     * @return the changed entity
+     */
+    public final V getEntity() {
+        return entity;
+    }
+
+    /**
+     * Returns the sequence number of the change.
+     * 
+     * @return the sequence number of the change
+     */
+    public final long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the type of change.
+     * 
+     * @return the type of change
+     */
+    public final Type getType() {
+        return type;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("sequence", sequence)
+                .add("type", type).add("entity", entity).toString();
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Entities read from a repository, along the sequence number of the last
+ * change made before reading them.
+ * <p>
+ * Both are taken at the same time, so a consumer which starts from a snapshot
+ * should read the events following its sequence number, and will neither
+ * miss nor repeat any change.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @see ObservableRepository
+ */
+public final class RepositorySnapshot<V> {
+
+    /**
+     * The entities read.
+     */
+    private final Collection<V> entities;
+
+    /**
+     * Sequence number of the last change before reading the entities.
+     */
+    private final long          sequence;
+
+    /**
+     * Constructs a {@code RepositorySnapshot} with the specified data.
+     * 
+     * @param read
+     *            the entities read
+     * @param number
+     *            sequence number of the last change before reading them
+     */
+    public RepositorySnapshot(final Collection<V> read, final long number) {
+        super();
+
+        entities = checkNotNull(read, "Received a null pointer as entities");
+        sequence = number;
+    }
+
+    /**
+     * Returns the entities read.
+     * 
+     * @return the entities read
+     */
+    public final Collection<V> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Returns the sequence number of the last change made before reading the
+     * entities.
+     * 
+     * @return the sequence number of the snapshot
+     */
+    public final long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("sequence", sequence)
+                .add("entities", entities).toString();
+    }
+
+}
@@ -0,0 +1,380 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Mutable implementation of {@link QueryData} meant to be reused.
+ * <p>
+ * Parameters are stored on a pair of small arrays, and found by a linear
+ * search, which for the few parameters a query usually has is faster than
+ * hashing, and creates no entry objects. The arrays grow when needed, but
+ * are never shrunk.
+ * <p>
+ * Calling {@link #clear() clear} empties the instance, keeping its arrays,
+ * so it can be filled again for the next query. The map returned by
+ * {@link #getParameters() getParameters} is a read-only view over the arrays,
+ * created only once.
+ * <p>
+ * Reading a parameter, comparing instances and computing their hash code
+ * work directly over the arrays, and allocate nothing. Only iterating over
+ * the entries of the parameters view creates an entry object for each of
+ * them.
+ * <p>
+ * This class is not thread safe. Usually each thread will keep its own
+ * instance.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class ReusableQueryData implements QueryData {
+
+    /**
+     * Read-only view of the parameters.
+     */
+    private final class ParameterView extends AbstractMap<String, Object> {
+
+        /**
+         * The view's entries.
+         */
+        private final Set<Entry<String, Object>> entries;
+
+        /**
+         * Default constructor.
+         */
+        public ParameterView() {
+            super();
+
+            entries = new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public final Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+
+                        /**
+                         * Position of the next entry.
+                         */
+                        private int next = 0;
+
+                        @Override
+                        public final boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public final Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+
+                            next++;
+
+                            return new SimpleImmutableEntry<String, Object>(
+                                    keys[next - 1], values[next - 1]);
+                        }
+
+                    };
+                }
+
+                @Override
+                public final int size() {
+                    return size;
+                }
+
+            };
+        }
+
+        @Override
+        public final boolean containsKey(final Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public final Set<Entry<String, Object>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            final Map<?, ?> other;
+
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Map)) {
+                return false;
+            }
+
+            other = (Map<?, ?>) obj;
+            if (other.size() != size) {
+                return false;
+            }
+
+            // The values are never null, so a missing key never matches
+            for (int i = 0; i < size; i++) {
+                if (!values[i].equals(other.get(keys[i]))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public final Object get(final Object key) {
+            final int index;
+
+            index = indexOf(key);
+
+            return (index < 0) ? null : values[index];
+        }
+
+        @Override
+        public final int hashCode() {
+            int hash;
+
+            // Same as the hash code of any other map with these entries
+            hash = 0;
+            for (int i = 0; i < size; i++) {
+                hash += keys[i].hashCode() ^ values[i].hashCode();
+            }
+
+            return hash;
+        }
+
+        @Override
+        public final int size() {
+            return size;
+        }
+
+    }
+
+    /**
+     * Default initial capacity for the parameters.
+     */
+    private static final int          DEFAULT_CAPACITY = 4;
+
+    /**
+     * Parameter keys, on the first positions.
+     */
+    private String[]                  keys;
+
+    /**
+     * The string for the query.
+     */
+    private String                    queryStr;
+
+    /**
+     * Number of parameters.
+     */
+    private int                       size;
+
+    /**
+     * Parameter values, on the same positions as their keys.
+     */
+    private Object[]                  values;
+
+    /**
+     * Read-only view of the parameters.
+     */
+    private final Map<String, Object> view;
+
+    /**
+     * Constructs an empty {@code ReusableQueryData}.
+     */
+    public ReusableQueryData() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty {@code ReusableQueryData} with room for the
+     * specified number of parameters.
+     * 
+     * @param capacity
+     *            initial capacity for the parameters
+     */
+    public ReusableQueryData(final int capacity) {
+        super();
+
+        checkArgument(capacity > 0, "The capacity should be positive");
+
+        keys = new String[capacity];
+        values = new Object[capacity];
+        size = 0;
+        queryStr = "";
+        view = new ParameterView();
+    }
+
+    @Override
+    public final void addParameter(final String key, final Object value) {
+        final int index;
+
+        checkNotNull(key, "Received a null pointer as key");
+        checkNotNull(value, "Received a null pointer as value");
+
+        index = indexOf(key);
+        if (index >= 0) {
+            values[index] = value;
+        } else {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    @Override
+    public final void addParameters(final Map<String, Object> parameters) {
+        checkNotNull(parameters, "Received a null pointer as parameters");
+
+        for (final Entry<String, Object> parameter : parameters.entrySet()) {
+            addParameter(parameter.getKey(), parameter.getValue());
+        }
+    }
+
+    /**
+     * Removes the query and all the parameters, so the instance can be
+     * reused.
+     * <p>
+     * The arrays keep their current capacity.
+     */
+    public final void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        queryStr = "";
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        final QueryData other;
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof QueryData)) {
+            return false;
+        }
+
+        other = (QueryData) obj;
+
+        return getQuery().equals(other.getQuery())
+                && view.equals(other.getParameters());
+    }
+
+    /**
+     * Returns the value of a parameter.
+     * 
+     * @param key
+     *            key of the parameter
+     * @return the parameter's value, or {@code null} if there is none
+     */
+    public final Object getParameter(final String key) {
+        return view.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a read-only view, which reflects any later change. The same
+     * instance is returned on each call.
+     */
+    @Override
+    public final Map<String, Object> getParameters() {
+        return view;
+    }
+
+    @Override
+    public final String getQuery() {
+        return queryStr;
+    }
+
+    @Override
+    public final int hashCode() {
+        // Same as Objects.hash(getQuery(), getParameters()), without varargs
+        return 31 * (31 + getQuery().hashCode()) + view.hashCode();
+    }
+
+    @Override
+    public final void removeParameter(final String key) {
+        final int index;
+
+        index = indexOf(key);
+        if (index >= 0) {
+            size--;
+            System.arraycopy(keys, index + 1, keys, index, size - index);
+            System.arraycopy(values, index + 1, values, index, size - index);
+            keys[size] = null;
+            values[size] = null;
+        }
+    }
+
+    /**
+     * Sets the query string.
+     * 
+     * @param query
+     *            the query string
+     */
+    public final void setQuery(final String query) {
+        queryStr = checkNotNull(query, "Received a null pointer as query");
+    }
+
+    /**
+     * Returns the position of a parameter.
+     * 
+     * @param key
+     *            key of the parameter
+     * @return the parameter's position, or {@code -1} if there is none
+     */
+    private final int indexOf(final Object key) {
+        int index;
+
+        index = -1;
+        for (int i = 0; (i < size) && (index < 0); i++) {
+            if (keys[i].equals(key)) {
+                index = i;
+            }
+        }
+
+        return index;
+    }
+
+}
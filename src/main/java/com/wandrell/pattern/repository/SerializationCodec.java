@@ -0,0 +1,118 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link EntityCodec} using the Java serialization.
+ * <p>
+ * This is the simplest codec, as it works with any {@code Serializable}
+ * entity, but not the most compact or the fastest one. For big amounts of
+ * entities it is better creating a codec for the actual entities.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type being encoded
+ */
+public final class SerializationCodec<V extends Serializable>
+        implements EntityCodec<V> {
+
+    /**
+     * Constructs a {@code SerializationCodec}.
+     */
+    public SerializationCodec() {
+        super();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final V decode(final ByteBuffer buffer) {
+        final InputStream input;
+
+        input = new InputStream() {
+
+            @Override
+            public final int read() {
+                final int value;
+
+                if (buffer.hasRemaining()) {
+                    value = buffer.get() & 0xFF;
+                } else {
+                    value = -1;
+                }
+
+                return value;
+            }
+
+            @Override
+            public final int read(final byte[] bytes, final int offset,
+                    final int length) {
+                final int read;
+
+                if (buffer.hasRemaining()) {
+                    read = Math.min(length, buffer.remaining());
+                    buffer.get(bytes, offset, read);
+                } else {
+                    read = -1;
+                }
+
+                return read;
+            }
+
+        };
+
+        try (final ObjectInputStream objects = new ObjectInputStream(input)) {
+            return (V) objects.readObject();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (final ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public final byte[] encode(final V entity) {
+        final ByteArrayOutputStream output;
+
+        output = new ByteArrayOutputStream();
+        try (final ObjectOutputStream objects = new ObjectOutputStream(
+                output)) {
+            objects.writeObject(entity);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return output.toByteArray();
+    }
+
+}
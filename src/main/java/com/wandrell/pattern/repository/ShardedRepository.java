@@ -0,0 +1,609 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * {@link FilteredRepository} partitioning its entities across several
+ * repositories.
+ * <p>
+ * Each entity is stored on a single shard, chosen by a
+ * {@link ShardingStrategy}. Operations on a single entity go only to its
+ * shard, while queries are sent to all the shards in parallel, through an
+ * {@code ExecutorService}, and their results are joined in the order of the
+ * shards.
+ * <p>
+ * Each shard is locked while it is being accessed, so the shards themselves
+ * need not be thread safe. This way several threads can work on the
+ * repository at the same time, as long as they are using different shards.
+ * <p>
+ * Shards can be added, and the strategy replaced, by rebalancing the
+ * repository. This moves each entity stored on the wrong shard into the
+ * correct one, while blocking any other operation. All the entities are
+ * located before any of them is moved, and if this fails the shard or
+ * strategy is discarded, leaving the repository as it was. Then the entities
+ * are added to their new shards before being removed from the old ones, so
+ * if a shard fails while moving them they may be duplicated, but never lost.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type of the filter used for queries
+ */
+public final class ShardedRepository<V, F>
+        implements FilteredRepository<V, F> {
+
+    /**
+     * Executor where the queries on each shard are run.
+     */
+    private final ExecutorService                executor;
+
+    /**
+     * Lock for rebalancing.
+     * <p>
+     * Its write lock is taken when rebalancing, and its read lock for any
+     * other operation.
+     */
+    private final ReadWriteLock                  rebalanceLock;
+
+    /**
+     * The shards.
+     */
+    private final List<FilteredRepository<V, F>> shards;
+
+    /**
+     * Strategy deciding the shard of each entity.
+     */
+    private ShardingStrategy<V>                  strategy;
+
+    /**
+     * Constructs a {@code ShardedRepository} with the specified shards and
+     * strategy, which will query the shards on the common
+     * {@code ForkJoinPool}.
+     * 
+     * @param repositories
+     *            the shards
+     * @param sharding
+     *            strategy deciding the shard of each entity
+     */
+    public ShardedRepository(
+            final List<? extends FilteredRepository<V, F>> repositories,
+            final ShardingStrategy<V> sharding) {
+        this(repositories, sharding, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a {@code ShardedRepository} with the specified shards,
+     * strategy and executor.
+     * 
+     * @param repositories
+     *            the shards
+     * @param sharding
+     *            strategy deciding the shard of each entity
+     * @param executorService
+     *            executor where the queries on each shard are run
+     */
+    public ShardedRepository(
+            final List<? extends FilteredRepository<V, F>> repositories,
+            final ShardingStrategy<V> sharding,
+            final ExecutorService executorService) {
+        super();
+
+        checkNotNull(repositories, "Received a null pointer as shards");
+        checkNotNull(sharding, "Received a null pointer as strategy");
+        checkNotNull(executorService, "Received a null pointer as executor");
+        checkArgument(!repositories.isEmpty(),
+                "At least one shard is required");
+
+        shards = new ArrayList<FilteredRepository<V, F>>(repositories);
+        strategy = sharding;
+        executor = executorService;
+        rebalanceLock = new ReentrantReadWriteLock();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        onShard(entity, (shard) -> {
+            shard.add(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        onShards(entities, (shard, group) -> shard.addAll(group));
+    }
+
+    /**
+     * Adds a shard, and rebalances the repository so it receives its share
+     * of the entities.
+     * 
+     * @param shard
+     *            the shard to add
+     */
+    public final void addShard(final FilteredRepository<V, F> shard) {
+        final List<Collection<V>> moved;
+        final List<Collection<V>> misplaced;
+        final Lock lock;
+
+        checkNotNull(shard, "Received a null pointer as shard");
+
+        moved = new ArrayList<Collection<V>>();
+        misplaced = new ArrayList<Collection<V>>();
+        lock = getRebalanceLock().writeLock();
+        lock.lock();
+        try {
+            getShards().add(shard);
+            try {
+                route(moved, misplaced);
+            } catch (final RuntimeException e) {
+                getShards().remove(getShards().size() - 1);
+                throw e;
+            }
+            move(moved, misplaced);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final Collection<V> result;
+
+        result = new LinkedList<V>();
+        for (final Collection<V> found : onAllShards(Repository::getAll)) {
+            result.addAll(found);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter) {
+        final Collection<V> result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        result = new LinkedList<V>();
+        for (final Collection<V> found : onAllShards(
+                (shard) -> shard.getCollection(filter))) {
+            result.addAll(found);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final V getEntity(final F filter) {
+        V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        entity = null;
+        for (final V found : onAllShards((shard) -> shard.getEntity(filter))) {
+            if ((entity == null) && (found != null)) {
+                entity = found;
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     * Returns the number of shards.
+     * 
+     * @return the number of shards
+     */
+    public final int getShardCount() {
+        final Lock lock;
+
+        lock = getRebalanceLock().readLock();
+        lock.lock();
+        try {
+            return getShards().size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the sharding strategy, moving each entity into the shard
+     * chosen for it by the new strategy.
+     * 
+     * @param sharding
+     *            the new strategy
+     */
+    public final void rebalance(final ShardingStrategy<V> sharding) {
+        final List<Collection<V>> moved;
+        final List<Collection<V>> misplaced;
+        final ShardingStrategy<V> previous;
+        final Lock lock;
+
+        checkNotNull(sharding, "Received a null pointer as strategy");
+
+        moved = new ArrayList<Collection<V>>();
+        misplaced = new ArrayList<Collection<V>>();
+        lock = getRebalanceLock().writeLock();
+        lock.lock();
+        try {
+            previous = strategy;
+            strategy = sharding;
+            try {
+                route(moved, misplaced);
+            } catch (final RuntimeException e) {
+                strategy = previous;
+                throw e;
+            }
+            move(moved, misplaced);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        onShard(entity, (shard) -> {
+            shard.remove(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        onShards(entities, (shard, group) -> shard.removeAll(group));
+    }
+
+    @Override
+    public final void removeIf(final F filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        onAllShards((shard) -> {
+            shard.removeIf(filter);
+            return null;
+        });
+    }
+
+    @Override
+    public final void update(final V entity) {
+        onShard(entity, (shard) -> {
+            shard.update(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        onShards(entities, (shard, group) -> shard.updateAll(group));
+    }
+
+    /**
+     * Creates a task running a bulk operation on a shard, while holding that
+     * shard's lock.
+     * 
+     * @param shard
+     *            the shard to use
+     * @param entities
+     *            the entities for the operation
+     * @param operation
+     *            the bulk operation to run
+     * @return a task running the operation
+     */
+    private final Callable<Void> bulk(final FilteredRepository<V, F> shard,
+            final Collection<V> entities,
+            final BiConsumer<FilteredRepository<V, F>, Collection<V>> operation) {
+        return locked(shard, (repository) -> {
+            operation.accept(repository, entities);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the executor where the queries on each shard are run.
+     * 
+     * @return the executor for the queries
+     */
+    private final ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the lock for rebalancing.
+     * 
+     * @return the lock for rebalancing
+     */
+    private final ReadWriteLock getRebalanceLock() {
+        return rebalanceLock;
+    }
+
+    /**
+     * Returns the shards.
+     * 
+     * @return the shards
+     */
+    private final List<FilteredRepository<V, F>> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the strategy deciding the shard of each entity.
+     * 
+     * @return the sharding strategy
+     */
+    private final ShardingStrategy<V> getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns the index of the shard for the entity.
+     * 
+     * @param entity
+     *            the entity to locate
+     * @return the index of the entity's shard
+     */
+    private final int indexOf(final V entity) {
+        final int index;
+
+        index = getStrategy().getShard(entity, getShards().size());
+        checkArgument((index >= 0) && (index < getShards().size()),
+                "The strategy returned the invalid shard %s", index);
+
+        return index;
+    }
+
+    /**
+     * Runs the tasks on the executor, and returns their results in the same
+     * order.
+     * 
+     * @param tasks
+     *            the tasks to run
+     * @param <T>
+     *            the type of the results
+     * @return the result of each task
+     */
+    private final <T> List<T> invokeAll(final List<Callable<T>> tasks) {
+        final List<T> results;
+
+        results = new ArrayList<T>(tasks.size());
+        try {
+            for (final Future<T> future : getExecutor().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while querying the shards", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Creates a task running the operation on a shard, while holding that
+     * shard's lock.
+     * 
+     * @param shard
+     *            the shard to use
+     * @param operation
+     *            the operation to run
+     * @param <T>
+     *            the type of the operation's result
+     * @return a task running the operation
+     */
+    private final <T> Callable<T> locked(final FilteredRepository<V, F> shard,
+            final Function<FilteredRepository<V, F>, T> operation) {
+        return () -> {
+            synchronized (shard) {
+                return operation.apply(shard);
+            }
+        };
+    }
+
+    /**
+     * Runs an operation on all the shards in parallel.
+     * 
+     * @param operation
+     *            the operation to run
+     * @param <T>
+     *            the type of the operation's result
+     * @return the result for each shard, in the order of the shards
+     */
+    private final <T> List<T> onAllShards(
+            final Function<FilteredRepository<V, F>, T> operation) {
+        final List<Callable<T>> tasks;
+        final Lock lock;
+
+        lock = getRebalanceLock().readLock();
+        lock.lock();
+        try {
+            tasks = new ArrayList<Callable<T>>(getShards().size());
+            for (final FilteredRepository<V, F> shard : getShards()) {
+                tasks.add(locked(shard, operation));
+            }
+
+            return invokeAll(tasks);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs an operation on the entity's shard.
+     * 
+     * @param entity
+     *            the entity used to find the shard
+     * @param operation
+     *            the operation to run
+     * @param <T>
+     *            the type of the operation's result
+     * @return the operation's result
+     */
+    private final <T> T onShard(final V entity,
+            final Function<FilteredRepository<V, F>, T> operation) {
+        final FilteredRepository<V, F> shard;
+        final Lock lock;
+
+        lock = getRebalanceLock().readLock();
+        lock.lock();
+        try {
+            shard = getShards().get(indexOf(entity));
+            synchronized (shard) {
+                return operation.apply(shard);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Groups the entities by shard, and runs a bulk operation on each shard
+     * receiving entities, in parallel.
+     * 
+     * @param entities
+     *            the entities to group
+     * @param operation
+     *            the bulk operation to run
+     */
+    private final void onShards(final Collection<? extends V> entities,
+            final BiConsumer<FilteredRepository<V, F>, Collection<V>> operation) {
+        final List<Collection<V>> groups;
+        final List<Callable<Void>> tasks;
+        final Lock lock;
+
+        lock = getRebalanceLock().readLock();
+        lock.lock();
+        try {
+            groups = new ArrayList<Collection<V>>(getShards().size());
+            for (int i = 0; i < getShards().size(); i++) {
+                groups.add(new ArrayList<V>());
+            }
+            for (final V entity : entities) {
+                groups.get(indexOf(entity)).add(entity);
+            }
+
+            tasks = new ArrayList<Callable<Void>>();
+            for (int i = 0; i < groups.size(); i++) {
+                if (!groups.get(i).isEmpty()) {
+                    tasks.add(bulk(getShards().get(i), groups.get(i),
+                            operation));
+                }
+            }
+
+            invokeAll(tasks);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the misplaced entities into their shards.
+     * <p>
+     * They are added to their new shards before being removed from the old
+     * ones.
+     * <p>
+     * This should be called while holding the write lock.
+     * 
+     * @param moved
+     *            the entities to add to each shard
+     * @param misplaced
+     *            the entities to remove from each shard
+     */
+    private final void move(final List<Collection<V>> moved,
+            final List<Collection<V>> misplaced) {
+        for (int i = 0; i < getShards().size(); i++) {
+            if (!moved.get(i).isEmpty()) {
+                getShards().get(i).addAll(moved.get(i));
+            }
+        }
+
+        for (int i = 0; i < getShards().size(); i++) {
+            if (!misplaced.get(i).isEmpty()) {
+                getShards().get(i).removeAll(misplaced.get(i));
+            }
+        }
+    }
+
+    /**
+     * Finds the entities stored on the wrong shard, without moving them.
+     * <p>
+     * This should be called while holding the write lock.
+     * 
+     * @param moved
+     *            receives the entities to add to each shard
+     * @param misplaced
+     *            receives the entities to remove from each shard
+     */
+    private final void route(final List<Collection<V>> moved,
+            final List<Collection<V>> misplaced) {
+        int index;
+
+        for (int i = 0; i < getShards().size(); i++) {
+            moved.add(new ArrayList<V>());
+            misplaced.add(new ArrayList<V>());
+        }
+
+        for (int i = 0; i < getShards().size(); i++) {
+            for (final V entity : getShards().get(i).getAll()) {
+                index = indexOf(entity);
+                if (index != i) {
+                    misplaced.get(i).add(entity);
+                    moved.get(index).add(entity);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import com.wandrell.pattern.repository.Filters.EqualFilter;
+import com.wandrell.pattern.repository.Filters.InFilter;
+import com.wandrell.pattern.repository.Filters.RangeFilter;
+
+/**
+ * {@link AttributeIndex} keeping the entities sorted by their attribute's
+ * value.
+ * <p>
+ * Besides equality and membership filters, it supports range filters.
+ * Entities with no value for the attribute are kept apart, as they can't be
+ * sorted. Entities are kept on identity sets, so their {@code equals} method
+ * is never called.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the indexed entities
+ * @param <A>
+ *            the type of the attribute's values
+ */
+final class SortedAttributeIndex<V, A extends Comparable<? super A>>
+        implements AttributeIndex<V> {
+
+    /**
+     * The indexed attribute.
+     */
+    private final Attribute<V, A>         attribute;
+
+    /**
+     * The entities, sorted by their attribute's value.
+     */
+    private final NavigableMap<A, Set<V>> buckets;
+
+    /**
+     * The entities with no value for the attribute.
+     */
+    private final Set<V>                  nulls;
+
+    /**
+     * Constructs a {@code SortedAttributeIndex} for the specified attribute.
+     * 
+     * @param attr
+     *            the indexed attribute
+     */
+    public SortedAttributeIndex(final Attribute<V, A> attr) {
+        super();
+
+        attribute = attr;
+        buckets = new TreeMap<A, Set<V>>();
+        nulls = newBucket();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final A value;
+
+        value = getAttribute().getValue(entity);
+        if (value == null) {
+            getNulls().add(entity);
+        } else {
+            getBuckets().computeIfAbsent(value, (key) -> newBucket()).add(entity);
+        }
+    }
+
+    @Override
+    public final long estimate(final Filter<V> filter) {
+        long count;
+
+        count = 0;
+        for (final Set<V> bucket : getMatching(filter)) {
+            count += bucket.size();
+        }
+
+        return count;
+    }
+
+    @Override
+    public final Attribute<V, A> getAttribute() {
+        return attribute;
+    }
+
+    @Override
+    public final Collection<V> lookup(final Filter<V> filter) {
+        final Collection<V> result;
+
+        result = newBucket();
+        for (final Set<V> bucket : getMatching(filter)) {
+            result.addAll(bucket);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final A value;
+        final Set<V> bucket;
+
+        value = getAttribute().getValue(entity);
+        if (value == null) {
+            getNulls().remove(entity);
+        } else {
+            bucket = getBuckets().get(value);
+            if (bucket != null) {
+                bucket.remove(entity);
+                if (bucket.isEmpty()) {
+                    getBuckets().remove(value);
+                }
+            }
+        }
+    }
+
+    @Override
+    public final boolean supports(final Filter<V> filter) {
+        final boolean supported;
+
+        if (filter instanceof EqualFilter) {
+            supported = ((EqualFilter<V, ?>) filter)
+                    .getAttribute() == getAttribute();
+        } else if (filter instanceof InFilter) {
+            supported = ((InFilter<V, ?>) filter)
+                    .getAttribute() == getAttribute();
+        } else if (filter instanceof RangeFilter) {
+            supported = ((RangeFilter<V, ?>) filter)
+                    .getAttribute() == getAttribute();
+        } else {
+            supported = false;
+        }
+
+        return supported;
+    }
+
+    @Override
+    public final String toString() {
+        return "sorted(" + getAttribute() + ")";
+    }
+
+    /**
+     * Returns the entities with the specified value.
+     * 
+     * @param value
+     *            the value to look for
+     * @return the entities with that value
+     */
+    private final Set<V> getBucket(final Object value) {
+        final Set<V> bucket;
+
+        if (value == null) {
+            bucket = getNulls();
+        } else {
+            bucket = getBuckets().getOrDefault(value, Collections.<V> emptySet());
+        }
+
+        return bucket;
+    }
+
+    /**
+     * Returns the entities, sorted by their attribute's value.
+     * 
+     * @return the entities sorted by value
+     */
+    private final NavigableMap<A, Set<V>> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Returns the groups of entities validating a supported filter.
+     * 
+     * @param filter
+     *            the filter
+     * @return the groups of entities validating the filter
+     */
+    @SuppressWarnings("unchecked")
+    private final Collection<Set<V>> getMatching(final Filter<V> filter) {
+        final Collection<Set<V>> result;
+
+        if (filter instanceof EqualFilter) {
+            result = Collections.singleton(
+                    getBucket(((EqualFilter<V, ?>) filter).getValue()));
+        } else if (filter instanceof InFilter) {
+            result = new ArrayList<Set<V>>();
+            for (final Object value : ((InFilter<V, ?>) filter).getValues()) {
+                result.add(getBucket(value));
+            }
+        } else {
+            result = getRange(((RangeFilter<V, A>) filter).getRange())
+                    .values();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the entities with no value for the attribute.
+     * 
+     * @return the entities with no value
+     */
+    private final Set<V> getNulls() {
+        return nulls;
+    }
+
+    /**
+     * Returns the part of the index inside a range.
+     * 
+     * @param range
+     *            the range to return
+     * @return the entities inside the range, sorted by value
+     */
+    private final NavigableMap<A, Set<V>> getRange(final Range<A> range) {
+        final NavigableMap<A, Set<V>> result;
+
+        if (range.hasLowerBound() && range.hasUpperBound()) {
+            result = getBuckets().subMap(range.lowerEndpoint(),
+                    range.lowerBoundType() == BoundType.CLOSED,
+                    range.upperEndpoint(),
+                    range.upperBoundType() == BoundType.CLOSED);
+        } else if (range.hasLowerBound()) {
+            result = getBuckets().tailMap(range.lowerEndpoint(),
+                    range.lowerBoundType() == BoundType.CLOSED);
+        } else if (range.hasUpperBound()) {
+            result = getBuckets().headMap(range.upperEndpoint(),
+                    range.upperBoundType() == BoundType.CLOSED);
+        } else {
+            result = getBuckets();
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates an empty group of entities.
+     * 
+     * @return an empty identity set
+     */
+    private final Set<V> newBucket() {
+        return Collections.newSetFromMap(new IdentityHashMap<V, Boolean>());
+    }
+
+}
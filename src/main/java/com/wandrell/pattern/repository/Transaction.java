@@ -0,0 +1,280 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Transaction on a {@link TransactionalRepository}.
+ * <p>
+ * The transaction reads the repository as it was when the transaction
+ * began, plus its own changes. These changes are buffered until
+ * {@link #commit() commit} is called, and then made visible all at once, or
+ * discarded if another transaction committed any of the same entities in
+ * the meantime.
+ * <p>
+ * Transactions should always be closed, as the repository keeps the versions
+ * they see until then. Closing a transaction which was not committed rolls
+ * it back.
+ * <p>
+ * A transaction is meant to be used by a single thread.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class Transaction<K, V> implements AutoCloseable {
+
+    /**
+     * Changed entities, mapped to their keys, with {@code null} for removed
+     * ones.
+     */
+    private final Map<K, V>                     changes;
+
+    /**
+     * Flag indicating if the transaction was committed or rolled back.
+     */
+    private boolean                             finished;
+
+    /**
+     * The repository being changed.
+     */
+    private final TransactionalRepository<K, V> repository;
+
+    /**
+     * Number of the last commit visible to this transaction.
+     */
+    private final long                          snapshot;
+
+    /**
+     * Constructs a {@code Transaction} over the specified repository and
+     * snapshot.
+     * 
+     * @param transactional
+     *            the repository being changed
+     * @param number
+     *            number of the last commit visible to this transaction
+     */
+    Transaction(final TransactionalRepository<K, V> transactional,
+            final long number) {
+        super();
+
+        repository = transactional;
+        snapshot = number;
+        changes = new LinkedHashMap<K, V>();
+        finished = false;
+    }
+
+    /**
+     * Adds an entity, replacing any with the same key.
+     * 
+     * @param entity
+     *            the entity to add
+     */
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+        checkActive();
+
+        changes.put(repository.getKey(entity), entity);
+    }
+
+    /**
+     * Rolls back the transaction if it was not committed, and releases its
+     * snapshot.
+     */
+    @Override
+    public final void close() {
+        if (!finished) {
+            rollback();
+        }
+    }
+
+    /**
+     * Commits the changes.
+     * 
+     * @throws ConcurrentModificationException
+     *             if another transaction committed any of the changed
+     *             entities after this one began
+     */
+    public final void commit() {
+        checkActive();
+
+        finished = true;
+        try {
+            if (!changes.isEmpty()) {
+                repository.commit(snapshot, changes);
+            }
+        } finally {
+            repository.release(snapshot);
+        }
+    }
+
+    /**
+     * Returns the entity with the specified key.
+     * 
+     * @param id
+     *            the key of the entity
+     * @return the entity with that key, or {@code null} if there is none
+     */
+    public final V get(final K id) {
+        final V entity;
+
+        checkActive();
+
+        if (changes.containsKey(id)) {
+            entity = changes.get(id);
+        } else {
+            entity = repository.read(id, snapshot);
+        }
+
+        return entity;
+    }
+
+    /**
+     * Returns all the entities.
+     * 
+     * @return all the entities
+     */
+    public final Collection<V> getAll() {
+        return getCollection((entity) -> true);
+    }
+
+    /**
+     * Returns the entities validating the filter.
+     * 
+     * @param filter
+     *            the filter to apply
+     * @return the entities validating the filter
+     */
+    public final Collection<V> getCollection(final Predicate<V> filter) {
+        final Collection<V> result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+        checkActive();
+
+        result = repository.scan(snapshot, filter, changes.keySet());
+        for (final Entry<K, V> change : changes.entrySet()) {
+            if ((change.getValue() != null)
+                    && filter.apply(change.getValue())) {
+                result.add(change.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns an entity validating the filter.
+     * 
+     * @param filter
+     *            the filter to apply
+     * @return an entity validating the filter, or {@code null} if there is
+     *         none
+     */
+    public final V getEntity(final Predicate<V> filter) {
+        final Collection<V> entities;
+
+        entities = getCollection(filter);
+
+        return entities.isEmpty() ? null : entities.iterator().next();
+    }
+
+    /**
+     * Returns the number of the last commit visible to this transaction.
+     * 
+     * @return the transaction's snapshot
+     */
+    public final long getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Removes the entity with the same key as the received one.
+     * 
+     * @param entity
+     *            the entity to remove
+     */
+    public final void remove(final V entity) {
+        final K id;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+        checkActive();
+
+        id = repository.getKey(entity);
+        if (get(id) != null) {
+            changes.put(id, null);
+        }
+    }
+
+    /**
+     * Discards the changes.
+     */
+    public final void rollback() {
+        checkActive();
+
+        finished = true;
+        changes.clear();
+        repository.release(snapshot);
+    }
+
+    /**
+     * Replaces the entity with the same key as the received one.
+     * <p>
+     * If there is no such entity nothing is done.
+     * 
+     * @param entity
+     *            the updated entity
+     */
+    public final void update(final V entity) {
+        final K id;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+        checkActive();
+
+        id = repository.getKey(entity);
+        if (get(id) != null) {
+            changes.put(id, entity);
+        }
+    }
+
+    /**
+     * Checks that the transaction was not committed nor rolled back.
+     */
+    private final void checkActive() {
+        checkState(!finished, "The transaction already finished");
+    }
+
+}
@@ -0,0 +1,483 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+
+/**
+ * {@link FilteredRepository} supporting transactions with snapshot
+ * isolation.
+ * <p>
+ * Entities are identified by a key, and each key keeps a chain of versions,
+ * each one tagged with the number of the commit which created it. A
+ * {@link Transaction} reads the versions which were committed when it began,
+ * so it sees a consistent snapshot of the repository, and never waits for
+ * writers. Its own changes are buffered, and only made visible to others
+ * when it commits.
+ * <p>
+ * Commits are checked for conflicts. If any entity changed by the
+ * transaction was committed by another one after the snapshot was taken,
+ * then the commit fails with a {@code ConcurrentModificationException}, and
+ * the transaction should be retried. Otherwise all its changes become
+ * visible at once.
+ * <p>
+ * Versions which no active transaction can see any more are removed by
+ * {@link #collectGarbage() collectGarbage}. This can be scheduled to run in
+ * the background through
+ * {@link #scheduleGarbageCollection(ScheduledExecutorService, long, TimeUnit)
+ * scheduleGarbageCollection}.
+ * <p>
+ * The methods inherited from {@code FilteredRepository} run each in a
+ * transaction of their own.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class TransactionalRepository<K, V>
+        implements FilteredRepository<V, Predicate<V>> {
+
+    /**
+     * The logger used for logging exceptions thrown by the scheduled garbage
+     * collections.
+     */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(TransactionalRepository.class);
+
+    /**
+     * Returns the logger being used to log exceptions thrown by the scheduled
+     * garbage collections.
+     * 
+     * @return the logger being used
+     */
+    private static final Logger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * Version of an entity.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     */
+    private static final class Version<V> {
+
+        /**
+         * Number of the commit which created this version.
+         */
+        private final long          commit;
+
+        /**
+         * The entity, or {@code null} if it was removed on this version.
+         */
+        private final V             entity;
+
+        /**
+         * The previous version.
+         * <p>
+         * It is cut when no active transaction can see it.
+         */
+        private volatile Version<V> previous;
+
+        /**
+         * Constructs a {@code Version} with the specified data.
+         * 
+         * @param number
+         *            number of the commit which created this version
+         * @param value
+         *            the entity, or {@code null} if it was removed
+         * @param older
+         *            the previous version
+         */
+        public Version(final long number, final V value,
+                final Version<V> older) {
+            super();
+
+            commit = number;
+            entity = value;
+            previous = older;
+        }
+
+    }
+
+    /**
+     * Number of the last commit.
+     */
+    private final AtomicLong                       clock;
+
+    /**
+     * Lock for commits.
+     */
+    private final Object                           commitLock;
+
+    /**
+     * Latest version of each entity, mapped to its key.
+     */
+    private final ConcurrentMap<K, Version<V>>     heads;
+
+    /**
+     * Function returning the key of an entity.
+     */
+    private final Function<? super V, ? extends K> key;
+
+    /**
+     * Number of active transactions for each snapshot.
+     */
+    private final NavigableMap<Long, Integer>      snapshots;
+
+    /**
+     * Constructs a {@code TransactionalRepository} with the specified key
+     * extractor.
+     * <p>
+     * Old versions will only be removed when calling
+     * {@link #collectGarbage() collectGarbage}, or after scheduling it with
+     * {@link #scheduleGarbageCollection(ScheduledExecutorService, long,
+     * TimeUnit) scheduleGarbageCollection}.
+     * 
+     * @param extractor
+     *            function returning the key of an entity
+     */
+    public TransactionalRepository(
+            final Function<? super V, ? extends K> extractor) {
+        super();
+
+        key = checkNotNull(extractor, "Received a null pointer as extractor");
+
+        clock = new AtomicLong();
+        commitLock = new Object();
+        heads = new ConcurrentHashMap<K, Version<V>>();
+        snapshots = new TreeMap<Long, Integer>();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final Transaction<K, V> transaction;
+
+        transaction = begin();
+        try {
+            transaction.add(entity);
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * Begins a transaction, which will see the entities as they are now.
+     * 
+     * @return a new transaction
+     */
+    public final Transaction<K, V> begin() {
+        final long snapshot;
+
+        synchronized (snapshots) {
+            snapshot = clock.get();
+            snapshots.merge(snapshot, 1, Integer::sum);
+        }
+
+        return new Transaction<K, V>(this, snapshot);
+    }
+
+    /**
+     * Removes the versions which no active transaction can see.
+     * <p>
+     * For each entity only the newest version visible to the oldest active
+     * transaction, and the ones after it, are kept. Entities whose kept
+     * version is a removal are dropped completely.
+     */
+    public final void collectGarbage() {
+        final long oldest;
+        Version<V> version;
+
+        synchronized (snapshots) {
+            if (snapshots.isEmpty()) {
+                oldest = clock.get();
+            } else {
+                oldest = snapshots.firstKey();
+            }
+        }
+
+        for (final Entry<K, Version<V>> head : heads.entrySet()) {
+            version = head.getValue();
+            while ((version != null) && (version.commit > oldest)) {
+                version = version.previous;
+            }
+
+            if (version != null) {
+                version.previous = null;
+                if ((version == head.getValue()) && (version.entity == null)) {
+                    // Only succeeds if nothing was committed meanwhile
+                    heads.remove(head.getKey(), version);
+                }
+            }
+        }
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final Transaction<K, V> transaction;
+
+        transaction = begin();
+        try {
+            return transaction.getAll();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    @Override
+    public final Collection<V> getCollection(final Predicate<V> filter) {
+        final Transaction<K, V> transaction;
+
+        transaction = begin();
+        try {
+            return transaction.getCollection(filter);
+        } finally {
+            transaction.close();
+        }
+    }
+
+    @Override
+    public final V getEntity(final Predicate<V> filter) {
+        final Transaction<K, V> transaction;
+
+        transaction = begin();
+        try {
+            return transaction.getEntity(filter);
+        } finally {
+            transaction.close();
+        }
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final Transaction<K, V> transaction;
+
+        transaction = begin();
+        try {
+            transaction.remove(entity);
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * Schedules removing the versions which no active transaction can see
+     * periodically.
+     * <p>
+     * The garbage collection is run on the received executor, until the
+     * returned future is cancelled. An exception thrown by a scheduled run is
+     * logged, and does not cancel the following ones.
+     * 
+     * @param executor
+     *            executor running the garbage collection
+     * @param period
+     *            time between each garbage collection
+     * @param unit
+     *            unit for the period
+     * @return the future for the scheduled garbage collection, which may be
+     *         used to cancel it
+     */
+    public final ScheduledFuture<?> scheduleGarbageCollection(
+            final ScheduledExecutorService executor, final long period,
+            final TimeUnit unit) {
+        checkNotNull(executor, "Received a null pointer as executor");
+        checkNotNull(unit, "Received a null pointer as unit");
+        checkArgument(period > 0, "The period should be positive");
+
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                collectGarbage();
+            } catch (final RuntimeException e) {
+                getLogger().error(e.getMessage(), e);
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final Transaction<K, V> transaction;
+
+        transaction = begin();
+        try {
+            transaction.update(entity);
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * Commits the changes of a transaction.
+     * <p>
+     * The new versions are all linked before advancing the clock, so they
+     * become visible at the same time.
+     * 
+     * @param snapshot
+     *            the transaction's snapshot
+     * @param changes
+     *            the changed entities, mapped to their keys, with
+     *            {@code null} for removed ones
+     * @throws ConcurrentModificationException
+     *             if any of the entities was committed after the snapshot
+     */
+    final void commit(final long snapshot, final Map<K, V> changes) {
+        final long number;
+        Version<V> head;
+
+        synchronized (commitLock) {
+            for (final K id : changes.keySet()) {
+                head = heads.get(id);
+                if ((head != null) && (head.commit > snapshot)) {
+                    throw new ConcurrentModificationException(String.format(
+                            "The entity %s was changed by another transaction",
+                            id));
+                }
+            }
+
+            number = clock.get() + 1;
+            for (final Entry<K, V> change : changes.entrySet()) {
+                heads.compute(change.getKey(),
+                        (id, older) -> new Version<V>(number,
+                                change.getValue(), older));
+            }
+            clock.set(number);
+        }
+    }
+
+    /**
+     * Returns the key of an entity.
+     * 
+     * @param entity
+     *            the entity whose key is returned
+     * @return the entity's key
+     */
+    final K getKey(final V entity) {
+        return key.apply(entity);
+    }
+
+    /**
+     * Returns the entity with the specified key, as seen on a snapshot.
+     * 
+     * @param id
+     *            the key of the entity
+     * @param snapshot
+     *            the snapshot to read
+     * @return the entity, or {@code null} if it didn't exist on the snapshot
+     */
+    final V read(final K id, final long snapshot) {
+        return visible(heads.get(id), snapshot);
+    }
+
+    /**
+     * Releases a snapshot, so its versions can be removed.
+     * 
+     * @param snapshot
+     *            the snapshot to release
+     */
+    final void release(final long snapshot) {
+        synchronized (snapshots) {
+            snapshots.computeIfPresent(snapshot,
+                    (number, count) -> (count > 1) ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Returns the entities validating the filter, as seen on a snapshot.
+     * <p>
+     * The entities with the specified keys are skipped.
+     * 
+     * @param snapshot
+     *            the snapshot to read
+     * @param filter
+     *            the filter to apply
+     * @param skipped
+     *            keys of the entities to skip
+     * @return the entities validating the filter
+     */
+    final Collection<V> scan(final long snapshot,
+            final Predicate<V> filter,
+            final Collection<K> skipped) {
+        final Collection<V> result;
+        V entity;
+
+        result = new LinkedList<V>();
+        for (final Entry<K, Version<V>> head : heads.entrySet()) {
+            if (!skipped.contains(head.getKey())) {
+                entity = visible(head.getValue(), snapshot);
+                if ((entity != null) && filter.apply(entity)) {
+                    result.add(entity);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the entity visible on a snapshot from a chain of versions.
+     * 
+     * @param head
+     *            the latest version
+     * @param snapshot
+     *            the snapshot to read
+     * @return the visible entity, or {@code null} if there is none
+     */
+    private final V visible(final Version<V> head, final long snapshot) {
+        Version<V> version;
+
+        version = head;
+        while ((version != null) && (version.commit > snapshot)) {
+            version = version.previous;
+        }
+
+        return (version == null) ? null : version.entity;
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Entity stored on a {@link VersionedRepository}, along its version.
+ * <p>
+ * Instances are immutable. Each change on the repository stores a new one,
+ * with a new version.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class VersionedEntity<V> {
+
+    /**
+     * The stored entity.
+     */
+    private final V    entity;
+
+    /**
+     * Version of the entity.
+     */
+    private final long version;
+
+    /**
+     * Constructs a {@code VersionedEntity} with the specified data.
+     * 
+     * @param stored
+     *            the stored entity
+     * @param number
+     *            version of the entity
+     */
+    public VersionedEntity(final V stored, final long number) {
+        super();
+
+        entity = stored;
+        version = number;
+    }
+
+    /**
+     * Returns the stored entity.
+     * 
+     * @return the stored entity
+     */
+    public final V getEntity() {
+        return entity;
+    }
+
+    /**
+     * Returns the version of the entity.
+     * 
+     * @return the version of the entity
+     */
+    public final long getVersion() {
+        return version;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("version", version)
+                .add("entity", entity).toString();
+    }
+
+}
@@ -0,0 +1,322 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import com.google.common.base.Predicate;
+
+/**
+ * {@link FilteredRepository} tracking a version for each entity, which allows
+ * optimistic concurrency.
+ * <p>
+ * Entities are identified by a key, taken with a key extractor, and stored
+ * on a concurrent map along their versions. Each change stores the entity
+ * with a new version, taken from a counter shared by the whole repository,
+ * so a version is never repeated, not even after removing and adding again
+ * an entity.
+ * <p>
+ * The common {@code update} method just replaces the stored entity, so
+ * concurrent writers may overwrite each other. To avoid this the
+ * {@link #compareAndUpdate(long, Object) compareAndUpdate} method only
+ * updates the entity if it still has the expected version, and the
+ * {@link #updateWith(Object, UnaryOperator) updateWith} method applies a
+ * function to the stored entity, retrying until no other writer changed it
+ * in between.
+ * <p>
+ * None of these operations take locks, they are built on the atomic
+ * operations of {@code ConcurrentHashMap}. So writers on different entities
+ * never block each other.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class VersionedRepository<K, V>
+        implements FilteredRepository<V, Predicate<V>> {
+
+    /**
+     * The entities stored in the repository, mapped to their keys.
+     */
+    private final ConcurrentMap<K, VersionedEntity<V>> data;
+
+    /**
+     * Function returning the key of an entity.
+     */
+    private final Function<? super V, ? extends K>     key;
+
+    /**
+     * Counter for the versions.
+     */
+    private final AtomicLong                           versions;
+
+    /**
+     * Constructs a {@code VersionedRepository} with the specified key
+     * extractor.
+     * 
+     * @param extractor
+     *            function returning the key of an entity
+     */
+    public VersionedRepository(
+            final Function<? super V, ? extends K> extractor) {
+        super();
+
+        key = checkNotNull(extractor, "Received a null pointer as extractor");
+
+        data = new ConcurrentHashMap<K, VersionedEntity<V>>();
+        versions = new AtomicLong();
+    }
+
+    /**
+     * Adds an entity to the repository.
+     * <p>
+     * If there is already an entity with the same key it is replaced.
+     * 
+     * @param entity
+     *            the entity to add
+     */
+    @Override
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().put(getKey(entity), version(entity));
+    }
+
+    /**
+     * Updates the entity, but only if the stored one has the expected
+     * version.
+     * 
+     * @param expectedVersion
+     *            version the stored entity should have
+     * @param entity
+     *            the updated entity
+     * @return {@code true} if the entity was updated, {@code false} if it
+     *         was missing or had another version
+     */
+    public final boolean compareAndUpdate(final long expectedVersion,
+            final V entity) {
+        final K id;
+        final VersionedEntity<V> current;
+        final boolean updated;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        id = getKey(entity);
+        current = getData().get(id);
+        if ((current == null) || (current.getVersion() != expectedVersion)) {
+            updated = false;
+        } else {
+            // Only succeeds if no other writer stored a new instance
+            updated = getData().replace(id, current, version(entity));
+        }
+
+        return updated;
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final Collection<V> result;
+
+        result = new LinkedList<V>();
+        for (final VersionedEntity<V> stored : getData().values()) {
+            result.add(stored.getEntity());
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Collection<V> getCollection(final Predicate<V> filter) {
+        final Collection<V> result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        result = new LinkedList<V>();
+        for (final VersionedEntity<V> stored : getData().values()) {
+            if (filter.apply(stored.getEntity())) {
+                result.add(stored.getEntity());
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public final V getEntity(final Predicate<V> filter) {
+        V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        entity = null;
+        for (final VersionedEntity<V> stored : getData().values()) {
+            if (filter.apply(stored.getEntity())) {
+                entity = stored.getEntity();
+                break;
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     * Returns the entity with the specified key, along its version.
+     * 
+     * @param id
+     *            the key of the entity
+     * @return the versioned entity, or {@code null} if there is none
+     */
+    public final VersionedEntity<V> getVersioned(final K id) {
+        checkNotNull(id, "Received a null pointer as key");
+
+        return getData().get(id);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().remove(getKey(entity));
+    }
+
+    @Override
+    public final void removeIf(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        getData().values()
+                .removeIf((stored) -> filter.apply(stored.getEntity()));
+    }
+
+    @Override
+    public final Stream<V> stream(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return getData().values().stream().map(VersionedEntity::getEntity)
+                .filter(filter::apply);
+    }
+
+    /**
+     * Updates the entity, whatever the version of the stored one.
+     * <p>
+     * If there is no entity with the same key nothing is done.
+     * 
+     * @param entity
+     *            the updated entity
+     */
+    @Override
+    public final void update(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().computeIfPresent(getKey(entity),
+                (id, stored) -> version(entity));
+    }
+
+    /**
+     * Updates the entity with the specified key by applying a function to
+     * it.
+     * <p>
+     * If another writer changes the entity while the function is being
+     * applied, then the function is applied again over the new entity, until
+     * the update succeeds. So the function may be called several times, and
+     * should have no side effects.
+     * 
+     * @param id
+     *            the key of the entity to update
+     * @param function
+     *            function returning the updated entity
+     * @return the updated entity, or {@code null} if there was no entity
+     *         with that key
+     */
+    public final V updateWith(final K id, final UnaryOperator<V> function) {
+        VersionedEntity<V> current;
+        V updated;
+        boolean stored;
+
+        checkNotNull(id, "Received a null pointer as key");
+        checkNotNull(function, "Received a null pointer as function");
+
+        updated = null;
+        stored = false;
+        current = getData().get(id);
+        while (!stored && (current != null)) {
+            updated = function.apply(current.getEntity());
+            checkNotNull(updated, "The function returned a null pointer");
+            checkArgument(Objects.equals(id, getKey(updated)),
+                    "The function changed the entity's key");
+
+            stored = getData().replace(id, current, version(updated));
+            if (!stored) {
+                current = getData().get(id);
+                updated = null;
+            }
+        }
+
+        return updated;
+    }
+
+    /**
+     * Returns the entities stored, mapped to their keys.
+     * 
+     * @return the entities stored
+     */
+    private final ConcurrentMap<K, VersionedEntity<V>> getData() {
+        return data;
+    }
+
+    /**
+     * Returns the key of an entity.
+     * 
+     * @param entity
+     *            the entity whose key is returned
+     * @return the entity's key
+     */
+    private final K getKey(final V entity) {
+        return key.apply(entity);
+    }
+
+    /**
+     * Wraps the entity along a new version.
+     * 
+     * @param entity
+     *            the entity to wrap
+     * @return the entity with a new version
+     */
+    private final VersionedEntity<V> version(final V entity) {
+        return new VersionedEntity<V>(entity, versions.incrementAndGet());
+    }
+
+}
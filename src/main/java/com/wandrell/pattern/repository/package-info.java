@@ -46,6 +46,17 @@
  * that {@code getCollection} returns a collection of entities, while
  * {@code getEntity} returns just a single entity.
  * <p>
+ * The filtered entities can also be consumed lazily, through the
+ * {@link com.wandrell.pattern.repository.FilteredRepository#stream(Object)
+ * stream} and the
+ * {@link com.wandrell.pattern.repository.FilteredRepository#iterator(Object)
+ * iterator} methods.
+ * <p>
+ * They can also be aggregated in a single pass, without building a collection
+ * with them, through the
+ * {@link com.wandrell.pattern.repository.FilteredRepository#count(Object)
+ * count}, {@code reduce}, {@code collect} and {@code groupBy} methods.
+ * <p>
  * Each implementation will take care of which type of object will it use for
  * filtering, and how it will apply such filter. But an example is the
  * {@link com.wandrell.pattern.repository.QueryData QueryData} interface, which
@@ -62,8 +73,94 @@
  * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html"
  * >Predicate</a> which the entities to be returned should validate.
  * <p>
+ * Queries which are read often can be registered on it as
+ * {@link com.wandrell.pattern.repository.MaterializedView MaterializedView}
+ * instances, which are kept up to date on each change. The most common of
+ * these, such as counts, sums or groupings, are created through
+ * {@link com.wandrell.pattern.repository.MaterializedViews MaterializedViews}.
+ * <p>
+ * When entities are identified by a key, the
+ * {@link com.wandrell.pattern.repository.KeyedRepository KeyedRepository}
+ * stores them mapped to it. Then they are updated and removed in constant
+ * time, without calling their {@code equals} method.
+ * The {@link com.wandrell.pattern.repository.VersionedRepository
+ * VersionedRepository} also keys its entities, and tracks a version for each
+ * of them, so concurrent writers can update them optimistically, without
+ * locks.
+ * <p>
+ * Several changes can be grouped with the
+ * {@link com.wandrell.pattern.repository.TransactionalRepository
+ * TransactionalRepository}. Each of its
+ * {@link com.wandrell.pattern.repository.Transaction Transaction} instances
+ * reads a snapshot of the entities, taken when it began, and makes its
+ * changes visible all at once when committed.
+ * <p>
+ * For big amounts of entities there is the
+ * {@link com.wandrell.pattern.repository.OffHeapRepository OffHeapRepository},
+ * which stores them encoded outside of the Java heap, through an
+ * {@link com.wandrell.pattern.repository.EntityCodec EntityCodec}. The
+ * {@link com.wandrell.pattern.repository.MappedFileRepository
+ * MappedFileRepository} works the same way, but keeps the entities on a log
+ * stored on memory-mapped files, so they persist between executions.
+ * <p>
+ * Numeric values can be stored on the primitive repositories,
+ * {@link com.wandrell.pattern.repository.IntRepository IntRepository},
+ * {@link com.wandrell.pattern.repository.LongRepository LongRepository} and
+ * {@link com.wandrell.pattern.repository.DoubleRepository DoubleRepository},
+ * which keep them on primitive arrays and filter them without boxing.
+ * <p>
+ * For analytical scans there is the
+ * {@link com.wandrell.pattern.repository.ColumnarRepository
+ * ColumnarRepository}, which decomposes the entities into columns of
+ * primitive values, and filters them column by column through
+ * {@link com.wandrell.pattern.repository.ColumnFilter ColumnFilter} instances.
+ * <p>
+ * Any {@code FilteredRepository} can be wrapped by a
+ * {@link com.wandrell.pattern.repository.CachingRepository CachingRepository},
+ * which will cache the results of its queries, and may also buffer writes to
+ * send them in batches. The cached results can be reloaded in the background
+ * after each write, instead of being discarded, and queries built with
+ * mutable {@code QueryData} can be copied before being cached. Or by an
+ * {@link com.wandrell.pattern.repository.ObservableRepository
+ * ObservableRepository}, which publishes each change made on it, so other
+ * components can follow them without reading the whole repository. Or by an
+ * {@link com.wandrell.pattern.repository.ExpiringRepository
+ * ExpiringRepository}, which removes the entities once their time to live
+ * has passed.
+ * <p>
+ * To spread the entities across several repositories there is the
+ * {@link com.wandrell.pattern.repository.ShardedRepository ShardedRepository},
+ * which stores each entity on the shard chosen by a
+ * {@link com.wandrell.pattern.repository.ShardingStrategy ShardingStrategy},
+ * and queries all the shards in parallel.
+ * <p>
+ * Queries with several conditions can be built as
+ * {@link com.wandrell.pattern.repository.Filter Filter} instances, through
+ * {@link com.wandrell.pattern.repository.Filters Filters}. Unlike common
+ * predicates these can be inspected, which allows the
+ * {@link com.wandrell.pattern.repository.IndexedRepository IndexedRepository}
+ * to plan them, answering them with its indexes instead of scanning all the
+ * entities.
+ * <p>
  * Additionally, there is a default implementation of {@code QueryData},
  * {@link com.wandrell.pattern.repository.DefaultQueryData DefaultQueryData},
- * which just serves to ease using said interface.
+ * which just serves to ease using said interface. On hot paths the
+ * {@link com.wandrell.pattern.repository.ReusableQueryData ReusableQueryData}
+ * can be used instead, which keeps its parameters on small arrays, and can be
+ * cleared and filled again for each query.
+ * <p>
+ * Queries executed repeatedly can be parsed just once into a
+ * {@link com.wandrell.pattern.repository.PreparedQuery PreparedQuery}, which
+ * assigns a slot to each of its parameters, and binds them into an array.
+ * These are shared through a
+ * {@link com.wandrell.pattern.repository.PreparedQueryCache
+ * PreparedQueryCache}, keyed by the query string.
+ * <p>
+ * The {@link com.wandrell.pattern.repository.QueryRepository QueryRepository}
+ * is filtered with {@code QueryData}, written on a small SQL-like language
+ * over the entities' attributes. Each query is compiled once into a chain of
+ * lambdas, which is cached and reused with any parameters. Several queries
+ * can be run together through {@code getCollections}, which this repository
+ * answers with a single pass over its entities.
  */
 package com.wandrell.pattern.repository;
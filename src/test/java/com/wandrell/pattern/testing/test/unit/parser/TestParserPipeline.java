@@ -0,0 +1,219 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.parser;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.parser.LineStreamParser;
+import com.wandrell.pattern.parser.Parser;
+import com.wandrell.pattern.parser.ParserPipeline;
+
+/**
+ * Unit tests for {@link ParserPipeline}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Composed parsers apply the second to the output of the first</li>
+ * <li>Fused stages are applied to each record in order</li>
+ * <li>Queued stages return the same records as fused ones</li>
+ * <li>Errors on queued stages reach the caller</li>
+ * <li>Errors on queued stages still stop the queued stages after them</li>
+ * <li>Each stage records the records it parsed</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ParserPipeline
+ */
+public final class TestParserPipeline {
+
+    /**
+     * Executor for the queued stages.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Default constructor.
+     */
+    public TestParserPipeline() {
+        super();
+    }
+
+    /**
+     * Creates the executor for the queued stages.
+     */
+    @BeforeClass
+    public final void initialize() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Stops the executor for the queued stages.
+     */
+    @AfterClass
+    public final void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Tests that composed parsers apply the second to the output of the
+     * first.
+     */
+    @Test
+    public final void testCompose() {
+        final Parser<String, Integer> parser;
+
+        parser = ParserPipeline.compose(String::trim, Integer::valueOf);
+
+        Assert.assertEquals(parser.parse(" 42 "), (Integer) 42);
+    }
+
+    /**
+     * Tests that fused stages are applied to each record in order.
+     */
+    @Test
+    public final void testParse_Fused() {
+        final ParserPipeline<Reader, Integer> pipeline;
+        final List<Integer> records;
+
+        pipeline = ParserPipeline.from(new LineStreamParser())
+                .then("trim", String::trim).then("number", Integer::valueOf)
+                .then("double", (value) -> value * 2);
+        records = new ArrayList<Integer>();
+        pipeline.parse(new StringReader(" 1\n2 \n 3 "), records::add);
+
+        Assert.assertEquals(records, Arrays.asList(2, 4, 6));
+    }
+
+    /**
+     * Tests that errors on queued stages reach the caller.
+     */
+    @Test(expectedExceptions = NumberFormatException.class)
+    public final void testParse_Queued_Error() {
+        final ParserPipeline<Reader, Integer> pipeline;
+        final StringBuilder input;
+
+        input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            input.append(i).append('\n');
+        }
+        input.append("error\n");
+        for (int i = 0; i < 1000; i++) {
+            input.append(i).append('\n');
+        }
+
+        pipeline = ParserPipeline.from(new LineStreamParser())
+                .thenAsync("number", Integer::valueOf, executor, 4);
+
+        pipeline.toParser().parse(new StringReader(input.toString()));
+    }
+
+    /**
+     * Tests that errors on queued stages still stop the queued stages after
+     * them, so no worker is left waiting.
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting for the workers
+     */
+    @Test
+    public final void testParse_Queued_Error_NextStopped()
+            throws InterruptedException {
+        final ExecutorService workers;
+        final ParserPipeline<Reader, Integer> pipeline;
+        boolean failed;
+
+        workers = Executors.newFixedThreadPool(2);
+        pipeline = ParserPipeline.from(new LineStreamParser())
+                .thenAsync("number", Integer::valueOf, workers, 4)
+                .thenAsync("double", (value) -> value * 2, workers, 4);
+
+        try {
+            pipeline.toParser().parse(new StringReader("1\nerror\n3"));
+            failed = false;
+        } catch (final NumberFormatException e) {
+            failed = true;
+        }
+
+        workers.shutdown();
+
+        Assert.assertTrue(failed);
+        Assert.assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that queued stages return the same records as fused ones.
+     */
+    @Test
+    public final void testParse_Queued_SameRecords() {
+        final ParserPipeline<Reader, Integer> pipeline;
+        final StringBuilder input;
+        final List<Integer> expected;
+
+        input = new StringBuilder();
+        expected = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            input.append(i).append('\n');
+            expected.add(i * 2);
+        }
+
+        pipeline = ParserPipeline.from(new LineStreamParser())
+                .thenAsync("number", Integer::valueOf, executor, 16)
+                .thenAsync("double", (value) -> value * 2, executor, 16);
+
+        Assert.assertEquals(
+                pipeline.toParser().parse(new StringReader(input.toString())),
+                expected);
+    }
+
+    /**
+     * Tests that each stage records the records it parsed.
+     */
+    @Test
+    public final void testStatistics_Recorded() {
+        final ParserPipeline<Reader, Integer> pipeline;
+
+        pipeline = ParserPipeline.from(new LineStreamParser())
+                .then("number", Integer::valueOf)
+                .thenAsync("double", (value) -> value * 2, executor, 2);
+        pipeline.toParser().parse(new StringReader("1\n2\n3"));
+
+        Assert.assertEquals(pipeline.getStatistics().size(), 2);
+        Assert.assertEquals(pipeline.getStatistics().get(0).getName(),
+                "number");
+        Assert.assertEquals(pipeline.getStatistics().get(1).getRecords(), 3L);
+    }
+
+}
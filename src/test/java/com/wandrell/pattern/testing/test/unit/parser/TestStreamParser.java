@@ -0,0 +1,122 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.parser;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.parser.LineStreamParser;
+import com.wandrell.pattern.parser.Parser;
+import com.wandrell.pattern.parser.StreamParser;
+
+/**
+ * Unit tests for {@link StreamParser} and {@link LineStreamParser}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Lines are sent one by one, without terminators</li>
+ * <li>Mapped records are parsed with the received parser</li>
+ * <li>A parser returning a collection is adapted into a stream parser</li>
+ * <li>A stream parser is adapted into a parser returning a list</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see StreamParser
+ * @see LineStreamParser
+ */
+public final class TestStreamParser {
+
+    /**
+     * Default constructor.
+     */
+    public TestStreamParser() {
+        super();
+    }
+
+    /**
+     * Tests that mapped records are parsed with the received parser.
+     */
+    @Test
+    public final void testMap_Parsed() {
+        final StreamParser<Reader, Integer> parser;
+        final List<Integer> records;
+
+        parser = new LineStreamParser().map(Integer::valueOf);
+        records = new ArrayList<Integer>();
+        parser.parse(new StringReader("1\n2\n3"), records::add);
+
+        Assert.assertEquals(records, Arrays.asList(1, 2, 3));
+    }
+
+    /**
+     * Tests that a parser returning a collection is adapted into a stream
+     * parser.
+     */
+    @Test
+    public final void testOf_Adapted() {
+        final Parser<String, List<String>> parser;
+        final List<String> records;
+
+        parser = (input) -> Arrays.asList(input.split(","));
+        records = new ArrayList<String>();
+        StreamParser.of(parser).parse("a,b,c", records::add);
+
+        Assert.assertEquals(records, Arrays.asList("a", "b", "c"));
+    }
+
+    /**
+     * Tests that lines are sent one by one, without terminators.
+     */
+    @Test
+    public final void testParse_Lines() {
+        final List<String> records;
+
+        records = new ArrayList<String>();
+        new LineStreamParser().parse(new StringReader("a\r\nb\n\nc\n"),
+                records::add);
+
+        Assert.assertEquals(records, Arrays.asList("a", "b", "", "c"));
+    }
+
+    /**
+     * Tests that a stream parser is adapted into a parser returning a list.
+     */
+    @Test
+    public final void testToParser_Adapted() {
+        final Parser<Reader, List<String>> parser;
+
+        parser = new LineStreamParser().toParser();
+
+        Assert.assertEquals(parser.parse(new StringReader("a\nb")),
+                Arrays.asList("a", "b"));
+    }
+
+}
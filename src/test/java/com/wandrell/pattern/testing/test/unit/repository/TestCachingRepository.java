@@ -0,0 +1,499 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.wandrell.pattern.repository.CachingRepository;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.Attribute;
+import com.wandrell.pattern.repository.DefaultQueryData;
+import com.wandrell.pattern.repository.FilteredRepository;
+import com.wandrell.pattern.repository.QueryData;
+import com.wandrell.pattern.repository.QueryRepository;
+import com.wandrell.pattern.repository.ReusableQueryData;
+
+/**
+ * Unit tests for {@link CachingRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Repeated queries are taken from the cache</li>
+ * <li>Writing clears the cache</li>
+ * <li>Buffered writes are not sent until the batch is full</li>
+ * <li>Buffered writes are sent before querying</li>
+ * <li>Buffered writes are sent by the scheduled flush</li>
+ * <li>Writes sent before a failed batch are not sent again</li>
+ * <li>Revalidated results are not reloaded until queried</li>
+ * <li>Revalidated results are returned until reloaded</li>
+ * <li>Writes sent while reloading are not lost</li>
+ * <li>Expired results can be waited for while they are reloaded</li>
+ * <li>Query data is copied before being cached</li>
+ * <li>Filters already cached are not copied again</li>
+ * <li>Results are evicted by their weight</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see CachingRepository
+ */
+public final class TestCachingRepository {
+
+    /**
+     * Filter accepting all the entities.
+     */
+    private final Predicate<String>                       all = Predicates
+            .alwaysTrue();
+
+    /**
+     * The wrapped repository.
+     */
+    private FilteredRepository<String, Predicate<String>> wrapped;
+
+    /**
+     * Default constructor.
+     */
+    public TestCachingRepository() {
+        super();
+    }
+
+    /**
+     * Restores the wrapped repository before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        wrapped = new CollectionRepository<String>(new LinkedHashSet<String>());
+
+        wrapped.add("a");
+        wrapped.add("b");
+    }
+
+    /**
+     * Tests that buffered writes are not sent until the batch is full.
+     */
+    @Test
+    public final void testAdd_Buffered_NotSent() {
+        final CachingRepository<String, Predicate<String>> repository;
+
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder(), 2);
+
+        repository.add("c");
+
+        Assert.assertEquals(wrapped.getAll().size(), 2);
+
+        repository.add("d");
+
+        Assert.assertEquals(wrapped.getAll().size(), 4);
+    }
+
+    /**
+     * Tests that buffered writes are sent by the scheduled flush.
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted while waiting
+     */
+    @Test
+    public final void testAdd_Buffered_ScheduledFlush()
+            throws InterruptedException {
+        final CachingRepository<String, Predicate<String>> repository;
+        final ScheduledExecutorService executor;
+        int size;
+
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder(), 10);
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            repository.scheduleFlush(executor, 10, TimeUnit.MILLISECONDS);
+            repository.add("c");
+
+            // The wrapped repository is read with the same lock as the flush
+            size = 0;
+            for (int i = 0; (i < 100) && (size < 3); i++) {
+                Thread.sleep(10);
+                synchronized (repository) {
+                    size = wrapped.getAll().size();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(size, 3);
+    }
+
+    /**
+     * Tests that the writes sent before a failed batch are not sent again on
+     * the next flush.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testFlush_Failed_SentNotRepeated() {
+        final FilteredRepository<String, Predicate<String>> failing;
+        final CachingRepository<String, Predicate<String>> repository;
+
+        failing = Mockito.mock(FilteredRepository.class);
+        Mockito.doThrow(new IllegalStateException()).doNothing()
+                .when(failing).removeAll(Mockito.anyCollection());
+
+        repository = new CachingRepository<String, Predicate<String>>(failing,
+                CacheBuilder.newBuilder(), 10);
+
+        repository.add("c");
+        repository.remove("a");
+        try {
+            repository.flush();
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            // The removal failed
+        }
+        repository.flush();
+
+        Mockito.verify(failing, Mockito.times(1))
+                .addAll(Mockito.anyCollection());
+        Mockito.verify(failing, Mockito.times(2))
+                .removeAll(Mockito.anyCollection());
+    }
+
+    /**
+     * Tests that writing clears the cache.
+     */
+    @Test
+    public final void testAdd_ClearsCache() {
+        final CachingRepository<String, Predicate<String>> repository;
+        final Collection<String> entities;
+
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                "maximumSize=10");
+
+        repository.getCollection(all);
+        repository.add("c");
+        entities = repository.getCollection(all);
+
+        Assert.assertEquals(entities.size(), 3);
+        Assert.assertTrue(entities.contains("c"));
+    }
+
+    /**
+     * Tests that revalidated results are not reloaded until they are queried.
+     */
+    @Test
+    public final void testAdd_Revalidated_NotReloadedUntilQueried() {
+        final CachingRepository<String, Predicate<String>> repository;
+        final List<Runnable> tasks;
+
+        tasks = new ArrayList<Runnable>();
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder(), 1, Function.identity(), tasks::add);
+
+        repository.getCollection(all);
+        repository.getCollection(Predicates.equalTo("a"));
+        repository.add("c");
+        repository.add("d");
+
+        Assert.assertTrue(tasks.isEmpty());
+
+        repository.getCollection(all);
+
+        Assert.assertEquals(tasks.size(), 1);
+    }
+
+    /**
+     * Tests that revalidated results are returned until reloaded.
+     */
+    @Test
+    public final void testAdd_Revalidated_StaleUntilReloaded() {
+        final CachingRepository<String, Predicate<String>> repository;
+        final List<Runnable> tasks;
+
+        tasks = new ArrayList<Runnable>();
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder(), 1, Function.identity(), tasks::add);
+
+        repository.getCollection(all);
+        repository.add("c");
+
+        Assert.assertEquals(repository.getCollection(all).size(), 2);
+
+        for (final Runnable task : tasks) {
+            task.run();
+        }
+
+        Assert.assertEquals(repository.getCollection(all).size(), 3);
+    }
+
+    /**
+     * Tests that a result reloaded while writing is reloaded again the next
+     * time it is queried.
+     */
+    @Test
+    public final void testAdd_Revalidated_WrittenWhileReloading_Reloaded() {
+        final CachingRepository<String, Predicate<String>> repository;
+        final FilteredRepository<String, Predicate<String>> reading;
+        final List<Runnable> tasks;
+        final List<Runnable> writes;
+
+        writes = new ArrayList<Runnable>();
+        // Runs the writes after reading the wrapped repository
+        reading = new FilteredRepository<String, Predicate<String>>() {
+
+            @Override
+            public final void add(final String entity) {
+                wrapped.add(entity);
+            }
+
+            @Override
+            public final Collection<String> getAll() {
+                return wrapped.getAll();
+            }
+
+            @Override
+            public final Collection<String> getCollection(
+                    final Predicate<String> filter) {
+                final Collection<String> entities;
+                final List<Runnable> received;
+
+                entities = wrapped.getCollection(filter);
+
+                received = new ArrayList<Runnable>(writes);
+                writes.clear();
+                for (final Runnable write : received) {
+                    write.run();
+                }
+
+                return entities;
+            }
+
+            @Override
+            public final String getEntity(final Predicate<String> filter) {
+                return wrapped.getEntity(filter);
+            }
+
+            @Override
+            public final void remove(final String entity) {
+                wrapped.remove(entity);
+            }
+
+            @Override
+            public final void update(final String entity) {
+                wrapped.update(entity);
+            }
+
+        };
+
+        tasks = new ArrayList<Runnable>();
+        repository = new CachingRepository<String, Predicate<String>>(reading,
+                CacheBuilder.newBuilder(), 1, Function.identity(), tasks::add);
+
+        repository.getCollection(all);
+        repository.add("c");
+        repository.getCollection(all);
+
+        writes.add(() -> repository.add("d"));
+        for (final Runnable task : new ArrayList<Runnable>(tasks)) {
+            task.run();
+        }
+        tasks.clear();
+
+        repository.getCollection(all);
+        for (final Runnable task : tasks) {
+            task.run();
+        }
+
+        Assert.assertEquals(repository.getCollection(all).size(), 4);
+    }
+
+    /**
+     * Tests that buffered writes are sent before querying.
+     */
+    @Test
+    public final void testGetCollection_Buffered_Flushes() {
+        final CachingRepository<String, Predicate<String>> repository;
+        final Collection<String> entities;
+
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder(), 10);
+
+        repository.add("c");
+        entities = repository.getCollection(all);
+
+        Assert.assertEquals(entities.size(), 3);
+        Assert.assertEquals(wrapped.getAll().size(), 3);
+    }
+
+    /**
+     * Tests that filters already cached are not copied again.
+     */
+    @Test
+    public final void testGetCollection_Cached_KeyNotCopied() {
+        final CachingRepository<String, Predicate<String>> repository;
+        final List<Predicate<String>> copied;
+
+        copied = new ArrayList<Predicate<String>>();
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder(), 1, (filter) -> {
+                    copied.add(filter);
+                    return filter;
+                });
+
+        repository.getCollection(all);
+        repository.getCollection(all);
+        repository.getCollection(all);
+
+        Assert.assertEquals(copied.size(), 1);
+    }
+
+    /**
+     * Tests that expired results can be waited for while they are reloaded.
+     */
+    @Test(timeOut = 5000)
+    public final void testGetCollection_ExpiredWhileReloading_Waits() {
+        final CachingRepository<String, Predicate<String>> repository;
+        final AtomicLong time;
+        final Ticker ticker;
+
+        time = new AtomicLong();
+        ticker = new Ticker() {
+
+            @Override
+            public final long read() {
+                return time.get();
+            }
+
+        };
+
+        // The reload starts after querying the expired result
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder().ticker(ticker)
+                        .expireAfterWrite(1, TimeUnit.MINUTES),
+                1, Function.identity(), (task) -> new Thread(() -> {
+                    Uninterruptibles.sleepUninterruptibly(100,
+                            TimeUnit.MILLISECONDS);
+                    task.run();
+                }).start());
+
+        repository.getCollection(all);
+        repository.add("c");
+        time.addAndGet(TimeUnit.MINUTES.toNanos(2));
+
+        Assert.assertEquals(repository.getCollection(all).size(), 3);
+    }
+
+    /**
+     * Tests that query data is copied before being cached.
+     */
+    @Test
+    public final void testGetCollection_QueryData_Copied() {
+        final QueryRepository<String> queried;
+        final CachingRepository<String, QueryData> repository;
+        final ReusableQueryData data;
+
+        queried = new QueryRepository<String>();
+        queried.addAttribute(new Attribute<String, String>("name",
+                (entity) -> entity));
+        queried.add("a");
+        queried.add("b");
+
+        repository = new CachingRepository<String, QueryData>(queried,
+                CacheBuilder.newBuilder().recordStats(), 1,
+                DefaultQueryData::new);
+
+        data = new ReusableQueryData();
+        data.setQuery("name = :name");
+        data.addParameter("name", "a");
+
+        Assert.assertEquals(repository.getCollection(data),
+                Arrays.asList("a"));
+
+        data.clear();
+        data.setQuery("name = :name");
+        data.addParameter("name", "b");
+
+        Assert.assertEquals(repository.getCollection(data),
+                Arrays.asList("b"));
+
+        data.addParameter("name", "a");
+
+        Assert.assertEquals(repository.getCollection(data),
+                Arrays.asList("a"));
+        Assert.assertEquals(repository.getStatistics().hitCount(), 1L);
+    }
+
+    /**
+     * Tests that repeated queries are taken from the cache.
+     */
+    @Test
+    public final void testGetCollection_Repeated_Cached() {
+        final CachingRepository<String, Predicate<String>> repository;
+
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                "maximumSize=10,recordStats");
+
+        repository.getCollection(all);
+        repository.getCollection(all);
+
+        Assert.assertEquals(repository.getStatistics().missCount(), 1L);
+        Assert.assertEquals(repository.getStatistics().hitCount(), 1L);
+    }
+
+    /**
+     * Tests that results are evicted by their weight.
+     */
+    @Test
+    public final void testGetCollection_Weighed_Evicted() {
+        final CachingRepository<String, Predicate<String>> repository;
+
+        repository = new CachingRepository<String, Predicate<String>>(wrapped,
+                CacheBuilder.newBuilder().concurrencyLevel(1)
+                        .maximumWeight(4)
+                        .weigher(CachingRepository.resultSizeWeigher())
+                        .recordStats());
+
+        repository.getCollection(all);
+        repository.getCollection(Predicates.equalTo("a"));
+
+        Assert.assertEquals(repository.getStatistics().evictionCount(), 1L);
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.ColumnFilter;
+import com.wandrell.pattern.repository.ColumnarRepository;
+
+/**
+ * Unit tests for {@link ColumnarRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are rebuilt from their columns</li>
+ * <li>Conjunctions narrow the selection column by column</li>
+ * <li>Disjunctions and negations select the correct rows</li>
+ * <li>Strings missing from the dictionary select no row</li>
+ * <li>Entities are updated and removed by key</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ColumnarRepository
+ */
+public final class TestColumnarRepository {
+
+    /**
+     * Test entity.
+     */
+    private static final class TestClass {
+
+        /**
+         * Identifier of the entity.
+         */
+        private final long   id;
+
+        /**
+         * Country of the entity.
+         */
+        private final String country;
+
+        /**
+         * Price of the entity.
+         */
+        private final double price;
+
+        /**
+         * Constructs a test entity with the specified data.
+         * 
+         * @param id
+         *            identifier of the entity
+         * @param country
+         *            country of the entity
+         * @param price
+         *            price of the entity
+         */
+        public TestClass(final long id, final String country,
+                final double price) {
+            super();
+
+            this.id = id;
+            this.country = country;
+            this.price = price;
+        }
+
+    }
+
+    /**
+     * The repository being tested.
+     */
+    private ColumnarRepository<TestClass> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestColumnarRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * <p>
+     * It contains a thousand entities, from three countries, with prices from
+     * zero to ninety-nine.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        final String[] countries;
+
+        repository = new ColumnarRepository<TestClass>(
+                (row) -> new TestClass(row.getLong("id"),
+                        row.getString("country"), row.getDouble("price")));
+        repository.addLongColumn("id", (entity) -> entity.id);
+        repository.addStringColumn("country", (entity) -> entity.country);
+        repository.addDoubleColumn("price", (entity) -> entity.price);
+
+        countries = new String[] { "es", "fr", "it" };
+        for (int i = 0; i < 1000; i++) {
+            repository.add(new TestClass(i, countries[i % 3], i % 100));
+        }
+    }
+
+    /**
+     * Tests that conjunctions narrow the selection column by column.
+     */
+    @Test
+    public final void testGetCollection_And() {
+        final Collection<TestClass> result;
+
+        result = repository.getCollection(
+                ColumnFilter.and(ColumnFilter.stringEq("country", "es"),
+                        ColumnFilter.doubleRange("price", 0, 9)));
+
+        for (final TestClass entity : result) {
+            Assert.assertEquals(entity.country, "es");
+            Assert.assertTrue(entity.price <= 9);
+        }
+        Assert.assertEquals(result.size(), 34);
+    }
+
+    /**
+     * Tests that strings missing from the dictionary select no row.
+     */
+    @Test
+    public final void testGetCollection_MissingString_Empty() {
+        Assert.assertEquals(
+                repository.count(ColumnFilter.stringEq("country", "de")), 0L);
+    }
+
+    /**
+     * Tests that disjunctions and negations select the correct rows.
+     */
+    @Test
+    public final void testGetCollection_OrNot() {
+        final ColumnFilter filter;
+
+        filter = ColumnFilter.or(ColumnFilter.longRange("id", 0, 9),
+                ColumnFilter.not(ColumnFilter.stringIn("country",
+                        Arrays.asList("es", "fr"))));
+
+        Assert.assertEquals(repository.count(filter), 340L);
+    }
+
+    /**
+     * Tests that entities are rebuilt from their columns.
+     */
+    @Test
+    public final void testGetEntity_Rebuilt() {
+        final TestClass entity;
+
+        entity = repository.getEntity(ColumnFilter.longEq("id", 42));
+
+        Assert.assertEquals(entity.id, 42L);
+        Assert.assertEquals(entity.country, "es");
+        Assert.assertEquals(entity.price, 42.0);
+    }
+
+    /**
+     * Tests that entities are updated and removed by key.
+     */
+    @Test
+    public final void testUpdateRemove_ByKey() {
+        repository.update(new TestClass(5, "de", 500));
+        repository.remove(new TestClass(6, null, 0));
+        repository.removeIf(ColumnFilter.doubleRange("price", 90, 99));
+
+        Assert.assertEquals(repository.size(), 899);
+        Assert.assertEquals(
+                repository.getEntity(ColumnFilter.stringEq("country", "de")).id,
+                5L);
+        Assert.assertNull(repository.getEntity(ColumnFilter.longEq("id", 6)));
+    }
+
+}
@@ -24,6 +24,7 @@
 
 package com.wandrell.pattern.testing.test.unit.repository;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Objects;
@@ -46,6 +47,7 @@ import com.wandrell.pattern.repository.FilteredRepository;
  * <ol>
  * <li>Entities are updated correctly</li>
  * <li>Updating a non existing entity does not add it</li>
+ * <li>Entities are updated in bulk correctly</li>
  * </ol>
  * 
  * @author Bernardo Martínez Garrido
@@ -206,4 +208,22 @@ public final class TestCustomUpdateCollectionRepository {
         Assert.assertTrue(!entities.contains(entity));
     }
 
+    /**
+     * Tests that updating entities in bulk updates the existing ones, and does
+     * not add the others.
+     */
+    @Test
+    public final void testUpdateAll_Existing_Update() {
+        final Collection<TestClass> entities; // All the entities
+
+        repository.updateAll(
+                Arrays.asList(new TestClass("a"), new TestClass("d")));
+
+        entities = repository.getAll();
+
+        Assert.assertEquals(entities.size(), 3);
+        Assert.assertTrue(entities.contains(new TestClass("a")));
+        Assert.assertTrue(!entities.contains(new TestClass("d")));
+    }
+
 }
@@ -0,0 +1,211 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.DoubleRepository;
+
+/**
+ * Unit tests for {@link DoubleRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Values are added correctly</li>
+ * <li>Duplicated values are kept, and removed one at a time</li>
+ * <li>NaN is stored, found and removed as any other value</li>
+ * <li>Positive and negative zero are different values</li>
+ * <li>Values are removed correctly</li>
+ * <li>The {@code getValues} method filters the values correctly</li>
+ * <li>The repository keeps working after growing and removing values</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see DoubleRepository
+ */
+public final class TestDoubleRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private DoubleRepository repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestDoubleRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new DoubleRepository();
+
+        repository.add(1.5);
+        repository.add(2.5);
+        repository.add(3.5);
+    }
+
+    /**
+     * Tests that values are added correctly.
+     */
+    @Test
+    public final void testAdd_Adds() {
+        repository.add(4.5);
+
+        Assert.assertEquals(repository.size(), 4);
+        Assert.assertTrue(repository.contains(4.5));
+    }
+
+    /**
+     * Tests that duplicated values are kept, and removed one at a time.
+     */
+    @Test
+    public final void testAdd_Duplicated_Kept() {
+        repository.add(4.5);
+        repository.add(4.5);
+
+        Assert.assertEquals(repository.size(), 5);
+        Assert.assertEquals(repository.getValues(value -> value == 4.5).length,
+                2);
+
+        repository.remove(4.5);
+
+        Assert.assertEquals(repository.size(), 4);
+        Assert.assertTrue(repository.contains(4.5));
+        Assert.assertEquals(repository.getAll().size(), 4);
+    }
+
+    /**
+     * Tests that NaN is stored, found and removed as any other value.
+     */
+    @Test
+    public final void testAdd_NaN_Found() {
+        repository.add(Double.NaN);
+        repository.add(Double.NaN);
+
+        Assert.assertEquals(repository.size(), 5);
+        Assert.assertTrue(repository.contains(Double.NaN));
+
+        repository.remove(Double.NaN);
+        repository.remove(Double.NaN);
+
+        Assert.assertEquals(repository.size(), 3);
+        Assert.assertTrue(!repository.contains(Double.NaN));
+    }
+
+    /**
+     * Tests that positive and negative zero are stored as different values.
+     */
+    @Test
+    public final void testAdd_SignedZeros_Distinct() {
+        repository.add(0.0);
+
+        Assert.assertTrue(repository.contains(0.0));
+        Assert.assertTrue(!repository.contains(-0.0));
+
+        repository.add(-0.0);
+
+        Assert.assertEquals(repository.size(), 5);
+        Assert.assertTrue(repository.contains(-0.0));
+    }
+
+    /**
+     * Tests that the {@code getValues} method filters the values correctly.
+     */
+    @Test
+    public final void testGetValues_Filter_Filters() {
+        final double[] values;
+
+        values = repository.getValues(value -> value > 2);
+        Arrays.sort(values);
+
+        Assert.assertTrue(Arrays.equals(values, new double[] { 2.5, 3.5 }));
+    }
+
+    /**
+     * Tests that the repository keeps working after growing and removing
+     * values.
+     */
+    @Test
+    public final void testGrow_Remove_KeepsValues() {
+        for (int i = 0; i < 10000; i++) {
+            repository.add(i + 0.25);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            repository.remove(i + 0.25);
+        }
+
+        Assert.assertEquals(repository.size(), 5003);
+        Assert.assertTrue(repository.contains(1.25));
+        Assert.assertTrue(!repository.contains(2.25));
+        Assert.assertEquals(repository.streamDoubles(value -> true).count(),
+                5003L);
+    }
+
+    /**
+     * Tests that NaN is removed correctly.
+     */
+    @Test
+    public final void testRemove_NaN_Removes() {
+        repository.add(Double.NaN);
+        repository.remove(Double.NaN);
+
+        Assert.assertEquals(repository.size(), 3);
+        Assert.assertTrue(!repository.contains(Double.NaN));
+    }
+
+    /**
+     * Tests that removing negative zero keeps positive zero.
+     */
+    @Test
+    public final void testRemove_NegativeZero_KeepsPositive() {
+        repository.add(0.0);
+        repository.add(-0.0);
+        repository.remove(-0.0);
+
+        Assert.assertEquals(repository.size(), 4);
+        Assert.assertTrue(repository.contains(0.0));
+        Assert.assertTrue(!repository.contains(-0.0));
+    }
+
+    /**
+     * Tests that values are removed correctly.
+     */
+    @Test
+    public final void testRemove_Removes() {
+        repository.remove(2.5);
+
+        Assert.assertEquals(repository.size(), 2);
+        Assert.assertTrue(!repository.contains(2.5));
+    }
+
+}
@@ -0,0 +1,214 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Ticker;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.ExpiringRepository;
+
+/**
+ * Unit tests for {@link ExpiringRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are not returned after expiring</li>
+ * <li>Entities can have their own time to live</li>
+ * <li>Adding an entity again replaces its deadline</li>
+ * <li>Adding a stored entity again refreshes its deadline without
+ * duplicating it</li>
+ * <li>Very long times to live don't expire before shorter ones</li>
+ * <li>Listeners receive the expired entities</li>
+ * <li>A failing listener does not stop the expiration</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ExpiringRepository
+ */
+public final class TestExpiringRepository {
+
+    /**
+     * Current time, in nanoseconds.
+     */
+    private long                                          now;
+
+    /**
+     * The repository being tested.
+     */
+    private ExpiringRepository<String, Predicate<String>> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestExpiringRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * <p>
+     * Entities live for ten seconds by default.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        now = 0;
+        repository = new ExpiringRepository<String, Predicate<String>>(
+                new CollectionRepository<String>(), 10, TimeUnit.SECONDS,
+                new Ticker() {
+
+                    @Override
+                    public final long read() {
+                        return now;
+                    }
+
+                });
+    }
+
+    /**
+     * Tests that adding an entity again replaces its deadline.
+     */
+    @Test
+    public final void testAdd_Again_DeadlineReplaced() {
+        repository.add("a");
+        now = TimeUnit.SECONDS.toNanos(5);
+        repository.remove("a");
+        repository.add("a");
+
+        now = TimeUnit.SECONDS.toNanos(12);
+
+        Assert.assertEquals(repository.getAll().size(), 1);
+    }
+
+    /**
+     * Tests that adding a stored entity again refreshes its deadline, without
+     * duplicating it, and that it expires once the new deadline passes.
+     */
+    @Test
+    public final void testAdd_Stored_DeadlineRefreshed() {
+        repository.add("a");
+        now = TimeUnit.SECONDS.toNanos(5);
+        repository.add("a");
+
+        now = TimeUnit.SECONDS.toNanos(12);
+        Assert.assertEquals(repository.getAll().size(), 1);
+
+        now = TimeUnit.SECONDS.toNanos(15);
+        Assert.assertEquals(repository.getAll().size(), 0);
+    }
+
+    /**
+     * Tests that entities can have their own time to live.
+     */
+    @Test
+    public final void testAdd_OwnTimeToLive() {
+        repository.add("a");
+        repository.add("b", 20, TimeUnit.SECONDS);
+
+        now = TimeUnit.SECONDS.toNanos(15);
+
+        Assert.assertEquals(repository.getAll().size(), 1);
+        Assert.assertEquals(repository.getAll().iterator().next(), "b");
+    }
+
+    /**
+     * Tests that very long times to live don't expire before shorter ones.
+     */
+    @Test
+    public final void testAdd_Unbounded_NotExpired() {
+        now = 1;
+        repository.add("a", Long.MAX_VALUE, TimeUnit.DAYS);
+        repository.add("b");
+
+        now = TimeUnit.SECONDS.toNanos(15);
+
+        Assert.assertEquals(repository.getAll().size(), 1);
+        Assert.assertEquals(repository.getAll().iterator().next(), "a");
+    }
+
+    /**
+     * Tests that entities are not returned after expiring.
+     */
+    @Test
+    public final void testGetAll_Expired_NotReturned() {
+        repository.add("a");
+
+        now = TimeUnit.SECONDS.toNanos(9);
+        Assert.assertEquals(repository.getAll().size(), 1);
+
+        now = TimeUnit.SECONDS.toNanos(10);
+        Assert.assertEquals(repository.getAll().size(), 0);
+    }
+
+    /**
+     * Tests that listeners receive the expired entities.
+     */
+    @Test
+    public final void testListener_ReceivesExpired() {
+        final List<String> expired;
+
+        expired = new ArrayList<String>();
+        repository.addListener(expired::add);
+
+        repository.add("a");
+        repository.add("b", 1, TimeUnit.MINUTES);
+
+        now = TimeUnit.SECONDS.toNanos(30);
+        repository.cleanUp();
+
+        Assert.assertEquals(expired.size(), 1);
+        Assert.assertEquals(expired.get(0), "a");
+    }
+
+    /**
+     * Tests that a failing listener does not stop the expiration.
+     */
+    @Test
+    public final void testListener_Failing_Expired() {
+        final List<String> expired;
+
+        expired = new ArrayList<String>();
+        repository.addListener((entity) -> {
+            throw new IllegalStateException();
+        });
+        repository.addListener(expired::add);
+
+        repository.add("a");
+        repository.add("b", 5, TimeUnit.SECONDS);
+
+        now = TimeUnit.SECONDS.toNanos(30);
+
+        Assert.assertEquals(repository.getAll().size(), 0);
+        Assert.assertEquals(expired.size(), 2);
+    }
+
+}
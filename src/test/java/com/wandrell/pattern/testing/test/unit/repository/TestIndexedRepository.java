@@ -0,0 +1,245 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Range;
+import com.wandrell.pattern.repository.Attribute;
+import com.wandrell.pattern.repository.Filter;
+import com.wandrell.pattern.repository.Filters;
+import com.wandrell.pattern.repository.IndexedRepository;
+
+/**
+ * Unit tests for {@link IndexedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Equality filters are answered by the hash index</li>
+ * <li>The most selective index drives conjunctions</li>
+ * <li>Disjunctions are answered by joining index lookups</li>
+ * <li>Filters with no index scan the entities</li>
+ * <li>Updated entities are moved on the indexes</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see IndexedRepository
+ */
+public final class TestIndexedRepository {
+
+    /**
+     * Test entity, identified by its name.
+     */
+    private final class TestClass {
+
+        /**
+         * Age of the entity.
+         */
+        private final Integer age;
+
+        /**
+         * Group of the entity.
+         */
+        private final String  group;
+
+        /**
+         * Name of the entity, which identifies it.
+         */
+        private final String  name;
+
+        /**
+         * Constructs a test entity with the specified data.
+         * 
+         * @param name
+         *            name of the entity
+         * @param group
+         *            group of the entity
+         * @param age
+         *            age of the entity
+         */
+        public TestClass(final String name, final String group,
+                final Integer age) {
+            super();
+
+            this.name = name;
+            this.group = group;
+            this.age = age;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            return Objects.equals(name, ((TestClass) obj).name);
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+    }
+
+    /**
+     * Age attribute, with a sorted index.
+     */
+    private final Attribute<TestClass, Integer> age        = new Attribute<TestClass, Integer>(
+            "age", (entity) -> entity.age);
+
+    /**
+     * Group attribute, with a hash index.
+     */
+    private final Attribute<TestClass, String>  group      = new Attribute<TestClass, String>(
+            "group", (entity) -> entity.group);
+
+    /**
+     * Name attribute, with no index.
+     */
+    private final Attribute<TestClass, String>  name       = new Attribute<TestClass, String>(
+            "name", (entity) -> entity.name);
+
+    /**
+     * The repository being tested.
+     */
+    private IndexedRepository<TestClass>        repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestIndexedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * <p>
+     * There are a hundred entities, spread through four groups, with ages
+     * from zero to ninety-nine.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new IndexedRepository<TestClass>();
+        repository.addHashIndex(group);
+        repository.addSortedIndex(age);
+
+        for (int i = 0; i < 100; i++) {
+            repository.add(new TestClass("entity" + i, "group" + (i % 4), i));
+        }
+    }
+
+    /**
+     * Tests that the most selective index drives conjunctions.
+     */
+    @Test
+    public final void testGetCollection_And_SelectiveIndex() {
+        final Filter<TestClass> filter;
+        final Collection<TestClass> result;
+
+        filter = Filters.and(Filters.eq(group, "group1"),
+                Filters.range(age, Range.closedOpen(10, 20)));
+
+        result = repository.getCollection(filter);
+
+        Assert.assertEquals(result.size(), 2);
+        Assert.assertTrue(repository.explain(filter).startsWith("Filter"));
+        Assert.assertTrue(repository.explain(filter)
+                .contains("Lookup sorted(age)"));
+    }
+
+    /**
+     * Tests that equality filters are answered by the hash index.
+     */
+    @Test
+    public final void testGetCollection_Eq_HashIndex() {
+        final Filter<TestClass> filter;
+
+        filter = Filters.eq(group, "group2");
+
+        Assert.assertEquals(repository.getCollection(filter).size(), 25);
+        Assert.assertTrue(
+                repository.explain(filter).startsWith("Lookup hash(group)"));
+    }
+
+    /**
+     * Tests that filters with no index scan the entities.
+     */
+    @Test
+    public final void testGetCollection_NoIndex_Scan() {
+        final Filter<TestClass> filter;
+
+        filter = Filters.and(Filters.eq(name, "entity5"),
+                Filters.not(Filters.eq(group, "group0")));
+
+        Assert.assertEquals(repository.getCollection(filter).size(), 1);
+        Assert.assertTrue(repository.explain(filter).startsWith("Scan"));
+    }
+
+    /**
+     * Tests that disjunctions are answered by joining index lookups.
+     */
+    @Test
+    public final void testGetCollection_Or_Union() {
+        final Filter<TestClass> filter;
+
+        filter = Filters.or(Filters.in(age, Arrays.asList(1, 2, 3)),
+                Filters.range(age, Range.atLeast(98)));
+
+        Assert.assertEquals(repository.getCollection(filter).size(), 5);
+        Assert.assertTrue(repository.explain(filter).startsWith("Union"));
+    }
+
+    /**
+     * Tests that updated entities are moved on the indexes.
+     */
+    @Test
+    public final void testUpdate_Reindexed() {
+        repository.update(new TestClass("entity0", "group9", 0));
+
+        Assert.assertEquals(
+                repository.getCollection(Filters.eq(group, "group0")).size(),
+                24);
+        Assert.assertEquals(
+                repository.getCollection(Filters.eq(group, "group9")).size(),
+                1);
+        Assert.assertEquals(repository.size(), 100);
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.IntRepository;
+
+/**
+ * Unit tests for {@link IntRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Values are added correctly</li>
+ * <li>Duplicated values are kept, and removed one at a time</li>
+ * <li>Values are removed correctly</li>
+ * <li>The {@code getValues} method filters the values correctly</li>
+ * <li>The repository keeps working after growing and removing values</li>
+ * <li>Values which only differ on their high bits are spread over the
+ * table</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see IntRepository
+ */
+public final class TestIntRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private IntRepository repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestIntRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new IntRepository();
+
+        repository.add(1);
+        repository.add(2);
+        repository.add(3);
+    }
+
+    /**
+     * Tests that values are added correctly.
+     */
+    @Test
+    public final void testAdd_Adds() {
+        repository.add(4);
+
+        Assert.assertEquals(repository.size(), 4);
+        Assert.assertTrue(repository.contains(4));
+    }
+
+    /**
+     * Tests that duplicated values are kept, and removed one at a time.
+     */
+    @Test
+    public final void testAdd_Duplicated_Kept() {
+        repository.add(4);
+        repository.add(4);
+
+        Assert.assertEquals(repository.size(), 5);
+        Assert.assertEquals(repository.getValues(value -> value == 4).length,
+                2);
+
+        repository.remove(4);
+
+        Assert.assertEquals(repository.size(), 4);
+        Assert.assertTrue(repository.contains(4));
+        Assert.assertEquals(repository.getAll().size(), 4);
+    }
+
+    /**
+     * Tests that the {@code getValues} method filters the values correctly.
+     */
+    @Test
+    public final void testGetValues_Filter_Filters() {
+        final int[] values;
+
+        values = repository.getValues(value -> value > 1);
+        Arrays.sort(values);
+
+        Assert.assertTrue(Arrays.equals(values, new int[] { 2, 3 }));
+    }
+
+    /**
+     * Tests that the repository keeps working after growing and removing
+     * values.
+     */
+    @Test
+    public final void testGrow_Remove_KeepsValues() {
+        for (int i = 0; i < 10000; i++) {
+            repository.add(i * 31);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            repository.remove(i * 31);
+        }
+
+        Assert.assertEquals(repository.size(), 5003);
+        Assert.assertTrue(repository.contains(31));
+        Assert.assertTrue(!repository.contains(62));
+        Assert.assertEquals(repository.streamInts(value -> true).count(),
+                5003L);
+    }
+
+    /**
+     * Tests that values which only differ on their high bits are spread over
+     * the table, instead of being probed one after another.
+     */
+    @Test(timeOut = 5000)
+    public final void testGrow_StridedValues_Spreads() {
+        for (int i = 0; i < 500000; i++) {
+            repository.add(i << 11);
+        }
+
+        Assert.assertEquals(repository.size(), 500003);
+        Assert.assertTrue(repository.contains(42 << 11));
+        Assert.assertTrue(!repository.contains((42 << 11) + 1));
+    }
+
+    /**
+     * Tests that values are removed correctly.
+     */
+    @Test
+    public final void testRemove_Removes() {
+        repository.remove(2);
+
+        Assert.assertEquals(repository.size(), 2);
+        Assert.assertTrue(!repository.contains(2));
+    }
+
+}
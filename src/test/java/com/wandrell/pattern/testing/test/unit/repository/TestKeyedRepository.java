@@ -0,0 +1,185 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.KeyedRepository;
+
+/**
+ * Unit tests for {@link KeyedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are updated by key, without calling their equals method</li>
+ * <li>Updating a missing entity does not add it</li>
+ * <li>Updating a missing entity in upsert mode adds it</li>
+ * <li>Adding an entity with an existing key replaces the stored one</li>
+ * <li>Entities are removed by key</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see KeyedRepository
+ */
+public final class TestKeyedRepository {
+
+    /**
+     * Test entity, whose equals method can't be used.
+     */
+    private final class TestClass {
+
+        /**
+         * Key of the entity.
+         */
+        private final Integer id;
+
+        /**
+         * Value of the entity.
+         */
+        private final String  value;
+
+        /**
+         * Constructs a test entity with the specified data.
+         * 
+         * @param id
+         *            key of the entity
+         * @param value
+         *            value of the entity
+         */
+        public TestClass(final Integer id, final String value) {
+            super();
+
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final int hashCode() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * The repository being tested.
+     */
+    private KeyedRepository<Integer, TestClass> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestKeyedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new KeyedRepository<Integer, TestClass>(
+                (entity) -> entity.id);
+
+        repository.add(new TestClass(1, "a"));
+        repository.add(new TestClass(2, "b"));
+    }
+
+    /**
+     * Tests that adding an entity with an existing key replaces the stored
+     * one.
+     */
+    @Test
+    public final void testAdd_ExistingKey_Replaced() {
+        repository.add(new TestClass(1, "c"));
+
+        Assert.assertEquals(repository.size(), 2);
+        Assert.assertEquals(repository.getByKey(1).value, "c");
+    }
+
+    /**
+     * Tests that entities are removed by key.
+     */
+    @Test
+    public final void testRemove_ByKey() {
+        repository.remove(new TestClass(1, "x"));
+        repository.removeIf(new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return "b".equals(input.value);
+            }
+
+        });
+
+        Assert.assertEquals(repository.size(), 0);
+    }
+
+    /**
+     * Tests that entities are updated by key, without calling their equals
+     * method.
+     */
+    @Test
+    public final void testUpdate_ByKey() {
+        repository.update(new TestClass(1, "c"));
+
+        Assert.assertEquals(repository.size(), 2);
+        Assert.assertEquals(repository.getByKey(1).value, "c");
+        Assert.assertEquals(repository.getAll().iterator().next().value,
+                "c");
+    }
+
+    /**
+     * Tests that updating a missing entity does not add it.
+     */
+    @Test
+    public final void testUpdate_Missing_NotAdded() {
+        repository.update(new TestClass(3, "c"));
+
+        Assert.assertEquals(repository.size(), 2);
+        Assert.assertFalse(repository.containsKey(3));
+    }
+
+    /**
+     * Tests that updating a missing entity in upsert mode adds it.
+     */
+    @Test
+    public final void testUpdate_Upsert_Added() {
+        repository = new KeyedRepository<Integer, TestClass>(
+                (entity) -> entity.id, true);
+
+        repository.update(new TestClass(3, "c"));
+
+        Assert.assertEquals(repository.getByKey(3).value, "c");
+    }
+
+}
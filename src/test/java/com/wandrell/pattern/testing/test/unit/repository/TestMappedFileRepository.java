@@ -0,0 +1,219 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.MappedFileRepository;
+import com.wandrell.pattern.repository.SerializationCodec;
+
+/**
+ * Unit tests for {@link MappedFileRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are recovered after reopening the repository</li>
+ * <li>Removed entities are not recovered</li>
+ * <li>Compacting keeps the live entities</li>
+ * <li>Corrupted records at the end of the log are ignored</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see MappedFileRepository
+ */
+public final class TestMappedFileRepository {
+
+    /**
+     * Size of the segments.
+     */
+    private static final int             SEGMENT_SIZE = 1024;
+
+    /**
+     * Number of entities added before each test.
+     */
+    private static final int             SIZE         = 50;
+
+    /**
+     * Directory for the segments.
+     */
+    private Path                         directory;
+
+    /**
+     * The repository being tested.
+     */
+    private MappedFileRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestMappedFileRepository() {
+        super();
+    }
+
+    /**
+     * Deletes the segments after each test.
+     * 
+     * @throws IOException
+     *             if the files can't be deleted
+     */
+    @AfterMethod
+    public final void cleanUp() throws IOException {
+        repository.close();
+
+        try (final DirectoryStream<Path> files = Files
+                .newDirectoryStream(directory)) {
+            for (final Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * 
+     * @throws IOException
+     *             if the directory can't be created
+     */
+    @BeforeMethod
+    public final void initialize() throws IOException {
+        directory = Files.createTempDirectory("repository");
+
+        repository = open();
+        for (int i = 0; i < SIZE; i++) {
+            repository.add("entity" + i);
+        }
+    }
+
+    /**
+     * Tests that compacting keeps the live entities.
+     */
+    @Test
+    public final void testCompact_KeepsEntities() {
+        final Collection<String> entities; // All the entities
+
+        for (int i = 0; i < SIZE; i += 2) {
+            repository.remove("entity" + i);
+        }
+        repository.compact();
+
+        repository.close();
+        repository = open();
+
+        entities = new HashSet<String>(repository.getAll());
+
+        Assert.assertEquals(entities.size(), SIZE / 2);
+        for (int i = 1; i < SIZE; i += 2) {
+            Assert.assertTrue(entities.contains("entity" + i));
+        }
+    }
+
+    /**
+     * Tests that corrupted records at the end of the log are ignored.
+     * 
+     * @throws IOException
+     *             if the log can't be corrupted
+     */
+    @Test
+    public final void testOpen_Corrupted_Ignored() throws IOException {
+        final Path last;
+
+        repository.close();
+
+        last = directory.resolve(String.format("%010d.log",
+                directory.toFile().list().length - 1));
+        try (final RandomAccessFile file = new RandomAccessFile(
+                last.toFile(), "rw")) {
+            // Corrupts the data of the first record on the last segment
+            file.seek(20);
+            file.write(0xFF);
+        }
+
+        repository = open();
+
+        Assert.assertTrue(repository.size() < SIZE);
+
+        repository.add("other");
+
+        repository.close();
+        repository = open();
+
+        Assert.assertTrue(repository.getAll().contains("other"));
+    }
+
+    /**
+     * Tests that entities are recovered after reopening the repository.
+     */
+    @Test
+    public final void testOpen_Recovers() {
+        final Collection<String> entities; // All the entities
+
+        repository.close();
+        repository = open();
+
+        entities = new HashSet<String>(repository.getAll());
+
+        Assert.assertEquals(entities.size(), SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            Assert.assertTrue(entities.contains("entity" + i));
+        }
+    }
+
+    /**
+     * Tests that removed entities are not recovered.
+     */
+    @Test
+    public final void testOpen_Removed_NotRecovered() {
+        repository.remove("entity5");
+
+        repository.close();
+        repository = open();
+
+        Assert.assertEquals(repository.size(), SIZE - 1);
+        Assert.assertTrue(!repository.getAll().contains("entity5"));
+    }
+
+    /**
+     * Opens a repository on the test directory.
+     * 
+     * @return a repository on the test directory
+     */
+    private final MappedFileRepository<String> open() {
+        return new MappedFileRepository<String>(directory,
+                new SerializationCodec<String>(), SEGMENT_SIZE, 0.5);
+    }
+
+}
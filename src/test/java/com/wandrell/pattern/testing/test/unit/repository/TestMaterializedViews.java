@@ -0,0 +1,244 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.MaterializedView;
+import com.wandrell.pattern.repository.MaterializedViews;
+
+/**
+ * Unit tests for the {@link MaterializedView} implementations registered on a
+ * {@link CollectionRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Registered views receive the already stored entities</li>
+ * <li>Views are updated when entities are added and removed</li>
+ * <li>Views are updated with the stored state when entities are updated</li>
+ * <li>Views are updated by the bulk operations</li>
+ * <li>Unregistered views are no longer updated</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see MaterializedViews
+ */
+public final class TestMaterializedViews {
+
+    /**
+     * Test entity, identified by its name and holding a value.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the entity, which identifies it.
+         */
+        private final String name;
+
+        /**
+         * Value of the entity.
+         */
+        private final int    value;
+
+        /**
+         * Constructs a test entity with the specified data.
+         * 
+         * @param name
+         *            name of the entity
+         * @param value
+         *            value of the entity
+         */
+        public TestClass(final String name, final int value) {
+            super();
+
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            return Objects.equals(name, ((TestClass) obj).name);
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+    }
+
+    /**
+     * Filter accepting entities with a positive value.
+     */
+    private final Predicate<TestClass>      positive   = new Predicate<TestClass>() {
+
+        @Override
+        public final boolean apply(final TestClass input) {
+            return input.value > 0;
+        }
+
+    };
+
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<TestClass> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestMaterializedViews() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new CollectionRepository<TestClass>();
+
+        repository.add(new TestClass("a", 1));
+        repository.add(new TestClass("b", -2));
+        repository.add(new TestClass("c", 3));
+    }
+
+    /**
+     * Tests that views are updated when entities are added and removed.
+     */
+    @Test
+    public final void testAddRemove_Updated() {
+        final MaterializedView<TestClass, Long> count;
+        final MaterializedView<TestClass, Double> sum;
+
+        count = repository.registerView(positive,
+                MaterializedViews.<TestClass> count());
+        sum = repository.registerView(positive,
+                MaterializedViews.<TestClass> sum((entity) -> entity.value));
+
+        repository.add(new TestClass("d", 4));
+        repository.add(new TestClass("e", -5));
+        repository.remove(new TestClass("a", 0));
+
+        Assert.assertEquals(count.getResult(), (Long) 2L);
+        Assert.assertEquals(sum.getResult(), 7.0);
+    }
+
+    /**
+     * Tests that views are updated by the bulk operations.
+     */
+    @Test
+    public final void testBulk_Updated() {
+        final MaterializedView<TestClass, Map<Boolean, Long>> groups;
+
+        groups = repository.registerView(positive,
+                MaterializedViews.<TestClass, Boolean> groupingCount(
+                        (entity) -> entity.value > 2));
+
+        repository.addAll(Arrays.asList(new TestClass("d", 4),
+                new TestClass("e", 5)));
+        repository.removeAll(Arrays.asList(new TestClass("a", 0)));
+        repository.updateAll(Arrays.asList(new TestClass("c", -3)));
+
+        Assert.assertEquals(groups.getResult().size(), 1);
+        Assert.assertEquals(groups.getResult().get(true), (Long) 2L);
+
+        repository.removeIf(positive);
+
+        Assert.assertTrue(groups.getResult().isEmpty());
+    }
+
+    /**
+     * Tests that registered views receive the already stored entities.
+     */
+    @Test
+    public final void testRegister_Populated() {
+        final MaterializedView<TestClass, Collection<String>> names;
+
+        names = repository.registerView(positive,
+                MaterializedViews.<TestClass, String> projection(
+                        (entity) -> entity.name));
+
+        Assert.assertEquals(names.getResult().size(), 2);
+        Assert.assertTrue(names.getResult().contains("a"));
+        Assert.assertTrue(names.getResult().contains("c"));
+    }
+
+    /**
+     * Tests that unregistered views are no longer updated.
+     */
+    @Test
+    public final void testUnregister_NotUpdated() {
+        final MaterializedView<TestClass, Long> count;
+
+        count = repository.registerView(positive,
+                MaterializedViews.<TestClass> count());
+        repository.unregisterView(count);
+
+        repository.add(new TestClass("d", 4));
+
+        Assert.assertEquals(count.getResult(), (Long) 2L);
+    }
+
+    /**
+     * Tests that views are updated with the stored state when entities are
+     * updated.
+     */
+    @Test
+    public final void testUpdate_Updated() {
+        final MaterializedView<TestClass, Double> sum;
+
+        sum = repository.registerView(positive,
+                MaterializedViews.<TestClass> sum((entity) -> entity.value));
+
+        repository.update(new TestClass("a", 10));
+        repository.update(new TestClass("b", 2));
+        repository.update(new TestClass("z", 100));
+
+        Assert.assertEquals(sum.getResult(), 15.0);
+    }
+
+}
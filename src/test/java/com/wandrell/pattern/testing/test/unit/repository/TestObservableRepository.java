@@ -0,0 +1,263 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.ObservableRepository;
+import com.wandrell.pattern.repository.RepositoryEvent;
+import com.wandrell.pattern.repository.RepositoryListener;
+import com.wandrell.pattern.repository.RepositorySnapshot;
+
+/**
+ * Unit tests for {@link ObservableRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Listeners receive the changes in order</li>
+ * <li>A failing listener does not stop the others from being notified</li>
+ * <li>Listeners can read the repository from other threads</li>
+ * <li>Changes made by listeners are notified after the current one</li>
+ * <li>Events can be read after a sequence number</li>
+ * <li>Reading events no longer retained throws an exception</li>
+ * <li>Snapshots contain the entities and the sequence number</li>
+ * <li>Removing an entity which is not stored publishes nothing</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ObservableRepository
+ */
+public final class TestObservableRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private ObservableRepository<String, Predicate<String>> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestObservableRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new ObservableRepository<String, Predicate<String>>(
+                new CollectionRepository<String>(), 3,
+                (entities) -> Predicates.in(new HashSet<String>(entities)));
+    }
+
+    /**
+     * Tests that reading events no longer retained throws an exception.
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public final void testGetEvents_Discarded_Exception() {
+        repository.add("a");
+        repository.add("b");
+        repository.add("c");
+        repository.add("d");
+
+        repository.getEvents(0, 10);
+    }
+
+    /**
+     * Tests that events can be read after a sequence number.
+     */
+    @Test
+    public final void testGetEvents_Resume() {
+        final List<RepositoryEvent<String>> events;
+
+        repository.add("a");
+        repository.add("b");
+        repository.remove("a");
+
+        events = repository.getEvents(1, 10);
+
+        Assert.assertEquals(events.size(), 2);
+        Assert.assertEquals(events.get(0).getSequence(), 2L);
+        Assert.assertEquals(events.get(0).getEntity(), "b");
+        Assert.assertEquals(events.get(1).getType(),
+                RepositoryEvent.Type.REMOVE);
+        Assert.assertEquals(repository.getLastSequence(), 3L);
+    }
+
+    /**
+     * Tests that a failing listener does not stop the others from being
+     * notified.
+     */
+    @Test
+    public final void testListener_Failing_OthersNotified() {
+        final List<RepositoryEvent<String>> received;
+
+        received = new ArrayList<RepositoryEvent<String>>();
+        repository.addListener(new RepositoryListener<String>() {
+
+            @Override
+            public final void onEvent(final RepositoryEvent<String> event) {
+                throw new IllegalStateException("Failing listener");
+            }
+
+        });
+        repository.addListener(new RepositoryListener<String>() {
+
+            @Override
+            public final void onEvent(final RepositoryEvent<String> event) {
+                received.add(event);
+            }
+
+        });
+
+        repository.add("a");
+
+        Assert.assertEquals(received.size(), 1);
+        Assert.assertEquals(repository.getAll().size(), 1);
+    }
+
+    /**
+     * Tests that listeners receive the changes in order.
+     */
+    @Test
+    public final void testListener_ReceivesEvents() {
+        final List<RepositoryEvent<String>> received;
+
+        received = new ArrayList<RepositoryEvent<String>>();
+        repository.addListener(new RepositoryListener<String>() {
+
+            @Override
+            public final void onEvent(final RepositoryEvent<String> event) {
+                received.add(event);
+            }
+
+        });
+
+        repository.add("a");
+        repository.update("a");
+
+        Assert.assertEquals(received.size(), 2);
+        Assert.assertEquals(received.get(0).getType(),
+                RepositoryEvent.Type.ADD);
+        Assert.assertEquals(received.get(1).getType(),
+                RepositoryEvent.Type.UPDATE);
+        Assert.assertEquals(received.get(1).getSequence(), 2L);
+    }
+
+    /**
+     * Tests that listeners can read the repository from other threads, as
+     * they are not notified while holding the lock.
+     * 
+     * @throws ExecutionException
+     *             if the read fails
+     * @throws InterruptedException
+     *             if the test is interrupted while waiting
+     */
+    @Test(timeOut = 5000)
+    public final void testListener_ReadsFromOtherThread()
+            throws InterruptedException, ExecutionException {
+        final List<Integer> sizes;
+
+        sizes = new ArrayList<Integer>();
+        repository.addListener((event) -> {
+            try {
+                sizes.add(CompletableFuture
+                        .supplyAsync(() -> repository.getAll().size()).get());
+            } catch (final InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        repository.add("a");
+
+        Assert.assertEquals(sizes, Arrays.asList(1));
+    }
+
+    /**
+     * Tests that changes made by listeners are notified after the current
+     * one, keeping the order of the sequence numbers.
+     */
+    @Test
+    public final void testListener_Writes_NotifiedInOrder() {
+        final List<Long> received;
+
+        received = new ArrayList<Long>();
+        repository.addListener((event) -> {
+            received.add(event.getSequence());
+            if (event.getSequence() == 1) {
+                repository.add("b");
+            }
+        });
+
+        repository.add("a");
+
+        Assert.assertEquals(received, Arrays.asList(1L, 2L));
+    }
+
+    /**
+     * Tests that removing an entity which is not stored publishes nothing.
+     */
+    @Test
+    public final void testRemove_NotStored_NoEvent() {
+        repository.add("a");
+        repository.remove("b");
+        repository.removeAll(Arrays.asList("a", "b", "a"));
+
+        Assert.assertEquals(repository.getLastSequence(), 2L);
+        Assert.assertEquals(repository.getEvents(1, 10).get(0).getEntity(),
+                "a");
+    }
+
+    /**
+     * Tests that snapshots contain the entities and the sequence number.
+     */
+    @Test
+    public final void testSnapshot_EntitiesAndSequence() {
+        final RepositorySnapshot<String> snapshot;
+
+        repository.add("a");
+        repository.add("b");
+
+        snapshot = repository.getSnapshot();
+
+        Assert.assertEquals(snapshot.getSequence(), 2L);
+        Assert.assertEquals(snapshot.getEntities().size(), 2);
+        Assert.assertTrue(snapshot.getEntities().contains("b"));
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
+import com.wandrell.pattern.repository.OffHeapRepository;
+import com.wandrell.pattern.repository.SerializationCodec;
+
+/**
+ * Unit tests for {@link OffHeapRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are added correctly, even when filling several segments</li>
+ * <li>Entities are removed correctly</li>
+ * <li>The space of removed entities is reused without corrupting the
+ * others</li>
+ * <li>The space of removed entities is merged, so it can hold bigger
+ * entities</li>
+ * <li>Entities are removed by filter correctly</li>
+ * <li>The {@code getCollection} method filters the entities correctly</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see OffHeapRepository
+ */
+public final class TestOffHeapRepository {
+
+    /**
+     * Number of entities added before each test.
+     */
+    private static final int          SIZE = 100;
+
+    /**
+     * The repository being tested.
+     */
+    private OffHeapRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestOffHeapRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * <p>
+     * The segments are small, so the entities are spread over several of
+     * them.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new OffHeapRepository<String>(
+                new SerializationCodec<String>(), 256);
+
+        for (int i = 0; i < SIZE; i++) {
+            repository.add("entity" + i);
+        }
+    }
+
+    /**
+     * Tests that entities are added correctly.
+     */
+    @Test
+    public final void testAdd_Adds() {
+        final Collection<String> entities; // All the entities
+
+        entities = new HashSet<String>(repository.getAll());
+
+        Assert.assertEquals(entities.size(), SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            Assert.assertTrue(entities.contains("entity" + i));
+        }
+    }
+
+    /**
+     * Test that the {@code getCollection} method filters the entities
+     * correctly.
+     */
+    @Test
+    public final void testGetCollection_Filter_Filters() {
+        final Collection<String> entities; // Filtered entities
+
+        entities = repository.getCollection(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return entity.equals("entity42");
+            }
+
+        });
+
+        Assert.assertEquals(entities.size(), 1);
+        Assert.assertTrue(entities.contains("entity42"));
+    }
+
+    /**
+     * Tests that entities are removed correctly.
+     */
+    @Test
+    public final void testRemove_Removes() {
+        repository.remove("entity42");
+
+        Assert.assertEquals(repository.size(), SIZE - 1);
+        Assert.assertTrue(!repository.getAll().contains("entity42"));
+    }
+
+    /**
+     * Tests that the space of removed entities is reused without corrupting
+     * the others.
+     */
+    @Test
+    public final void testRemove_ThenAdd_ReusesSpace() {
+        final Collection<String> entities; // All the entities
+
+        for (int i = 0; i < SIZE; i += 2) {
+            repository.remove("entity" + i);
+        }
+        for (int i = 0; i < SIZE; i += 2) {
+            repository.add("other" + i);
+        }
+
+        entities = new HashSet<String>(repository.getAll());
+
+        Assert.assertEquals(entities.size(), SIZE);
+        for (int i = 0; i < SIZE; i += 2) {
+            Assert.assertTrue(entities.contains("other" + i));
+            Assert.assertTrue(entities.contains("entity" + (i + 1)));
+        }
+    }
+
+    /**
+     * Tests that the space of removed entities is merged, so it can hold
+     * bigger entities without allocating new segments.
+     */
+    @Test
+    public final void testRemove_ThenAddBigger_MergesSpace() {
+        final int segments; // Segments before removing
+        final String big;   // Entity filling most of a segment
+
+        segments = repository.getSegmentCount();
+        big = Strings.repeat("x", 200);
+
+        for (int i = 0; i < SIZE; i++) {
+            repository.remove("entity" + i);
+        }
+        for (int i = 0; i < segments; i++) {
+            repository.add(big + i);
+        }
+
+        Assert.assertEquals(repository.size(), segments);
+        Assert.assertEquals(repository.getSegmentCount(), segments);
+    }
+
+    /**
+     * Tests that entities are removed by filter correctly.
+     */
+    @Test
+    public final void testRemoveIf_Removes() {
+        repository.removeIf(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return !entity.equals("entity42");
+            }
+
+        });
+
+        Assert.assertEquals(repository.size(), 1);
+        Assert.assertEquals(repository.getEntity(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return true;
+            }
+
+        }), "entity42");
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for {@link CollectionRepository} checking that the parallel
+ * filtering works correctly.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Ordered parallel filtering keeps the original order</li>
+ * <li>Unordered parallel filtering returns the same entities</li>
+ * <li>Parallel counting returns the number of filtered entities</li>
+ * <li>Parallel grouping aggregates each group</li>
+ * <li>Parallel reduction combines the filtered entities</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see CollectionRepository
+ */
+public final class TestParallelCollectionRepository {
+
+    /**
+     * Number of entities to store.
+     */
+    private static final int              SIZE = 10000;
+
+    /**
+     * The entities expected when filtering.
+     */
+    private List<Integer>                 expected;
+
+    /**
+     * The filter being used.
+     */
+    private Predicate<Integer>            filter;
+
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<Integer> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestParallelCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before any test is run.
+     */
+    @BeforeClass
+    public final void initialize() {
+        final Collection<Integer> data;
+
+        filter = new Predicate<Integer>() {
+
+            @Override
+            final public boolean apply(final Integer entity) {
+                return entity % 3 == 0;
+            }
+
+        };
+
+        data = new ArrayList<Integer>();
+        expected = new ArrayList<Integer>();
+        for (int i = 0; i < SIZE; i++) {
+            data.add(i);
+            if (filter.apply(i)) {
+                expected.add(i);
+            }
+        }
+
+        repository = new CollectionRepository<Integer>(data,
+                new ForkJoinPool(4), 1);
+    }
+
+    /**
+     * Tests that parallel counting returns the number of filtered entities.
+     */
+    @Test
+    public final void testCount_Parallel() {
+        Assert.assertEquals(repository.count(filter), (long) expected.size());
+    }
+
+    /**
+     * Tests that ordered parallel filtering keeps the original order.
+     */
+    @Test
+    public final void testGetCollection_Ordered_KeepsOrder() {
+        final Collection<Integer> entities; // Filtered entities
+
+        entities = repository.getCollection(filter, true);
+
+        Assert.assertEquals(new ArrayList<Integer>(entities), expected);
+    }
+
+    /**
+     * Tests that unordered parallel filtering returns the same entities.
+     */
+    @Test
+    public final void testGetCollection_Unordered_SameEntities() {
+        final Collection<Integer> entities; // Filtered entities
+
+        entities = repository.getCollection(filter, false);
+
+        Assert.assertEquals(entities.size(), expected.size());
+        Assert.assertEquals(new HashSet<Integer>(entities),
+                new HashSet<Integer>(expected));
+    }
+
+    /**
+     * Tests that parallel grouping aggregates each group.
+     */
+    @Test
+    public final void testGroupBy_Parallel() {
+        final Map<Boolean, Long> groups;
+
+        groups = repository.groupBy(filter, (entity) -> entity % 2 == 0,
+                Collectors.counting());
+
+        Assert.assertEquals(groups.get(true), (Long) 1667L);
+        Assert.assertEquals(groups.get(false), (Long) 1667L);
+    }
+
+    /**
+     * Tests that parallel reduction combines the filtered entities.
+     */
+    @Test
+    public final void testReduce_Parallel() {
+        long sum;
+
+        sum = 0;
+        for (final Integer value : expected) {
+            sum += value;
+        }
+
+        Assert.assertEquals(repository.reduce(filter, 0L,
+                (partial, entity) -> partial + entity, Long::sum), (Long) sum);
+        Assert.assertEquals(repository.reduce(filter, Math::max).get(),
+                (Integer) 9999);
+    }
+
+}
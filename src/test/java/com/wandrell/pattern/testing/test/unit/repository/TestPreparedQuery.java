@@ -0,0 +1,162 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.DefaultQueryData;
+import com.wandrell.pattern.repository.PreparedQuery;
+import com.wandrell.pattern.repository.PreparedQueryCache;
+import com.wandrell.pattern.repository.QueryData;
+
+/**
+ * Unit tests for {@link PreparedQuery} and {@link PreparedQueryCache}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Each distinct parameter is given a slot, in order</li>
+ * <li>Colons inside literals and double colons are not parameters</li>
+ * <li>Parameters are bound to their slots</li>
+ * <li>Binding fails when a parameter is missing</li>
+ * <li>Repeated parameters are repeated on the statement arguments</li>
+ * <li>The cache parses each query only once</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see PreparedQuery
+ * @see PreparedQueryCache
+ */
+public final class TestPreparedQuery {
+
+    /**
+     * Default constructor.
+     */
+    public TestPreparedQuery() {
+        super();
+    }
+
+    /**
+     * Tests that parameters are bound to their slots.
+     */
+    @Test
+    public final void testBind_Slots() {
+        final PreparedQuery query;
+        final QueryData data;
+
+        query = PreparedQuery
+                .prepare("SELECT * FROM t WHERE a = :a AND b = :b");
+        data = new DefaultQueryData(query.getQuery());
+        data.addParameter("b", 2);
+        data.addParameter("a", 1);
+        data.addParameter("unused", 3);
+
+        Assert.assertEquals(Arrays.asList(query.bind(data)),
+                Arrays.asList(1, 2));
+    }
+
+    /**
+     * Tests that binding fails when a parameter is missing.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testBind_Missing_Exception() {
+        final PreparedQuery query;
+
+        query = PreparedQuery.prepare("SELECT * FROM t WHERE a = :a");
+
+        query.bind(new DefaultQueryData(query.getQuery()));
+    }
+
+    /**
+     * Tests that the cache parses each query only once.
+     */
+    @Test
+    public final void testCache_SameInstance() {
+        final PreparedQueryCache cache;
+        final PreparedQuery query;
+
+        cache = new PreparedQueryCache();
+        query = cache.get("SELECT * FROM t WHERE a = :a");
+
+        Assert.assertSame(
+                cache.get(new DefaultQueryData("SELECT * FROM t WHERE a = :a")),
+                query);
+        Assert.assertEquals(cache.getStatistics().loadCount(), 1L);
+    }
+
+    /**
+     * Tests that repeated parameters are repeated on the statement arguments.
+     */
+    @Test
+    public final void testGetArguments_Repeated() {
+        final PreparedQuery query;
+
+        query = PreparedQuery
+                .prepare("SELECT * FROM t WHERE a = :a OR b = :b OR c = :a");
+
+        Assert.assertEquals(
+                Arrays.asList(query.getArguments(new Object[] { 1, 2 })),
+                Arrays.asList(1, 2, 1));
+    }
+
+    /**
+     * Tests that each distinct parameter is given a slot, in order.
+     */
+    @Test
+    public final void testPrepare_Slots() {
+        final PreparedQuery query;
+
+        query = PreparedQuery
+                .prepare("SELECT * FROM t WHERE a = :first AND b = :second "
+                        + "AND c = :first");
+
+        Assert.assertEquals(query.getParameters(),
+                Arrays.asList("first", "second"));
+        Assert.assertEquals(query.getIndex("first"), 0);
+        Assert.assertEquals(query.getIndex("second"), 1);
+        Assert.assertEquals(query.getIndex("third"), -1);
+        Assert.assertEquals(query.getStatement(),
+                "SELECT * FROM t WHERE a = ? AND b = ? AND c = ?");
+    }
+
+    /**
+     * Tests that colons inside literals and double colons are not
+     * parameters.
+     */
+    @Test
+    public final void testPrepare_Literals_Ignored() {
+        final PreparedQuery query;
+
+        query = PreparedQuery.prepare(
+                "SELECT a::text FROM t WHERE b = ':no' AND c = :yes");
+
+        Assert.assertEquals(query.getParameters(), Arrays.asList("yes"));
+        Assert.assertEquals(query.getStatement(),
+                "SELECT a::text FROM t WHERE b = ':no' AND c = ?");
+    }
+
+}
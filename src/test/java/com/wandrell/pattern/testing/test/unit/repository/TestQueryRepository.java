@@ -0,0 +1,257 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.Attribute;
+import com.wandrell.pattern.repository.DefaultQueryData;
+import com.wandrell.pattern.repository.QueryData;
+import com.wandrell.pattern.repository.QueryRepository;
+
+/**
+ * Unit tests for {@link QueryRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Comparisons with literals filter the entities</li>
+ * <li>Boolean operators and groups are applied with their precedence</li>
+ * <li>Parameters are taken from the query data</li>
+ * <li>Results are sorted and limited</li>
+ * <li>Each query string is compiled only once</li>
+ * <li>Invalid queries are rejected</li>
+ * <li>Missing parameters are rejected</li>
+ * <li>Parameter names not valid for prepared queries are rejected</li>
+ * <li>Comparing values of different types is rejected</li>
+ * <li>Batched queries return results aligned with them</li>
+ * <li>Batched sorted and limited queries return the same results as when
+ * run alone</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see QueryRepository
+ */
+public final class TestQueryRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private QueryRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestQueryRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * <p>
+     * Entities are strings, made of a name and an age separated by a colon.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new QueryRepository<String>();
+
+        repository.addAttribute(new Attribute<String, String>("name",
+                (entity) -> entity.substring(0, entity.indexOf(':'))));
+        repository.addAttribute(new Attribute<String, Integer>("age",
+                (entity) -> Integer.valueOf(
+                        entity.substring(entity.indexOf(':') + 1))));
+
+        repository.add("ann:30");
+        repository.add("bob:25");
+        repository.add("carl:40");
+        repository.add("dana:25");
+    }
+
+    /**
+     * Tests that each query string is compiled only once.
+     */
+    @Test
+    public final void testGetCollection_Cached() {
+        final QueryData data;
+
+        data = new DefaultQueryData("age > :min");
+        data.addParameter("min", 20);
+        repository.getCollection(data);
+        data.addParameter("min", 30);
+
+        Assert.assertEquals(repository.getCollection(data),
+                Arrays.asList("carl:40"));
+        Assert.assertEquals(repository.getStatistics().loadCount(), 1L);
+    }
+
+    /**
+     * Tests that invalid queries are rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testGetCollection_Invalid_Exception() {
+        repository.getCollection(new DefaultQueryData("age > AND"));
+    }
+
+    /**
+     * Tests that comparisons with literals filter the entities.
+     */
+    @Test
+    public final void testGetCollection_Literal() {
+        Assert.assertEquals(
+                repository.getCollection(new DefaultQueryData("age = 25")),
+                Arrays.asList("bob:25", "dana:25"));
+        Assert.assertEquals(
+                repository
+                        .getCollection(new DefaultQueryData("name = 'carl'")),
+                Arrays.asList("carl:40"));
+    }
+
+    /**
+     * Tests that boolean operators and groups are applied with their
+     * precedence.
+     */
+    @Test
+    public final void testGetCollection_Logic() {
+        final Collection<String> result;
+
+        result = repository.getCollection(new DefaultQueryData(
+                "name = 'ann' OR age = 25 AND NOT (name = 'bob')"));
+
+        Assert.assertEquals(result, Arrays.asList("ann:30", "dana:25"));
+    }
+
+    /**
+     * Tests that comparing values of different types is rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testGetCollection_MismatchedTypes_Exception() {
+        repository.getCollection(new DefaultQueryData("age > 'a'"));
+    }
+
+    /**
+     * Tests that missing parameters are rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testGetCollection_MissingParameter_Exception() {
+        repository.getCollection(new DefaultQueryData("age > :min"));
+    }
+
+    /**
+     * Tests that parameter names not valid for prepared queries are
+     * rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testGetCollection_NumericParameter_Exception() {
+        final QueryData data;
+
+        data = new DefaultQueryData("age > :1");
+        data.addParameter("1", 20);
+
+        repository.getCollection(data);
+    }
+
+    /**
+     * Tests that results are sorted and limited.
+     */
+    @Test
+    public final void testGetCollection_OrderLimit() {
+        Assert.assertEquals(
+                repository.getCollection(new DefaultQueryData(
+                        "ORDER BY age DESC, name LIMIT 3")),
+                Arrays.asList("carl:40", "ann:30", "bob:25"));
+        Assert.assertEquals(repository.count(
+                new DefaultQueryData("age < 35 order by name limit 2")), 2L);
+    }
+
+    /**
+     * Tests that batched queries return results aligned with them.
+     */
+    @Test
+    public final void testGetCollections_Aligned() {
+        final QueryData ann;
+        final QueryData carl;
+        final List<Collection<String>> result;
+
+        ann = new DefaultQueryData("name = :name");
+        ann.addParameter("name", "ann");
+        carl = new DefaultQueryData("name = :name");
+        carl.addParameter("name", "carl");
+
+        result = repository.getCollections(Arrays.asList(
+                new DefaultQueryData("age = 25"), ann,
+                new DefaultQueryData("age = 25"), carl,
+                new DefaultQueryData("ORDER BY age DESC LIMIT 1")));
+
+        Assert.assertEquals(result,
+                Arrays.asList(Arrays.asList("bob:25", "dana:25"),
+                        Arrays.asList("ann:30"),
+                        Arrays.asList("bob:25", "dana:25"),
+                        Arrays.asList("carl:40"), Arrays.asList("carl:40")));
+        Assert.assertEquals(repository.getStatistics().loadCount(), 3L);
+    }
+
+    /**
+     * Tests that batched sorted and limited queries return the same results
+     * as when run alone, even when they match many more entities than their
+     * limit.
+     */
+    @Test
+    public final void testGetCollections_OrderLimit_SameAsAlone() {
+        final QueryData query;
+        final List<Collection<String>> result;
+
+        for (int i = 0; i < 50; i++) {
+            repository.add("e" + i + ":" + ((i * 7) % 13));
+        }
+
+        query = new DefaultQueryData("age < 40 ORDER BY age LIMIT 5");
+
+        result = repository.getCollections(Arrays.asList(query));
+
+        Assert.assertEquals(result.get(0), repository.getCollection(query));
+        Assert.assertEquals(result.get(0),
+                Arrays.asList("e0:0", "e13:0", "e26:0", "e39:0", "e2:1"));
+    }
+
+    /**
+     * Tests that parameters are taken from the query data.
+     */
+    @Test
+    public final void testGetEntity_Parameter() {
+        final QueryData data;
+
+        data = new DefaultQueryData("age >= :min AND name != :name");
+        data.addParameter("min", 30);
+        data.addParameter("name", "ann");
+
+        Assert.assertEquals(repository.getEntity(data), "carl:40");
+    }
+
+}
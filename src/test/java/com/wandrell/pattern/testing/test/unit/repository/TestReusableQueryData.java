@@ -0,0 +1,162 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.DefaultQueryData;
+import com.wandrell.pattern.repository.ReusableQueryData;
+
+/**
+ * Unit tests for {@link ReusableQueryData}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Parameters can be added past the initial capacity</li>
+ * <li>Adding an existing parameter replaces its value</li>
+ * <li>Clearing removes the query and parameters</li>
+ * <li>It is equal to, and has the same hash code as, any other query data
+ * with the same query and parameters</li>
+ * <li>The parameters view reflects later changes</li>
+ * <li>Removing a parameter keeps the order of the rest</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ReusableQueryData
+ */
+public final class TestReusableQueryData {
+
+    /**
+     * The query data being tested.
+     */
+    private ReusableQueryData data;
+
+    /**
+     * Default constructor.
+     */
+    public TestReusableQueryData() {
+        super();
+    }
+
+    /**
+     * Creates the query data being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        data = new ReusableQueryData(2);
+
+        data.setQuery("SELECT * FROM t WHERE a = :a AND b = :b");
+        data.addParameter("a", 1);
+        data.addParameter("b", 2);
+    }
+
+    /**
+     * Tests that adding an existing parameter replaces its value.
+     */
+    @Test
+    public final void testAddParameter_Existing_Replaced() {
+        data.addParameter("a", 5);
+
+        Assert.assertEquals(data.getParameters().size(), 2);
+        Assert.assertEquals(data.getParameter("a"), 5);
+    }
+
+    /**
+     * Tests that parameters can be added past the initial capacity.
+     */
+    @Test
+    public final void testAddParameter_Grows() {
+        data.addParameter("c", 3);
+
+        Assert.assertEquals(data.getParameters().size(), 3);
+        Assert.assertEquals(data.getParameter("c"), 3);
+    }
+
+    /**
+     * Tests that clearing removes the query and parameters.
+     */
+    @Test
+    public final void testClear_Empty() {
+        data.clear();
+
+        Assert.assertEquals(data.getQuery(), "");
+        Assert.assertTrue(data.getParameters().isEmpty());
+        Assert.assertNull(data.getParameter("a"));
+    }
+
+    /**
+     * Tests that it is equal to, and has the same hash code as, any other
+     * query data with the same query and parameters.
+     */
+    @Test
+    public final void testEquals_SameData_Equal() {
+        final DefaultQueryData other;
+
+        other = new DefaultQueryData(data);
+
+        Assert.assertTrue(data.equals(other));
+        Assert.assertTrue(other.equals(data));
+        Assert.assertEquals(data.hashCode(), other.hashCode());
+
+        other.addParameter("b", 3);
+
+        Assert.assertTrue(!data.equals(other));
+        Assert.assertTrue(!other.equals(data));
+    }
+
+    /**
+     * Tests that the parameters view reflects later changes.
+     */
+    @Test
+    public final void testGetParameters_View_Updated() {
+        final Map<String, Object> parameters;
+
+        parameters = data.getParameters();
+        data.addParameter("c", 3);
+
+        Assert.assertSame(data.getParameters(), parameters);
+        Assert.assertEquals(parameters.get("c"), 3);
+    }
+
+    /**
+     * Tests that removing a parameter keeps the order of the rest.
+     */
+    @Test
+    public final void testRemoveParameter_OrderKept() {
+        data.addParameter("c", 3);
+        data.removeParameter("a");
+
+        Assert.assertEquals(data.getParameters().keySet(),
+                new LinkedHashSet<String>(Arrays.asList("b", "c")));
+        Assert.assertNull(data.getParameter("a"));
+    }
+
+}
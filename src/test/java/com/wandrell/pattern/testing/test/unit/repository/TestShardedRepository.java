@@ -0,0 +1,210 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.FilteredRepository;
+import com.wandrell.pattern.repository.HashShardingStrategy;
+import com.wandrell.pattern.repository.RangeShardingStrategy;
+import com.wandrell.pattern.repository.ShardedRepository;
+
+/**
+ * Unit tests for {@link ShardedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Each entity is stored on a single shard</li>
+ * <li>Queries return the entities from all the shards</li>
+ * <li>Removing entities removes them from their shards</li>
+ * <li>Adding a shard moves entities into it</li>
+ * <li>Replacing the strategy moves the entities to their new shards</li>
+ * <li>A strategy failing while rebalancing loses no entity</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ShardedRepository
+ */
+public final class TestShardedRepository {
+
+    /**
+     * Filter accepting even values.
+     */
+    private final Predicate<Integer>                              even       = new Predicate<Integer>() {
+
+        @Override
+        public final boolean apply(final Integer input) {
+            return (input % 2) == 0;
+        }
+
+    };
+
+    /**
+     * The sharded repository being tested.
+     */
+    private ShardedRepository<Integer, Predicate<Integer>>        repository;
+
+    /**
+     * The shards.
+     */
+    private List<FilteredRepository<Integer, Predicate<Integer>>> shards;
+
+    /**
+     * Default constructor.
+     */
+    public TestShardedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        shards = new ArrayList<FilteredRepository<Integer, Predicate<Integer>>>();
+        for (int i = 0; i < 4; i++) {
+            shards.add(new CollectionRepository<Integer>());
+        }
+
+        repository = new ShardedRepository<Integer, Predicate<Integer>>(
+                shards, new HashShardingStrategy<Integer>(Function.identity()));
+
+        for (int i = 0; i < 100; i++) {
+            repository.add(i);
+        }
+    }
+
+    /**
+     * Tests that each entity is stored on a single shard.
+     */
+    @Test
+    public final void testAdd_SingleShard() {
+        int total;
+
+        total = 0;
+        for (final FilteredRepository<Integer, Predicate<Integer>> shard : shards) {
+            Assert.assertTrue(shard.getAll().size() < 100);
+            total += shard.getAll().size();
+        }
+
+        Assert.assertEquals(total, 100);
+    }
+
+    /**
+     * Tests that adding a shard moves entities into it.
+     */
+    @Test
+    public final void testAddShard_Rebalanced() {
+        final FilteredRepository<Integer, Predicate<Integer>> added;
+
+        added = new CollectionRepository<Integer>();
+        repository.addShard(added);
+
+        Assert.assertEquals(repository.getShardCount(), 5);
+        Assert.assertFalse(added.getAll().isEmpty());
+        Assert.assertEquals(repository.getAll().size(), 100);
+        Assert.assertEquals(repository.getCollection(even).size(), 50);
+    }
+
+    /**
+     * Tests that queries return the entities from all the shards.
+     */
+    @Test
+    public final void testGetCollection_AllShards() {
+        final Collection<Integer> result;
+
+        result = repository.getCollection(even);
+
+        Assert.assertEquals(result.size(), 50);
+        Assert.assertTrue(result.contains(0));
+        Assert.assertTrue(result.contains(98));
+    }
+
+    /**
+     * Tests that replacing the strategy moves the entities to their new
+     * shards.
+     */
+    @Test
+    public final void testRebalance_Ranges() {
+        repository.rebalance(new RangeShardingStrategy<Integer, Integer>(
+                Function.identity(), Arrays.asList(25, 50, 75)));
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(shards.get(i).getAll().size(), 25);
+        }
+        Assert.assertTrue(shards.get(0).getAll().contains(24));
+        Assert.assertTrue(shards.get(1).getAll().contains(25));
+        Assert.assertTrue(shards.get(3).getAll().contains(99));
+    }
+
+    /**
+     * Tests that a strategy failing while rebalancing loses no entity, and
+     * keeps the previous strategy.
+     */
+    @Test
+    public final void testRebalance_Failing_NotLost() {
+        try {
+            repository.rebalance((entity, count) -> {
+                if (entity == 90) {
+                    throw new IllegalStateException();
+                }
+                return 0;
+            });
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            // The strategy failed
+        }
+
+        Assert.assertEquals(repository.getAll().size(), 100);
+
+        repository.remove(90);
+
+        Assert.assertEquals(repository.getAll().size(), 99);
+    }
+
+    /**
+     * Tests that removing entities removes them from their shards.
+     */
+    @Test
+    public final void testRemove_Removed() {
+        repository.remove(0);
+        repository.removeAll(Arrays.asList(1, 2, 3));
+        repository.removeIf(even);
+
+        Assert.assertEquals(repository.getAll().size(), 48);
+        Assert.assertNull(repository.getEntity(even));
+    }
+
+}
@@ -24,8 +24,13 @@
 
 package com.wandrell.pattern.testing.test.unit.repository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.stream.Collectors;
 
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
@@ -43,7 +48,11 @@ import com.wandrell.pattern.repository.FilteredRepository;
  * Checks the following cases:
  * <ol>
  * <li>Entities are added correctly</li>
+ * <li>Entities are added in bulk correctly</li>
  * <li>Entities are removed correctly</li>
+ * <li>Entities are removed in bulk correctly</li>
+ * <li>Removing in bulk removes a single stored duplicate for each entity</li>
+ * <li>Entities are removed by filter correctly</li>
  * <li>Entities are updated correctly</li>
  * <li>Updating a non existing entity does not add it</li>
  * <li>The {@code getCollection} method filters the entities correctly</li>
@@ -54,6 +63,10 @@ import com.wandrell.pattern.repository.FilteredRepository;
  * modify the repository's internal collection</li>
  * <li>Modifying the {@code Collection} returned by {@code getCollection} does
  * not modify the repository's internal collection</li>
+ * <li>The {@code getCollection} method returns sorted pages correctly</li>
+ * <li>The {@code getCollectionAfter} method returns the following page</li>
+ * <li>The {@code iterator} method filters the entities correctly</li>
+ * <li>The {@code stream} method filters the entities correctly</li>
  * </ol>
  * <p>
  * Note that due to the way the testing is configured, Maven will run these test
@@ -129,6 +142,22 @@ public final class TestStringCollectionRepository {
         Assert.assertTrue(entities.contains("d"));
     }
 
+    /**
+     * Tests that entities are added in bulk correctly.
+     */
+    @Test
+    public final void testAddAll_Adds() {
+        final Collection<String> entities; // All the entities
+
+        repository.addAll(Arrays.asList("d", "e"));
+
+        entities = repository.getAll();
+
+        Assert.assertEquals(entities.size(), 5);
+        Assert.assertTrue(entities.contains("d"));
+        Assert.assertTrue(entities.contains("e"));
+    }
+
     /**
      * Tests that modifying the {@code Collection} returned by {@code getAll}
      * does not modify the repository's internal collection.
@@ -166,6 +195,26 @@ public final class TestStringCollectionRepository {
         Assert.assertTrue(entities.contains("b"));
     }
 
+    /**
+     * Tests that the {@code getCollection} method returns sorted pages
+     * correctly.
+     */
+    @Test
+    public final void testGetCollection_Page_Sorted() {
+        final Collection<String> entities; // Page entities
+
+        entities = repository.getCollection(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return true;
+            }
+
+        }, 1, 5, Comparator.<String> reverseOrder());
+
+        Assert.assertEquals(entities, Arrays.asList("b", "a"));
+    }
+
     /**
      * Tests that modifying the {@code Collection} returned by
      * {@code getCollection} does not modify the repository's internal
@@ -197,6 +246,26 @@ public final class TestStringCollectionRepository {
         }).size(), 3);
     }
 
+    /**
+     * Tests that the {@code getCollectionAfter} method returns the page
+     * following the received entity.
+     */
+    @Test
+    public final void testGetCollectionAfter_Page_Following() {
+        final Collection<String> entities; // Page entities
+
+        entities = repository.getCollectionAfter(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return true;
+            }
+
+        }, "a", 1, Comparator.<String> naturalOrder());
+
+        Assert.assertEquals(entities, Arrays.asList("b"));
+    }
+
     /**
      * Tests that the {@code getEntity} method returns {@code null} when the
      * repository is empty.
@@ -240,6 +309,79 @@ public final class TestStringCollectionRepository {
         Assert.assertEquals(entity, "b");
     }
 
+    /**
+     * Test that the {@code iterator} method filters the entities correctly.
+     */
+    @Test
+    public final void testIterator_Filter_Filters() {
+        final Iterator<String> entities; // Filtered entities
+
+        entities = repository.iterator(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return !entity.equals("b");
+            }
+
+        });
+
+        Assert.assertEquals(entities.next(), "a");
+        Assert.assertEquals(entities.next(), "c");
+        Assert.assertTrue(!entities.hasNext());
+    }
+
+    /**
+     * Tests that entities are removed in bulk correctly.
+     */
+    @Test
+    public final void testRemoveAll_Removes() {
+        final Collection<String> entities; // All the entities
+
+        repository.removeAll(Arrays.asList("a", "c", "d"));
+
+        entities = repository.getAll();
+
+        Assert.assertEquals(entities, Arrays.asList("b"));
+    }
+
+    /**
+     * Tests that removing in bulk removes a single stored duplicate for each
+     * received entity, same as removing them one by one.
+     */
+    @Test
+    public final void testRemoveAll_Duplicates_RemovesOnePerEntity() {
+        final CollectionRepository<String> duplicated;
+
+        duplicated = new CollectionRepository<String>(
+                new ArrayList<String>());
+        duplicated.addAll(Arrays.asList("a", "b", "a", "b", "a"));
+
+        duplicated.removeAll(Arrays.asList("a", "b", "a"));
+
+        Assert.assertEquals(duplicated.getAll(), Arrays.asList("b", "a"));
+    }
+
+    /**
+     * Tests that entities are removed by filter correctly.
+     */
+    @Test
+    public final void testRemoveIf_Removes() {
+        final Collection<String> entities; // All the entities
+
+        repository.removeIf(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return !entity.equals("b");
+            }
+
+        });
+
+        entities = repository.getAll();
+
+        Assert.assertEquals(entities, Arrays.asList("b"));
+    }
+
     /**
      * Tests that entities are removed correctly.
      */
@@ -262,6 +404,26 @@ public final class TestStringCollectionRepository {
         Assert.assertTrue(!entities.contains("b"));
     }
 
+    /**
+     * Test that the {@code stream} method filters the entities correctly.
+     */
+    @Test
+    public final void testStream_Filter_Filters() {
+        final Collection<String> entities; // Filtered entities
+
+        entities = repository.stream(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return entity.equals("b");
+            }
+
+        }).collect(Collectors.toList());
+
+        Assert.assertEquals(entities.size(), 1);
+        Assert.assertTrue(entities.contains("b"));
+    }
+
     /**
      * Tests that entities are updated correctly.
      */
@@ -0,0 +1,207 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ConcurrentModificationException;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.Transaction;
+import com.wandrell.pattern.repository.TransactionalRepository;
+
+/**
+ * Unit tests for {@link TransactionalRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>A transaction sees its own changes</li>
+ * <li>A transaction does not see changes committed after it began</li>
+ * <li>Committed changes are visible to later transactions</li>
+ * <li>Committing an entity changed by another transaction fails</li>
+ * <li>Rolled back changes are discarded</li>
+ * <li>Removing old versions keeps those visible to active transactions</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see TransactionalRepository
+ */
+public final class TestTransactionalRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private TransactionalRepository<String, String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestTransactionalRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * <p>
+     * Entities are strings, and their key is the text before the colon.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new TransactionalRepository<String, String>(
+                (entity) -> entity.substring(0, entity.indexOf(':')));
+
+        repository.add("a:0");
+        repository.add("b:0");
+    }
+
+    /**
+     * Tests that removing old versions keeps those visible to active
+     * transactions.
+     */
+    @Test
+    public final void testCollectGarbage_Active_Kept() {
+        final Transaction<String, String> reader;
+
+        reader = repository.begin();
+        try {
+            repository.update("a:1");
+            repository.remove("b:0");
+            repository.collectGarbage();
+
+            Assert.assertEquals(reader.get("a"), "a:0");
+            Assert.assertEquals(reader.get("b"), "b:0");
+        } finally {
+            reader.close();
+        }
+
+        repository.collectGarbage();
+
+        Assert.assertEquals(repository.getAll().size(), 1);
+        Assert.assertEquals(repository.getEntity((entity) -> true), "a:1");
+    }
+
+    /**
+     * Tests that committing an entity changed by another transaction fails.
+     */
+    @Test(expectedExceptions = ConcurrentModificationException.class)
+    public final void testCommit_Conflict_Exception() {
+        final Transaction<String, String> first;
+        final Transaction<String, String> second;
+
+        first = repository.begin();
+        second = repository.begin();
+        try {
+            first.update("a:1");
+            second.update("a:2");
+
+            first.commit();
+            second.commit();
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    /**
+     * Tests that committed changes are visible to later transactions.
+     */
+    @Test
+    public final void testCommit_Visible() {
+        final Transaction<String, String> transaction;
+
+        transaction = repository.begin();
+        try {
+            transaction.update("a:1");
+            transaction.add("c:0");
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+
+        Assert.assertEquals(repository.getAll().size(), 3);
+        Assert.assertEquals(
+                repository.getEntity((entity) -> entity.startsWith("a")),
+                "a:1");
+    }
+
+    /**
+     * Tests that a transaction does not see changes committed after it
+     * began.
+     */
+    @Test
+    public final void testGet_LaterCommit_NotVisible() {
+        final Transaction<String, String> reader;
+
+        reader = repository.begin();
+        try {
+            repository.update("a:1");
+            repository.add("c:0");
+
+            Assert.assertEquals(reader.get("a"), "a:0");
+            Assert.assertNull(reader.get("c"));
+            Assert.assertEquals(reader.getAll().size(), 2);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Tests that a transaction sees its own changes.
+     */
+    @Test
+    public final void testGet_OwnChanges_Visible() {
+        final Transaction<String, String> transaction;
+
+        transaction = repository.begin();
+        try {
+            transaction.update("a:1");
+            transaction.remove("b:0");
+
+            Assert.assertEquals(transaction.get("a"), "a:1");
+            Assert.assertNull(transaction.get("b"));
+            Assert.assertEquals(transaction.getAll().size(), 1);
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * Tests that rolled back changes are discarded.
+     */
+    @Test
+    public final void testRollback_Discarded() {
+        final Transaction<String, String> transaction;
+
+        transaction = repository.begin();
+        transaction.update("a:1");
+        transaction.rollback();
+
+        Assert.assertEquals(
+                repository.getEntity((entity) -> entity.startsWith("a")),
+                "a:0");
+    }
+
+}
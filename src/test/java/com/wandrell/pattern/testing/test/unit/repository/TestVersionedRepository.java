@@ -0,0 +1,160 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.VersionedEntity;
+import com.wandrell.pattern.repository.VersionedRepository;
+
+/**
+ * Unit tests for {@link VersionedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Each change gives the entity a new version</li>
+ * <li>Updating with the expected version succeeds</li>
+ * <li>Updating with an outdated version fails</li>
+ * <li>Concurrent functional updates are not lost</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see VersionedRepository
+ */
+public final class TestVersionedRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private VersionedRepository<String, String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestVersionedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * <p>
+     * Entities are strings, and their key is the text before the colon.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new VersionedRepository<String, String>(
+                (entity) -> entity.substring(0, entity.indexOf(':')));
+
+        repository.add("a:0");
+    }
+
+    /**
+     * Tests that updating with the expected version succeeds.
+     */
+    @Test
+    public final void testCompareAndUpdate_Expected_Updated() {
+        final long version;
+
+        version = repository.getVersioned("a").getVersion();
+
+        Assert.assertTrue(repository.compareAndUpdate(version, "a:1"));
+        Assert.assertEquals(repository.getVersioned("a").getEntity(), "a:1");
+    }
+
+    /**
+     * Tests that updating with an outdated version fails.
+     */
+    @Test
+    public final void testCompareAndUpdate_Outdated_NotUpdated() {
+        final long version;
+
+        version = repository.getVersioned("a").getVersion();
+        repository.update("a:1");
+
+        Assert.assertFalse(repository.compareAndUpdate(version, "a:2"));
+        Assert.assertEquals(repository.getVersioned("a").getEntity(), "a:1");
+    }
+
+    /**
+     * Tests that each change gives the entity a new version.
+     */
+    @Test
+    public final void testUpdate_NewVersion() {
+        final VersionedEntity<String> first;
+
+        first = repository.getVersioned("a");
+        repository.update("a:1");
+
+        Assert.assertTrue(
+                repository.getVersioned("a").getVersion() > first.getVersion());
+    }
+
+    /**
+     * Tests that concurrent functional updates are not lost.
+     * 
+     * @throws Exception
+     *             never, this is required by the executor
+     */
+    @Test
+    public final void testUpdateWith_Concurrent_NoneLost() throws Exception {
+        final ExecutorService executor;
+        final List<Future<Void>> results;
+        final Callable<Void> task;
+
+        task = () -> {
+            for (int i = 0; i < 1000; i++) {
+                repository.updateWith("a", (entity) -> "a:"
+                        + (Integer.parseInt(entity.substring(2)) + 1));
+            }
+            return null;
+        };
+
+        executor = Executors.newFixedThreadPool(4);
+        results = new ArrayList<Future<Void>>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(task));
+            }
+            for (final Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(repository.getVersioned("a").getEntity(),
+                "a:4000");
+    }
+
+}